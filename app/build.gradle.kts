@@ -30,6 +30,16 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    androidResources {
+        // Model TFLite được map trực tiếp từ APK (EmbeddingFaceMatcher)
+        noCompress += "tflite"
+    }
+    testOptions {
+        // Unit test JVM: android.util.Log... trả về giá trị mặc định thay vì ném "Stub!"
+        unitTests.isReturnDefaultValues = true
+        // Benchmark (*Benchmark) chỉ chạy khi gọi riêng: ./gradlew testDebugUnitTest -Pbenchmark --tests "*Benchmark"
+        unitTests.all { it.systemProperty("benchmark", project.hasProperty("benchmark")) }
+    }
 }
 
 
@@ -45,6 +55,8 @@ dependencies {
     implementation(libs.credentials.play.services.auth)
     implementation(libs.googleid)
     testImplementation(libs.junit)
+    // org.json trong android.jar chỉ là stub khi chạy unit test JVM (RoutingServiceTest)
+    testImplementation("org.json:json:20231013")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     implementation(platform("com.google.firebase:firebase-bom:33.5.1"))
@@ -71,6 +83,9 @@ dependencies {
 
     // ML Kit Face Detection
     implementation("com.google.mlkit:face-detection:16.1.5")
+
+    // TensorFlow Lite - face embedding on-device (model: assets/face_embedding.tflite)
+    implementation("org.tensorflow:tensorflow-lite:2.14.0")
     
     // RecyclerView
     implementation("androidx.recyclerview:recyclerview:1.3.2")
@@ -0,0 +1,107 @@
+package com.example.cklbanking.services;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.cklbanking.CKLBankingApplication;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Rate limit gửi OTP (token bucket trong otp_rate_limits/{userId}) chạy trên Firestore Emulator
+ *
+ * Cần emulator Firestore đang chạy (firebase emulators:start) và CKLBankingApplication
+ * ở CacheProfile.EMULATOR - nếu không thì test được bỏ qua.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OTPServiceRateLimitTest {
+
+    private static final String EMULATOR_HOST = "10.0.2.2";
+    private static final int FIRESTORE_PORT = 8080;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final String TEST_EMAIL = "otp-test@example.com";
+
+    private FirebaseFirestore db;
+    private OTPService otpService;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Application is not using the emulator cache profile",
+                CKLBankingApplication.getCacheProfile() == CKLBankingApplication.CacheProfile.EMULATOR);
+        assumeTrue("Firestore emulator is not reachable", emulatorReachable());
+        db = FirebaseFirestore.getInstance();
+        otpService = new OTPService();
+    }
+
+    @Test
+    public void issueReadsOneRateLimitDocumentRegardlessOfHistory() throws Exception {
+        // Lần gửi thứ 6 trở đi bị từ chối - vẫn chỉ đọc một document
+        for (int previousAttempts : new int[]{0, 3, 20}) {
+            String userId = "test_" + UUID.randomUUID();
+            for (int i = 0; i < previousAttempts; i++) {
+                issue(userId);
+            }
+
+            long readsBefore = OTPService.getRateLimitReadCount();
+            issue(userId);
+            assertEquals("after " + previousAttempts + " attempts",
+                    1, OTPService.getRateLimitReadCount() - readsBefore);
+
+            // Trạng thái chỉ gồm (tokens, updatedAt), không phải lịch sử các lần gửi
+            DocumentSnapshot limit = Tasks.await(db.collection("otp_rate_limits").document(userId).get(),
+                    TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals(2, limit.getData().size());
+            assertTrue(limit.contains("tokens"));
+            assertTrue(limit.contains("updatedAt"));
+        }
+    }
+
+    @Test
+    public void sixthIssueWithinAnHourIsRejected() throws Exception {
+        String userId = "test_" + UUID.randomUUID();
+        for (int i = 0; i < 5; i++) {
+            assertTrue("issue " + (i + 1), issue(userId));
+        }
+        assertFalse(issue(userId));
+    }
+
+    /**
+     * @return true nếu OTP được phát hành, false nếu bị rate limit
+     */
+    private boolean issue(String userId) throws Exception {
+        String transactionId = db.collection("transactions").document().getId();
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] result = new boolean[1];
+        otpService.generateOTP(transactionId, userId, TEST_EMAIL, (otpCode, success, message) -> {
+            result[0] = success;
+            done.countDown();
+        });
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static boolean emulatorReachable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(EMULATOR_HOST, FIRESTORE_PORT), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.cklbanking.services;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.cklbanking.CKLBankingApplication;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tổng chuyển tiền trong ngày (shard counter) chạy trên Firestore Emulator
+ *
+ * Cần emulator Firestore đang chạy (firebase emulators:start) và CKLBankingApplication
+ * ở CacheProfile.EMULATOR - nếu không thì test được bỏ qua.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionServiceDailyTotalTest {
+
+    private static final String EMULATOR_HOST = "10.0.2.2";
+    private static final int FIRESTORE_PORT = 8080;
+    private static final double AMOUNT = 10000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private FirebaseFirestore db;
+    private TransactionService transactionService;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Application is not using the emulator cache profile",
+                CKLBankingApplication.getCacheProfile() == CKLBankingApplication.CacheProfile.EMULATOR);
+        assumeTrue("Firestore emulator is not reachable", emulatorReachable());
+        db = FirebaseFirestore.getInstance();
+        transactionService = new TransactionService();
+    }
+
+    @Test
+    public void dailyCheckReadsAtMostShardCountDocuments() throws Exception {
+        // Số document đọc khi kiểm tra không tăng theo số giao dịch trong ngày
+        for (int historySize : new int[]{1, 20, 100}) {
+            String userId = seedUser();
+            String[] accounts = seedAccounts(userId);
+            for (int i = 0; i < historySize; i++) {
+                transfer(userId, accounts[0], accounts[1]);
+            }
+
+            QuerySnapshot shards = Tasks.await(transactionService.queryTodayTransferShards(userId),
+                    TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertTrue("history " + historySize + " read " + shards.size() + " documents",
+                    shards.size() <= 4);
+            assertEquals(historySize * AMOUNT, transactionService.sumShards(shards), 0.001);
+        }
+    }
+
+    @Test
+    public void concurrentTransfersAreAllCounted() throws Exception {
+        // Mỗi giao dịch một cặp tài khoản riêng của cùng user: các transaction chỉ ghi chung
+        // vào shard (không đọc), nên không có tranh chấp làm hết lượt retry của Firestore
+        String userId = seedUser();
+        int transfers = 10;
+
+        List<String> transactionIds = new ArrayList<>();
+        List<String[]> accountPairs = new ArrayList<>();
+        for (int i = 0; i < transfers; i++) {
+            transactionIds.add(seedPendingTransaction(userId));
+            accountPairs.add(seedAccounts(userId));
+        }
+        CountDownLatch done = new CountDownLatch(transfers);
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < transfers; i++) {
+            String[] accounts = accountPairs.get(i);
+            transactionService.persistTransaction(transactionIds.get(i), accounts[0], accounts[1], AMOUNT,
+                    "transfer", "internal", "Test", "test", null, (success, message) -> {
+                        if (!success) {
+                            synchronized (failures) {
+                                failures.add(message);
+                            }
+                        }
+                        done.countDown();
+                    });
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        QuerySnapshot shards = Tasks.await(transactionService.queryTodayTransferShards(userId),
+                TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(transfers * AMOUNT, transactionService.sumShards(shards), 0.001);
+    }
+
+    private void transfer(String userId, String fromAccount, String toAccount) throws Exception {
+        String transactionId = seedPendingTransaction(userId);
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] result = new boolean[1];
+        String[] error = new String[1];
+        transactionService.persistTransaction(transactionId, fromAccount, toAccount, AMOUNT,
+                "transfer", "internal", "Test", "test", null, (success, message) -> {
+                    result[0] = success;
+                    error[0] = message;
+                    done.countDown();
+                });
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(error[0], result[0]);
+    }
+
+    private String seedUser() {
+        return "test_" + UUID.randomUUID();
+    }
+
+    /**
+     * @return số tài khoản [nguồn, đích]
+     */
+    private String[] seedAccounts(String userId) throws Exception {
+        String suffix = String.valueOf(Math.abs(UUID.randomUUID().getMostSignificantBits()) % 1_000_000_000L);
+        String[] numbers = {"91" + suffix, "92" + suffix};
+        WriteBatch batch = db.batch();
+        for (String number : numbers) {
+            Map<String, Object> account = new HashMap<>();
+            account.put("accountNumber", number);
+            account.put("userId", userId);
+            account.put("balance", 1_000_000_000d);
+            account.put("accountType", "checking");
+            batch.set(db.collection("accounts").document(), account);
+        }
+        Tasks.await(batch.commit(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return numbers;
+    }
+
+    private String seedPendingTransaction(String userId) throws Exception {
+        Map<String, Object> transaction = new HashMap<>();
+        transaction.put("userId", userId);
+        transaction.put("status", "pending");
+        transaction.put("fee", 0d);
+        String transactionId = db.collection("transactions").document().getId();
+        Tasks.await(db.collection("transactions").document(transactionId).set(transaction),
+                TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return transactionId;
+    }
+
+    private static boolean emulatorReachable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(EMULATOR_HOST, FIRESTORE_PORT), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
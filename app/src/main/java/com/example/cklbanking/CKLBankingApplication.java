@@ -5,6 +5,8 @@ import android.util.Log;
 
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.MemoryCacheSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
 import com.google.firebase.functions.FirebaseFunctions;
 
 /**
@@ -15,9 +17,27 @@ public class CKLBankingApplication extends Application {
     
     private static final String TAG = "CKLBankingApp";
     
-    // Set to true để sử dụng Firebase Emulator
-    // Set to false để sử dụng production Firebase
-    private static final boolean USE_EMULATOR = true;
+    /**
+     * Cấu hình Firestore cache
+     * - EMULATOR: kết nối emulator, cache chỉ trong bộ nhớ (dữ liệu emulator hay bị reset)
+     * - PRODUCTION_ONLINE: production Firebase, cache trên đĩa nhưng luôn đọc từ server trước
+     * - OFFLINE_FIRST: production Firebase, cache trên đĩa, màn hình chủ yếu đọc hiển thị
+     *   dữ liệu cache ngay rồi mới làm mới từ server (xem FirestoreCacheReader)
+     */
+    public enum CacheProfile {
+        EMULATOR,
+        PRODUCTION_ONLINE,
+        OFFLINE_FIRST
+    }
+
+    // Đổi profile tại đây
+    private static final CacheProfile CACHE_PROFILE = CacheProfile.EMULATOR;
+
+    // Dung lượng tối đa của cache trên đĩa (PRODUCTION_ONLINE / OFFLINE_FIRST)
+    private static final long PERSISTENT_CACHE_SIZE_BYTES = 100L * 1024 * 1024; // 100 MB
+
+    // true khi dùng Firebase Emulator
+    private static final boolean USE_EMULATOR = CACHE_PROFILE == CacheProfile.EMULATOR;
     
     // Emulator host
     // - Android Emulator: 10.0.2.2 (localhost của máy host)
@@ -44,19 +64,22 @@ public class CKLBankingApplication extends Application {
         configureFunctions();
     }
     
+    public static CacheProfile getCacheProfile() {
+        return CACHE_PROFILE;
+    }
+
+    /**
+     * true nếu các màn hình chủ yếu đọc nên hiển thị dữ liệu cache trước khi query server
+     */
+    public static boolean isCacheFirstEnabled() {
+        return CACHE_PROFILE == CacheProfile.OFFLINE_FIRST;
+    }
+    
     private void configureFirestore() {
         FirebaseFirestore db = FirebaseFirestore.getInstance();
+        db.setFirestoreSettings(buildFirestoreSettings(EMULATOR_HOST));
         
         if (USE_EMULATOR) {
-            // Cấu hình để sử dụng Firestore Emulator
-            FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
-                    .setHost(EMULATOR_HOST + ":" + FIRESTORE_PORT)
-                    .setSslEnabled(false)
-                    .setPersistenceEnabled(false) // Tắt persistence khi dùng emulator
-                    .build();
-            
-            db.setFirestoreSettings(settings);
-            
             Log.d(TAG, "===========================================");
             Log.d(TAG, "🔥 Firebase Emulator Mode ENABLED");
             Log.d(TAG, "Firestore: " + EMULATOR_HOST + ":" + FIRESTORE_PORT);
@@ -64,9 +87,25 @@ public class CKLBankingApplication extends Application {
             Log.d(TAG, "===========================================");
         } else {
             // Sử dụng production Firebase (default)
-            Log.d(TAG, "🔥 Using Production Firebase");
+            Log.d(TAG, "🔥 Using Production Firebase, cache profile " + CACHE_PROFILE
+                    + ", disk cache " + (PERSISTENT_CACHE_SIZE_BYTES / (1024 * 1024)) + " MB");
         }
     }
+
+    private static FirebaseFirestoreSettings buildFirestoreSettings(String emulatorHost) {
+        FirebaseFirestoreSettings.Builder builder = new FirebaseFirestoreSettings.Builder();
+        if (USE_EMULATOR) {
+            // Cấu hình để sử dụng Firestore Emulator, không lưu cache trên đĩa
+            builder.setHost(emulatorHost + ":" + FIRESTORE_PORT)
+                    .setSslEnabled(false)
+                    .setLocalCacheSettings(MemoryCacheSettings.newBuilder().build());
+        } else {
+            builder.setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                    .setSizeBytes(PERSISTENT_CACHE_SIZE_BYTES)
+                    .build());
+        }
+        return builder.build();
+    }
     
     private void configureFunctions() {
         if (USE_EMULATOR) {
@@ -89,13 +128,7 @@ public class CKLBankingApplication extends Application {
     public static void setEmulatorHost(String host) {
         if (USE_EMULATOR) {
             FirebaseFirestore db = FirebaseFirestore.getInstance();
-            FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
-                    .setHost(host + ":" + FIRESTORE_PORT)
-                    .setSslEnabled(false)
-                    .setPersistenceEnabled(false)
-                    .build();
-            
-            db.setFirestoreSettings(settings);
+            db.setFirestoreSettings(buildFirestoreSettings(host));
             
             Log.d(TAG, "Emulator host changed to: " + host);
         }
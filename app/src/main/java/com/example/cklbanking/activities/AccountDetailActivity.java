@@ -22,9 +22,9 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -143,7 +143,7 @@ public class AccountDetailActivity extends AppCompatActivity {
 
     private void setupRecyclerView() {
         transactions = new ArrayList<>();
-        adapter = new TransactionAdapter(this, transactions);
+        adapter = new TransactionAdapter(this, transactions, accountId);
         transactionRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         transactionRecyclerView.setAdapter(adapter);
     }
@@ -311,20 +311,19 @@ public class AccountDetailActivity extends AppCompatActivity {
     private void loadTransactions() {
         if (accountId == null) return;
 
-        // Sử dụng TransactionRepository - query theo fromAccountId
-        transactionRepository.getTransactionsByAccount(accountId)
-                .limit(10)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
+        // Sử dụng TransactionRepository - cả giao dịch gửi đi và nhận về
+        transactionRepository.getAllTransactionsForAccount(accountId, 10)
+                .loadNextPage()
+                .addOnSuccessListener(documents -> {
                     transactions.clear();
                     
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
+                    for (DocumentSnapshot document : documents) {
                         Transaction transaction = document.toObject(Transaction.class);
                         transaction.setTransactionId(document.getId());
                         transactions.add(transaction);
                     }
                     
-                    adapter.notifyDataSetChanged();
+                    adapter.updateTransactions(transactions);
                 })
                 .addOnFailureListener(e -> {
                     Toast.makeText(this, "Lỗi tải giao dịch: " + e.getMessage(), 
@@ -26,15 +26,15 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.cklbanking.R;
 import com.example.cklbanking.adapters.BranchAdapter;
 import com.example.cklbanking.models.Branch;
+import com.example.cklbanking.repositories.BranchCatalog;
 import com.example.cklbanking.repositories.BranchRepository;
+import com.example.cklbanking.services.RoutingService;
 import com.example.cklbanking.utils.AnimationHelper;
 import com.example.cklbanking.utils.BranchDistanceHelper;
+import com.example.cklbanking.utils.BranchSpatialIndex;
+import com.example.cklbanking.utils.LocationUpdateController;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationResult;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.chip.Chip;
@@ -43,13 +43,19 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class BranchLocatorActivity extends AppCompatActivity {
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
+    // Chỉ tính lại danh sách khi thứ tự STABLE_NEAREST_COUNT chi nhánh gần nhất có thể đổi;
+    // chặn trên để lọc theo bán kính và khoảng cách hiển thị không cũ quá lâu
+    private static final int STABLE_NEAREST_COUNT = 5;
+    private static final double MAX_STABLE_RADIUS_METERS = 500;
     private MaterialToolbar toolbar;
     private WebView mapWebView;
     private FloatingActionButton fabMyLocation;
@@ -59,15 +65,18 @@ public class BranchLocatorActivity extends AppCompatActivity {
     private RecyclerView branchesRecyclerView;
     
     private FusedLocationProviderClient fusedLocationClient;
-    private LocationRequest locationRequest;
-    private LocationCallback locationCallback;
+    private LocationUpdateController locationController;
     private Location currentLocation;
     private List<Branch> branches;
+    private BranchSpatialIndex branchIndex; // Dựng lại mỗi khi danh sách branches thay đổi
+    private java.util.Set<String> favoriteBranchIds; // null = chưa tải xong
     private List<Branch> filteredBranches; // Filtered and sorted branches
     private Branch nearestBranch;
     private BranchRepository branchRepository;
+    private RoutingService routingService;
     private BranchAdapter branchAdapter;
     private boolean mapReady = false;
+    private String lastMarkerPayload; // Danh sách marker đã đẩy sang map gần nhất
     
     // Filter UI components
     private ChipGroup chipGroupDistance, chipGroupType;
@@ -90,6 +99,7 @@ public class BranchLocatorActivity extends AppCompatActivity {
 
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         branchRepository = new BranchRepository();
+        routingService = RoutingService.getInstance(this);
         branches = new ArrayList<>();
         
         // Get user ID for favorite branches
@@ -99,7 +109,7 @@ public class BranchLocatorActivity extends AppCompatActivity {
         initViews();
         setupRecyclerView();
         setupWebView();
-        loadBranchesFromFirestore();
+        loadBranches();
         checkLocationPermission();
     }
 
@@ -205,13 +215,19 @@ public class BranchLocatorActivity extends AppCompatActivity {
             return;
         }
         
-        // Start with all branches
-        filteredBranches = new ArrayList<>(branches);
-        
-        // Filter by distance
-        if (currentLocation != null && maxDistanceMeters < Double.MAX_VALUE) {
-            filteredBranches = BranchDistanceHelper.filterByDistance(
-                filteredBranches, currentLocation, maxDistanceMeters);
+        // Filter by distance + sort: một truy vấn trên index, khoảng cách mỗi branch tính một lần
+        if (currentLocation != null) {
+            if (branchIndex == null) {
+                branchIndex = new BranchSpatialIndex(branches);
+            }
+            double latitude = currentLocation.getLatitude();
+            double longitude = currentLocation.getLongitude();
+            List<BranchSpatialIndex.Neighbor> nearby = maxDistanceMeters < Double.MAX_VALUE
+                ? branchIndex.withinRadius(latitude, longitude, maxDistanceMeters)
+                : branchIndex.sortedByDistance(latitude, longitude);
+            filteredBranches = BranchSpatialIndex.branchesOf(nearby);
+        } else {
+            filteredBranches = new ArrayList<>(branches);
         }
         
         // Filter by type
@@ -219,16 +235,11 @@ public class BranchLocatorActivity extends AppCompatActivity {
             filteredBranches = BranchDistanceHelper.filterByType(filteredBranches, filterType);
         }
         
-        // Filter by open status
+        // Filter by open status (giữ nguyên thứ tự theo khoảng cách)
         if (onlyOpen) {
             filteredBranches = BranchDistanceHelper.filterByOpenStatus(filteredBranches, true);
         }
         
-        // Sort by distance
-        if (currentLocation != null) {
-            BranchDistanceHelper.sortByDistance(filteredBranches, currentLocation);
-        }
-        
         // Update adapter
         branchAdapter.updateBranches(filteredBranches);
         
@@ -241,6 +252,12 @@ public class BranchLocatorActivity extends AppCompatActivity {
         if (currentLocation != null && !filteredBranches.isEmpty()) {
             findNearestBranch();
         }
+        
+        // Kết quả vừa tính còn đúng tới khi người dùng đi quá bán kính này
+        if (locationController != null && currentLocation != null) {
+            double radius = BranchDistanceHelper.stableRadiusMeters(filteredBranches, currentLocation, STABLE_NEAREST_COUNT);
+            locationController.setStableRegion(currentLocation, Math.min(radius, MAX_STABLE_RADIUS_METERS));
+        }
     }
 
     private void setupWebView() {
@@ -300,6 +317,7 @@ public class BranchLocatorActivity extends AppCompatActivity {
         public void onMapReady() {
             runOnUiThread(() -> {
                 mapReady = true;
+                lastMarkerPayload = null; // Trang map mới chưa có marker nào
                 if (branches != null && !branches.isEmpty()) {
                     addBranchMarkers();
                 }
@@ -328,47 +346,52 @@ public class BranchLocatorActivity extends AppCompatActivity {
         branchesRecyclerView.setAdapter(branchAdapter);
     }
 
-    private void loadBranchesFromFirestore() {
-        branchRepository.getAllBranches()
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    branches.clear();
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Branch branch = document.toObject(Branch.class);
-                        branch.setBranchId(document.getId());
-                        branches.add(branch);
-                    }
-                    
-                    if (branches.isEmpty()) {
-                        initializeSampleBranches();
-                    }
-                    
-                    // Load favorite status for all branches
-                    loadFavoriteStatus();
-                    
-                    // Apply filters and sort
-                    applyFilters();
-                    branchAdapter.setUserLocation(currentLocation);
-                    
-                    if (mapReady) {
-                        addBranchMarkers();
-                    }
-                    
-                    if (currentLocation != null) {
-                        findNearestBranch();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Lỗi tải danh sách chi nhánh: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
+    private void loadBranches() {
+        // Yêu thích tải song song với danh sách chi nhánh
+        loadFavoriteStatus();
+        
+        // Danh mục lưu trên máy - hiển thị ngay, rồi chỉ tải các chi nhánh thay đổi (delta)
+        BranchCatalog.getInstance(this).load(new BranchCatalog.CatalogListener() {
+            @Override
+            public void onBranchesLoaded(List<Branch> loaded, boolean fromLocal) {
+                if (isFinishing()) return;
+                branches.clear();
+                branches.addAll(loaded);
+                
+                if (branches.isEmpty()) {
                     initializeSampleBranches();
-                    loadFavoriteStatus();
-                    applyFilters();
-                    if (mapReady) {
-                        addBranchMarkers();
-                    }
-                });
+                }
+                branchIndex = new BranchSpatialIndex(branches);
+                applyFavoriteStatus();
+                
+                // Apply filters and sort
+                applyFilters();
+                branchAdapter.setUserLocation(currentLocation);
+                
+                if (mapReady) {
+                    addBranchMarkers();
+                }
+                
+                if (currentLocation != null) {
+                    findNearestBranch();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (isFinishing()) return;
+                Toast.makeText(BranchLocatorActivity.this, "Lỗi tải danh sách chi nhánh: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
+                branches.clear();
+                initializeSampleBranches();
+                branchIndex = new BranchSpatialIndex(branches);
+                applyFavoriteStatus();
+                applyFilters();
+                if (mapReady) {
+                    addBranchMarkers();
+                }
+            }
+        });
     }
 
     private void initializeSampleBranches() {
@@ -427,45 +450,53 @@ public class BranchLocatorActivity extends AppCompatActivity {
     }
     
     /**
-     * Load favorite status for all branches
+     * Load favorite branch IDs (không cần đợi danh sách chi nhánh)
      */
     private void loadFavoriteStatus() {
-        if (userId == null || branches == null || branches.isEmpty()) {
+        if (userId == null) {
             return;
         }
         
-        com.google.firebase.firestore.FirebaseFirestore db = com.google.firebase.firestore.FirebaseFirestore.getInstance();
-        db.collection("favorite_branches")
-                .whereEqualTo("userId", userId)
+        branchRepository.getFavoriteBranches(userId)
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
-                    java.util.Set<String> favoriteBranchIds = new java.util.HashSet<>();
+                    java.util.Set<String> ids = new java.util.HashSet<>();
                     for (com.google.firebase.firestore.QueryDocumentSnapshot document : queryDocumentSnapshots) {
                         String branchId = document.getString("branchId");
                         if (branchId != null) {
-                            favoriteBranchIds.add(branchId);
+                            ids.add(branchId);
                         }
                     }
+                    favoriteBranchIds = ids;
+                    applyFavoriteStatus();
                     
-                    // Update favorite status for all branches
-                    for (Branch branch : branches) {
-                        branch.setFavorite(favoriteBranchIds.contains(branch.getBranchId()));
-                    }
-                    
-                    // Notify adapter
+                    // Branch objects were updated in place, so the differ can't see the
+                    // change - rebind the visible rows instead
                     if (branchAdapter != null) {
-                        branchAdapter.notifyDataSetChanged();
+                        branchAdapter.notifyItemRangeChanged(0, branchAdapter.getItemCount());
                     }
                 })
                 .addOnFailureListener(e -> {
                     android.util.Log.e("BranchLocator", "Error loading favorite status", e);
                 });
     }
+    
+    /**
+     * Update favorite status for all branches (khi có cả danh sách lẫn yêu thích)
+     */
+    private void applyFavoriteStatus() {
+        if (favoriteBranchIds == null) {
+            return;
+        }
+        for (Branch branch : branches) {
+            branch.setFavorite(favoriteBranchIds.contains(branch.getBranchId()));
+        }
+    }
 
     private void showBranchOnMap(Branch branch) {
         if (!mapReady) return;
         
-        String js = String.format("window.moveToLocation(%f, %f, 15);", 
+        String js = String.format(Locale.US, "window.moveToLocation(%f, %f, 15);", 
             branch.getLatitude(), branch.getLongitude());
         mapWebView.evaluateJavascript(js, null);
         
@@ -521,169 +552,120 @@ public class BranchLocatorActivity extends AppCompatActivity {
         // Nếu đang chạy trên emulator, set location mặc định là TP.HCM, Việt Nam
         if (isEmulator()) {
             android.util.Log.d("BranchLocator", "Running on emulator, using default location: TP.HCM, Vietnam");
-            Location emulatorLocation = new Location("emulator");
-            emulatorLocation.setLatitude(10.8231);  // TP.HCM
-            emulatorLocation.setLongitude(106.6297);
-            emulatorLocation.setAccuracy(50.0f);
-            emulatorLocation.setTime(System.currentTimeMillis());
-            
-            currentLocation = emulatorLocation;
-            
-            if (mapReady) {
-                addUserMarker();
-                centerMapOnUserLocation();
-            }
-            findNearestBranch();
-            if (branchAdapter != null) {
-                branchAdapter.setUserLocation(emulatorLocation);
-                applyFilters();
-            }
+            onLocationUpdate(createDefaultLocation(), true);
             
             // Vẫn thử lấy location thật nếu có (cho trường hợp dùng Extended Controls)
             // Nhưng không block nếu không có
         }
         
-        // Tạo LocationRequest để lấy vị trí real-time từ GPS
-        if (locationRequest == null) {
-            locationRequest = LocationRequest.create();
-            locationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-            locationRequest.setInterval(10000); // Update mỗi 10 giây
-            locationRequest.setFastestInterval(5000); // Tối thiểu 5 giây
+        // Vị trí cuối cùng ngay, rồi HIGH_ACCURACY tới fix đầu tiên, sau đó BALANCED + ngưỡng di chuyển
+        if (locationController == null) {
+            locationController = new LocationUpdateController(fusedLocationClient, this::onLocationUpdate);
         }
+        locationController.start();
+    }
+
+    /**
+     * @param significant false = chưa ra khỏi vùng mà k chi nhánh gần nhất giữ nguyên thứ tự,
+     *                    chỉ cập nhật chấm vị trí và khoảng cách tới chi nhánh gần nhất
+     */
+    private void onLocationUpdate(Location location, boolean significant) {
+        // Kiểm tra xem location có hợp lệ không (không phải emulator default)
+        // Emulator thường trả về 37.4219983, -122.084 (Mountain View, CA)
+        if (location.getLatitude() == 37.4219983 && location.getLongitude() == -122.084) {
+            if (currentLocation != null) {
+                return; // Giữ location hiện tại nếu đã có
+            }
+            android.util.Log.d("BranchLocator", "Detected emulator default location, using TP.HCM instead");
+            location = createDefaultLocation();
+            significant = true;
+        }
+        currentLocation = location;
         
-        // Tạo LocationCallback
-        if (locationCallback == null) {
-            locationCallback = new LocationCallback() {
-                @Override
-                public void onLocationResult(LocationResult locationResult) {
-                    if (locationResult != null && locationResult.getLastLocation() != null) {
-                        Location location = locationResult.getLastLocation();
-                        
-                        // Kiểm tra xem location có hợp lệ không (không phải emulator default)
-                        // Emulator thường trả về 37.4219983, -122.084 (Mountain View, CA)
-                        if (location.getLatitude() == 37.4219983 && location.getLongitude() == -122.084) {
-                            android.util.Log.d("BranchLocator", "Detected emulator default location, using TP.HCM instead");
-                            // Nếu là emulator default location, dùng location Việt Nam
-                            if (currentLocation == null || isEmulator()) {
-                                Location vietnamLocation = new Location("emulator");
-                                vietnamLocation.setLatitude(10.8231);
-                                vietnamLocation.setLongitude(106.6297);
-                                vietnamLocation.setAccuracy(50.0f);
-                                vietnamLocation.setTime(System.currentTimeMillis());
-                                currentLocation = vietnamLocation;
-                                location = vietnamLocation;
-                            } else {
-                                // Giữ location hiện tại nếu đã có
-                                return;
-                            }
-                        } else {
-                            currentLocation = location;
-                        }
-                        
-                        android.util.Log.d("BranchLocator", "Location updated: " + 
-                            location.getLatitude() + ", " + location.getLongitude());
-                        
-                        if (mapReady) {
-                            addUserMarker();
-                            // Center map vào vị trí user
-                            centerMapOnUserLocation();
-                        }
-                        findNearestBranch();
-                        if (branchAdapter != null) {
-                            branchAdapter.setUserLocation(location);
-                            // Re-apply filters when location updates
-                            applyFilters();
-                        }
-                    }
-                }
-            };
-        }
-        
-        // Thử lấy vị trí cuối cùng trước (nhanh hơn)
-        fusedLocationClient.getLastLocation()
-                .addOnSuccessListener(this, location -> {
-                    if (location != null) {
-                        // Kiểm tra xem có phải emulator default location không
-                        if (location.getLatitude() == 37.4219983 && location.getLongitude() == -122.084) {
-                            android.util.Log.d("BranchLocator", "Detected emulator default location, using TP.HCM instead");
-                            Location vietnamLocation = new Location("emulator");
-                            vietnamLocation.setLatitude(10.8231);
-                            vietnamLocation.setLongitude(106.6297);
-                            vietnamLocation.setAccuracy(50.0f);
-                            vietnamLocation.setTime(System.currentTimeMillis());
-                            currentLocation = vietnamLocation;
-                            location = vietnamLocation;
-                        } else {
-                            currentLocation = location;
-                        }
-                        
-                        android.util.Log.d("BranchLocator", "Last location: " + 
-                            location.getLatitude() + ", " + location.getLongitude());
-                        
-                        if (mapReady) {
-                            addUserMarker();
-                            centerMapOnUserLocation();
-                        }
-                        findNearestBranch();
-                        if (branchAdapter != null) {
-                            branchAdapter.setUserLocation(location);
-                            applyFilters();
-                        }
-                    } else if (isEmulator() && currentLocation == null) {
-                        // Nếu không có location và đang chạy emulator, dùng location mặc định
-                        android.util.Log.d("BranchLocator", "No location available on emulator, using default: TP.HCM");
-                        Location vietnamLocation = new Location("emulator");
-                        vietnamLocation.setLatitude(10.8231);
-                        vietnamLocation.setLongitude(106.6297);
-                        vietnamLocation.setAccuracy(50.0f);
-                        vietnamLocation.setTime(System.currentTimeMillis());
-                        currentLocation = vietnamLocation;
-                        
-                        if (mapReady) {
-                            addUserMarker();
-                            centerMapOnUserLocation();
-                        }
-                        findNearestBranch();
-                        if (branchAdapter != null) {
-                            branchAdapter.setUserLocation(vietnamLocation);
-                            applyFilters();
-                        }
-                    }
-                });
+        if (!significant) {
+            if (mapReady) {
+                moveUserMarker();
+            }
+            if (nearestBranch != null) {
+                updateNearestBranchUI(BranchDistanceHelper.calculateDistance(currentLocation, nearestBranch));
+            }
+            return;
+        }
+        
+        android.util.Log.d("BranchLocator", "Location updated: " + 
+            location.getLatitude() + ", " + location.getLongitude());
         
-        // Bắt đầu request location updates để lấy vị trí real-time
-        try {
-            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, null);
-        } catch (SecurityException e) {
-            android.util.Log.e("BranchLocator", "Error requesting location updates", e);
+        if (mapReady) {
+            addUserMarker();
+            // Center map vào vị trí user
+            centerMapOnUserLocation();
+        }
+        if (branchAdapter != null) {
+            branchAdapter.setUserLocation(location);
+            // Re-apply filters when location updates (tìm lại chi nhánh gần nhất)
+            applyFilters();
+        } else {
+            findNearestBranch();
         }
     }
 
+    private Location createDefaultLocation() {
+        Location vietnamLocation = new Location("emulator");
+        vietnamLocation.setLatitude(10.8231);  // TP.HCM
+        vietnamLocation.setLongitude(106.6297);
+        vietnamLocation.setAccuracy(50.0f);
+        vietnamLocation.setTime(System.currentTimeMillis());
+        return vietnamLocation;
+    }
+
     private void addUserMarker() {
         if (currentLocation == null || !mapReady) return;
         
-        String js = String.format("window.addUserMarker(%f, %f);", 
+        String js = String.format(Locale.US, "window.addUserMarker(%f, %f);", 
             currentLocation.getLatitude(), currentLocation.getLongitude());
         mapWebView.evaluateJavascript(js, null);
     }
 
+    /**
+     * Chỉ dời chấm vị trí, không center lại map
+     */
+    private void moveUserMarker() {
+        if (currentLocation == null || !mapReady) return;
+        
+        String js = String.format(Locale.US, "window.addUserMarker(%f, %f, false);", 
+            currentLocation.getLatitude(), currentLocation.getLongitude());
+        mapWebView.evaluateJavascript(js, null);
+    }
+
+    /**
+     * Đẩy toàn bộ marker sang map trong một lần gọi evaluateJavascript.
+     * goong_map.html so khớp theo branchId (chỉ thêm/bỏ marker thay đổi) và gom cụm khi zoom nhỏ.
+     */
     private void addBranchMarkers() {
         if (!mapReady || filteredBranches == null) return;
         
-        // Clear existing markers
-        mapWebView.evaluateJavascript("window.clearMarkers();", null);
-        
-        // Add filtered branch markers
+        // Mỗi branch: [branchId, lat, lng, name, address, type]
+        JSONArray payload = new JSONArray();
         for (Branch branch : filteredBranches) {
-            String js = String.format(
-                "window.addBranchMarker(%f, %f, '%s', '%s', '%s');",
-                branch.getLatitude(), branch.getLongitude(),
-                branch.getName().replace("'", "\\'"),
-                branch.getAddress().replace("'", "\\'"),
-                branch.getType()
-            );
-            mapWebView.evaluateJavascript(js, null);
+            try {
+                JSONArray entry = new JSONArray();
+                entry.put(branch.getBranchId() != null ? branch.getBranchId() : "")
+                    .put(branch.getLatitude())
+                    .put(branch.getLongitude())
+                    .put(branch.getName() != null ? branch.getName() : "")
+                    .put(branch.getAddress() != null ? branch.getAddress() : "")
+                    .put(branch.getType() != null ? branch.getType() : "");
+                payload.put(entry);
+            } catch (JSONException e) {
+                // Tọa độ NaN/Infinity - bỏ qua branch này
+            }
         }
+        String json = payload.toString();
+        if (json.equals(lastMarkerPayload)) {
+            return; // Map đã có đúng danh sách này
+        }
+        lastMarkerPayload = json;
+        mapWebView.evaluateJavascript("window.setBranchMarkers(" + json + ");", null);
     }
 
     private void findNearestBranch() {
@@ -714,7 +696,7 @@ public class BranchLocatorActivity extends AppCompatActivity {
     private void drawRouteToNearestBranch() {
         if (!mapReady || currentLocation == null || nearestBranch == null) return;
         
-        String js = String.format(
+        String js = String.format(Locale.US,
             "window.drawRoute(%f, %f, %f, %f);",
             currentLocation.getLatitude(), currentLocation.getLongitude(),
             nearestBranch.getLatitude(), nearestBranch.getLongitude()
@@ -731,7 +713,7 @@ public class BranchLocatorActivity extends AppCompatActivity {
         if (!mapReady) return;
         
         // Center map vào vị trí user với zoom phù hợp
-        String js = String.format("window.moveToLocation(%f, %f, 15);", 
+        String js = String.format(Locale.US, "window.moveToLocation(%f, %f, 15);", 
             currentLocation.getLatitude(), currentLocation.getLongitude());
         mapWebView.evaluateJavascript(js, null);
         
@@ -743,8 +725,8 @@ public class BranchLocatorActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         // Dừng location updates khi activity pause để tiết kiệm pin
-        if (locationCallback != null && fusedLocationClient != null) {
-            fusedLocationClient.removeLocationUpdates(locationCallback);
+        if (locationController != null) {
+            locationController.stop();
         }
     }
     
@@ -767,8 +749,12 @@ public class BranchLocatorActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         // Dừng location updates khi activity destroy
-        if (locationCallback != null && fusedLocationClient != null) {
-            fusedLocationClient.removeLocationUpdates(locationCallback);
+        if (locationController != null) {
+            locationController.stop();
+        }
+        // Route đang tải không còn nơi hiển thị
+        if (routingService != null) {
+            routingService.cancelPending();
         }
     }
 
@@ -807,167 +793,47 @@ public class BranchLocatorActivity extends AppCompatActivity {
             return;
         }
         
-        // Sử dụng Goong Directions API để lấy route đi bộ
-        String apiKey = getString(R.string.goong_api_key);
-        String url = String.format(
-            "https://rsapi.goong.io/Direction?origin=%f,%f&destination=%f,%f&vehicle=walk&api_key=%s",
-            originLat, originLng, destLat, destLng, apiKey
-        );
-        
-        android.util.Log.d("BranchLocator", "Requesting route from Goong API: " + url.replace(apiKey, "API_KEY"));
-        
-        // Hiển thị loading
-        runOnUiThread(() -> {
-            Toast.makeText(this, "Đang tính toán đường đi...", Toast.LENGTH_SHORT).show();
-        });
-        
-        new Thread(() -> {
-            try {
-                java.net.URL apiUrl = new java.net.URL(url);
-                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) apiUrl.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setConnectTimeout(10000); // 10 seconds
-                conn.setReadTimeout(10000); // 10 seconds
-                
-                int responseCode = conn.getResponseCode();
-                android.util.Log.d("BranchLocator", "Goong API response code: " + responseCode);
-                
-                String responseBody;
-                if (responseCode == 200) {
-                    java.io.BufferedReader in = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        response.append(line);
-                    }
-                    in.close();
-                    responseBody = response.toString();
-                } else {
-                    // Đọc error response
-                    java.io.BufferedReader in = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getErrorStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        response.append(line);
-                    }
-                    in.close();
-                    responseBody = response.toString();
-                    android.util.Log.e("BranchLocator", "Goong API error response: " + responseBody);
-                }
-                
-                if (responseCode == 200) {
-                    // Parse JSON response
-                    JSONObject jsonResponse = new JSONObject(responseBody);
-                    
-                    // Kiểm tra xem có routes không
-                    if (!jsonResponse.has("routes") || jsonResponse.isNull("routes")) {
-                        runOnUiThread(() -> {
-                            Toast.makeText(this, "API không trả về đường đi", Toast.LENGTH_SHORT).show();
-                            drawRouteToNearestBranch();
-                        });
-                        return;
-                    }
-                    
-                    JSONObject routesObj = jsonResponse.getJSONObject("routes");
-                    if (!routesObj.has("features") || routesObj.isNull("features")) {
-                        runOnUiThread(() -> {
-                            Toast.makeText(this, "Không tìm thấy đường đi", Toast.LENGTH_SHORT).show();
-                            drawRouteToNearestBranch();
-                        });
-                        return;
-                    }
+        // Route đi bộ từ RoutingService (cache bộ nhớ/đĩa, hủy request cũ khi bấm lại)
+        routingService.getWalkingRoute(originLat, originLng, destLat, destLng,
+            new RoutingService.RouteCallback() {
+                @Override
+                public void onRoute(RoutingService.Route route, boolean fromCache) {
+                    if (isFinishing() || !mapReady) return;
+                    double distance = route.getDistanceMeters();
+                    double duration = route.getDurationSeconds();
+                    android.util.Log.d("BranchLocator", String.format(
+                        "Route %s: distance=%.2f km, duration=%.0f seconds",
+                        fromCache ? "from cache" : "found", distance / 1000, duration));
                     
-                    JSONArray routes = routesObj.getJSONArray("features");
+                    // Vẽ route trên map (encoded polyline, giải mã trong goong_map.html)
+                    String js = String.format(Locale.US,
+                        "window.drawEncodedRoute(%s, %f, %f);",
+                        JSONObject.quote(route.getEncodedPolyline()), distance, duration
+                    );
+                    mapWebView.evaluateJavascript(js, null);
                     
-                    if (routes.length() > 0) {
-                        JSONObject route = routes.getJSONObject(0);
-                        JSONObject geometry = route.getJSONObject("geometry");
-                        JSONArray coordinates = geometry.getJSONArray("coordinates");
-                        
-                        // Lấy thông tin route
-                        JSONObject properties = route.getJSONObject("properties");
-                        double distance = properties.getDouble("distance"); // meters
-                        double duration = properties.getDouble("duration"); // seconds
-                        
-                        android.util.Log.d("BranchLocator", String.format(
-                            "Route found: distance=%.2f km, duration=%.0f seconds, points=%d",
-                            distance / 1000, duration, coordinates.length()));
-                        
-                        // Chuyển đổi coordinates từ [lng, lat] sang [lat, lng] cho Leaflet
-                        StringBuilder coordsStr = new StringBuilder("[");
-                        for (int i = 0; i < coordinates.length(); i++) {
-                            JSONArray coord = coordinates.getJSONArray(i);
-                            double lng = coord.getDouble(0);
-                            double lat = coord.getDouble(1);
-                            if (i > 0) coordsStr.append(",");
-                            coordsStr.append("[").append(lat).append(",").append(lng).append("]");
-                        }
-                        coordsStr.append("]");
-                        
-                        // Vẽ route trên map
-                        runOnUiThread(() -> {
-                            String js = String.format(
-                                "window.drawWalkingRoute(%s, %f, %f);",
-                                coordsStr.toString(), distance, duration
-                            );
-                            mapWebView.evaluateJavascript(js, null);
-                            
-                            // Hiển thị thông tin route
-                            String distanceText = distance < 1000 ? 
-                                String.format("%.0f m", distance) : 
-                                String.format("%.2f km", distance / 1000);
-                            int minutes = (int) (duration / 60);
-                            String timeText = minutes < 60 ? 
-                                String.format("%d phút", minutes) : 
-                                String.format("%d giờ %d phút", minutes / 60, minutes % 60);
-                            
-                            Toast.makeText(this, 
-                                String.format("Khoảng cách: %s | Thời gian: %s", distanceText, timeText),
-                                Toast.LENGTH_LONG).show();
-                        });
-                    } else {
-                        runOnUiThread(() -> {
-                            Toast.makeText(this, "Không tìm thấy đường đi", Toast.LENGTH_SHORT).show();
-                            drawRouteToNearestBranch();
-                        });
-                    }
-                } else {
-                    // Parse error response nếu có
-                    String errorMsg = "Lỗi khi tính toán đường đi";
-                    try {
-                        JSONObject errorResponse = new JSONObject(responseBody);
-                        if (errorResponse.has("error")) {
-                            errorMsg = errorResponse.getString("error");
-                        } else if (errorResponse.has("message")) {
-                            errorMsg = errorResponse.getString("message");
-                        }
-                    } catch (Exception e) {
-                        // Ignore
-                    }
+                    // Hiển thị thông tin route
+                    String distanceText = distance < 1000 ? 
+                        String.format("%.0f m", distance) : 
+                        String.format("%.2f km", distance / 1000);
+                    int minutes = (int) (duration / 60);
+                    String timeText = minutes < 60 ? 
+                        String.format("%d phút", minutes) : 
+                        String.format("%d giờ %d phút", minutes / 60, minutes % 60);
                     
-                    final String finalErrorMsg = errorMsg;
-                    runOnUiThread(() -> {
-                        android.util.Log.e("BranchLocator", "Goong API error: " + finalErrorMsg);
-                        Toast.makeText(this, finalErrorMsg + ". Hiển thị đường thẳng.", Toast.LENGTH_LONG).show();
-                        drawRouteToNearestBranch();
-                    });
+                    Toast.makeText(BranchLocatorActivity.this, 
+                        String.format("Khoảng cách: %s | Thời gian: %s", distanceText, timeText),
+                        Toast.LENGTH_LONG).show();
                 }
-            } catch (java.net.SocketTimeoutException e) {
-                runOnUiThread(() -> {
-                    android.util.Log.e("BranchLocator", "Timeout getting route", e);
-                    Toast.makeText(this, "Timeout khi tính toán đường đi. Hiển thị đường thẳng.", Toast.LENGTH_LONG).show();
-                    drawRouteToNearestBranch();
-                });
-            } catch (Exception e) {
-                runOnUiThread(() -> {
-                    android.util.Log.e("BranchLocator", "Error getting route", e);
-                    Toast.makeText(this, "Lỗi: " + e.getMessage() + ". Hiển thị đường thẳng.", Toast.LENGTH_LONG).show();
+
+                @Override
+                public void onError(String message) {
+                    if (isFinishing()) return;
+                    Toast.makeText(BranchLocatorActivity.this, message + ". Hiển thị đường thẳng.",
+                        Toast.LENGTH_LONG).show();
                     drawRouteToNearestBranch();
-                });
-            }
-        }).start();
+                }
+            });
     }
 
     private void callBranch() {
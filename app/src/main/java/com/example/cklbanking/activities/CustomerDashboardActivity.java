@@ -18,14 +18,18 @@ import com.example.cklbanking.adapters.TransactionAdapter;
 import com.example.cklbanking.models.Account;
 import com.example.cklbanking.models.Transaction;
 import com.example.cklbanking.models.User;
+import com.example.cklbanking.repositories.AccountStore;
+import com.example.cklbanking.utils.FirestoreCacheReader;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -50,6 +54,7 @@ public class CustomerDashboardActivity extends AppCompatActivity {
     private String userId;
     private User currentUser;
     private List<Account> userAccounts;
+    private AccountStore.Subscription accountsSubscription;
     private List<Transaction> recentTransactions;
     private TransactionAdapter adapter;
 
@@ -198,88 +203,109 @@ public class CustomerDashboardActivity extends AppCompatActivity {
     }
 
     private void loadUserProfile() {
-        db.collection("users")
-                .document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        currentUser = documentSnapshot.toObject(User.class);
-                        if (currentUser != null) {
-                            welcomeName.setText("Xin chào, " + currentUser.getFullName());
+        FirestoreCacheReader.get(db.collection("users").document(userId),
+                new FirestoreCacheReader.Listener<DocumentSnapshot>() {
+                    @Override
+                    public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                        if (documentSnapshot.exists()) {
+                            currentUser = documentSnapshot.toObject(User.class);
+                            if (currentUser != null) {
+                                welcomeName.setText("Xin chào, " + currentUser.getFullName());
+                            }
                         }
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Lỗi tải thông tin: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
+
+                    @Override
+                    public void onError(Exception e) {
+                        Toast.makeText(CustomerDashboardActivity.this, "Lỗi tải thông tin: " + e.getMessage(),
+                            Toast.LENGTH_SHORT).show();
+                    }
                 });
     }
 
     private void loadAccounts() {
+        if (accountsSubscription != null) return;
         showLoading(true);
 
-        db.collection("accounts")
-                .whereEqualTo("userId", userId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    showLoading(false);
-                    userAccounts = new ArrayList<>();
-                    double total = 0;
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Account account = document.toObject(Account.class);
-                        userAccounts.add(account);
-                        
-                        // Update individual account cards
-                        switch (account.getAccountType()) {
-                            case "checking":
-                                checkingAccountBalance.setText(formatCurrency(account.getBalance()));
-                                checkingAccountCard.setVisibility(View.VISIBLE);
-                                total += account.getBalance();
-                                break;
-                            case "saving":
-                                savingAccountBalance.setText(formatCurrency(account.getBalance()));
-                                savingAccountCard.setVisibility(View.VISIBLE);
-                                total += account.getBalance();
-                                break;
-                            case "mortgage":
-                                mortgageAmountDue.setText(formatCurrency(Math.abs(account.getBalance())));
-                                mortgageAccountCard.setVisibility(View.VISIBLE);
-                                // Don't add negative balance to total
-                                break;
-                        }
-                    }
-                    
-                    totalBalance.setText(formatCurrency(total));
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi tải tài khoản: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
+        // Danh sách tài khoản dùng chung (AccountStore): snapshot listener trả dữ liệu cache
+        // ngay, sau đó đẩy số dư mới mỗi khi thay đổi
+        accountsSubscription = AccountStore.getInstance().subscribe(userId, new AccountStore.AccountsObserver() {
+            @Override
+            public void onAccountsChanged(List<Account> accounts) {
+                showLoading(false);
+                showAccounts(accounts);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                showLoading(false);
+                // Listener đã dừng sau lỗi - cho phép subscribe lại ở lần onResume sau
+                if (accountsSubscription != null) {
+                    accountsSubscription.remove();
+                    accountsSubscription = null;
+                }
+                Toast.makeText(CustomerDashboardActivity.this, "Lỗi tải tài khoản: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void showAccounts(List<Account> accounts) {
+        userAccounts = new ArrayList<>(accounts);
+        double total = 0;
+        
+        for (Account account : accounts) {
+            
+            // Update individual account cards
+            switch (account.getAccountType()) {
+                case "checking":
+                    checkingAccountBalance.setText(formatCurrency(account.getBalance()));
+                    checkingAccountCard.setVisibility(View.VISIBLE);
+                    total += account.getBalance();
+                    break;
+                case "saving":
+                    savingAccountBalance.setText(formatCurrency(account.getBalance()));
+                    savingAccountCard.setVisibility(View.VISIBLE);
+                    total += account.getBalance();
+                    break;
+                case "mortgage":
+                    mortgageAmountDue.setText(formatCurrency(Math.abs(account.getBalance())));
+                    mortgageAccountCard.setVisibility(View.VISIBLE);
+                    // Don't add negative balance to total
+                    break;
+            }
+        }
+        
+        totalBalance.setText(formatCurrency(total));
     }
 
     private void loadRecentTransactions() {
         // Get all transactions
-        db.collection("transactions")
+        Query query = db.collection("transactions")
                 .whereEqualTo("userId", userId) // QUAN TRỌNG: Chỉ lấy của user này
                 .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(5)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    recentTransactions.clear();
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Transaction transaction = document.toObject(Transaction.class);
-                        recentTransactions.add(transaction);
-                    }
-                    
-                    adapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Lỗi tải giao dịch: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
+                .limit(5);
+
+        FirestoreCacheReader.get(query, new FirestoreCacheReader.Listener<QuerySnapshot>() {
+            @Override
+            public void onResult(QuerySnapshot queryDocumentSnapshots, boolean fromCache) {
+                recentTransactions.clear();
+                
+                for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
+                    Transaction transaction = document.toObject(Transaction.class);
+                    transaction.setTransactionId(document.getId());
+                    recentTransactions.add(transaction);
+                }
+                
+                adapter.updateTransactions(recentTransactions);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Toast.makeText(CustomerDashboardActivity.this, "Lỗi tải giao dịch: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void openAccountDetail(String accountType) {
@@ -330,7 +356,16 @@ public class CustomerDashboardActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         // Reload data when returning to dashboard
+        // (số dư tài khoản được AccountStore đẩy về, không cần query lại)
         loadAccounts();
         loadRecentTransactions();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (accountsSubscription != null) {
+            accountsSubscription.remove();
+        }
+    }
 }
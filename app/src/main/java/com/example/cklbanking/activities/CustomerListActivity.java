@@ -147,7 +147,7 @@ public class CustomerListActivity extends AppCompatActivity {
                         hasMoreData = false;
                     }
                     
-                    adapter.notifyDataSetChanged();
+                    adapter.updateCustomers(customers);
                     textEmpty.setVisibility(customers.isEmpty() ? View.VISIBLE : View.GONE);
                 })
                 .addOnFailureListener(e -> {
@@ -187,7 +187,7 @@ public class CustomerListActivity extends AppCompatActivity {
                         hasMoreData = false;
                     }
                     
-                    adapter.notifyDataSetChanged();
+                    adapter.updateCustomers(customers);
                     textEmpty.setVisibility(customers.isEmpty() ? View.VISIBLE : View.GONE);
                 })
                 .addOnFailureListener(e -> {
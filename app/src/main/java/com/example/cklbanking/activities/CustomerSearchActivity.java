@@ -14,18 +14,25 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.cklbanking.R;
 import com.example.cklbanking.adapters.CustomerAdapter;
 import com.example.cklbanking.models.User;
+import com.example.cklbanking.repositories.UserRepository;
+import com.example.cklbanking.utils.CustomerSearchIndex;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.android.material.textfield.TextInputEditText;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class CustomerSearchActivity extends AppCompatActivity {
 
+    private static final int NAME_SEARCH_MAX_RESULTS = 20;
+
     // UI Components
     private MaterialToolbar toolbar;
     private TextInputEditText editSearch;
@@ -36,6 +43,7 @@ public class CustomerSearchActivity extends AppCompatActivity {
 
     // Firebase
     private FirebaseFirestore db;
+    private UserRepository userRepository;
 
     // Data
     private List<User> customers;
@@ -48,6 +56,7 @@ public class CustomerSearchActivity extends AppCompatActivity {
 
         // Initialize Firebase
         db = FirebaseFirestore.getInstance();
+        userRepository = new UserRepository();
 
         // Initialize Views
         initViews();
@@ -118,79 +127,50 @@ public class CustomerSearchActivity extends AppCompatActivity {
         textEmpty.setVisibility(View.GONE);
         textResultsTitle.setVisibility(View.GONE);
         customers.clear();
-        adapter.notifyDataSetChanged();
-
-        // Try to search by email first
-        db.collection("users")
-                .whereEqualTo("role", "customer")
-                .whereEqualTo("email", searchQuery)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        processSearchResults(queryDocumentSnapshots);
-                        return;
-                    }
-
-                    // If not found by email, try phone
-                    db.collection("users")
-                            .whereEqualTo("role", "customer")
-                            .whereEqualTo("phone", searchQuery)
-                            .get()
-                            .addOnSuccessListener(phoneSnapshots -> {
-                                if (!phoneSnapshots.isEmpty()) {
-                                    processSearchResults(phoneSnapshots);
-                                    return;
-                                }
-
-                                // If not found by phone, try name (partial match)
-                                db.collection("users")
-                                        .whereEqualTo("role", "customer")
-                                        .get()
-                                        .addOnSuccessListener(allSnapshots -> {
-                                            List<User> filtered = new ArrayList<>();
-                                            String queryLower = searchQuery.toLowerCase();
-                                            for (QueryDocumentSnapshot doc : allSnapshots) {
-                                                User user = doc.toObject(User.class);
-                                                if (user.getFullName() != null && 
-                                                    user.getFullName().toLowerCase().contains(queryLower)) {
-                                                    filtered.add(user);
-                                                }
-                                            }
-                                            if (!filtered.isEmpty()) {
-                                                customers.addAll(filtered);
-                                                adapter.notifyDataSetChanged();
-                                                textResultsTitle.setVisibility(View.VISIBLE);
-                                                textEmpty.setVisibility(View.GONE);
-                                            } else {
-                                                textEmpty.setText("Không tìm thấy khách hàng nào");
-                                                textEmpty.setVisibility(View.VISIBLE);
-                                            }
-                                            showLoading(false);
-                                        })
-                                        .addOnFailureListener(e -> {
-                                            showLoading(false);
-                                            Toast.makeText(this, "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                                        });
-                            })
-                            .addOnFailureListener(e -> {
-                                showLoading(false);
-                                Toast.makeText(this, "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
+        adapter.updateCustomers(customers);
+
+        // Email, phone and name lookups run concurrently; results keep the old
+        // priority (email match, then phone match, then name match).
+        // Email / phone number input never matches a name, so the name lookup is skipped
+        Task<QuerySnapshot> emailTask = userRepository.searchCustomerByEmail(searchQuery).get();
+        Task<QuerySnapshot> phoneTask = userRepository.searchCustomerByPhone(searchQuery).get();
+        Task<List<DocumentSnapshot>> nameTask = CustomerSearchIndex.isNameQuery(searchQuery)
+                ? userRepository.searchCustomersByName(searchQuery, NAME_SEARCH_MAX_RESULTS)
+                : Tasks.forResult(new ArrayList<>());
+
+        Tasks.whenAllComplete(emailTask, phoneTask, nameTask).addOnCompleteListener(done -> {
+            if (!emailTask.isSuccessful() && !phoneTask.isSuccessful() && !nameTask.isSuccessful()) {
+                showLoading(false);
+                Exception e = emailTask.getException();
+                Toast.makeText(this, "Lỗi: " + (e != null ? e.getMessage() : ""), Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            if (emailTask.isSuccessful() && !emailTask.getResult().isEmpty()) {
+                processSearchResults(emailTask.getResult().getDocuments());
+            } else if (phoneTask.isSuccessful() && !phoneTask.getResult().isEmpty()) {
+                processSearchResults(phoneTask.getResult().getDocuments());
+            } else if (nameTask.isSuccessful()) {
+                processSearchResults(nameTask.getResult());
+            } else {
+                processSearchResults(null);
+            }
+        });
     }
 
-    private void processSearchResults(com.google.firebase.firestore.QuerySnapshot queryDocumentSnapshots) {
+    private void processSearchResults(List<DocumentSnapshot> documents) {
         customers.clear();
-        for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-            User user = doc.toObject(User.class);
-            user.setUserId(doc.getId());
-            customers.add(user);
+        if (documents != null) {
+            for (DocumentSnapshot doc : documents) {
+                User user = doc.toObject(User.class);
+                if (user == null) {
+                    continue;
+                }
+                user.setUserId(doc.getId());
+                customers.add(user);
+            }
         }
-        adapter.notifyDataSetChanged();
+        adapter.updateCustomers(customers);
         textResultsTitle.setVisibility(View.VISIBLE);
         textEmpty.setVisibility(customers.isEmpty() ? View.VISIBLE : View.GONE);
         if (customers.isEmpty()) {
@@ -16,6 +16,7 @@ import com.example.cklbanking.R;
 import com.example.cklbanking.models.Account;
 import com.example.cklbanking.models.Transaction;
 import com.example.cklbanking.repositories.AccountRepository;
+import com.example.cklbanking.repositories.AccountStore;
 import com.example.cklbanking.repositories.TransactionRepository;
 import com.example.cklbanking.services.TransactionService;
 import com.example.cklbanking.utils.ErrorHandler;
@@ -24,7 +25,6 @@ import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
@@ -43,6 +43,7 @@ public class DepositActivity extends AppCompatActivity {
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private AccountRepository accountRepository;
+    private AccountStore.Subscription accountsSubscription;
     private TransactionRepository transactionRepository;
     private TransactionService transactionService;
     private List<Account> accounts;
@@ -138,27 +139,44 @@ public class DepositActivity extends AppCompatActivity {
     private void loadAccounts() {
         String userId = mAuth.getCurrentUser().getUid();
         
-        accountRepository.getAccountsForUser(userId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    accounts = new ArrayList<>();
-                    List<String> accountNames = new ArrayList<>();
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Account account = document.toObject(Account.class);
-                        account.setAccountId(document.getId());
-                        accounts.add(account);
-                        accountNames.add(account.getAccountNumber() + " - " + account.getAccountType());
-                    }
-                    
-                    ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                            android.R.layout.simple_spinner_item, accountNames);
-                    adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                    spinnerAccount.setAdapter(adapter);
-                })
-                .addOnFailureListener(e -> {
-                    ErrorHandler.handleError(this, e, "Lỗi tải danh sách tài khoản");
-                });
+        // Danh sách tài khoản dùng chung (AccountStore) - số dư cập nhật realtime
+        accountsSubscription = AccountStore.getInstance().subscribe(userId, new AccountStore.AccountsObserver() {
+            @Override
+            public void onAccountsChanged(List<Account> loadedAccounts) {
+                showAccounts(loadedAccounts);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                ErrorHandler.handleError(DepositActivity.this, e, "Lỗi tải danh sách tài khoản");
+            }
+        });
+    }
+
+    private void showAccounts(List<Account> loadedAccounts) {
+        // Giữ tài khoản đang chọn khi danh sách được cập nhật
+        int previousPosition = spinnerAccount.getSelectedItemPosition();
+        String previousAccountId = accounts != null && previousPosition >= 0 && previousPosition < accounts.size()
+                ? accounts.get(previousPosition).getAccountId() : null;
+        accounts = new ArrayList<>(loadedAccounts);
+        List<String> accountNames = new ArrayList<>();
+        int selectedPosition = 0;
+        
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            accountNames.add(account.getAccountNumber() + " - " + account.getAccountType());
+            if (account.getAccountId().equals(previousAccountId)) {
+                selectedPosition = i;
+            }
+        }
+        
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, accountNames);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerAccount.setAdapter(adapter);
+        if (!accounts.isEmpty()) {
+            spinnerAccount.setSelection(selectedPosition);
+        }
     }
 
     private void processDeposit() {
@@ -305,4 +323,12 @@ public class DepositActivity extends AppCompatActivity {
             return "branch";
         }
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (accountsSubscription != null) {
+            accountsSubscription.remove();
+        }
+    }
 }
@@ -3,11 +3,10 @@ package com.example.cklbanking.activities;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.Size;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -18,8 +17,9 @@ import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
-import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
@@ -34,18 +34,15 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.example.cklbanking.services.FaceVerificationService;
+import com.example.cklbanking.utils.EkycImagePipeline;
+import com.example.cklbanking.utils.FacePresenceAnalyzer;
+import com.example.cklbanking.utils.FaceTemplate;
+import com.google.android.gms.tasks.Task;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -55,6 +52,11 @@ public class EKYCActivity extends AppCompatActivity {
 
     private static final String TAG = "EKYCActivity";
     private static final int CAMERA_PERMISSION_REQUEST = 1001;
+    // Phát hiện khuôn mặt: ảnh phân tích nhỏ, tối đa ~8 frame/giây
+    private static final Size ANALYSIS_TARGET_SIZE = new Size(640, 480);
+    private static final long ANALYSIS_MIN_FRAME_INTERVAL_MILLIS = 125;
+    // Ảnh chụp: đủ cho eKYC, không cần full sensor (xem EkycImagePipeline.MAX_IMAGE_DIMENSION)
+    private static final Size CAPTURE_TARGET_SIZE = new Size(1280, 960);
 
     // UI Components
     private MaterialToolbar toolbar;
@@ -72,18 +74,20 @@ public class EKYCActivity extends AppCompatActivity {
     private ProcessCameraProvider cameraProvider;
     private ImageCapture imageCapture;
     private ExecutorService cameraExecutor;
-    private ExecutorService executorService;
 
-    // ML Kit
-    private FaceDetector faceDetector;
+    // ML Kit (FAST, chỉ để biết có khuôn mặt trong khung hình)
+    private FacePresenceAnalyzer facePresenceAnalyzer;
     
     // Face Verification Service
     private FaceVerificationService faceVerificationService;
+    private EkycImagePipeline imagePipeline;
 
     // Data
     private String userId;
     private boolean faceDetected = false;
     private String capturedImageUrl;
+    private String capturedThumbnailUrl;
+    private volatile Task<FaceTemplate> capturedTemplateTask; // Face template của ảnh vừa chụp
     private boolean isCapturing = false;
     
     // Pending transaction data (if coming from high-value transaction)
@@ -110,20 +114,16 @@ public class EKYCActivity extends AppCompatActivity {
         storage = FirebaseStorage.getInstance();
         userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
 
-        // Initialize ML Kit Face Detector
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-                .build();
-        faceDetector = FaceDetection.getClient(options);
+        // Initialize face presence analyzer (UI chỉ cập nhật khi trạng thái đổi)
+        facePresenceAnalyzer = new FacePresenceAnalyzer(ANALYSIS_MIN_FRAME_INTERVAL_MILLIS,
+            this::onFacePresenceChanged);
         
         // Initialize Face Verification Service
-        faceVerificationService = new FaceVerificationService();
+        faceVerificationService = new FaceVerificationService(this);
+        imagePipeline = new EkycImagePipeline(this);
 
         // Initialize camera executor
         cameraExecutor = Executors.newSingleThreadExecutor();
-        executorService = Executors.newSingleThreadExecutor();
         
         // Get pending transaction data if any
         pendingTransactionAmount = getIntent().getDoubleExtra("pending_transaction_amount", 0);
@@ -263,16 +263,22 @@ public class EKYCActivity extends AppCompatActivity {
         // ImageCapture
         imageCapture = new ImageCapture.Builder()
                 .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                .setResolutionSelector(new ResolutionSelector.Builder()
+                    .setResolutionStrategy(new ResolutionStrategy(CAPTURE_TARGET_SIZE,
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                    .build())
                 .build();
 
-        // ImageAnalysis for face detection
+        // ImageAnalysis for face detection - độ phân giải thấp là đủ để biết có khuôn mặt
         ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+            .setResolutionSelector(new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(ANALYSIS_TARGET_SIZE,
+                    ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .build();
 
-        imageAnalysis.setAnalyzer(cameraExecutor, imageProxy -> {
-                detectFace(imageProxy);
-            });
+        imageAnalysis.setAnalyzer(cameraExecutor, facePresenceAnalyzer);
 
         // Camera selector - use front camera
         CameraSelector cameraSelector = CameraSelector.DEFAULT_FRONT_CAMERA;
@@ -286,42 +292,29 @@ public class EKYCActivity extends AppCompatActivity {
         }
     }
 
-    private void detectFace(ImageProxy imageProxy) {
-        InputImage image = InputImage.fromMediaImage(
-            imageProxy.getImage(), 
-            imageProxy.getImageInfo().getRotationDegrees());
-
-        faceDetector.process(image)
-            .addOnSuccessListener(faces -> {
-                runOnUiThread(() -> {
-                    if (!faces.isEmpty() && !isCapturing) {
-                        faceDetected = true;
-                        if (pendingTransactionAmount > 0) {
-                            statusText.setText("✓ Khuôn mặt đã được phát hiện!\nNhấn nút để xác thực");
-                        } else {
-                            statusText.setText("✓ Khuôn mặt đã được phát hiện!\nNhấn nút để chụp");
-                        }
-                        statusText.setTextColor(getColor(R.color.success));
-                        btnCapture.setEnabled(true);
-                    } else if (faces.isEmpty() && !isCapturing) {
-                        faceDetected = false;
-                        if (pendingTransactionAmount > 0) {
-                            statusText.setText("Giao dịch lớn yêu cầu xác thực eKYC\nĐặt khuôn mặt vào khung hình");
-                            statusText.setTextColor(getColor(R.color.warning));
-                        } else {
-                            statusText.setText("Đặt khuôn mặt vào khung hình");
-                            statusText.setTextColor(getColor(R.color.white));
-                        }
-                        btnCapture.setEnabled(false);
-                    }
-                });
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Face detection failed", e);
-            })
-            .addOnCompleteListener(task -> {
-                imageProxy.close();
-            });
+    private void onFacePresenceChanged(boolean facePresent) {
+        if (isFinishing() || isCapturing || capturedImageUrl != null) {
+            return;
+        }
+        faceDetected = facePresent;
+        if (facePresent) {
+            if (pendingTransactionAmount > 0) {
+                statusText.setText("✓ Khuôn mặt đã được phát hiện!\nNhấn nút để xác thực");
+            } else {
+                statusText.setText("✓ Khuôn mặt đã được phát hiện!\nNhấn nút để chụp");
+            }
+            statusText.setTextColor(getColor(R.color.success));
+            btnCapture.setEnabled(true);
+        } else {
+            if (pendingTransactionAmount > 0) {
+                statusText.setText("Giao dịch lớn yêu cầu xác thực eKYC\nĐặt khuôn mặt vào khung hình");
+                statusText.setTextColor(getColor(R.color.warning));
+            } else {
+                statusText.setText("Đặt khuôn mặt vào khung hình");
+                statusText.setTextColor(getColor(R.color.white));
+            }
+            btnCapture.setEnabled(false);
+        }
     }
 
     private void captureImage() {
@@ -366,70 +359,68 @@ public class EKYCActivity extends AppCompatActivity {
     }
 
     private void uploadFaceImage(File imageFile) {
-        // Read file as bitmap
-        Bitmap bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath());
-        if (bitmap == null) {
+        // Decode có giới hạn kích thước + thumbnail (đang ở camera executor)
+        EkycImagePipeline.PreparedImage prepared;
+        try {
+            prepared = imagePipeline.prepare(Uri.fromFile(imageFile));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read captured image", e);
+            deleteCaptureFile(imageFile);
             runOnUiThread(() -> {
                 isCapturing = false;
-            showLoading(false);
+                showLoading(false);
                 btnCapture.setEnabled(true);
                 Toast.makeText(this, "Lỗi đọc ảnh", Toast.LENGTH_SHORT).show();
             });
             return;
         }
 
-        // Compress bitmap
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-        byte[] imageData = baos.toByteArray();
+        // Trích face template song song với upload (một lần detect ACCURATE)
+        capturedTemplateTask = faceVerificationService.extractTemplate(prepared.getBitmap());
 
         // Upload to Firebase Storage
-        String fileName = "ekyc/" + userId + "/face_" + System.currentTimeMillis() + ".jpg";
-        StorageReference storageRef = storage.getReference().child(fileName);
-
-        UploadTask uploadTask = storageRef.putBytes(imageData);
-        uploadTask.addOnSuccessListener(taskSnapshot -> {
-            // Get download URL
-            storageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                capturedImageUrl = uri.toString();
-                runOnUiThread(() -> {
-                    if (pendingTransactionAmount > 0) {
-                        statusText.setText("Đang xác thực khuôn mặt...");
-                        statusText.setTextColor(getColor(R.color.info));
-                    } else {
-                        statusText.setText("Ảnh đã được chụp thành công!");
-                        statusText.setTextColor(getColor(R.color.success));
-                    }
-                    btnCapture.setVisibility(View.GONE);
-                    btnRetake.setVisibility(View.VISIBLE);
-                    showLoading(true); // Keep loading during verification
-                    isCapturing = false;
-            
-                    // Auto submit after capture
-                    submitEKYC();
-                });
-            }).addOnFailureListener(e -> {
-                runOnUiThread(() -> {
-                    isCapturing = false;
-                    showLoading(false);
-                    btnCapture.setEnabled(true);
-                    Toast.makeText(EKYCActivity.this, 
-                        "Lỗi lấy URL ảnh: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
-                Log.e(TAG, "Failed to get download URL", e);
-            });
-        }).addOnFailureListener(e -> {
-            runOnUiThread(() -> {
+        String baseName = "ekyc/" + userId + "/face_" + System.currentTimeMillis();
+        StorageReference imageRef = storage.getReference().child(baseName + ".jpg");
+        StorageReference thumbnailRef = storage.getReference().child(baseName + "_thumb.jpg");
+
+        imagePipeline.upload(prepared, imageRef, thumbnailRef)
+            .addOnCompleteListener(task -> {
+                imagePipeline.release(prepared);
+                deleteCaptureFile(imageFile);
+            })
+            .addOnSuccessListener(this, uploaded -> {
+                capturedImageUrl = uploaded.getImageUrl();
+                capturedThumbnailUrl = uploaded.getThumbnailUrl();
+                if (pendingTransactionAmount > 0) {
+                    statusText.setText("Đang xác thực khuôn mặt...");
+                    statusText.setTextColor(getColor(R.color.info));
+                } else {
+                    statusText.setText("Ảnh đã được chụp thành công!");
+                    statusText.setTextColor(getColor(R.color.success));
+                }
+                btnCapture.setVisibility(View.GONE);
+                btnRetake.setVisibility(View.VISIBLE);
+                showLoading(true); // Keep loading during verification
+                isCapturing = false;
+
+                // Auto submit after capture
+                submitEKYC();
+            })
+            .addOnFailureListener(this, e -> {
                 isCapturing = false;
                 showLoading(false);
                 btnCapture.setEnabled(true);
-                Toast.makeText(EKYCActivity.this, 
-                    "Lỗi upload ảnh: " + e.getMessage(), 
+                Toast.makeText(EKYCActivity.this,
+                    "Lỗi upload ảnh: " + e.getMessage(),
                     Toast.LENGTH_SHORT).show();
+                Log.e(TAG, "Failed to upload image", e);
             });
-            Log.e(TAG, "Failed to upload image", e);
-        });
+    }
+
+    private void deleteCaptureFile(File imageFile) {
+        if (imageFile.exists() && !imageFile.delete()) {
+            Log.w(TAG, "Failed to delete " + imageFile);
+        }
     }
 
     private void retryCapture() {
@@ -442,7 +433,14 @@ public class EKYCActivity extends AppCompatActivity {
         
         faceDetected = false;
         capturedImageUrl = null;
+        capturedThumbnailUrl = null;
+        capturedTemplateTask = null;
         isCapturing = false;
+        
+        // Analyzer chỉ báo khi trạng thái đổi - áp dụng lại trạng thái hiện tại
+        if (facePresenceAnalyzer.isFacePresent()) {
+            onFacePresenceChanged(true);
+        }
     }
 
     private void submitEKYC() {
@@ -465,122 +463,66 @@ public class EKYCActivity extends AppCompatActivity {
     
     /**
      * Verify face match for high-value transaction
+     * So sánh template của ảnh vừa chụp với template đã đăng ký (cache / user doc)
      */
     private void verifyFaceForTransaction() {
-        // Get stored face image URL
-        db.collection("users")
-                .document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (!documentSnapshot.exists()) {
-                        showLoading(false);
-                        Toast.makeText(this, "Không tìm thấy thông tin người dùng", 
-                            Toast.LENGTH_SHORT).show();
-                        return;
-                    }
-                    
-                    String storedFaceImageUrl = documentSnapshot.getString("faceImageUrl");
+        faceVerificationService.verifyFaceMatch(capturedTemplateTask, userId,
+            new FaceVerificationService.FaceVerificationCallback() {
+                @Override
+                public void onVerificationResult(boolean isMatch, String message) {
+                    if (isFinishing()) return;
                     
-                    if (storedFaceImageUrl == null || storedFaceImageUrl.isEmpty()) {
-                        // No stored image - this is first time eKYC
+                    if (isMatch) {
+                        // Face matches - update eKYC and continue transaction
+                        statusText.setText("✓ Xác thực thành công!\nĐang cập nhật...");
+                        statusText.setTextColor(getColor(R.color.success));
                         updateEkycStatus();
-                        return;
-                    }
-                    
-                    // Load current captured image
-                    loadAndVerifyFace(capturedImageUrl, storedFaceImageUrl);
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
-    }
-    
-    /**
-     * Load and verify face match
-     */
-    private void loadAndVerifyFace(String currentImageUrl, String storedImageUrl) {
-        // Download current image
-        executorService.execute(() -> {
-            try {
-                Bitmap currentBitmap = downloadImage(currentImageUrl);
-                
-                if (currentBitmap == null) {
-                    runOnUiThread(() -> {
+                    } else {
+                        // Face doesn't match - show error
                         showLoading(false);
-                        Toast.makeText(this, "Không thể tải ảnh hiện tại", 
-                            Toast.LENGTH_SHORT).show();
-                    });
-                    return;
+                        statusText.setText("✗ Xác thực thất bại\n" + message);
+                        statusText.setTextColor(getColor(R.color.error));
+                        Toast.makeText(EKYCActivity.this, message, Toast.LENGTH_LONG).show();
+                        btnRetake.setVisibility(View.VISIBLE);
+                        btnCapture.setVisibility(View.GONE);
+                    }
                 }
                 
-                // Verify face match
-                faceVerificationService.verifyFaceMatch(currentBitmap, storedImageUrl, 
-                    (isMatch, message) -> {
-                        runOnUiThread(() -> {
-                            if (isMatch) {
-                                // Face matches - update eKYC and continue transaction
-                                statusText.setText("✓ Xác thực thành công!\nĐang cập nhật...");
-                                statusText.setTextColor(getColor(R.color.success));
-                                updateEkycStatus();
-                            } else {
-                                // Face doesn't match - show error
-                                showLoading(false);
-                                statusText.setText("✗ Xác thực thất bại\n" + message);
-                                statusText.setTextColor(getColor(R.color.error));
-                                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
-                                btnRetake.setVisibility(View.VISIBLE);
-                                btnCapture.setVisibility(View.GONE);
-                            }
-                        });
-                    });
-                    
-            } catch (Exception e) {
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi xác thực: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
-    }
-    
-    /**
-     * Download image from URL
-     */
-    private Bitmap downloadImage(String imageUrl) {
-        try {
-            java.net.URL url = new java.net.URL(imageUrl);
-            java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            
-            java.io.InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
-            
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Error downloading image", e);
-            return null;
-        }
+                @Override
+                public void onNotEnrolled() {
+                    if (isFinishing()) return;
+                    // No stored face - this is first time eKYC
+                    updateEkycStatus();
+                }
+            });
     }
     
     /**
      * Update eKYC status in Firestore
      */
     private void updateEkycStatus() {
+        // Template được lưu cùng ảnh - đợi trích xong nếu chưa xong
+        if (capturedTemplateTask != null && !capturedTemplateTask.isComplete()) {
+            capturedTemplateTask.addOnCompleteListener(this, task -> updateEkycStatus());
+            return;
+        }
+        FaceTemplate template = capturedTemplateTask != null && capturedTemplateTask.isSuccessful()
+                ? capturedTemplateTask.getResult() : null;
+        
         // Update user eKYC status
         Map<String, Object> updates = new HashMap<>();
         updates.put("ekycStatus", "verified");
         updates.put("faceImageUrl", capturedImageUrl);
+        updates.put("faceThumbnailUrl", capturedThumbnailUrl);
         updates.put("ekycVerifiedAt", com.google.firebase.Timestamp.now());
+        long templateUpdatedAt = template != null
+                ? FaceVerificationService.putTemplateFields(updates, template) : 0;
 
         db.collection("users")
                 .document(userId)
                 .update(updates)
                 .addOnSuccessListener(aVoid -> {
+                    faceVerificationService.cacheEnrolledTemplate(userId, template, templateUpdatedAt);
                     showLoading(false);
                     Toast.makeText(this, "Xác thực eKYC thành công!", 
                         Toast.LENGTH_SHORT).show();
@@ -619,8 +561,8 @@ public class EKYCActivity extends AppCompatActivity {
         if (cameraProvider != null) {
             cameraProvider.unbindAll();
         }
-        if (faceDetector != null) {
-            faceDetector.close();
+        if (facePresenceAnalyzer != null) {
+            facePresenceAnalyzer.close();
         }
         if (faceVerificationService != null) {
             faceVerificationService.cleanup();
@@ -628,8 +570,5 @@ public class EKYCActivity extends AppCompatActivity {
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
-        if (executorService != null) {
-            executorService.shutdown();
-        }
     }
 }
@@ -16,6 +16,7 @@ import com.example.cklbanking.models.Account;
 import com.example.cklbanking.models.Transaction;
 import com.example.cklbanking.models.UtilityPayment;
 import com.example.cklbanking.repositories.AccountRepository;
+import com.example.cklbanking.repositories.AccountStore;
 import com.example.cklbanking.repositories.TransactionRepository;
 import com.example.cklbanking.repositories.UtilityRepository;
 import com.google.android.material.button.MaterialButton;
@@ -23,7 +24,6 @@ import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.WriteBatch;
 
 import java.text.NumberFormat;
@@ -45,6 +45,7 @@ public class EcommercePaymentActivity extends AppCompatActivity {
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private AccountRepository accountRepository;
+    private AccountStore.Subscription accountsSubscription;
     private TransactionRepository transactionRepository;
     private UtilityRepository utilityRepository;
 
@@ -113,43 +114,53 @@ public class EcommercePaymentActivity extends AppCompatActivity {
             return;
         }
 
-        accountRepository.getAccountsForUser(userId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    accounts = new ArrayList<>();
-                    List<String> accountNames = new ArrayList<>();
-
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Account account = document.toObject(Account.class);
-                        account.setAccountId(document.getId());
-                        accounts.add(account);
-                        accountNames.add(account.getAccountNumber() + " - " + getAccountTypeName(account.getAccountType()));
-                    }
-
-                    if (accounts.isEmpty()) {
-                        Toast.makeText(this, "Bạn chưa có tài khoản nào", Toast.LENGTH_SHORT).show();
-                        finish();
-                        return;
-                    }
-
-                    ArrayAdapter<String> adapter = new ArrayAdapter<>(
-                            this,
-                            android.R.layout.simple_spinner_item,
-                            accountNames
-                    );
-                    adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                    spinnerAccount.setAdapter(adapter);
-
-                    // Set first account as default
-                    if (!accounts.isEmpty()) {
-                        selectedAccount = accounts.get(0);
-                        updateAccountBalanceDisplay();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Lỗi tải danh sách tài khoản: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                });
+        // Danh sách tài khoản dùng chung (AccountStore) - số dư cập nhật realtime
+        accountsSubscription = AccountStore.getInstance().subscribe(userId, new AccountStore.AccountsObserver() {
+            @Override
+            public void onAccountsChanged(List<Account> loadedAccounts) {
+                showAccounts(loadedAccounts);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Toast.makeText(EcommercePaymentActivity.this, "Lỗi tải danh sách tài khoản: " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void showAccounts(List<Account> loadedAccounts) {
+        // Giữ tài khoản đang chọn khi danh sách được cập nhật
+        String previousAccountId = selectedAccount != null ? selectedAccount.getAccountId() : null;
+        accounts = new ArrayList<>(loadedAccounts);
+        List<String> accountNames = new ArrayList<>();
+        int selectedPosition = 0;
+
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            accountNames.add(account.getAccountNumber() + " - " + getAccountTypeName(account.getAccountType()));
+            if (account.getAccountId().equals(previousAccountId)) {
+                selectedPosition = i;
+            }
+        }
+
+        if (accounts.isEmpty()) {
+            Toast.makeText(this, "Bạn chưa có tài khoản nào", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(
+                this,
+                android.R.layout.simple_spinner_item,
+                accountNames
+        );
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerAccount.setAdapter(adapter);
+        spinnerAccount.setSelection(selectedPosition);
+
+        selectedAccount = accounts.get(selectedPosition);
+        updateAccountBalanceDisplay();
     }
 
     private void updateAccountBalanceDisplay() {
@@ -282,6 +293,14 @@ public class EcommercePaymentActivity extends AppCompatActivity {
                     Toast.makeText(this, "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (accountsSubscription != null) {
+            accountsSubscription.remove();
+        }
+    }
 }
 
 
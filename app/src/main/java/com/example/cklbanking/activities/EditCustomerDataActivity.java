@@ -10,6 +10,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.User;
 import com.example.cklbanking.repositories.UserRepository;
+import com.example.cklbanking.utils.CustomerSearchIndex;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
@@ -151,6 +152,7 @@ public class EditCustomerDataActivity extends AppCompatActivity {
         // Update user data
         Map<String, Object> updates = new HashMap<>();
         updates.put("fullName", fullName);
+        updates.put(CustomerSearchIndex.FIELD_SEARCH_TOKENS, CustomerSearchIndex.buildSearchTokens(fullName));
         updates.put("phone", phone);
         // Add extended fields if needed
         String dateOfBirth = editDateOfBirth.getText().toString().trim();
@@ -14,6 +14,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.User;
+import com.example.cklbanking.utils.CustomerSearchIndex;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.imageview.ShapeableImageView;
@@ -203,6 +204,7 @@ public class EditProfileActivity extends AppCompatActivity {
         // Update user data (only fields in User model)
         Map<String, Object> updates = new HashMap<>();
         updates.put("fullName", fullName);
+        updates.put(CustomerSearchIndex.FIELD_SEARCH_TOKENS, CustomerSearchIndex.buildSearchTokens(fullName));
         updates.put("phone", phone);
 
         db.collection("users")
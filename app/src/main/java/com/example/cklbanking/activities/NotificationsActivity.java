@@ -108,7 +108,7 @@ public class NotificationsActivity extends AppCompatActivity {
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
                     isLoading = false;
-                    notifications.addAll(queryDocumentSnapshots.toObjects(Notification.class));
+                    addNotifications(queryDocumentSnapshots);
                     
                     // Update last document for pagination
                     if (!queryDocumentSnapshots.isEmpty()) {
@@ -119,7 +119,7 @@ public class NotificationsActivity extends AppCompatActivity {
                         hasMoreData = false;
                     }
                     
-                    adapter.notifyDataSetChanged();
+                    adapter.updateNotifications(notifications);
                     updateEmptyState();
                 })
                 .addOnFailureListener(e -> {
@@ -129,6 +129,16 @@ public class NotificationsActivity extends AppCompatActivity {
                 });
     }
     
+    private void addNotifications(Iterable<QueryDocumentSnapshot> documents) {
+        for (QueryDocumentSnapshot document : documents) {
+            Notification notification = document.toObject(Notification.class);
+            if (notification.getNotificationId() == null) {
+                notification.setNotificationId(document.getId());
+            }
+            notifications.add(notification);
+        }
+    }
+    
     private void loadMoreNotifications() {
         if (isLoading || !hasMoreData || lastDocument == null) return;
         
@@ -143,7 +153,7 @@ public class NotificationsActivity extends AppCompatActivity {
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
                     isLoading = false;
-                    notifications.addAll(queryDocumentSnapshots.toObjects(Notification.class));
+                    addNotifications(queryDocumentSnapshots);
                     
                     // Update last document for pagination
                     if (!queryDocumentSnapshots.isEmpty()) {
@@ -154,7 +164,7 @@ public class NotificationsActivity extends AppCompatActivity {
                         hasMoreData = false;
                     }
                     
-                    adapter.notifyDataSetChanged();
+                    adapter.updateNotifications(notifications);
                 })
                 .addOnFailureListener(e -> {
                     isLoading = false;
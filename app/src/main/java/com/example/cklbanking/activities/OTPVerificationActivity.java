@@ -21,6 +21,7 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.Locale;
 import java.util.Map;
@@ -55,6 +56,7 @@ public class OTPVerificationActivity extends AppCompatActivity {
     private String recipientBank;
     private String description;
     private CountDownTimer countDownTimer;
+    private ListenerRegistration emailStatusListener;
     private long timeLeftInMillis = 120000; // 2 minutes
 
     @Override
@@ -97,11 +99,11 @@ public class OTPVerificationActivity extends AppCompatActivity {
         // Start timer
         startTimer();
         
-        // Load OTP for testing (hiển thị OTP ngay trong app)
-        loadOTPForTesting();
+        // Đồng bộ thời gian hết hạn + hiển thị OTP để test - một lần đọc otps
+        loadOTPDetails();
         
         // Kiểm tra trạng thái email
-        checkEmailStatus();
+        checkEmailStatus(transactionId);
     }
 
     private void initViews() {
@@ -151,9 +153,6 @@ public class OTPVerificationActivity extends AppCompatActivity {
     }
 
     private void startTimer() {
-        // Load actual expiry time from Firestore
-        loadOTPExpiryTime();
-        
         countDownTimer = new CountDownTimer(timeLeftInMillis, 1000) {
             @Override
             public void onTick(long millisUntilFinished) {
@@ -174,44 +173,30 @@ public class OTPVerificationActivity extends AppCompatActivity {
     }
     
     /**
-     * Load actual OTP expiry time from Firestore to sync countdown timer
+     * Sync countdown timer with actual OTP expiry time
      */
-    private void loadOTPExpiryTime() {
-        if (transactionId == null) return;
+    private void syncTimerWithExpiry(Long expiresAt) {
+        if (expiresAt == null) return;
         
-        db.collection("otps")
-                .document(transactionId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Long expiresAt = documentSnapshot.getLong("expiresAt");
-                        if (expiresAt != null) {
-                            long currentTime = System.currentTimeMillis();
-                            long remainingTime = expiresAt - currentTime;
-                            
-                            if (remainingTime > 0) {
-                                timeLeftInMillis = remainingTime;
-                                // Restart timer with correct time
-                                if (countDownTimer != null) {
-                                    countDownTimer.cancel();
-                                }
-                                startTimer();
-                            } else {
-                                // OTP already expired
-                                timeLeftInMillis = 0;
-                                updateTimerText();
-                                otpTimer.setText("00:00");
-                                btnVerifyOtp.setEnabled(false);
-                                btnResendOtp.setEnabled(true);
-                            }
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    android.util.Log.e("OTPVerification", "Error loading OTP expiry", e);
-                    // Use default 2 minutes if can't load
-                    timeLeftInMillis = 120000;
-                });
+        long remainingTime = expiresAt - System.currentTimeMillis();
+        if (remainingTime > 0) {
+            timeLeftInMillis = remainingTime;
+            // Restart timer with correct time
+            if (countDownTimer != null) {
+                countDownTimer.cancel();
+            }
+            startTimer();
+        } else {
+            // OTP already expired
+            if (countDownTimer != null) {
+                countDownTimer.cancel();
+            }
+            timeLeftInMillis = 0;
+            updateTimerText();
+            otpTimer.setText("00:00");
+            btnVerifyOtp.setEnabled(false);
+            btnResendOtp.setEnabled(true);
+        }
     }
 
     private void updateTimerText() {
@@ -292,40 +277,44 @@ public class OTPVerificationActivity extends AppCompatActivity {
         return masked + domain;
     }
     
-    // CHỈ DÙNG CHO TEST - XÓA TRONG PRODUCTION
-    private void loadOTPForTesting() {
+    /**
+     * Load OTP document once: expiry time for the countdown timer,
+     * and OTP code for testing (CHỈ DÙNG CHO TEST - XÓA TRONG PRODUCTION)
+     */
+    private void loadOTPDetails() {
         if (transactionId == null) return;
         
-        // Đợi 1 giây để OTP được tạo xong
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-            db.collection("otps")
-                    .document(transactionId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            String otpCode = documentSnapshot.getString("otpCode");
-                            String status = documentSnapshot.getString("status");
-                            
-                            android.util.Log.d("OTPVerification", "===========================================");
-                            android.util.Log.d("OTPVerification", "OTP CODE FOR TESTING: " + otpCode);
-                            android.util.Log.d("OTPVerification", "OTP Status: " + status);
-                            android.util.Log.d("OTPVerification", "===========================================");
-                            
-                            // Hiển thị OTP trong AlertDialog (CHỈ CHO DEVELOPMENT)
-                            if (otpCode != null) {
-                                showOTPDialog(otpCode, status);
-                            }
-                        } else {
-                            // Nếu chưa có OTP, thử lại sau 2 giây
-                            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-                                loadOTPForTesting();
-                            }, 2000);
+        db.collection("otps")
+                .document(transactionId)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    if (isFinishing()) return;
+                    
+                    if (documentSnapshot.exists()) {
+                        syncTimerWithExpiry(documentSnapshot.getLong("expiresAt"));
+                        
+                        String otpCode = documentSnapshot.getString("otpCode");
+                        String status = documentSnapshot.getString("status");
+                        
+                        android.util.Log.d("OTPVerification", "===========================================");
+                        android.util.Log.d("OTPVerification", "OTP CODE FOR TESTING: " + otpCode);
+                        android.util.Log.d("OTPVerification", "OTP Status: " + status);
+                        android.util.Log.d("OTPVerification", "===========================================");
+                        
+                        // Hiển thị OTP trong AlertDialog (CHỈ CHO DEVELOPMENT)
+                        if (otpCode != null) {
+                            showOTPDialog(otpCode, status);
                         }
-                    })
-                    .addOnFailureListener(e -> {
-                        android.util.Log.e("OTPVerification", "Error loading OTP", e);
-                    });
-        }, 1000);
+                    } else {
+                        // Nếu chưa có OTP, thử lại sau 2 giây
+                        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(
+                            this::loadOTPDetails, 2000);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    // Giữ mặc định 2 phút
+                    android.util.Log.e("OTPVerification", "Error loading OTP", e);
+                });
     }
     
     private void showOTPDialog(String otpCode, String status) {
@@ -345,12 +334,19 @@ public class OTPVerificationActivity extends AppCompatActivity {
         builder.show();
     }
     
-    private void checkEmailStatus() {
-        if (transactionId == null) return;
+    /**
+     * Theo dõi trạng thái gửi email của một email request
+     * (email_requests/{transactionId}, hoặc id riêng của lần gửi lại) - thay listener cũ
+     */
+    private void checkEmailStatus(String emailRequestId) {
+        if (emailRequestId == null) return;
+        if (emailStatusListener != null) {
+            emailStatusListener.remove();
+        }
         
         // Kiểm tra trạng thái email request
-        db.collection("email_requests")
-                .document(transactionId)
+        emailStatusListener = db.collection("email_requests")
+                .document(emailRequestId)
                 .addSnapshotListener((snapshot, e) -> {
                     if (e != null) {
                         android.util.Log.e("OTPVerification", "Error listening to email status", e);
@@ -519,6 +515,12 @@ public class OTPVerificationActivity extends AppCompatActivity {
         // Resend OTP using OTPService (with rate limiting)
         otpService.resendOTP(transactionId, userId, userEmail, 
             new OTPService.OTPGenerationCallback() {
+                @Override
+                public void onEmailRequested(String emailRequestId) {
+                    // Email gửi lại là một email request mới
+                    runOnUiThread(() -> checkEmailStatus(emailRequestId));
+                }
+                
                 @Override
                 public void onOTPGenerated(String otpCode, boolean success, String message) {
                     runOnUiThread(() -> {
@@ -607,5 +609,8 @@ public class OTPVerificationActivity extends AppCompatActivity {
         if (countDownTimer != null) {
             countDownTimer.cancel();
         }
+        if (emailStatusListener != null) {
+            emailStatusListener.remove();
+        }
     }
 }
@@ -12,6 +12,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.User;
+import com.example.cklbanking.services.StatisticsService;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
@@ -19,17 +20,22 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
+import java.util.Locale;
+import java.util.Map;
+
 public class OfficerDashboardActivity extends AppCompatActivity {
 
     // UI Components
     private MaterialToolbar toolbar;
     private TextView welcomeName, totalCustomers, totalAccounts;
+    private TextView statsAccountTypes, statsEkycStatus, statsTodayTransactions;
     private MaterialCardView cardCreateAccount, cardSearchCustomer, cardCustomerList, cardEditCustomer, cardManageInterestRates, cardEKYCSupport;
     private CircularProgressIndicator progressBar;
 
     // Firebase
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
+    private StatisticsService statisticsService;
 
     // Data
     private String userId;
@@ -43,6 +49,7 @@ public class OfficerDashboardActivity extends AppCompatActivity {
         // Check permission - only officers can access
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
+        statisticsService = new StatisticsService();
         userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
 
         if (userId == null) {
@@ -64,7 +71,7 @@ public class OfficerDashboardActivity extends AppCompatActivity {
 
         // Load data
         loadUserProfile();
-        loadStatistics();
+        // Statistics are loaded in onResume
     }
 
     private void initViews() {
@@ -72,6 +79,9 @@ public class OfficerDashboardActivity extends AppCompatActivity {
         welcomeName = findViewById(R.id.welcomeName);
         totalCustomers = findViewById(R.id.totalCustomers);
         totalAccounts = findViewById(R.id.totalAccounts);
+        statsAccountTypes = findViewById(R.id.statsAccountTypes);
+        statsEkycStatus = findViewById(R.id.statsEkycStatus);
+        statsTodayTransactions = findViewById(R.id.statsTodayTransactions);
         cardCreateAccount = findViewById(R.id.cardCreateAccount);
         cardSearchCustomer = findViewById(R.id.cardSearchCustomer);
         cardCustomerList = findViewById(R.id.cardCustomerList);
@@ -166,36 +176,44 @@ public class OfficerDashboardActivity extends AppCompatActivity {
     private void loadStatistics() {
         showLoading(true);
 
-        // Count total customers
-        db.collection("users")
-                .whereEqualTo("role", "customer")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    int customerCount = queryDocumentSnapshots.size();
-                    totalCustomers.setText(String.valueOf(customerCount));
-
-                    // Count total accounts
-                    db.collection("accounts")
-                            .get()
-                            .addOnSuccessListener(accountSnapshots -> {
-                                int accountCount = accountSnapshots.size();
-                                totalAccounts.setText(String.valueOf(accountCount));
-                                showLoading(false);
-                            })
-                            .addOnFailureListener(e -> {
-                                showLoading(false);
-                                Toast.makeText(this, "Lỗi tải thống kê: " + e.getMessage(),
-                                        Toast.LENGTH_SHORT).show();
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi tải thống kê: " + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                });
+        // Count aggregation queries + short in-memory cache (onResume reuses fresh results)
+        statisticsService.loadStatistics(false, (success, statistics, message) -> {
+            showLoading(false);
+            if (!success) {
+                Toast.makeText(this, "Lỗi tải thống kê: " + message,
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            totalCustomers.setText(String.valueOf(statistics.getTotalCustomers()));
+            totalAccounts.setText(String.valueOf(statistics.getTotalAccounts()));
+
+            Map<String, Long> byType = statistics.getAccountsByType();
+            statsAccountTypes.setText(String.format(Locale.getDefault(),
+                    "Thanh toán: %d | Tiết kiệm: %d | Vay: %d",
+                    valueOrZero(byType, "checking"), valueOrZero(byType, "saving"),
+                    valueOrZero(byType, "mortgage")));
+
+            Map<String, Long> byEkyc = statistics.getCustomersByEkycStatus();
+            statsEkycStatus.setText(String.format(Locale.getDefault(),
+                    "Đã xác thực: %d | Chờ duyệt: %d | Thất bại: %d",
+                    valueOrZero(byEkyc, "verified"), valueOrZero(byEkyc, "pending"),
+                    valueOrZero(byEkyc, "failed")));
+
+            statsTodayTransactions.setText(String.format(Locale.getDefault(),
+                    "%d giao dịch | %,.0f ₫",
+                    statistics.getTodayTransactionCount(), statistics.getTodayTransactionAmount()));
+        });
+    }
+
+    private long valueOrZero(Map<String, Long> values, String key) {
+        Long value = values.get(key);
+        return value != null ? value : 0;
     }
 
     private void openCreateAccount() {
+        // New account will change the counts
+        StatisticsService.invalidateCache();
         Intent intent = new Intent(this, CreateAccountActivity.class);
         startActivity(intent);
     }
@@ -3,11 +3,10 @@ package com.example.cklbanking.activities;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -20,8 +19,12 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.bumptech.glide.Glide;
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.User;
+import com.example.cklbanking.services.FaceVerificationService;
+import com.example.cklbanking.utils.EkycImagePipeline;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
@@ -31,15 +34,15 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class OfficerEKYCSupportActivity extends AppCompatActivity {
 
+    private static final String TAG = "OfficerEKYCSupport";
     private static final int CAMERA_PERMISSION_REQUEST = 1001;
     private static final int STORAGE_PERMISSION_REQUEST = 1002;
 
@@ -58,6 +61,10 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
     private FirebaseFirestore db;
     private FirebaseStorage storage;
 
+    // Xử lý ảnh (decode/nén) chạy nền
+    private EkycImagePipeline imagePipeline;
+    private ExecutorService imageExecutor;
+
     // Data
     private String customerId;
     private User customerUser;
@@ -74,6 +81,9 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
         db = FirebaseFirestore.getInstance();
         storage = FirebaseStorage.getInstance();
 
+        imagePipeline = new EkycImagePipeline(this);
+        imageExecutor = Executors.newSingleThreadExecutor();
+
         // Initialize Views
         initViews();
 
@@ -122,7 +132,8 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
                     Uri imageUri = result.getData().getData();
                     if (imageUri != null) {
                         selectedImageUri = imageUri;
-                        faceImageView.setImageURI(imageUri);
+                        // Glide decode theo kích thước ImageView, không decode ảnh gốc trên main thread
+                        Glide.with(this).load(imageUri).into(faceImageView);
                         btnUploadImage.setEnabled(true);
                     }
                 }
@@ -242,6 +253,17 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
                 break;
         }
 
+        // Ảnh eKYC hiện tại - thumbnail nhỏ, ảnh cũ chưa có thumbnail thì dùng ảnh gốc
+        String reviewImageUrl = customerUser.getFaceThumbnailUrl() != null
+                ? customerUser.getFaceThumbnailUrl() : customerUser.getFaceImageUrl();
+        if (selectedImageUri == null) {
+            if (reviewImageUrl != null) {
+                Glide.with(this).load(reviewImageUrl).into(faceImageView);
+            } else {
+                Glide.with(this).clear(faceImageView);
+            }
+        }
+
         customerInfoCard.setVisibility(View.VISIBLE);
     }
 
@@ -297,53 +319,37 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
     }
 
     private void uploadFaceImage(Uri imageUri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-            
-            if (bitmap == null) {
+        String baseName = "ekyc/" + customerId + "/face_officer_" + System.currentTimeMillis();
+        StorageReference imageRef = storage.getReference().child(baseName + ".jpg");
+        StorageReference thumbnailRef = storage.getReference().child(baseName + "_thumb.jpg");
+
+        // Decode có giới hạn kích thước + thumbnail trên background thread
+        Tasks.call(imageExecutor, () -> imagePipeline.prepare(imageUri))
+            .addOnFailureListener(this, e -> {
                 showLoading(false);
                 Toast.makeText(this, "Lỗi đọc ảnh", Toast.LENGTH_SHORT).show();
-                return;
-            }
-
-            // Compress bitmap
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-            byte[] imageData = baos.toByteArray();
-
-            // Upload to Firebase Storage
-            String fileName = "ekyc/" + customerId + "/face_officer_" + System.currentTimeMillis() + ".jpg";
-            StorageReference storageRef = storage.getReference().child(fileName);
-
-            UploadTask uploadTask = storageRef.putBytes(imageData);
-            uploadTask.addOnSuccessListener(taskSnapshot -> {
-                // Get download URL
-                storageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                    String imageUrl = uri.toString();
-                    updateEKYCStatus(imageUrl);
-                }).addOnFailureListener(e -> {
+                Log.e(TAG, "Failed to prepare image", e);
+            })
+            .addOnSuccessListener(this, prepared -> imagePipeline.upload(prepared, imageRef, thumbnailRef)
+                .addOnCompleteListener(task -> imagePipeline.release(prepared))
+                .addOnSuccessListener(this, uploaded ->
+                    updateEKYCStatus(uploaded.getImageUrl(), uploaded.getThumbnailUrl()))
+                .addOnFailureListener(this, e -> {
                     showLoading(false);
-                    Toast.makeText(this, "Lỗi lấy URL ảnh: " + e.getMessage(), 
+                    Toast.makeText(this, "Lỗi upload ảnh: " + e.getMessage(),
                         Toast.LENGTH_SHORT).show();
-                });
-            }).addOnFailureListener(e -> {
-                showLoading(false);
-                Toast.makeText(this, "Lỗi upload ảnh: " + e.getMessage(), 
-                    Toast.LENGTH_SHORT).show();
-            });
-        } catch (Exception e) {
-            showLoading(false);
-            Toast.makeText(this, "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+                }));
     }
 
-    private void updateEKYCStatus(String imageUrl) {
+    private void updateEKYCStatus(String imageUrl, String thumbnailUrl) {
         Map<String, Object> updates = new HashMap<>();
         updates.put("ekycStatus", "verified");
         updates.put("faceImageUrl", imageUrl);
+        updates.put("faceThumbnailUrl", thumbnailUrl);
         updates.put("ekycVerifiedAt", com.google.firebase.Timestamp.now());
         updates.put("verifiedByOfficer", true);
+        // Ảnh mới -> template cũ không còn đúng; lần xác thực sau sẽ trích lại từ ảnh này
+        FaceVerificationService.putTemplateDeletes(updates);
 
         db.collection("users")
                 .document(customerId)
@@ -356,9 +362,9 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
                     // Reload customer data
                     loadCustomerData(customerId);
                     
-                    // Clear selected image
+                    // Clear selected image (thumbnail mới hiện lại khi tải xong khách hàng)
                     selectedImageUri = null;
-                    faceImageView.setImageResource(android.R.color.transparent);
+                    Glide.with(this).clear(faceImageView);
                 })
                 .addOnFailureListener(e -> {
                     showLoading(false);
@@ -373,6 +379,12 @@ public class OfficerEKYCSupportActivity extends AppCompatActivity {
         btnUploadImage.setEnabled(!show && customerId != null);
         btnVerifyEKYC.setEnabled(!show && customerId != null && selectedImageUri != null);
     }
-}
-
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (imageExecutor != null) {
+            imageExecutor.shutdown();
+        }
+    }
+}
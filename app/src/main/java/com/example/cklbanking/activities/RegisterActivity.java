@@ -8,6 +8,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.cklbanking.R;
+import com.example.cklbanking.utils.CustomerSearchIndex;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
@@ -120,6 +121,7 @@ public class RegisterActivity extends AppCompatActivity {
         Map<String, Object> user = new HashMap<>();
         user.put("userId", userId);
         user.put("fullName", fullName);
+        user.put(CustomerSearchIndex.FIELD_SEARCH_TOKENS, CustomerSearchIndex.buildSearchTokens(fullName));
         user.put("email", email);
         user.put("phone", phone);
         user.put("idNumber", idNumber);
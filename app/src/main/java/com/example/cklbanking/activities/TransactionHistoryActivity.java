@@ -3,30 +3,41 @@ package com.example.cklbanking.activities;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.util.Pair;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.adapters.TransactionAdapter;
 import com.example.cklbanking.models.Transaction;
+import com.example.cklbanking.repositories.MergedQueryPager;
 import com.example.cklbanking.repositories.TransactionRepository;
 import com.example.cklbanking.utils.ErrorHandler;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
+import com.google.android.material.datepicker.MaterialDatePicker;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 public class TransactionHistoryActivity extends AppCompatActivity {
 
@@ -47,16 +58,27 @@ public class TransactionHistoryActivity extends AppCompatActivity {
 
     // Data
     private String accountId; // Optional - filter by account
-    private List<Transaction> allTransactions;
     private List<Transaction> filteredTransactions;
     private TransactionAdapter adapter;
-    private String currentFilter = "all";
+    private String currentFilter = TransactionRepository.TYPE_FILTER_ALL;
+    private Date rangeStart; // Inclusive, null = không giới hạn
+    private Date rangeEnd; // Exclusive, null = không giới hạn
+
+    private static final String[] DATE_RANGE_OPTIONS = {
+            "Tất cả thời gian", "Hôm nay", "7 ngày qua", "Tháng này", "Tháng trước", "Tùy chọn..."
+    };
     
-    // Pagination
+    // Pagination - mỗi bộ lọc (loại + khoảng thời gian) có query và cursor riêng.
+    // Giữ lại các bộ lọc dùng gần đây để chuyển qua lại không phải tải lại.
     private static final int PAGE_SIZE = 20;
-    private com.google.firebase.firestore.QueryDocumentSnapshot lastDocument;
-    private boolean isLoading = false;
-    private boolean hasMoreData = true;
+    private static final int MAX_CACHED_FILTERS = 12;
+    private final Map<String, FilterPage> filterPages =
+            new LinkedHashMap<String, FilterPage>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FilterPage> eldest) {
+                    return size() > MAX_CACHED_FILTERS;
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -111,9 +133,8 @@ public class TransactionHistoryActivity extends AppCompatActivity {
     }
 
     private void setupRecyclerView() {
-        allTransactions = new ArrayList<>();
         filteredTransactions = new ArrayList<>();
-        adapter = new TransactionAdapter(this, filteredTransactions);
+        adapter = new TransactionAdapter(this, filteredTransactions, accountId);
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         transactionRecyclerView.setLayoutManager(layoutManager);
         transactionRecyclerView.setAdapter(adapter);
@@ -129,10 +150,8 @@ public class TransactionHistoryActivity extends AppCompatActivity {
                 int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
                 
                 // Load more when user scrolls near the end
-                if (!isLoading && hasMoreData) {
-                    if ((visibleItemCount + firstVisibleItemPosition) >= totalItemCount - 5) {
-                        loadMoreTransactions();
-                    }
+                if ((visibleItemCount + firstVisibleItemPosition) >= totalItemCount - 5) {
+                    loadMoreTransactions();
                 }
             }
         });
@@ -144,7 +163,7 @@ public class TransactionHistoryActivity extends AppCompatActivity {
             
             int selectedId = checkedIds.get(0);
             if (selectedId == R.id.chipAll) {
-                currentFilter = "all";
+                currentFilter = TransactionRepository.TYPE_FILTER_ALL;
             } else if (selectedId == R.id.chipTransfer) {
                 currentFilter = "transfer";
             } else if (selectedId == R.id.chipDeposit) {
@@ -152,162 +171,108 @@ public class TransactionHistoryActivity extends AppCompatActivity {
             } else if (selectedId == R.id.chipWithdraw) {
                 currentFilter = "withdraw";
             } else if (selectedId == R.id.chipUtilities) {
-                currentFilter = "utilities";
+                currentFilter = TransactionRepository.TYPE_FILTER_UTILITIES;
             }
             
-            filterTransactions();
+            showCurrentFilter();
         });
 
         btnDateFilter.setOnClickListener(v -> showDateFilterDialog());
     }
 
     private void loadTransactions() {
-        if (isLoading) return;
-        
-        showLoading(true);
-        isLoading = true;
-        allTransactions.clear();
-        lastDocument = null;
-        hasMoreData = true;
-
-        // Query transactions using TransactionRepository
-        Query query;
-        if (accountId != null) {
-            // Load transactions for specific account
-            query = transactionRepository.getTransactionsByAccount(accountId)
-                    .limit(PAGE_SIZE);
-        } else {
-            // Load all transactions for current user
-            String userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
-            if (userId != null) {
-                query = db.collection("transactions")
-                        .whereEqualTo("userId", userId)
-                        .orderBy("timestamp", Query.Direction.DESCENDING)
-                        .limit(PAGE_SIZE);
-            } else {
-                query = db.collection("transactions")
-                        .orderBy("timestamp", Query.Direction.DESCENDING)
-                        .limit(PAGE_SIZE);
-            }
-        }
+        filterPages.remove(currentFilterKey());
+        showCurrentFilter();
+    }
 
-        query.get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    showLoading(false);
-                    isLoading = false;
-                    
-                    String userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Transaction transaction = document.toObject(Transaction.class);
-                        transaction.setTransactionId(document.getId());
-                        allTransactions.add(transaction);
-                    }
-                    
-                    // Update last document for pagination
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        lastDocument = (QueryDocumentSnapshot) queryDocumentSnapshots.getDocuments()
-                                .get(queryDocumentSnapshots.size() - 1);
-                        hasMoreData = queryDocumentSnapshots.size() == PAGE_SIZE;
-                    } else {
-                        hasMoreData = false;
-                    }
-                    
-                    filterTransactions();
-                    updateEmptyState();
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    isLoading = false;
-                    ErrorHandler.handleError(this, e, "Lỗi tải giao dịch");
-                    updateEmptyState();
-                });
+    private String currentFilterKey() {
+        return currentFilter + "|" + (rangeStart != null ? rangeStart.getTime() : "")
+                + "|" + (rangeEnd != null ? rangeEnd.getTime() : "");
+    }
+
+    /**
+     * Hiển thị bộ lọc hiện tại: dùng lại các trang đã tải của bộ lọc đó, nếu chưa có thì query trang đầu
+     */
+    private void showCurrentFilter() {
+        String key = currentFilterKey();
+        FilterPage page = filterPages.get(key);
+        if (page == null) {
+            page = new FilterPage(createPager(currentFilter, rangeStart, rangeEnd));
+            filterPages.put(key, page);
+            loadPage(key, page);
+        }
+        displayPage(page);
     }
     
     private void loadMoreTransactions() {
-        if (isLoading || !hasMoreData || lastDocument == null) return;
+        String key = currentFilterKey();
+        FilterPage page = filterPages.get(key);
+        if (page == null || !page.firstPageLoaded || page.pager.isLoading() || !page.pager.hasMore()) return;
         
-        isLoading = true;
+        loadPage(key, page);
         loadingMoreLayout.setVisibility(View.VISIBLE);
+    }
 
-        Query query;
-        if (accountId != null) {
-            query = transactionRepository.getTransactionsByAccount(accountId)
-                    .startAfter(lastDocument)
-                    .limit(PAGE_SIZE);
-        } else {
-            String userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
-            if (userId != null) {
-                query = db.collection("transactions")
-                        .whereEqualTo("userId", userId)
-                        .orderBy("timestamp", Query.Direction.DESCENDING)
-                        .startAfter(lastDocument)
-                        .limit(PAGE_SIZE);
-            } else {
-                query = db.collection("transactions")
-                        .orderBy("timestamp", Query.Direction.DESCENDING)
-                        .startAfter(lastDocument)
-                        .limit(PAGE_SIZE);
-            }
-        }
+    private void loadPage(String key, FilterPage page) {
+        boolean firstPage = !page.firstPageLoaded;
 
-        query.get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    isLoading = false;
-                    loadingMoreLayout.setVisibility(View.GONE);
+        page.pager.loadNextPage()
+                .addOnSuccessListener(documents -> {
+                    page.firstPageLoaded = true;
                     
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
+                    for (DocumentSnapshot document : documents) {
                         Transaction transaction = document.toObject(Transaction.class);
                         transaction.setTransactionId(document.getId());
-                        allTransactions.add(transaction);
+                        page.transactions.add(transaction);
                     }
                     
-                    // Update last document for pagination
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        lastDocument = (QueryDocumentSnapshot) queryDocumentSnapshots.getDocuments()
-                                .get(queryDocumentSnapshots.size() - 1);
-                        hasMoreData = queryDocumentSnapshots.size() == PAGE_SIZE;
-                    } else {
-                        hasMoreData = false;
+                    // Người dùng có thể đã chuyển sang bộ lọc khác trong lúc chờ
+                    if (key.equals(currentFilterKey()) && filterPages.get(key) == page) {
+                        displayPage(page);
                     }
-                    
-                    filterTransactions();
                 })
                 .addOnFailureListener(e -> {
-                    isLoading = false;
-                    loadingMoreLayout.setVisibility(View.GONE);
-                    ErrorHandler.handleError(this, e, "Lỗi tải thêm giao dịch");
+                    if (firstPage && filterPages.get(key) == page) {
+                        // Cho phép thử lại khi chọn lại bộ lọc
+                        filterPages.remove(key);
+                    }
+                    if (key.equals(currentFilterKey())) {
+                        showLoading(false);
+                        loadingMoreLayout.setVisibility(View.GONE);
+                        ErrorHandler.handleError(this, e, firstPage ? "Lỗi tải giao dịch" : "Lỗi tải thêm giao dịch");
+                        updateEmptyState();
+                    }
                 });
     }
 
-    private void filterTransactions() {
+    private MergedQueryPager createPager(String filter, Date from, Date to) {
+        if (accountId != null) {
+            // Load transactions for specific account (both sent and received)
+            return transactionRepository.getAllTransactionsForAccount(accountId, filter, from, to, PAGE_SIZE);
+        }
+        // Load all transactions for current user
+        String userId = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
+        Query query = userId != null
+                ? transactionRepository.getTransactionsByUserAndType(userId, filter, from, to)
+                : transactionRepository.getTransactionsByType(filter, from, to);
+        return new MergedQueryPager(Collections.singletonList(query), PAGE_SIZE);
+    }
+
+    private void displayPage(FilterPage page) {
+        boolean loading = page.pager.isLoading();
+        boolean loadingFirstPage = loading && !page.firstPageLoaded;
+        showLoading(loadingFirstPage);
+        loadingMoreLayout.setVisibility(loading && !loadingFirstPage ? View.VISIBLE : View.GONE);
+
         filteredTransactions.clear();
+        filteredTransactions.addAll(page.transactions);
+        adapter.updateTransactions(filteredTransactions);
 
-        if (currentFilter.equals("all")) {
-            filteredTransactions.addAll(allTransactions);
-        } else if (currentFilter.equals("utilities")) {
-            // Filter all utility payment types
-            for (Transaction transaction : allTransactions) {
-                String type = transaction.getType();
-                if (type != null && (type.equals("bill_payment") || 
-                    type.equals("phone_recharge") || 
-                    type.equals("flight_ticket") || 
-                    type.equals("movie_ticket") || 
-                    type.equals("hotel_booking") || 
-                    type.equals("ecommerce_payment"))) {
-                    filteredTransactions.add(transaction);
-                }
-            }
+        if (loadingFirstPage) {
+            emptyStateLayout.setVisibility(View.GONE);
         } else {
-            for (Transaction transaction : allTransactions) {
-                if (transaction.getType().equals(currentFilter)) {
-                    filteredTransactions.add(transaction);
-                }
-            }
+            updateEmptyState();
         }
-
-        adapter.notifyDataSetChanged();
-        updateEmptyState();
     }
 
     private void updateEmptyState() {
@@ -321,13 +286,104 @@ public class TransactionHistoryActivity extends AppCompatActivity {
     }
 
     private void showDateFilterDialog() {
-        // TODO: Implement date range picker
-        Toast.makeText(this, "Chức năng lọc theo ngày đang phát triển", 
-            Toast.LENGTH_SHORT).show();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Lọc theo thời gian");
+        builder.setItems(DATE_RANGE_OPTIONS, (dialog, which) -> {
+            Calendar today = startOfDay(Calendar.getInstance());
+            Calendar start = (Calendar) today.clone();
+            Calendar end = (Calendar) today.clone();
+            end.add(Calendar.DAY_OF_MONTH, 1);
+
+            switch (which) {
+                case 0: // Tất cả thời gian
+                    applyDateRange(null, null, DATE_RANGE_OPTIONS[which]);
+                    break;
+                case 1: // Hôm nay
+                    applyDateRange(start.getTime(), end.getTime(), DATE_RANGE_OPTIONS[which]);
+                    break;
+                case 2: // 7 ngày qua
+                    start.add(Calendar.DAY_OF_MONTH, -6);
+                    applyDateRange(start.getTime(), end.getTime(), DATE_RANGE_OPTIONS[which]);
+                    break;
+                case 3: // Tháng này
+                    start.set(Calendar.DAY_OF_MONTH, 1);
+                    end = (Calendar) start.clone();
+                    end.add(Calendar.MONTH, 1);
+                    applyDateRange(start.getTime(), end.getTime(), DATE_RANGE_OPTIONS[which]);
+                    break;
+                case 4: // Tháng trước
+                    start.set(Calendar.DAY_OF_MONTH, 1);
+                    end = (Calendar) start.clone();
+                    start.add(Calendar.MONTH, -1);
+                    applyDateRange(start.getTime(), end.getTime(), DATE_RANGE_OPTIONS[which]);
+                    break;
+                default:
+                    showCustomDateRangePicker();
+                    break;
+            }
+        });
+        builder.setNegativeButton("Hủy", null);
+        builder.show();
+    }
+
+    private void showCustomDateRangePicker() {
+        MaterialDatePicker.Builder<Pair<Long, Long>> builder = MaterialDatePicker.Builder.dateRangePicker();
+        builder.setTitleText("Chọn khoảng thời gian");
+        MaterialDatePicker<Pair<Long, Long>> picker = builder.build();
+        picker.addOnPositiveButtonClickListener(selection -> {
+            if (selection == null || selection.first == null || selection.second == null) return;
+
+            // Date picker trả về 00:00 UTC của ngày được chọn - đổi sang ngày theo giờ địa phương
+            Calendar start = localDayFromUtc(selection.first);
+            Calendar end = localDayFromUtc(selection.second);
+            end.add(Calendar.DAY_OF_MONTH, 1);
+
+            SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
+            Calendar lastDay = localDayFromUtc(selection.second);
+            String label = format.format(start.getTime()) + " - " + format.format(lastDay.getTime());
+            applyDateRange(start.getTime(), end.getTime(), label);
+        });
+        picker.show(getSupportFragmentManager(), "date_range_picker");
+    }
+
+    private void applyDateRange(Date start, Date end, String label) {
+        rangeStart = start;
+        rangeEnd = end;
+        btnDateFilter.setText(label);
+        showCurrentFilter();
+    }
+
+    private Calendar startOfDay(Calendar calendar) {
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+
+    private Calendar localDayFromUtc(long utcMillis) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(utcMillis);
+        Calendar local = startOfDay(Calendar.getInstance());
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local;
     }
 
     private void showLoading(boolean show) {
         progressBar.setVisibility(show ? View.VISIBLE : View.GONE);
     }
+
+    /**
+     * Các trang đã tải và pager của một bộ lọc (loại giao dịch + khoảng thời gian)
+     */
+    private static class FilterPage {
+        final MergedQueryPager pager;
+        final List<Transaction> transactions = new ArrayList<>();
+        boolean firstPageLoaded;
+
+        FilterPage(MergedQueryPager pager) {
+            this.pager = pager;
+        }
+    }
     
 }
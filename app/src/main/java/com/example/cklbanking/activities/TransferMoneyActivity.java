@@ -13,6 +13,8 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.Account;
+import com.example.cklbanking.repositories.AccountRepository;
+import com.example.cklbanking.repositories.AccountStore;
 import com.example.cklbanking.services.OTPService;
 import com.example.cklbanking.services.TransactionService;
 import com.example.cklbanking.utils.AnimationHelper;
@@ -27,7 +29,6 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -59,6 +60,8 @@ public class TransferMoneyActivity extends AppCompatActivity {
     // Services
     private OTPService otpService;
     private TransactionService transactionService;
+    private AccountRepository accountRepository;
+    private AccountStore.Subscription accountsSubscription;
 
     // Data
     private String userId;
@@ -83,6 +86,7 @@ public class TransferMoneyActivity extends AppCompatActivity {
         db = FirebaseFirestore.getInstance();
         otpService = new OTPService();
         transactionService = new TransactionService();
+        accountRepository = new AccountRepository();
         userId = mAuth.getCurrentUser().getUid();
 
         // Load user info (phone and eKYC status)
@@ -262,29 +266,44 @@ public class TransferMoneyActivity extends AppCompatActivity {
     private void loadUserAccounts() {
         showLoading(true);
 
-        db.collection("accounts")
-                .whereEqualTo("userId", userId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    showLoading(false);
-                    userAccounts = new ArrayList<>();
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Account account = document.toObject(Account.class);
-                        userAccounts.add(account);
-                    }
-                    
-                    // Set first account as default
-                    if (!userAccounts.isEmpty()) {
-                        selectedFromAccount = userAccounts.get(0);
-                        updateFromAccountUI();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    showLoading(false);
-                    Toast.makeText(this, "Lỗi tải tài khoản: " + e.getMessage(), 
-                        Toast.LENGTH_SHORT).show();
-                });
+        // Danh sách tài khoản dùng chung (AccountStore) - số dư cập nhật realtime.
+        // AccountStore cũng nạp sẵn AccountNumberCache, nên khi commit không cần tra cứu tài khoản nguồn
+        accountsSubscription = AccountStore.getInstance().subscribe(userId, new AccountStore.AccountsObserver() {
+            @Override
+            public void onAccountsChanged(List<Account> accounts) {
+                showLoading(false);
+                showUserAccounts(accounts);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                showLoading(false);
+                Toast.makeText(TransferMoneyActivity.this, "Lỗi tải tài khoản: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void showUserAccounts(List<Account> accounts) {
+        userAccounts = new ArrayList<>(accounts);
+        
+        // Giữ tài khoản nguồn đang chọn (lấy bản mới nhất), mặc định tài khoản đầu tiên
+        Account selected = null;
+        if (selectedFromAccount != null) {
+            for (Account account : userAccounts) {
+                if (account.getAccountId().equals(selectedFromAccount.getAccountId())) {
+                    selected = account;
+                    break;
+                }
+            }
+        }
+        if (selected == null && !userAccounts.isEmpty()) {
+            selected = userAccounts.get(0);
+        }
+        if (selected != null) {
+            selectedFromAccount = selected;
+            updateFromAccountUI();
+        }
     }
 
     private void setupBankDropdown() {
@@ -563,4 +582,12 @@ public class TransferMoneyActivity extends AppCompatActivity {
         }
         btnTransfer.setEnabled(!show);
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (accountsSubscription != null) {
+            accountsSubscription.remove();
+        }
+    }
 }
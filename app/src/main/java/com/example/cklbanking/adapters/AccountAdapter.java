@@ -8,6 +8,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
@@ -15,17 +17,32 @@ import com.example.cklbanking.activities.AccountDetailActivity;
 import com.example.cklbanking.models.Account;
 import com.google.android.material.card.MaterialCardView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
-public class AccountAdapter extends RecyclerView.Adapter<AccountAdapter.AccountViewHolder> {
+public class AccountAdapter extends ListAdapter<Account, AccountAdapter.AccountViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Account> DIFF_CALLBACK = new DiffUtil.ItemCallback<Account>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Account oldItem, @NonNull Account newItem) {
+            return Objects.equals(oldItem.getAccountNumber(), newItem.getAccountNumber());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Account oldItem, @NonNull Account newItem) {
+            return Objects.equals(oldItem.getAccountType(), newItem.getAccountType())
+                    && oldItem.getBalance() == newItem.getBalance();
+        }
+    };
 
     private Context context;
-    private List<Account> accounts;
     private OnAccountClickListener listener;
 
     public AccountAdapter(Context context, List<Account> accounts) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.accounts = accounts;
+        updateAccounts(accounts);
     }
 
     public void setOnAccountClickListener(OnAccountClickListener listener) {
@@ -41,15 +58,10 @@ public class AccountAdapter extends RecyclerView.Adapter<AccountAdapter.AccountV
 
     @Override
     public void onBindViewHolder(@NonNull AccountViewHolder holder, int position) {
-        Account account = accounts.get(position);
+        Account account = getItem(position);
         holder.bind(account);
     }
 
-    @Override
-    public int getItemCount() {
-        return accounts.size();
-    }
-
     class AccountViewHolder extends RecyclerView.ViewHolder {
         MaterialCardView cardView;
         View leftBorder;
@@ -113,7 +125,6 @@ public class AccountAdapter extends RecyclerView.Adapter<AccountAdapter.AccountV
     }
 
     public void updateAccounts(List<Account> newAccounts) {
-        this.accounts = newAccounts;
-        notifyDataSetChanged();
+        submitList(newAccounts != null ? new ArrayList<>(newAccounts) : null);
     }
 }
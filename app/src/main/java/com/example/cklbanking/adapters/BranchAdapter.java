@@ -9,18 +9,39 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.Branch;
 import com.google.android.material.card.MaterialCardView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
-public class BranchAdapter extends RecyclerView.Adapter<BranchAdapter.BranchViewHolder> {
+public class BranchAdapter extends ListAdapter<Branch, BranchAdapter.BranchViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Branch> DIFF_CALLBACK = new DiffUtil.ItemCallback<Branch>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Branch oldItem, @NonNull Branch newItem) {
+            return Objects.equals(oldItem.getBranchId(), newItem.getBranchId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Branch oldItem, @NonNull Branch newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && Objects.equals(oldItem.getAddress(), newItem.getAddress())
+                    && Objects.equals(oldItem.getType(), newItem.getType())
+                    && Objects.equals(oldItem.getOpeningHours(), newItem.getOpeningHours())
+                    && oldItem.getLatitude() == newItem.getLatitude()
+                    && oldItem.getLongitude() == newItem.getLongitude()
+                    && oldItem.isFavorite() == newItem.isFavorite();
+        }
+    };
 
     private Context context;
-    private List<Branch> branches;
     private Location userLocation;
     private OnBranchClickListener listener;
 
@@ -29,8 +50,9 @@ public class BranchAdapter extends RecyclerView.Adapter<BranchAdapter.BranchView
     }
 
     public BranchAdapter(Context context, List<Branch> branches) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.branches = branches;
+        updateBranches(branches);
     }
 
     public void setOnBranchClickListener(OnBranchClickListener listener) {
@@ -39,7 +61,8 @@ public class BranchAdapter extends RecyclerView.Adapter<BranchAdapter.BranchView
 
     public void setUserLocation(Location location) {
         this.userLocation = location;
-        notifyDataSetChanged();
+        // Distances on every row change, items themselves don't
+        notifyItemRangeChanged(0, getItemCount());
     }
 
     @NonNull
@@ -51,15 +74,10 @@ public class BranchAdapter extends RecyclerView.Adapter<BranchAdapter.BranchView
 
     @Override
     public void onBindViewHolder(@NonNull BranchViewHolder holder, int position) {
-        Branch branch = branches.get(position);
+        Branch branch = getItem(position);
         holder.bind(branch);
     }
 
-    @Override
-    public int getItemCount() {
-        return branches != null ? branches.size() : 0;
-    }
-
     class BranchViewHolder extends RecyclerView.ViewHolder {
         MaterialCardView cardView;
         ImageView branchIcon, iconFavorite;
@@ -126,8 +144,7 @@ public class BranchAdapter extends RecyclerView.Adapter<BranchAdapter.BranchView
     }
 
     public void updateBranches(List<Branch> newBranches) {
-        this.branches = newBranches;
-        notifyDataSetChanged();
+        submitList(newBranches != null ? new ArrayList<>(newBranches) : null);
     }
 }
 
@@ -6,16 +6,33 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.User;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
-public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.CustomerViewHolder> {
+public class CustomerAdapter extends ListAdapter<User, CustomerAdapter.CustomerViewHolder> {
+
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return Objects.equals(oldItem.getUserId(), newItem.getUserId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return Objects.equals(oldItem.getFullName(), newItem.getFullName())
+                    && Objects.equals(oldItem.getEmail(), newItem.getEmail())
+                    && Objects.equals(oldItem.getPhone(), newItem.getPhone());
+        }
+    };
 
-    private List<User> customers;
     private OnCustomerClickListener listener;
 
     public interface OnCustomerClickListener {
@@ -23,7 +40,12 @@ public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.Custom
     }
 
     public CustomerAdapter(android.content.Context context, List<User> customers) {
-        this.customers = customers;
+        super(DIFF_CALLBACK);
+        updateCustomers(customers);
+    }
+
+    public void updateCustomers(List<User> newCustomers) {
+        submitList(newCustomers != null ? new ArrayList<>(newCustomers) : null);
     }
 
     public void setOnCustomerClickListener(OnCustomerClickListener listener) {
@@ -40,15 +62,10 @@ public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.Custom
 
     @Override
     public void onBindViewHolder(@NonNull CustomerViewHolder holder, int position) {
-        User customer = customers.get(position);
+        User customer = getItem(position);
         holder.bind(customer);
     }
 
-    @Override
-    public int getItemCount() {
-        return customers != null ? customers.size() : 0;
-    }
-
     class CustomerViewHolder extends RecyclerView.ViewHolder {
         private TextView textCustomerName, textCustomerEmail, textCustomerPhone;
 
@@ -60,7 +77,7 @@ public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.Custom
 
             itemView.setOnClickListener(v -> {
                 if (listener != null && getAdapterPosition() != RecyclerView.NO_POSITION) {
-                    listener.onCustomerClick(customers.get(getAdapterPosition()));
+                    listener.onCustomerClick(getItem(getAdapterPosition()));
                 }
             });
         }
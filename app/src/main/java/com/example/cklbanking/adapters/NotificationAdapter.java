@@ -8,24 +8,48 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
 import com.example.cklbanking.models.Notification;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
-public class NotificationAdapter extends RecyclerView.Adapter<NotificationAdapter.ViewHolder> {
+public class NotificationAdapter extends ListAdapter<Notification, NotificationAdapter.ViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Notification> DIFF_CALLBACK = new DiffUtil.ItemCallback<Notification>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Notification oldItem, @NonNull Notification newItem) {
+            return Objects.equals(oldItem.getNotificationId(), newItem.getNotificationId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Notification oldItem, @NonNull Notification newItem) {
+            return Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getMessage(), newItem.getMessage())
+                    && Objects.equals(oldItem.getType(), newItem.getType())
+                    && oldItem.getTimestamp() == newItem.getTimestamp()
+                    && oldItem.isRead() == newItem.isRead();
+        }
+    };
 
     private Context context;
-    private List<Notification> notifications;
 
     public NotificationAdapter(Context context, List<Notification> notifications) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.notifications = notifications;
+        updateNotifications(notifications);
+    }
+
+    public void updateNotifications(List<Notification> newNotifications) {
+        submitList(newNotifications != null ? new ArrayList<>(newNotifications) : null);
     }
 
     @NonNull
@@ -37,7 +61,7 @@ public class NotificationAdapter extends RecyclerView.Adapter<NotificationAdapte
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Notification notification = notifications.get(position);
+        Notification notification = getItem(position);
         
         holder.notificationTitle.setText(notification.getTitle());
         holder.notificationMessage.setText(notification.getMessage());
@@ -60,11 +84,6 @@ public class NotificationAdapter extends RecyclerView.Adapter<NotificationAdapte
         holder.unreadIndicator.setVisibility(notification.isRead() ? View.GONE : View.VISIBLE);
     }
 
-    @Override
-    public int getItemCount() {
-        return notifications.size();
-    }
-
     private String getTimeAgo(long timestamp) {
         long now = System.currentTimeMillis();
         long diff = now - timestamp;
@@ -8,6 +8,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.cklbanking.R;
@@ -15,22 +17,62 @@ import com.example.cklbanking.models.Transaction;
 import com.google.android.material.card.MaterialCardView;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
-public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.TransactionViewHolder> {
+/**
+ * ListAdapter: danh sách mới được diff (theo transactionId) trên background thread,
+ * chỉ các dòng thay đổi mới được bind lại
+ */
+public class TransactionAdapter extends ListAdapter<Transaction, TransactionAdapter.TransactionViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Transaction> DIFF_CALLBACK = new DiffUtil.ItemCallback<Transaction>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return Objects.equals(oldItem.getTransactionId(), newItem.getTransactionId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Transaction oldItem, @NonNull Transaction newItem) {
+            return Objects.equals(oldItem.getType(), newItem.getType())
+                    && Objects.equals(oldItem.getStatus(), newItem.getStatus())
+                    && oldItem.getAmount() == newItem.getAmount()
+                    && Objects.equals(oldItem.getFromAccountId(), newItem.getFromAccountId())
+                    && Objects.equals(oldItem.getToAccountId(), newItem.getToAccountId())
+                    && Objects.equals(oldItem.getTimestamp(), newItem.getTimestamp());
+        }
+    };
 
     private Context context;
-    private List<Transaction> transactions;
     private OnTransactionClickListener listener;
+    // Tài khoản đang xem (sổ giao dịch của một account): giao dịch có toAccountId là
+    // tài khoản này là tiền nhận về. null = danh sách giao dịch của user (đều là gửi đi)
+    private final String viewedAccountId;
 
     public interface OnTransactionClickListener {
         void onTransactionClick(Transaction transaction);
     }
 
     public TransactionAdapter(Context context, List<Transaction> transactions) {
+        this(context, transactions, null);
+    }
+
+    public TransactionAdapter(Context context, List<Transaction> transactions, String viewedAccountId) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.transactions = transactions;
+        this.viewedAccountId = viewedAccountId;
+        updateTransactions(transactions);
+    }
+
+    /**
+     * Tiền chuyển vào tài khoản đang xem
+     */
+    private boolean isIncoming(Transaction transaction) {
+        return viewedAccountId != null
+                && viewedAccountId.equals(transaction.getToAccountId())
+                && !viewedAccountId.equals(transaction.getFromAccountId());
     }
 
     public void setOnTransactionClickListener(OnTransactionClickListener listener) {
@@ -46,15 +88,10 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
 
     @Override
     public void onBindViewHolder(@NonNull TransactionViewHolder holder, int position) {
-        Transaction transaction = transactions.get(position);
+        Transaction transaction = getItem(position);
         holder.bind(transaction);
     }
 
-    @Override
-    public int getItemCount() {
-        return transactions.size();
-    }
-
     class TransactionViewHolder extends RecyclerView.ViewHolder {
         MaterialCardView cardView;
         ImageView transactionIcon;
@@ -76,12 +113,16 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
             // Set transaction title and icon based on type
             String description = "";
             int iconRes = R.drawable.ic_transfer; // Default icon
+            boolean incoming = isIncoming(transaction);
             
             switch (transaction.getType()) {
                 case "transfer":
-                    transactionTitle.setText("Chuyển tiền");
+                    transactionTitle.setText(incoming ? "Nhận tiền" : "Chuyển tiền");
                     iconRes = R.drawable.ic_transfer;
-                    if (transaction.getToAccountId() != null) {
+                    if (incoming) {
+                        description = transaction.getFromAccountId() != null
+                                ? "Từ TK: " + transaction.getFromAccountId() : "Nhận chuyển khoản";
+                    } else if (transaction.getToAccountId() != null) {
                         description = "Đến TK: " + transaction.getToAccountId();
                     } else {
                         description = "Chuyển khoản";
@@ -166,7 +207,7 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
             String amountText;
             int amountColor;
             
-            if (transaction.getType().equals("deposit")) {
+            if (incoming || transaction.getType().equals("deposit")) {
                 amountText = "+" + formatCurrency(transaction.getAmount());
                 amountColor = context.getColor(R.color.success);
             } else {
@@ -218,8 +259,8 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
         }
     }
 
+    // Gửi một bản sao của danh sách - diff chạy nền, chỉ cập nhật các dòng thay đổi
     public void updateTransactions(List<Transaction> newTransactions) {
-        this.transactions = newTransactions;
-        notifyDataSetChanged();
+        submitList(newTransactions != null ? new ArrayList<>(newTransactions) : null);
     }
 }
@@ -1,7 +1,12 @@
 package com.example.cklbanking.models;
 
+import com.example.cklbanking.utils.OpeningSchedule;
+import com.google.firebase.firestore.Exclude;
+import com.google.firebase.firestore.ServerTimestamp;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 public class Branch implements Serializable {
@@ -17,6 +22,12 @@ public class Branch implements Serializable {
     private java.util.List<String> services; // Dịch vụ có sẵn: ["ATM", "Gửi tiết kiệm", "Vay vốn", "Tư vấn"]
     private String imageUrl; // URL hình ảnh chi nhánh
     private boolean isFavorite; // Chi nhánh yêu thích (local, không lưu trong Firestore)
+    @ServerTimestamp // Giờ server mỗi lần ghi - watermark đồng bộ delta (xem BranchCatalog)
+    private Date updatedAt;
+    private boolean deleted; // Xóa mềm để client đồng bộ delta biết mà bỏ đi
+    // Giờ mở cửa đã biên dịch từ openingHours (không lưu Firestore / Serializable)
+    private transient OpeningSchedule schedule;
+    private transient String compiledHours;
 
     // Constructor
     public Branch() {}
@@ -32,6 +43,29 @@ public class Branch implements Serializable {
         this.isOpen = true; // Default to open
     }
 
+    /**
+     * Bản sao (services, updatedAt được sao riêng) - giờ mở cửa đã biên dịch dùng chung
+     * vì OpeningSchedule bất biến
+     */
+    public Branch(Branch other) {
+        this.branchId = other.branchId;
+        this.name = other.name;
+        this.address = other.address;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.phoneNumber = other.phoneNumber;
+        this.openingHours = other.openingHours;
+        this.isOpen = other.isOpen;
+        this.type = other.type;
+        this.services = other.services != null ? new ArrayList<>(other.services) : null;
+        this.imageUrl = other.imageUrl;
+        this.isFavorite = other.isFavorite;
+        this.updatedAt = other.updatedAt != null ? new Date(other.updatedAt.getTime()) : null;
+        this.deleted = other.deleted;
+        this.schedule = other.schedule;
+        this.compiledHours = other.compiledHours;
+    }
+
     // Getters and Setters
     public String getBranchId() { return branchId; }
     public void setBranchId(String branchId) { this.branchId = branchId; }
@@ -55,77 +89,51 @@ public class Branch implements Serializable {
     public void setOpeningHours(String openingHours) { this.openingHours = openingHours; }
 
     public boolean isOpen() {
-        // Nếu đã được set sẵn, dùng giá trị đó
-        if (openingHours == null || openingHours.isEmpty()) {
-            return isOpen; // Fallback to stored value
-        }
-        
-        // Nếu là 24/7, luôn mở
-        if (openingHours.toLowerCase().contains("24/7") || 
-            openingHours.toLowerCase().contains("24h")) {
-            return true;
+        return isOpenAt(OpeningSchedule.currentMinuteOfWeek());
+    }
+
+    /**
+     * Trạng thái mở cửa tại phút minuteOfWeek (OpeningSchedule.currentMinuteOfWeek()).
+     * Lọc nhiều branch: tính minuteOfWeek một lần rồi gọi hàm này cho từng branch.
+     */
+    public boolean isOpenAt(int minuteOfWeek) {
+        OpeningSchedule compiled = schedule();
+        if (compiled == null) {
+            return isOpen; // Không có / không parse được openingHours -> giá trị đã lưu
         }
-        
-        // Tính toán dựa trên giờ hiện tại
-        return calculateIsOpen();
+        return compiled.isOpenAt(minuteOfWeek);
     }
-    
+
     /**
-     * Tính toán xem branch có đang mở cửa không dựa trên openingHours
+     * Số phút tới lúc mở cửa: 0 nếu đang mở, -1 nếu không bao giờ mở
      */
-    private boolean calculateIsOpen() {
-        if (openingHours == null || openingHours.isEmpty()) {
-            return isOpen; // Fallback
+    public int minutesUntilOpen(int minuteOfWeek) {
+        OpeningSchedule compiled = schedule();
+        if (compiled == null) {
+            return isOpen ? 0 : -1;
         }
-        
-        try {
-            // Parse openingHours format: "8:00 - 17:00" hoặc "08:00 - 17:00"
-            String[] parts = openingHours.split("-");
-            if (parts.length != 2) {
-                return isOpen; // Fallback nếu format không đúng
-            }
-            
-            String openTimeStr = parts[0].trim();
-            String closeTimeStr = parts[1].trim();
-            
-            // Parse time
-            String[] openParts = openTimeStr.split(":");
-            String[] closeParts = closeTimeStr.split(":");
-            
-            if (openParts.length != 2 || closeParts.length != 2) {
-                return isOpen; // Fallback
-            }
-            
-            int openHour = Integer.parseInt(openParts[0]);
-            int openMinute = Integer.parseInt(openParts[1]);
-            int closeHour = Integer.parseInt(closeParts[0]);
-            int closeMinute = Integer.parseInt(closeParts[1]);
-            
-            // Get current time
-            java.util.Calendar now = java.util.Calendar.getInstance();
-            int currentHour = now.get(java.util.Calendar.HOUR_OF_DAY);
-            int currentMinute = now.get(java.util.Calendar.MINUTE);
-            
-            // Convert to minutes for easier comparison
-            int currentTime = currentHour * 60 + currentMinute;
-            int openTime = openHour * 60 + openMinute;
-            int closeTime = closeHour * 60 + closeMinute;
-            
-            // Check if current time is within opening hours
-            if (openTime <= closeTime) {
-                // Normal case: 8:00 - 17:00
-                return currentTime >= openTime && currentTime <= closeTime;
-            } else {
-                // Overnight case: 22:00 - 6:00 (next day)
-                return currentTime >= openTime || currentTime <= closeTime;
-            }
-        } catch (Exception e) {
-            // Nếu có lỗi parse, fallback to stored value
-            return isOpen;
+        return compiled.minutesUntilOpen(minuteOfWeek);
+    }
+
+    /**
+     * openingHours được biên dịch một lần, biên dịch lại khi chuỗi thay đổi
+     */
+    private OpeningSchedule schedule() {
+        String hours = openingHours;
+        if (hours != compiledHours) {
+            schedule = OpeningSchedule.compile(hours);
+            compiledHours = hours;
         }
+        return schedule;
     }
     
     public void setOpen(boolean open) { isOpen = open; }
+    
+    /**
+     * Giá trị isOpen đã lưu (Firestore / file), không phải trạng thái hiện tại như isOpen()
+     */
+    @Exclude
+    public boolean isStoredOpen() { return isOpen; }
 
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
@@ -139,6 +147,12 @@ public class Branch implements Serializable {
     public boolean isFavorite() { return isFavorite; }
     public void setFavorite(boolean favorite) { isFavorite = favorite; }
     
+    public Date getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+    
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
+    
     /**
      * Kiểm tra xem branch có dịch vụ cụ thể không
      */
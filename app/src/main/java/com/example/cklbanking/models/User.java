@@ -2,6 +2,7 @@ package com.example.cklbanking.models;
 
 import com.google.firebase.firestore.ServerTimestamp;
 import java.util.Date;
+import java.util.List;
 
 public class User {
     private String userId; // Sẽ dùng để lưu Document ID (từ Firebase Auth)
@@ -11,8 +12,14 @@ public class User {
     private String role; // 'customer' hoặc 'officer'
     private String ekycStatus; // 'pending', 'verified', 'failed'
     private String faceImageUrl;
+    private String faceThumbnailUrl; // Ảnh thu nhỏ cho màn hình rà soát
+    private List<Double> faceTemplate; // Face template eKYC (xem FaceTemplate)
+    private Integer faceTemplateVersion;
+    private String faceTemplateEngine; // Engine tạo ra faceTemplate (xem FaceMatcher)
+    private Long faceTemplateUpdatedAt; // Millis lúc ghi faceTemplate (khoá kiểm tra cache template)
     private Date lockedUntil; // Thời gian khóa tài khoản (null nếu không bị khóa)
     private Integer failedAttempts; // Số lần nhập sai OTP (reset về 0 sau khi đúng)
+    private List<String> searchTokens; // Tiền tố tên đã chuẩn hóa (xem CustomerSearchIndex)
 
     @ServerTimestamp // Tự động lấy giờ server khi tạo
     private Date createdAt;
@@ -50,6 +57,21 @@ public class User {
     public String getFaceImageUrl() { return faceImageUrl; }
     public void setFaceImageUrl(String faceImageUrl) { this.faceImageUrl = faceImageUrl; }
 
+    public String getFaceThumbnailUrl() { return faceThumbnailUrl; }
+    public void setFaceThumbnailUrl(String faceThumbnailUrl) { this.faceThumbnailUrl = faceThumbnailUrl; }
+
+    public List<Double> getFaceTemplate() { return faceTemplate; }
+    public void setFaceTemplate(List<Double> faceTemplate) { this.faceTemplate = faceTemplate; }
+
+    public Integer getFaceTemplateVersion() { return faceTemplateVersion; }
+    public void setFaceTemplateVersion(Integer faceTemplateVersion) { this.faceTemplateVersion = faceTemplateVersion; }
+
+    public String getFaceTemplateEngine() { return faceTemplateEngine; }
+    public void setFaceTemplateEngine(String faceTemplateEngine) { this.faceTemplateEngine = faceTemplateEngine; }
+
+    public Long getFaceTemplateUpdatedAt() { return faceTemplateUpdatedAt; }
+    public void setFaceTemplateUpdatedAt(Long faceTemplateUpdatedAt) { this.faceTemplateUpdatedAt = faceTemplateUpdatedAt; }
+
     public String getEkycStatus() { return ekycStatus;}
     public void setEkycStatus(String ekycStatus) { this.ekycStatus = ekycStatus; }
 
@@ -61,4 +83,7 @@ public class User {
 
     public Integer getFailedAttempts() { return failedAttempts != null ? failedAttempts : 0; }
     public void setFailedAttempts(Integer failedAttempts) { this.failedAttempts = failedAttempts; }
+
+    public List<String> getSearchTokens() { return searchTokens; }
+    public void setSearchTokens(List<String> searchTokens) { this.searchTokens = searchTokens; }
 }
\ No newline at end of file
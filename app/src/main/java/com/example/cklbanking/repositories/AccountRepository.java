@@ -1,16 +1,20 @@
 package com.example.cklbanking.repositories;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.example.cklbanking.models.Account; // Import model Account
+import com.example.cklbanking.utils.AccountNumberCache;
 
 public class AccountRepository {
 
     private static final String COLLECTION_NAME = "accounts";
     private final CollectionReference accountCollection;
+    private final AccountNumberCache accountNumberCache = AccountNumberCache.getInstance();
 
     public AccountRepository() {
         FirebaseFirestore db = FirebaseFirestore.getInstance();
@@ -22,6 +26,7 @@ public class AccountRepository {
         // Tự tạo ID ngẫu nhiên
         String newAccountId = accountCollection.document().getId();
         account.setAccountId(newAccountId);
+        accountNumberCache.put(account.getAccountNumber(), newAccountId);
         return accountCollection.document(newAccountId).set(account);
     }
 
@@ -35,6 +40,69 @@ public class AccountRepository {
         return accountCollection.document(accountId).get();
     }
 
+    // Lấy account theo số tài khoản (dùng cache accountNumber -> accountId)
+    // Kết quả null nếu không tồn tại
+    public Task<DocumentSnapshot> getAccountByNumber(String accountNumber) {
+        AccountNumberCache.Lookup cached = accountNumberCache.get(accountNumber);
+        if (cached != null) {
+            if (!cached.exists()) {
+                return Tasks.forResult(null);
+            }
+            // Cache hit: đọc trực tiếp theo document ID, không cần query
+            return getAccountById(cached.getAccountId()).continueWith(task -> {
+                DocumentSnapshot doc = task.getResult();
+                if (doc == null || !doc.exists()) {
+                    // Tài khoản đã bị xóa -> bỏ entry cũ
+                    accountNumberCache.put(accountNumber, null);
+                    return null;
+                }
+                return doc;
+            });
+        }
+        return queryAccountByNumber(accountNumber).continueWith(task -> {
+            QuerySnapshot snapshot = task.getResult();
+            if (snapshot == null || snapshot.isEmpty()) {
+                accountNumberCache.put(accountNumber, null);
+                return null;
+            }
+            DocumentSnapshot doc = snapshot.getDocuments().get(0);
+            accountNumberCache.put(accountNumber, doc.getId());
+            return doc;
+        });
+    }
+
+    // Chuyển số tài khoản thành document ID (null nếu không tồn tại)
+    // Cache hit không tốn round-trip nào
+    public Task<String> resolveAccountId(String accountNumber) {
+        AccountNumberCache.Lookup cached = accountNumberCache.get(accountNumber);
+        if (cached != null) {
+            return Tasks.forResult(cached.getAccountId());
+        }
+        return queryAccountByNumber(accountNumber).continueWith(task -> {
+            QuerySnapshot snapshot = task.getResult();
+            String accountId = snapshot == null || snapshot.isEmpty()
+                    ? null : snapshot.getDocuments().get(0).getId();
+            accountNumberCache.put(accountNumber, accountId);
+            return accountId;
+        });
+    }
+
+    // Ghi nhận các account đã tải sẵn (vd. danh sách tài khoản của user) vào cache
+    public void primeAccountNumberCache(Iterable<Account> accounts) {
+        for (Account account : accounts) {
+            if (account.getAccountId() != null) {
+                accountNumberCache.put(account.getAccountNumber(), account.getAccountId());
+            }
+        }
+    }
+
+    private Task<QuerySnapshot> queryAccountByNumber(String accountNumber) {
+        return accountCollection
+                .whereEqualTo("accountNumber", accountNumber)
+                .limit(1)
+                .get();
+    }
+
     // Cập nhật số dư tài khoản
     public Task<Void> updateBalance(String accountId, double newBalance) {
         return accountCollection.document(accountId).update("balance", newBalance);
@@ -0,0 +1,185 @@
+package com.example.cklbanking.repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.cklbanking.models.Account;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide danh sách tài khoản của user, cập nhật realtime
+ *
+ * Mỗi user có một snapshot listener duy nhất trên AccountRepository.getAccountsForUser,
+ * dùng chung (ref-count) cho tất cả màn hình đang subscribe. Màn hình mới subscribe nhận
+ * ngay danh sách hiện có (không tốn thêm lượt đọc), thay đổi số dư được đẩy tới mọi màn hình.
+ * Khi màn hình cuối cùng hủy subscribe, listener được giữ thêm LINGER_MILLIS để chuyển
+ * màn hình trong cùng một luồng không phải tạo lại listener.
+ *
+ * Gọi từ main thread.
+ */
+public class AccountStore {
+    private static final String TAG = "AccountStore";
+    private static final long LINGER_MILLIS = 10 * 1000; // 10 seconds
+
+    private static AccountStore instance;
+
+    private final AccountRepository accountRepository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, UserAccounts> users = new HashMap<>();
+
+    public static synchronized AccountStore getInstance() {
+        if (instance == null) {
+            instance = new AccountStore();
+        }
+        return instance;
+    }
+
+    private AccountStore() {
+        accountRepository = new AccountRepository();
+    }
+
+    /**
+     * Theo dõi danh sách tài khoản của user
+     * @return Subscription - gọi remove() trong onDestroy của màn hình
+     */
+    public Subscription subscribe(String userId, AccountsObserver observer) {
+        UserAccounts entry = users.get(userId);
+        if (entry == null) {
+            entry = new UserAccounts(userId);
+            users.put(userId, entry);
+        }
+        entry.cancelRelease();
+        entry.observers.add(observer);
+        entry.start();
+
+        // Đã có dữ liệu -> trả về ngay
+        if (entry.accounts != null) {
+            observer.onAccountsChanged(entry.accounts);
+        }
+        return new Subscription(entry, observer);
+    }
+
+    /**
+     * Danh sách tài khoản mới nhất đang có (null nếu chưa có listener hoặc chưa tải xong)
+     */
+    public List<Account> getAccounts(String userId) {
+        UserAccounts entry = users.get(userId);
+        return entry != null ? entry.accounts : null;
+    }
+
+    public interface AccountsObserver {
+        /**
+         * @param accounts danh sách không thể sửa đổi, mỗi Account đã có accountId
+         */
+        void onAccountsChanged(List<Account> accounts);
+
+        void onError(Exception e);
+    }
+
+    public class Subscription {
+        private final UserAccounts entry;
+        private AccountsObserver observer;
+
+        private Subscription(UserAccounts entry, AccountsObserver observer) {
+            this.entry = entry;
+            this.observer = observer;
+        }
+
+        public void remove() {
+            if (observer == null) {
+                return;
+            }
+            entry.observers.remove(observer);
+            observer = null;
+            if (entry.observers.isEmpty()) {
+                entry.scheduleRelease();
+            }
+        }
+    }
+
+    private class UserAccounts {
+        final String userId;
+        final Set<AccountsObserver> observers = new LinkedHashSet<>();
+        final Runnable release = this::release;
+        ListenerRegistration registration;
+        List<Account> accounts;
+
+        UserAccounts(String userId) {
+            this.userId = userId;
+        }
+
+        void start() {
+            if (registration != null) {
+                return;
+            }
+            registration = accountRepository.getAccountsForUser(userId)
+                    .addSnapshotListener(this::onSnapshot);
+        }
+
+        void onSnapshot(QuerySnapshot snapshot, FirebaseFirestoreException error) {
+            if (error != null) {
+                Log.e(TAG, "Accounts listener failed for " + userId, error);
+                // Listener bị hủy sau lỗi - lần subscribe sau sẽ tạo lại
+                registration = null;
+                for (AccountsObserver observer : new ArrayList<>(observers)) {
+                    observer.onError(error);
+                }
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+
+            List<Account> loaded = new ArrayList<>();
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                Account account = document.toObject(Account.class);
+                if (account == null) {
+                    continue;
+                }
+                if (account.getAccountId() == null) {
+                    account.setAccountId(document.getId());
+                }
+                loaded.add(account);
+            }
+            accounts = Collections.unmodifiableList(loaded);
+
+            // Tài khoản của chính user - không cần tra cứu số tài khoản khi giao dịch
+            accountRepository.primeAccountNumberCache(accounts);
+
+            for (AccountsObserver observer : new ArrayList<>(observers)) {
+                observer.onAccountsChanged(accounts);
+            }
+        }
+
+        void scheduleRelease() {
+            mainHandler.postDelayed(release, LINGER_MILLIS);
+        }
+
+        void cancelRelease() {
+            mainHandler.removeCallbacks(release);
+        }
+
+        void release() {
+            if (!observers.isEmpty()) {
+                return;
+            }
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+            users.remove(userId);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.cklbanking.repositories;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.cklbanking.models.Branch;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Danh mục chi nhánh lưu trên máy, đồng bộ delta theo updatedAt
+ *
+ * Chi nhánh chỉ thay đổi vài lần mỗi tháng, nên thay vì tải lại cả collection mỗi lần mở
+ * màn hình: danh sách được lưu vào file (filesDir), lần mở sau hiển thị ngay từ file rồi chỉ
+ * query các document có updatedAt >= watermark (updatedAt lớn nhất đã thấy - giờ server,
+ * không phụ thuộc đồng hồ máy). Xóa chi nhánh là xóa mềm (deleted = true) để delta thấy được.
+ *
+ * Document cũ chưa có updatedAt chỉ được thấy khi đồng bộ toàn bộ: lần đầu và định kỳ
+ * mỗi FULL_SYNC_INTERVAL_MILLIS.
+ *
+ * Process-wide (getInstance). Gọi và nhận callback trên main thread; đọc/ghi file chạy nền.
+ */
+public class BranchCatalog {
+
+    private static final String TAG = "BranchCatalog";
+    private static final String FILE_NAME = "branch_catalog.json";
+    private static final int FILE_VERSION = 1;
+    private static final long MIN_SYNC_INTERVAL_MILLIS = 60 * 1000; // 1 minute
+    private static final long FULL_SYNC_INTERVAL_MILLIS = 7L * 24 * 60 * 60 * 1000; // 7 days
+
+    private static BranchCatalog instance;
+
+    public interface CatalogListener {
+        /**
+         * Có thể được gọi hai lần: danh sách lưu trên máy, rồi danh sách sau khi đồng bộ
+         * (lần hai chỉ khi có thay đổi)
+         * @param branches danh sách và từng Branch đều là bản sao riêng của listener,
+         *                 có thể sửa (vd. setFavorite) mà không ảnh hưởng danh mục
+         */
+        void onBranchesLoaded(List<Branch> branches, boolean fromLocal);
+
+        /**
+         * Chỉ gọi khi không có danh sách nào để hiển thị
+         */
+        void onError(Exception e);
+    }
+
+    private final BranchRepository branchRepository;
+    private final File file;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Main thread
+    private Map<String, Branch> entries; // null = chưa đọc file
+    private long watermark;
+    private long fullSyncAt;
+    private long lastSyncAt;
+    private boolean syncing;
+    // Listener đang chờ lần đồng bộ hiện tại -> đã nhận danh sách local hay chưa
+    private final Map<CatalogListener, Boolean> waiting = new LinkedHashMap<>();
+
+    public static synchronized BranchCatalog getInstance(Context context) {
+        if (instance == null) {
+            instance = new BranchCatalog(new BranchRepository(),
+                    new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    public BranchCatalog(BranchRepository branchRepository, File file) {
+        this.branchRepository = branchRepository;
+        this.file = file;
+    }
+
+    /**
+     * Trả danh sách đang có (nếu có) rồi đồng bộ delta với server
+     */
+    public void load(CatalogListener listener) {
+        if (entries != null) {
+            boolean delivered = !entries.isEmpty();
+            if (delivered) {
+                listener.onBranchesLoaded(snapshot(), true);
+            }
+            sync(listener, delivered);
+            return;
+        }
+
+        ioExecutor.execute(() -> {
+            Stored stored = readFile();
+            mainHandler.post(() -> {
+                if (entries == null) {
+                    entries = stored.entries;
+                    watermark = stored.watermark;
+                    fullSyncAt = stored.fullSyncAt;
+                }
+                boolean delivered = !entries.isEmpty();
+                if (delivered) {
+                    listener.onBranchesLoaded(snapshot(), true);
+                }
+                sync(listener, delivered);
+            });
+        });
+    }
+
+    private void sync(CatalogListener listener, boolean delivered) {
+        long now = System.currentTimeMillis();
+        if (delivered && now - lastSyncAt < MIN_SYNC_INTERVAL_MILLIS) {
+            return;
+        }
+        waiting.put(listener, delivered);
+        if (syncing) {
+            return;
+        }
+        boolean full = watermark == 0 || now - fullSyncAt > FULL_SYNC_INTERVAL_MILLIS;
+        Query query = full ? branchRepository.getAllBranches()
+                : branchRepository.getBranchesUpdatedSince(new Date(watermark));
+
+        syncing = true;
+        query.get(Source.SERVER)
+                .addOnSuccessListener(snapshot -> {
+                    syncing = false;
+                    lastSyncAt = System.currentTimeMillis();
+                    boolean changed = merge(snapshot, full);
+                    if (full) {
+                        fullSyncAt = lastSyncAt;
+                    }
+                    Log.d(TAG, (full ? "Full" : "Delta") + " sync: " + snapshot.size()
+                            + " documents, changed=" + changed + ", total=" + entries.size());
+                    if (changed || full) {
+                        writeFileAsync();
+                    }
+                    for (Map.Entry<CatalogListener, Boolean> entry : takeWaiting().entrySet()) {
+                        if (changed || !entry.getValue()) {
+                            entry.getKey().onBranchesLoaded(snapshot(), false);
+                        }
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    syncing = false;
+                    // Offline - listener đã có danh sách local thì giữ nguyên
+                    Log.w(TAG, "Branch sync failed", e);
+                    for (Map.Entry<CatalogListener, Boolean> entry : takeWaiting().entrySet()) {
+                        if (!entry.getValue()) {
+                            entry.getKey().onError(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return true nếu danh sách thay đổi
+     */
+    private boolean merge(QuerySnapshot snapshot, boolean full) {
+        Map<String, Branch> target = full ? new LinkedHashMap<>() : entries;
+        boolean changed = full;
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            Branch branch = document.toObject(Branch.class);
+            if (branch == null) {
+                continue;
+            }
+            branch.setBranchId(document.getId());
+            Date updatedAt = branch.getUpdatedAt();
+            if (updatedAt != null) {
+                watermark = Math.max(watermark, updatedAt.getTime());
+            }
+
+            if (branch.isDeleted()) {
+                changed |= target.remove(document.getId()) != null;
+                continue;
+            }
+            Branch existing = target.get(document.getId());
+            if (existing != null && existing.getUpdatedAt() != null && updatedAt != null
+                    && !updatedAt.after(existing.getUpdatedAt())) {
+                continue; // Bản trùng do query >= watermark
+            }
+            target.put(document.getId(), branch);
+            changed = true;
+        }
+        entries = target;
+        return changed;
+    }
+
+    private Map<CatalogListener, Boolean> takeWaiting() {
+        Map<CatalogListener, Boolean> listeners = new LinkedHashMap<>(waiting);
+        waiting.clear();
+        return listeners;
+    }
+
+    /**
+     * Bản sao theo tên (như getAllBranches) - delta chèn document mới vào cuối map.
+     * Sao từng Branch: danh mục dùng chung cả process, listener sửa (vd. setFavorite của user
+     * hiện tại) không được lọt vào lần load sau.
+     */
+    private List<Branch> snapshot() {
+        List<Branch> branches = new ArrayList<>(entries.size());
+        for (Branch branch : entries.values()) {
+            branches.add(new Branch(branch));
+        }
+        Collections.sort(branches, (a, b) -> {
+            String nameA = a.getName() != null ? a.getName() : "";
+            String nameB = b.getName() != null ? b.getName() : "";
+            return nameA.compareTo(nameB);
+        });
+        return branches;
+    }
+
+    // --- File ---
+
+    private static class Stored {
+        Map<String, Branch> entries = new LinkedHashMap<>();
+        long watermark;
+        long fullSyncAt;
+    }
+
+    private void writeFileAsync() {
+        String content;
+        try {
+            content = toJson(new ArrayList<>(entries.values()), watermark, fullSyncAt).toString();
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to encode branch catalogue", e);
+            return;
+        }
+        ioExecutor.execute(() -> {
+            // Ghi file tạm rồi rename để không bao giờ còn lại file ghi dở
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream output = new FileOutputStream(temp)) {
+                output.write(content.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write branch catalogue", e);
+                return;
+            }
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Failed to replace branch catalogue");
+            }
+        });
+    }
+
+    private Stored readFile() {
+        Stored stored = new Stored();
+        if (!file.exists()) {
+            return stored;
+        }
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = input.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            JSONObject json = new JSONObject(new String(data, 0, offset, StandardCharsets.UTF_8));
+            if (json.optInt("version") != FILE_VERSION) {
+                return stored; // Format cũ -> đồng bộ toàn bộ
+            }
+            JSONArray branches = json.getJSONArray("branches");
+            for (int i = 0; i < branches.length(); i++) {
+                Branch branch = branchFromJson(branches.getJSONObject(i));
+                stored.entries.put(branch.getBranchId(), branch);
+            }
+            stored.watermark = json.optLong("watermark");
+            stored.fullSyncAt = json.optLong("fullSyncAt");
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to read branch catalogue, will resync", e);
+            return new Stored();
+        }
+        return stored;
+    }
+
+    private static JSONObject toJson(List<Branch> branches, long watermark, long fullSyncAt) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Branch branch : branches) {
+            JSONObject json = new JSONObject();
+            json.put("branchId", branch.getBranchId());
+            json.put("name", branch.getName());
+            json.put("address", branch.getAddress());
+            json.put("latitude", branch.getLatitude());
+            json.put("longitude", branch.getLongitude());
+            json.put("phoneNumber", branch.getPhoneNumber());
+            json.put("openingHours", branch.getOpeningHours());
+            // Giá trị lưu trên Firestore, không phải isOpen() tính theo giờ hiện tại
+            json.put("open", branch.isStoredOpen());
+            json.put("type", branch.getType());
+            json.put("imageUrl", branch.getImageUrl());
+            if (branch.getServices() != null) {
+                json.put("services", new JSONArray(branch.getServices()));
+            }
+            if (branch.getUpdatedAt() != null) {
+                json.put("updatedAt", branch.getUpdatedAt().getTime());
+            }
+            array.put(json);
+        }
+        return new JSONObject()
+                .put("version", FILE_VERSION)
+                .put("watermark", watermark)
+                .put("fullSyncAt", fullSyncAt)
+                .put("branches", array);
+    }
+
+    private static Branch branchFromJson(JSONObject json) throws JSONException {
+        Branch branch = new Branch();
+        branch.setBranchId(json.getString("branchId"));
+        branch.setName(json.optString("name", null));
+        branch.setAddress(json.optString("address", null));
+        branch.setLatitude(json.getDouble("latitude"));
+        branch.setLongitude(json.getDouble("longitude"));
+        branch.setPhoneNumber(json.optString("phoneNumber", null));
+        branch.setOpeningHours(json.optString("openingHours", null));
+        branch.setOpen(json.optBoolean("open", true));
+        branch.setType(json.optString("type", null));
+        branch.setImageUrl(json.optString("imageUrl", null));
+        JSONArray services = json.optJSONArray("services");
+        if (services != null) {
+            List<String> list = new ArrayList<>(services.length());
+            for (int i = 0; i < services.length(); i++) {
+                list.add(services.getString(i));
+            }
+            branch.setServices(list);
+        }
+        if (json.has("updatedAt")) {
+            branch.setUpdatedAt(new Date(json.getLong("updatedAt")));
+        }
+        return branch;
+    }
+}
@@ -2,18 +2,24 @@ package com.example.cklbanking.repositories;
 
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.example.cklbanking.models.Branch;
 
+import java.util.Date;
+
 public class BranchRepository {
 
     private static final String COLLECTION_NAME = "branches";
+    private static final String FAVORITES_COLLECTION_NAME = "favorite_branches";
     private final CollectionReference branchCollection;
+    private final CollectionReference favoriteCollection;
 
     public BranchRepository() {
         FirebaseFirestore db = FirebaseFirestore.getInstance();
         this.branchCollection = db.collection(COLLECTION_NAME);
+        this.favoriteCollection = db.collection(FAVORITES_COLLECTION_NAME);
     }
 
     // Lấy tất cả branches
@@ -21,6 +27,19 @@ public class BranchRepository {
         return branchCollection.orderBy("name");
     }
 
+    // Branches thay đổi (kể cả xóa mềm) từ thời điểm since - đồng bộ delta
+    // >= vì nhiều document có thể cùng updatedAt; bản trùng được bỏ qua khi merge
+    public Query getBranchesUpdatedSince(Date since) {
+        return branchCollection
+                .whereGreaterThanOrEqualTo("updatedAt", since)
+                .orderBy("updatedAt");
+    }
+
+    // Chi nhánh yêu thích của user
+    public Query getFavoriteBranches(String userId) {
+        return favoriteCollection.whereEqualTo("userId", userId);
+    }
+
     // Lấy branches theo loại (branch hoặc atm)
     public Query getBranchesByType(String type) {
         return branchCollection
@@ -32,17 +51,20 @@ public class BranchRepository {
     public Task<Void> createBranch(Branch branch) {
         String newBranchId = branchCollection.document().getId();
         branch.setBranchId(newBranchId);
+        branch.setUpdatedAt(null); // @ServerTimestamp
         return branchCollection.document(newBranchId).set(branch);
     }
 
     // Cập nhật branch
     public Task<Void> updateBranch(String branchId, Branch branch) {
+        branch.setUpdatedAt(null); // @ServerTimestamp
         return branchCollection.document(branchId).set(branch);
     }
 
-    // Xóa branch (dành cho admin)
+    // Xóa branch (dành cho admin) - xóa mềm, client đồng bộ delta không thấy document bị xóa hẳn
     public Task<Void> deleteBranch(String branchId) {
-        return branchCollection.document(branchId).delete();
+        return branchCollection.document(branchId)
+                .update("deleted", true, "updatedAt", FieldValue.serverTimestamp());
     }
 }
 
@@ -0,0 +1,169 @@
+package com.example.cklbanking.repositories;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Phân trang trên nhiều query cùng sắp xếp theo "timestamp" giảm dần, trộn (k-way merge)
+ * thành một luồng duy nhất.
+ *
+ * Mỗi query có cursor (startAfter) và buffer riêng; một query chỉ được tải thêm khi buffer
+ * của nó đã hết, nên số document đọc gần bằng số document hiển thị (cộng tối đa một trang
+ * đọc trước cho mỗi query). Document xuất hiện ở nhiều query (vd. nạp tiền: from == to)
+ * chỉ được trả về một lần.
+ *
+ * Không thread-safe - gọi từ main thread như các Firestore listener khác.
+ */
+public class MergedQueryPager {
+
+    private static final String FIELD_TIMESTAMP = "timestamp";
+
+    private final List<Stream> streams = new ArrayList<>();
+    private final int pageSize;
+    private final Set<String> returnedIds = new HashSet<>();
+    private Task<List<DocumentSnapshot>> pendingPage;
+
+    /**
+     * @param queries các query đã có orderBy("timestamp", DESCENDING), chưa có limit/cursor
+     */
+    public MergedQueryPager(List<Query> queries, int pageSize) {
+        for (Query query : queries) {
+            streams.add(new Stream(query));
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Tải trang tiếp theo. Nếu đang có một trang được tải thì trả về chính task đó.
+     */
+    public Task<List<DocumentSnapshot>> loadNextPage() {
+        if (pendingPage != null && !pendingPage.isComplete()) {
+            return pendingPage;
+        }
+        pendingPage = fill(new ArrayList<>());
+        return pendingPage;
+    }
+
+    public boolean hasMore() {
+        for (Stream stream : streams) {
+            if (!stream.buffer.isEmpty() || !stream.exhausted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isLoading() {
+        return pendingPage != null && !pendingPage.isComplete();
+    }
+
+    private Task<List<DocumentSnapshot>> fill(List<DocumentSnapshot> page) {
+        List<Task<Void>> fetches = new ArrayList<>();
+        for (Stream stream : streams) {
+            if (stream.needsRefill()) {
+                fetches.add(stream.fetch(pageSize));
+            }
+        }
+
+        return Tasks.whenAllComplete(fetches).continueWithTask(done -> {
+            for (Task<Void> fetch : fetches) {
+                if (!fetch.isSuccessful()) {
+                    // Giữ lại những gì đã trộn được; lỗi sẽ lặp lại ở lần tải sau
+                    if (!page.isEmpty()) {
+                        return Tasks.forResult(page);
+                    }
+                    return Tasks.forException(fetch.getException());
+                }
+            }
+
+            merge(page);
+            if (page.size() < pageSize && anyNeedsRefill()) {
+                return fill(page);
+            }
+            return Tasks.forResult(page);
+        });
+    }
+
+    /**
+     * Lấy lần lượt document mới nhất trong các buffer, dừng khi đủ trang hoặc
+     * một query còn dữ liệu trên server nhưng buffer đã hết (cần tải thêm mới so sánh được)
+     */
+    private void merge(List<DocumentSnapshot> page) {
+        while (page.size() < pageSize) {
+            Stream newest = null;
+            for (Stream stream : streams) {
+                if (stream.needsRefill()) {
+                    return;
+                }
+                if (stream.buffer.isEmpty()) {
+                    continue;
+                }
+                if (newest == null || timestampOf(stream.buffer.peekFirst()) > timestampOf(newest.buffer.peekFirst())) {
+                    newest = stream;
+                }
+            }
+            if (newest == null) {
+                return;
+            }
+
+            DocumentSnapshot document = newest.buffer.pollFirst();
+            if (returnedIds.add(document.getId())) {
+                page.add(document);
+            }
+        }
+    }
+
+    private boolean anyNeedsRefill() {
+        for (Stream stream : streams) {
+            if (stream.needsRefill()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long timestampOf(DocumentSnapshot document) {
+        Date timestamp = document.getDate(FIELD_TIMESTAMP);
+        // Server timestamp chưa được ghi (pending write) -> mới nhất
+        return timestamp != null ? timestamp.getTime() : Long.MAX_VALUE;
+    }
+
+    private static class Stream {
+        final Query query;
+        final ArrayDeque<DocumentSnapshot> buffer = new ArrayDeque<>();
+        DocumentSnapshot lastDocument;
+        boolean exhausted;
+
+        Stream(Query query) {
+            this.query = query;
+        }
+
+        boolean needsRefill() {
+            return buffer.isEmpty() && !exhausted;
+        }
+
+        Task<Void> fetch(int limit) {
+            Query page = lastDocument != null ? query.startAfter(lastDocument) : query;
+            return page.limit(limit).get().continueWith(task -> {
+                QuerySnapshot snapshot = task.getResult();
+                List<DocumentSnapshot> documents = snapshot.getDocuments();
+                buffer.addAll(documents);
+                if (!documents.isEmpty()) {
+                    lastDocument = documents.get(documents.size() - 1);
+                }
+                exhausted = documents.size() < limit;
+                return null;
+            });
+        }
+    }
+}
@@ -6,9 +6,29 @@ import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.example.cklbanking.models.Transaction;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
 public class TransactionRepository {
 
     private static final String COLLECTION_NAME = "transactions";
+
+    // Bộ lọc loại giao dịch dùng trong lịch sử giao dịch
+    public static final String TYPE_FILTER_ALL = "all";
+    public static final String TYPE_FILTER_UTILITIES = "utilities";
+
+    // Các loại giao dịch thuộc nhóm "Tiện ích" (whereIn cho phép tối đa 30 giá trị)
+    public static final List<String> UTILITY_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "bill_payment",
+            "phone_recharge",
+            "flight_ticket",
+            "movie_ticket",
+            "hotel_booking",
+            "ecommerce_payment"
+    ));
+
     private final CollectionReference transactionCollection;
 
     public TransactionRepository() {
@@ -31,19 +51,79 @@ public class TransactionRepository {
     }
 
     // Lấy transactions của account theo loại
+    // type: một loại cụ thể, TYPE_FILTER_UTILITIES (cả nhóm tiện ích) hoặc TYPE_FILTER_ALL
     public Query getTransactionsByAccountAndType(String accountId, String type) {
-        return transactionCollection
-                .whereEqualTo("fromAccountId", accountId)
-                .whereEqualTo("type", type)
+        return getTransactionsByAccountAndType(accountId, type, null, null);
+    }
+
+    // Như trên, giới hạn trong khoảng thời gian [from, to) - null nghĩa là không giới hạn phía đó
+    public Query getTransactionsByAccountAndType(String accountId, String type, Date from, Date to) {
+        Query query = applyTypeFilter(transactionCollection.whereEqualTo("fromAccountId", accountId), type);
+        return applyDateRange(query, from, to)
                 .orderBy("timestamp", Query.Direction.DESCENDING);
     }
 
-    // Lấy transactions của account (bao gồm cả gửi và nhận)
-    public Query getAllTransactionsForAccount(String accountId) {
-        // Firestore không hỗ trợ OR query trực tiếp, nên cần query riêng
-        // Hoặc có thể lưu thêm field accountIds (array) để query dễ hơn
+    // Lấy tất cả transactions của một user
+    public Query getTransactionsByUser(String userId) {
         return transactionCollection
-                .whereEqualTo("fromAccountId", accountId)
+                .whereEqualTo("userId", userId)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    // Lấy transactions của user theo loại (cùng quy ước type như getTransactionsByAccountAndType)
+    public Query getTransactionsByUserAndType(String userId, String type) {
+        return getTransactionsByUserAndType(userId, type, null, null);
+    }
+
+    public Query getTransactionsByUserAndType(String userId, String type, Date from, Date to) {
+        Query query = applyTypeFilter(transactionCollection.whereEqualTo("userId", userId), type);
+        return applyDateRange(query, from, to)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    // Lấy transactions theo loại (không giới hạn user/account)
+    public Query getTransactionsByType(String type) {
+        return getTransactionsByType(type, null, null);
+    }
+
+    public Query getTransactionsByType(String type, Date from, Date to) {
+        return applyDateRange(applyTypeFilter(transactionCollection, type), from, to)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    private Query applyTypeFilter(Query query, String type) {
+        if (type == null || TYPE_FILTER_ALL.equals(type)) {
+            return query;
+        }
+        if (TYPE_FILTER_UTILITIES.equals(type)) {
+            return query.whereIn("type", UTILITY_TYPES);
+        }
+        return query.whereEqualTo("type", type);
+    }
+
+    private Query applyDateRange(Query query, Date from, Date to) {
+        if (from != null) {
+            query = query.whereGreaterThanOrEqualTo("timestamp", from);
+        }
+        if (to != null) {
+            query = query.whereLessThan("timestamp", to);
+        }
+        return query;
+    }
+
+    // Sổ giao dịch của account (bao gồm cả gửi và nhận)
+    // Firestore không hỗ trợ OR trên hai field khác nhau, nên chạy song song hai query
+    // (fromAccountId, toAccountId) và trộn theo timestamp thành một luồng phân trang
+    public MergedQueryPager getAllTransactionsForAccount(String accountId, int pageSize) {
+        return getAllTransactionsForAccount(accountId, TYPE_FILTER_ALL, null, null, pageSize);
+    }
+
+    public MergedQueryPager getAllTransactionsForAccount(String accountId, String type,
+                                                          Date from, Date to, int pageSize) {
+        Query outgoing = getTransactionsByAccountAndType(accountId, type, from, to);
+        Query incoming = applyTypeFilter(transactionCollection.whereEqualTo("toAccountId", accountId), type);
+        incoming = applyDateRange(incoming, from, to)
                 .orderBy("timestamp", Query.Direction.DESCENDING);
+        return new MergedQueryPager(Arrays.asList(outgoing, incoming), pageSize);
     }
 }
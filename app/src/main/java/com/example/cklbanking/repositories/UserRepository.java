@@ -1,15 +1,24 @@
 package com.example.cklbanking.repositories;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.example.cklbanking.models.User; // Import model User
+import com.example.cklbanking.utils.CustomerSearchIndex;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class UserRepository {
 
     private static final String COLLECTION_NAME = "users";
+    private static final int NAME_SEARCH_PAGE_SIZE = 50;
+    private static final int NAME_SEARCH_MAX_PAGES = 20; // Tối đa 1000 document mỗi lần tìm
     private final CollectionReference userCollection;
 
     public UserRepository() {
@@ -20,6 +29,7 @@ public class UserRepository {
     // Dùng khi Đăng ký
     public Task<Void> createUser(User user) {
         // Dùng user.getUid() làm Document ID
+        user.setSearchTokens(CustomerSearchIndex.buildSearchTokens(user.getFullName()));
         return userCollection.document(user.getUserId()).set(user);
     }
 
@@ -36,6 +46,7 @@ public class UserRepository {
 
     // Dùng cho Officer: Cập nhật toàn bộ thông tin user
     public Task<Void> updateUser(String userId, User user) {
+        user.setSearchTokens(CustomerSearchIndex.buildSearchTokens(user.getFullName()));
         return userCollection.document(userId).set(user);
     }
 
@@ -57,9 +68,41 @@ public class UserRepository {
     }
 
     // Dùng cho Officer: Tìm kiếm customer theo tên (fullName)
-    public Query searchCustomerByName(String name) {
-        return userCollection.whereEqualTo("role", "customer")
-                .whereGreaterThanOrEqualTo("fullName", name)
-                .whereLessThanOrEqualTo("fullName", name + "\uf8ff");
+    // Không phân biệt hoa thường/dấu, mọi từ phải là tiền tố của một từ trong tên.
+    // Server lọc theo từ chọn lọc nhất (field searchTokens), các từ còn lại kiểm tra ở client;
+    // đọc tiếp từng trang tới khi đủ maxResults kết quả khớp (họ phổ biến như "nguyen"
+    // có thể chiếm nhiều trang). User cũ chỉ tìm thấy sau khi chạy backfillCustomerSearchTokens.
+    public Task<List<DocumentSnapshot>> searchCustomersByName(String name, int maxResults) {
+        String token = CustomerSearchIndex.queryToken(name);
+        if (token == null) {
+            return Tasks.forResult(new ArrayList<>());
+        }
+        Query query = userCollection.whereEqualTo("role", "customer")
+                .whereArrayContains(CustomerSearchIndex.FIELD_SEARCH_TOKENS, token)
+                .orderBy(FieldPath.documentId())
+                .limit(NAME_SEARCH_PAGE_SIZE);
+        return searchNamePage(query, null, name, maxResults, new ArrayList<>(), 0);
+    }
+
+    private Task<List<DocumentSnapshot>> searchNamePage(Query query, DocumentSnapshot after, String name,
+                                                        int maxResults, List<DocumentSnapshot> matches,
+                                                        int pagesRead) {
+        Query page = after != null ? query.startAfter(after) : query;
+        return page.get().continueWithTask(task -> {
+            QuerySnapshot snapshot = task.getResult();
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                if (matches.size() < maxResults
+                        && CustomerSearchIndex.matches(doc.getString("fullName"), name)) {
+                    matches.add(doc);
+                }
+            }
+            boolean lastPage = snapshot.size() < NAME_SEARCH_PAGE_SIZE;
+            if (matches.size() >= maxResults || lastPage || pagesRead + 1 >= NAME_SEARCH_MAX_PAGES) {
+                return Tasks.forResult(matches);
+            }
+            List<DocumentSnapshot> documents = snapshot.getDocuments();
+            return searchNamePage(query, documents.get(documents.size() - 1), name,
+                    maxResults, matches, pagesRead + 1);
+        });
     }
 }
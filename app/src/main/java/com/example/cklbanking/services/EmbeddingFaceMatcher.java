@@ -0,0 +1,195 @@
+package com.example.cklbanking.services;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Engine embedding: model TFLite chạy on-device (không cần mạng)
+ *
+ * Khuôn mặt được cắt theo bounding box (nới rộng một chút), xoay thẳng theo góc nghiêng
+ * đầu, resize về kích thước input của model; output là vector embedding đã chuẩn hóa L2
+ * nên so sánh bằng cosine similarity (tích vô hướng).
+ *
+ * Model (kiểu MobileFaceNet: input [1, N, N, 3] float32, output [1, D]) đặt tại
+ * assets/face_embedding.tflite. Không có model -> FaceVerificationService dùng LandmarkFaceMatcher.
+ *
+ * Buffer input/output được tái sử dụng - extract() đồng bộ hóa trên instance.
+ */
+public class EmbeddingFaceMatcher implements FaceMatcher {
+
+    public static final String MODEL_ASSET = "face_embedding.tflite";
+
+    // Cosine similarity threshold (-1.0 - 1.0)
+    private static final double MATCH_THRESHOLD = 0.6;
+    // Nới bounding box của ML Kit (thường sát mặt) để giống ảnh train
+    private static final float CROP_MARGIN = 0.1f;
+    private static final float PIXEL_MEAN = 127.5f;
+    private static final float PIXEL_STD = 128f;
+    private static final int NUM_THREADS = 2;
+
+    private final Interpreter interpreter;
+    private final String engineId;
+    private final int inputSize;
+    private final int dimension;
+    private final ByteBuffer inputBuffer;
+    private final int[] pixels;
+    private final float[][] output;
+    private final Bitmap faceBitmap;
+    private final Canvas faceCanvas;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix matrix = new Matrix();
+
+    /**
+     * Model có được đóng gói trong assets không
+     */
+    public static boolean isModelBundled(Context context) {
+        try (InputStream ignored = context.getAssets().open(MODEL_ASSET)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public EmbeddingFaceMatcher(Context context) throws IOException {
+        Interpreter.Options options = new Interpreter.Options().setNumThreads(NUM_THREADS);
+        interpreter = new Interpreter(loadModel(context), options);
+
+        int[] inputShape = interpreter.getInputTensor(0).shape(); // [1, N, N, 3]
+        int[] outputShape = interpreter.getOutputTensor(0).shape(); // [1, D]
+        inputSize = inputShape[1];
+        dimension = outputShape[outputShape.length - 1];
+        engineId = "embedding-" + dimension + "-v1";
+
+        inputBuffer = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * 4).order(ByteOrder.nativeOrder());
+        pixels = new int[inputSize * inputSize];
+        output = new float[1][dimension];
+        faceBitmap = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888);
+        faceCanvas = new Canvas(faceBitmap);
+    }
+
+    @Override
+    public String getEngineId() {
+        return engineId;
+    }
+
+    @Override
+    public void configureDetector(FaceDetectorOptions.Builder builder) {
+        // Chỉ cần bounding box và góc nghiêng đầu
+        builder.setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE);
+    }
+
+    @Override
+    public synchronized float[] extract(Bitmap image, Face face) {
+        Rect box = face.getBoundingBox();
+        if (box.width() <= 0 || box.height() <= 0) {
+            return null;
+        }
+
+        // Vẽ khuôn mặt đã xoay thẳng vào bitmap input (không cấp phát bitmap trung gian)
+        float side = Math.max(box.width(), box.height()) * (1 + 2 * CROP_MARGIN);
+        float scale = inputSize / side;
+        matrix.reset();
+        matrix.postTranslate(-box.exactCenterX(), -box.exactCenterY());
+        matrix.postRotate(face.getHeadEulerAngleZ()); // Euler Z dương = nghiêng ngược chiều kim đồng hồ
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(inputSize / 2f, inputSize / 2f);
+        faceBitmap.eraseColor(0);
+        faceCanvas.drawBitmap(image, matrix, paint);
+
+        faceBitmap.getPixels(pixels, 0, inputSize, 0, 0, inputSize, inputSize);
+        inputBuffer.rewind();
+        for (int pixel : pixels) {
+            inputBuffer.putFloat((((pixel >> 16) & 0xFF) - PIXEL_MEAN) / PIXEL_STD);
+            inputBuffer.putFloat((((pixel >> 8) & 0xFF) - PIXEL_MEAN) / PIXEL_STD);
+            inputBuffer.putFloat(((pixel & 0xFF) - PIXEL_MEAN) / PIXEL_STD);
+        }
+        inputBuffer.rewind();
+        interpreter.run(inputBuffer, output);
+
+        // L2 normalize
+        float[] embedding = output[0].clone();
+        double norm = 0;
+        for (float value : embedding) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return null;
+        }
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] /= norm;
+        }
+        return embedding;
+    }
+
+    /**
+     * Cosine similarity (-1..1) giữa embedding hiện tại và embedding lưu khi đăng ký
+     */
+    @Override
+    public double similarity(float[] a, float[] b) {
+        if (a == null || b == null || a.length != dimension || b.length != dimension) {
+            return -1;
+        }
+        return cosineSimilarity(a, b);
+    }
+
+    /**
+     * Cosine similarity của hai vector cùng độ dài; -1 nếu một vector bằng 0
+     *
+     * Embedding do extract() tạo đã chuẩn hóa L2, nhưng template lưu trên user doc đi qua
+     * Firestore (double) nên vẫn chia cho tích độ dài thay vì chỉ lấy tích vô hướng.
+     */
+    public static double cosineSimilarity(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return -1;
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    @Override
+    public double getMatchThreshold() {
+        return MATCH_THRESHOLD;
+    }
+
+    @Override
+    public synchronized void close() {
+        interpreter.close();
+    }
+
+    private static MappedByteBuffer loadModel(Context context) throws IOException {
+        // Cần noCompress "tflite" (build.gradle.kts) để map trực tiếp từ APK
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(MODEL_ASSET);
+             FileInputStream input = new FileInputStream(descriptor.getFileDescriptor())) {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getDeclaredLength());
+        }
+    }
+}
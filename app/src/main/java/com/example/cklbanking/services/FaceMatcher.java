@@ -0,0 +1,58 @@
+package com.example.cklbanking.services;
+
+import android.graphics.Bitmap;
+
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.List;
+
+/**
+ * Engine so khớp khuôn mặt dùng bởi FaceVerificationService
+ *
+ * Mỗi engine trích một vector đặc trưng từ khuôn mặt ML Kit đã detect và định nghĩa
+ * cách so sánh hai vector. Id của engine được lưu cùng template đã đăng ký - khi đổi
+ * engine, template cũ được trích lại từ ảnh eKYC.
+ */
+public interface FaceMatcher {
+
+    /**
+     * Id + phiên bản của engine (vd. "landmark-v1"), lưu cùng template
+     */
+    String getEngineId();
+
+    /**
+     * Bật các chế độ detect mà engine cần (landmark, contour...)
+     */
+    void configureDetector(FaceDetectorOptions.Builder builder);
+
+    /**
+     * Trích vector đặc trưng của khuôn mặt. Có thể tốn CPU - gọi từ background thread.
+     * @param image ảnh đã dùng để detect
+     * @return null nếu không trích được
+     */
+    float[] extract(Bitmap image, Face face);
+
+    /**
+     * Độ giống nhau, càng lớn càng giống; so với getMatchThreshold()
+     */
+    double similarity(float[] a, float[] b);
+
+    double getMatchThreshold();
+
+    /**
+     * Chấm điểm một khuôn mặt với nhiều template (vd. officer rà soát trùng lặp)
+     */
+    default double[] scoreAll(float[] probe, List<float[]> candidates) {
+        double[] scores = new double[candidates.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = similarity(probe, candidates.get(i));
+        }
+        return scores;
+    }
+
+    /**
+     * Giải phóng tài nguyên (model...)
+     */
+    default void close() {}
+}
@@ -1,192 +1,384 @@
 package com.example.cklbanking.services;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.SystemClock;
 import android.util.Log;
+import com.example.cklbanking.utils.FaceTemplate;
+import com.example.cklbanking.utils.FaceTemplateCache;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.FirebaseStorage;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
-import com.google.mlkit.vision.face.FaceLandmark;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Service để verify ảnh khuôn mặt khi giao dịch lớn
- * So sánh ảnh hiện tại với ảnh đã lưu trong eKYC
+ * So sánh khuôn mặt hiện tại với face template đã lưu khi đăng ký eKYC
+ *
+ * Việc trích đặc trưng và so sánh do một FaceMatcher đảm nhiệm: EmbeddingFaceMatcher
+ * (TFLite) nếu model được đóng gói trong assets, ngược lại LandmarkFaceMatcher.
+ *
+ * User doc luôn được đọc (nguồn đúng cho bước bảo mật này); cache bộ nhớ / đĩa chỉ dùng khi
+ * faceTemplateUpdatedAt của entry khớp user doc, template bị xoá trên user doc thì cache bị xoá.
+ * User đăng ký trước khi có template (chỉ có faceImageUrl) được chuyển đổi một lần:
+ * tải ảnh cũ, trích template, lưu lại vào user doc.
  */
 public class FaceVerificationService {
     private static final String TAG = "FaceVerificationService";
-    
+    private static final String USERS_COLLECTION = "users";
+    public static final String FIELD_FACE_TEMPLATE = "faceTemplate";
+    public static final String FIELD_FACE_TEMPLATE_VERSION = "faceTemplateVersion";
+    public static final String FIELD_FACE_TEMPLATE_ENGINE = "faceTemplateEngine";
+    public static final String FIELD_FACE_TEMPLATE_UPDATED_AT = "faceTemplateUpdatedAt";
+
+    // Ảnh eKYC cũ (chỉ dùng khi chuyển đổi sang template)
+    private static final long MAX_LEGACY_IMAGE_BYTES = 10 * 1024 * 1024; // 10 MB
+    private static final int LEGACY_IMAGE_MAX_DIMENSION = 1280;
+
     private FaceDetector faceDetector;
     private ExecutorService executorService;
-    
-    // Similarity threshold (0.0 - 1.0)
-    // Higher value = more strict matching
-    private static final double SIMILARITY_THRESHOLD = 0.7;
-    
-    public FaceVerificationService() {
-        // Initialize ML Kit Face Detector with high accuracy
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
-                .enableTracking()
-                .build();
-        
-        faceDetector = FaceDetection.getClient(options);
+    private final FaceMatcher matcher;
+    private final FaceTemplateCache templateCache;
+    private final FirebaseFirestore db;
+
+    // Metrics (process-wide)
+    private static long verificationCount;
+    private static long totalLatencyMillis;
+    private static long maxLatencyMillis;
+
+    public FaceVerificationService(Context context) {
+        this(context, createDefaultMatcher(context));
+    }
+
+    public FaceVerificationService(Context context, FaceMatcher matcher) {
+        this.matcher = matcher;
+
+        // Initialize ML Kit Face Detector with high accuracy (+ các chế độ engine cần)
+        FaceDetectorOptions.Builder options = new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE);
+        matcher.configureDetector(options);
+
+        faceDetector = FaceDetection.getClient(options.build());
         executorService = Executors.newSingleThreadExecutor();
+        templateCache = FaceTemplateCache.getInstance(context);
+        db = FirebaseFirestore.getInstance();
     }
-    
+
     /**
-     * Verify face match between current image and stored eKYC image
+     * Engine embedding nếu model có trong assets và load được, ngược lại engine landmark
+     */
+    public static FaceMatcher createDefaultMatcher(Context context) {
+        if (EmbeddingFaceMatcher.isModelBundled(context)) {
+            try {
+                return new EmbeddingFaceMatcher(context);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to load face embedding model, using landmarks", e);
+            }
+        }
+        return new LandmarkFaceMatcher();
+    }
+
+    public FaceMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Detect khuôn mặt và trích face template
+     * @return Task với template của khuôn mặt lớn nhất, null nếu không có khuôn mặt
+     */
+    public Task<FaceTemplate> extractTemplate(Bitmap bitmap) {
+        return faceDetector.process(InputImage.fromBitmap(bitmap, 0))
+                .continueWith(executorService, task -> {
+                    List<Face> faces = task.getResult();
+                    if (faces.isEmpty()) {
+                        return null;
+                    }
+                    Face largest = faces.get(0);
+                    for (Face face : faces) {
+                        if (face.getBoundingBox().width() > largest.getBoundingBox().width()) {
+                            largest = face;
+                        }
+                    }
+                    float[] values = matcher.extract(bitmap, largest);
+                    return values != null ? new FaceTemplate(matcher.getEngineId(), values) : null;
+                });
+    }
+
+    /**
+     * Verify face match between current image and the user's enrolled template
      * @param currentImageBitmap Current face image (from camera)
-     * @param storedImageUrl URL of stored eKYC image
+     * @param userId User có template đã đăng ký
      * @param callback Callback with verification result
      */
-    public void verifyFaceMatch(Bitmap currentImageBitmap, String storedImageUrl, 
+    public void verifyFaceMatch(Bitmap currentImageBitmap, String userId,
                                FaceVerificationCallback callback) {
         if (currentImageBitmap == null) {
             callback.onVerificationResult(false, "Không thể đọc ảnh hiện tại");
             return;
         }
-        
-        if (storedImageUrl == null || storedImageUrl.isEmpty()) {
-            callback.onVerificationResult(false, "Không tìm thấy ảnh eKYC đã lưu");
+        verifyFaceMatch(extractTemplate(currentImageBitmap), userId, callback);
+    }
+
+    /**
+     * Verify face match với template hiện tại đang được trích (vd. trích ngay khi chụp)
+     * Template đã đăng ký được tải song song với việc detect ảnh hiện tại.
+     */
+    public void verifyFaceMatch(Task<FaceTemplate> currentTemplateTask, String userId,
+                               FaceVerificationCallback callback) {
+        if (currentTemplateTask == null) {
+            callback.onVerificationResult(false, "Không thể đọc ảnh hiện tại");
             return;
         }
-        
-        // Download stored image in background
-        executorService.execute(() -> {
-            try {
-                Bitmap storedImageBitmap = downloadImage(storedImageUrl);
-                
-                if (storedImageBitmap == null) {
-                    callback.onVerificationResult(false, "Không thể tải ảnh eKYC đã lưu");
-                    return;
-                }
-                
-                // Detect faces in both images
-                detectAndCompareFaces(currentImageBitmap, storedImageBitmap, callback);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error verifying face match", e);
-                callback.onVerificationResult(false, "Lỗi xác thực: " + e.getMessage());
+        long startedAt = SystemClock.elapsedRealtime();
+        Task<FaceTemplate> enrolledTemplateTask = loadEnrolledTemplate(userId);
+
+        Tasks.whenAllComplete(currentTemplateTask, enrolledTemplateTask).addOnCompleteListener(done -> {
+            if (!enrolledTemplateTask.isSuccessful()) {
+                Log.e(TAG, "Failed to load enrolled template", enrolledTemplateTask.getException());
+                callback.onVerificationResult(false, "Lỗi tải dữ liệu eKYC: " +
+                    messageOf(enrolledTemplateTask.getException()));
+                return;
+            }
+            FaceTemplate enrolledTemplate = enrolledTemplateTask.getResult();
+            if (enrolledTemplate == null) {
+                callback.onNotEnrolled();
+                return;
+            }
+
+            if (!currentTemplateTask.isSuccessful()) {
+                Log.e(TAG, "Failed to detect face in current image", currentTemplateTask.getException());
+                callback.onVerificationResult(false, "Lỗi xử lý ảnh hiện tại: " +
+                    messageOf(currentTemplateTask.getException()));
+                return;
+            }
+            FaceTemplate currentTemplate = currentTemplateTask.getResult();
+            if (currentTemplate == null) {
+                callback.onVerificationResult(false, "Không phát hiện khuôn mặt trong ảnh hiện tại");
+                return;
+            }
+
+            // Compare faces
+            double similarity = matcher.similarity(currentTemplate.getValues(), enrolledTemplate.getValues());
+            boolean isMatch = similarity >= matcher.getMatchThreshold();
+            long latency = SystemClock.elapsedRealtime() - startedAt;
+            recordVerification(latency);
+            Log.d(TAG, String.format(Locale.US, "Face match [%s] similarity=%.3f match=%b latency=%dms, %s, %s",
+                    matcher.getEngineId(), similarity, isMatch, latency, getMetricsSummary(), templateCache));
+
+            if (isMatch) {
+                callback.onVerificationResult(true, "Xác thực khuôn mặt thành công");
+            } else {
+                callback.onVerificationResult(false, "Khuôn mặt không khớp với ảnh eKYC đã lưu");
             }
         });
     }
-    
+
     /**
-     * Download image from URL
+     * Template đã đăng ký của user: user doc (+ cache nếu còn khớp) -> chuyển đổi từ ảnh eKYC cũ
+     * @return Task với template, null nếu user chưa đăng ký eKYC
      */
-    private Bitmap downloadImage(String imageUrl) {
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            
-            InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
-            
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Error downloading image", e);
-            return null;
-        }
-    }
-    
+    public Task<FaceTemplate> loadEnrolledTemplate(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return Tasks.forResult(null);
+        }
+
+        return db.collection(USERS_COLLECTION).document(userId).get()
+                .continueWithTask(userTask -> templateFromUser(userId, userTask.getResult()));
+    }
+
+    /**
+     * Lưu template vừa đăng ký vào cache (user doc được cập nhật bởi màn hình eKYC, xem putTemplateFields)
+     * @param updatedAt giá trị putTemplateFields trả về
+     */
+    public void cacheEnrolledTemplate(String userId, FaceTemplate template, long updatedAt) {
+        if (userId == null || template == null || executorService.isShutdown()) {
+            return;
+        }
+        executorService.execute(() -> templateCache.put(userId, updatedAt, template));
+    }
+
     /**
-     * Detect faces in both images and compare
+     * Thêm các field template vào map cập nhật user doc
+     * @return faceTemplateUpdatedAt đã ghi (dùng cho cacheEnrolledTemplate)
      */
-    private void detectAndCompareFaces(Bitmap currentImage, Bitmap storedImage,
-                                      FaceVerificationCallback callback) {
-        InputImage currentInputImage = InputImage.fromBitmap(currentImage, 0);
-        InputImage storedInputImage = InputImage.fromBitmap(storedImage, 0);
-        
-        // Detect face in current image
-        faceDetector.process(currentInputImage)
-                .addOnSuccessListener(currentFaces -> {
-                    if (currentFaces.isEmpty()) {
-                        callback.onVerificationResult(false, "Không phát hiện khuôn mặt trong ảnh hiện tại");
-                        return;
+    public static long putTemplateFields(Map<String, Object> updates, FaceTemplate template) {
+        long updatedAt = System.currentTimeMillis();
+        updates.put(FIELD_FACE_TEMPLATE, template.toList());
+        updates.put(FIELD_FACE_TEMPLATE_VERSION, FaceTemplate.VERSION);
+        updates.put(FIELD_FACE_TEMPLATE_ENGINE, template.getEngineId());
+        updates.put(FIELD_FACE_TEMPLATE_UPDATED_AT, updatedAt);
+        return updatedAt;
+    }
+
+    /**
+     * Thêm các field xoá template vào map cập nhật user doc (đăng ký lại từ ảnh mới)
+     */
+    public static void putTemplateDeletes(Map<String, Object> updates) {
+        updates.put(FIELD_FACE_TEMPLATE, FieldValue.delete());
+        updates.put(FIELD_FACE_TEMPLATE_VERSION, FieldValue.delete());
+        updates.put(FIELD_FACE_TEMPLATE_ENGINE, FieldValue.delete());
+        updates.put(FIELD_FACE_TEMPLATE_UPDATED_AT, FieldValue.delete());
+    }
+
+    /**
+     * Chấm điểm một template với nhiều template cùng engine (officer rà soát)
+     * @return điểm theo thứ tự candidates; template khác engine nhận Double.NaN
+     */
+    public double[] scoreTemplates(FaceTemplate probe, List<FaceTemplate> candidates) {
+        List<float[]> vectors = new ArrayList<>(candidates.size());
+        for (FaceTemplate candidate : candidates) {
+            vectors.add(candidate.getValues());
+        }
+        double[] scores = matcher.scoreAll(probe.getValues(), vectors);
+        for (int i = 0; i < scores.length; i++) {
+            if (!probe.getEngineId().equals(candidates.get(i).getEngineId())) {
+                scores[i] = Double.NaN;
+            }
+        }
+        return scores;
+    }
+
+    private Task<FaceTemplate> templateFromUser(String userId, DocumentSnapshot user) {
+        if (!user.exists()) {
+            return Tasks.forResult(null);
+        }
+
+        Long version = user.getLong(FIELD_FACE_TEMPLATE_VERSION);
+        String storedEngineId = user.getString(FIELD_FACE_TEMPLATE_ENGINE);
+        // Template lưu trước khi có engine embedding không có field engine
+        String engineId = storedEngineId != null ? storedEngineId : LandmarkFaceMatcher.ENGINE_ID;
+        Object stored = user.get(FIELD_FACE_TEMPLATE);
+        Long updatedAt = user.getLong(FIELD_FACE_TEMPLATE_UPDATED_AT);
+        boolean usable = version != null && version == FaceTemplate.VERSION
+                && matcher.getEngineId().equals(engineId) && stored instanceof List;
+        if (usable && updatedAt != null) {
+            return Tasks.call(executorService, () -> {
+                FaceTemplate template = templateCache.get(userId, updatedAt);
+                if (template == null || !engineId.equals(template.getEngineId())) {
+                    template = FaceTemplate.fromList(engineId, (List<?>) stored);
+                    if (template != null) {
+                        templateCache.put(userId, updatedAt, template);
                     }
-                    
-                    Face currentFace = currentFaces.get(0);
-                    
-                    // Detect face in stored image
-                    faceDetector.process(storedInputImage)
-                            .addOnSuccessListener(storedFaces -> {
-                                if (storedFaces.isEmpty()) {
-                                    callback.onVerificationResult(false, "Không phát hiện khuôn mặt trong ảnh eKYC");
-                                    return;
-                                }
-                                
-                                Face storedFace = storedFaces.get(0);
-                                
-                                // Compare faces
-                                boolean isMatch = compareFaces(currentFace, storedFace);
-                                
-                                if (isMatch) {
-                                    callback.onVerificationResult(true, "Xác thực khuôn mặt thành công");
-                                } else {
-                                    callback.onVerificationResult(false, "Khuôn mặt không khớp với ảnh eKYC đã lưu");
-                                }
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to detect face in stored image", e);
-                                callback.onVerificationResult(false, "Lỗi xử lý ảnh eKYC: " + e.getMessage());
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to detect face in current image", e);
-                    callback.onVerificationResult(false, "Lỗi xử lý ảnh hiện tại: " + e.getMessage());
-                });
+                }
+                return template;
+            }).continueWithTask(task -> task.getResult() != null
+                    ? Tasks.forResult(task.getResult()) : templateFromImage(userId, user));
+        }
+
+        // Template bị xoá / chưa có updatedAt (ghi bởi bản cũ): không tin cache
+        invalidateCachedTemplate(userId);
+        if (usable) {
+            FaceTemplate template = FaceTemplate.fromList(engineId, (List<?>) stored);
+            if (template != null) {
+                return Tasks.forResult(template);
+            }
+        }
+        return templateFromImage(userId, user);
+    }
+
+    private Task<FaceTemplate> templateFromImage(String userId, DocumentSnapshot user) {
+        String faceImageUrl = user.getString("faceImageUrl");
+        if (faceImageUrl == null || faceImageUrl.isEmpty()) {
+            return Tasks.forResult(null);
+        }
+        return migrateLegacyEnrollment(userId, faceImageUrl);
     }
-    
+
+    private void invalidateCachedTemplate(String userId) {
+        if (!executorService.isShutdown()) {
+            executorService.execute(() -> templateCache.invalidate(userId));
+        }
+    }
+
     /**
-     * Compare two faces using landmarks and bounding box
-     * This is a simplified comparison - in production, use more advanced face recognition
+     * User đăng ký trước khi có template (hoặc template của engine khác):
+     * tải ảnh eKYC một lần, trích và lưu template
      */
-    private boolean compareFaces(Face currentFace, Face storedFace) {
-        // Get bounding boxes
-        android.graphics.Rect currentBoundingBox = currentFace.getBoundingBox();
-        android.graphics.Rect storedBoundingBox = storedFace.getBoundingBox();
-        
-        // Calculate similarity based on bounding box size and position
-        // In a real implementation, you would use face embeddings/features
-        double widthSimilarity = calculateSimilarity(
-            currentBoundingBox.width(), storedBoundingBox.width());
-        double heightSimilarity = calculateSimilarity(
-            currentBoundingBox.height(), storedBoundingBox.height());
-        
-        // Average similarity
-        double averageSimilarity = (widthSimilarity + heightSimilarity) / 2.0;
-        
-        // Check if similarity meets threshold
-        return averageSimilarity >= SIMILARITY_THRESHOLD;
-    }
-    
+    private Task<FaceTemplate> migrateLegacyEnrollment(String userId, String faceImageUrl) {
+        Log.d(TAG, "No stored template for " + userId + ", extracting from eKYC image");
+        Task<byte[]> download;
+        try {
+            download = FirebaseStorage.getInstance().getReferenceFromUrl(faceImageUrl)
+                    .getBytes(MAX_LEGACY_IMAGE_BYTES);
+        } catch (IllegalArgumentException e) {
+            return Tasks.forException(e);
+        }
+
+        return download
+                .continueWith(executorService, task -> decodeSampled(task.getResult(), LEGACY_IMAGE_MAX_DIMENSION))
+                .continueWithTask(task -> {
+                    Bitmap storedImage = task.getResult();
+                    if (storedImage == null) {
+                        return Tasks.forException(new IllegalStateException("Không thể đọc ảnh eKYC đã lưu"));
+                    }
+                    return extractTemplate(storedImage);
+                })
+                .onSuccessTask(template -> {
+                    if (template == null) {
+                        return Tasks.forException(new IllegalStateException("Không phát hiện khuôn mặt trong ảnh eKYC"));
+                    }
+                    Map<String, Object> updates = new HashMap<>();
+                    long updatedAt = putTemplateFields(updates, template);
+                    db.collection(USERS_COLLECTION).document(userId).update(updates)
+                            .addOnSuccessListener(aVoid -> cacheEnrolledTemplate(userId, template, updatedAt))
+                            .addOnFailureListener(e -> Log.w(TAG, "Failed to store migrated template", e));
+                    return Tasks.forResult(template);
+                });
+    }
+
+    private static Bitmap decodeSampled(byte[] data, int maxDimension) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+
+        int sampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private static String messageOf(Exception e) {
+        return e != null ? e.getMessage() : "";
+    }
+
+    private static synchronized void recordVerification(long latencyMillis) {
+        verificationCount++;
+        totalLatencyMillis += latencyMillis;
+        maxLatencyMillis = Math.max(maxLatencyMillis, latencyMillis);
+    }
+
     /**
-     * Calculate similarity between two values (0.0 - 1.0)
+     * Độ trễ trung bình của một lần xác thực (ms), 0 nếu chưa có lần nào
      */
-    private double calculateSimilarity(double value1, double value2) {
-        if (value1 == 0 && value2 == 0) return 1.0;
-        if (value1 == 0 || value2 == 0) return 0.0;
-        
-        double max = Math.max(value1, value2);
-        double min = Math.min(value1, value2);
-        
-        return min / max;
-    }
-    
+    public static synchronized double getAverageLatencyMillis() {
+        return verificationCount == 0 ? 0 : (double) totalLatencyMillis / verificationCount;
+    }
+
+    public static synchronized String getMetricsSummary() {
+        return String.format(Locale.US, "FaceVerification{count=%d, avgLatency=%.0fms, maxLatency=%dms}",
+                verificationCount, getAverageLatencyMillis(), maxLatencyMillis);
+    }
+
     /**
      * Cleanup resources
      */
@@ -195,14 +387,23 @@ public class FaceVerificationService {
             faceDetector.close();
         }
         if (executorService != null) {
+            // Đóng matcher sau khi các lần trích đang chờ chạy xong
+            executorService.execute(matcher::close);
             executorService.shutdown();
         }
     }
-    
+
     /**
      * Callback interface for face verification
      */
     public interface FaceVerificationCallback {
         void onVerificationResult(boolean isMatch, String message);
+
+        /**
+         * User chưa đăng ký eKYC (chưa có template lẫn ảnh)
+         */
+        default void onNotEnrolled() {
+            onVerificationResult(false, "Không tìm thấy ảnh eKYC đã lưu");
+        }
     }
 }
@@ -0,0 +1,143 @@
+package com.example.cklbanking.services;
+
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceContour;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.face.FaceLandmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Engine mặc định: hình học khuôn mặt
+ *
+ * Vector các điểm landmark/contour của ML Kit, chuẩn hóa theo bounding box (0..1) nên
+ * không phụ thuộc kích thước ảnh hay khoảng cách tới camera. Thứ tự điểm cố định;
+ * điểm không phát hiện được lưu NaN và bị bỏ qua khi so sánh.
+ */
+public class LandmarkFaceMatcher implements FaceMatcher {
+
+    public static final String ENGINE_ID = "landmark-v1";
+
+    private static final int[] LANDMARK_TYPES = {
+            FaceLandmark.LEFT_EYE, FaceLandmark.RIGHT_EYE, FaceLandmark.NOSE_BASE,
+            FaceLandmark.MOUTH_LEFT, FaceLandmark.MOUTH_RIGHT, FaceLandmark.MOUTH_BOTTOM,
+            FaceLandmark.LEFT_CHEEK, FaceLandmark.RIGHT_CHEEK,
+            FaceLandmark.LEFT_EAR, FaceLandmark.RIGHT_EAR
+    };
+
+    // Contour type -> số điểm ML Kit trả về (CONTOUR_MODE_ALL)
+    private static final int[][] CONTOUR_TYPES = {
+            {FaceContour.FACE, 36},
+            {FaceContour.LEFT_EYE, 16},
+            {FaceContour.RIGHT_EYE, 16},
+            {FaceContour.NOSE_BRIDGE, 2},
+            {FaceContour.NOSE_BOTTOM, 3},
+            {FaceContour.UPPER_LIP_TOP, 11},
+            {FaceContour.LOWER_LIP_BOTTOM, 9}
+    };
+
+    // Package-private: LandmarkFaceMatcherTest dựng vector đúng độ dài
+    static final int POINT_COUNT = pointCount();
+
+    // Similarity threshold (0.0 - 1.0)
+    private static final double MATCH_THRESHOLD = 0.7;
+    // Khoảng cách trung bình (theo bounding box) ứng với similarity = 0
+    private static final double MAX_MEAN_DISTANCE = 0.2;
+    // Cần ít nhất chừng này điểm chung mới so sánh được
+    private static final int MIN_SHARED_POINTS = 6;
+
+    @Override
+    public String getEngineId() {
+        return ENGINE_ID;
+    }
+
+    @Override
+    public void configureDetector(FaceDetectorOptions.Builder builder) {
+        builder.setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL);
+    }
+
+    @Override
+    public float[] extract(Bitmap image, Face face) {
+        Rect box = face.getBoundingBox();
+        if (box.width() <= 0 || box.height() <= 0) {
+            return null;
+        }
+
+        float[] values = new float[POINT_COUNT * 2];
+        Arrays.fill(values, Float.NaN);
+        int index = 0;
+
+        for (int type : LANDMARK_TYPES) {
+            FaceLandmark landmark = face.getLandmark(type);
+            if (landmark != null) {
+                putPoint(values, index, landmark.getPosition(), box);
+            }
+            index++;
+        }
+
+        for (int[] contourType : CONTOUR_TYPES) {
+            FaceContour contour = face.getContour(contourType[0]);
+            int expected = contourType[1];
+            if (contour != null && contour.getPoints().size() == expected) {
+                List<PointF> points = contour.getPoints();
+                for (int i = 0; i < expected; i++) {
+                    putPoint(values, index + i, points.get(i), box);
+                }
+            }
+            index += expected;
+        }
+        return values;
+    }
+
+    /**
+     * Độ giống nhau 0..1 dựa trên khoảng cách trung bình giữa các điểm có ở cả hai vector
+     */
+    @Override
+    public double similarity(float[] a, float[] b) {
+        if (a == null || b == null || a.length != POINT_COUNT * 2 || b.length != a.length) {
+            return 0;
+        }
+
+        double totalDistance = 0;
+        int shared = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            if (Float.isNaN(a[i]) || Float.isNaN(b[i])) {
+                continue;
+            }
+            double dx = a[i] - b[i];
+            double dy = a[i + 1] - b[i + 1];
+            totalDistance += Math.sqrt(dx * dx + dy * dy);
+            shared++;
+        }
+        if (shared < MIN_SHARED_POINTS) {
+            return 0;
+        }
+
+        double meanDistance = totalDistance / shared;
+        return Math.max(0, 1 - meanDistance / MAX_MEAN_DISTANCE);
+    }
+
+    @Override
+    public double getMatchThreshold() {
+        return MATCH_THRESHOLD;
+    }
+
+    private static void putPoint(float[] values, int pointIndex, PointF point, Rect box) {
+        values[pointIndex * 2] = (point.x - box.left) / box.width();
+        values[pointIndex * 2 + 1] = (point.y - box.top) / box.height();
+    }
+
+    private static int pointCount() {
+        int count = LANDMARK_TYPES.length;
+        for (int[] contourType : CONTOUR_TYPES) {
+            count += contourType[1];
+        }
+        return count;
+    }
+}
@@ -1,24 +1,37 @@
 package com.example.cklbanking.services;
 
 import android.util.Log;
+import com.example.cklbanking.utils.TokenBucket;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Transaction;
 import com.google.firebase.Timestamp;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OTPService {
     private static final String TAG = "OTPService";
     private static final int OTP_LENGTH = 6;
     private static final long OTP_EXPIRY_TIME = 120000; // 2 minutes in milliseconds
     private static final String OTP_COLLECTION = "otps";
-    private static final String OTP_ATTEMPTS_COLLECTION = "otp_attempts";
+    private static final String OTP_RATE_LIMIT_COLLECTION = "otp_rate_limits";
+    private static final String EMAIL_REQUESTS_COLLECTION = "email_requests";
+    private static final String USERS_COLLECTION = "users";
     private static final int MAX_OTP_ATTEMPTS_PER_HOUR = 5; // Giới hạn 5 lần gửi OTP trong 1 giờ
     private static final long ONE_HOUR_IN_MILLIS = 3600000; // 1 giờ = 3600000 milliseconds
+    // Token bucket: tối đa 5 lần liên tiếp, nạp lại 5 lần mỗi giờ (1 lần / 12 phút)
+    private static final TokenBucket OTP_RATE_LIMIT = new TokenBucket(MAX_OTP_ATTEMPTS_PER_HOUR, ONE_HOUR_IN_MILLIS);
     private static final int MAX_FAILED_ATTEMPTS = 3; // Sau 3 lần sai → lock
     private static final long LOCK_DURATION_MILLIS = 900000; // 15 phút = 900000 milliseconds
     
+    // Số lần đọc otp_rate_limits/{userId} (tính cả lần Firestore chạy lại transaction)
+    private static final AtomicLong rateLimitReadCount = new AtomicLong();
+    
     private FirebaseFirestore db;
     
     public OTPService() {
@@ -29,52 +42,7 @@ public class OTPService {
      * Generate OTP with rate limiting check
      */
     public void generateOTP(String transactionId, String userId, String userEmail, OTPGenerationCallback callback) {
-        // Check rate limiting first
-        checkRateLimit(userId, new RateLimitCallback() {
-            @Override
-            public void onRateLimitChecked(boolean allowed, String message) {
-                if (!allowed) {
-                    callback.onOTPGenerated(null, false, message);
-                    return;
-                }
-                
-                // Rate limit OK, generate OTP
-                Random random = new Random();
-                int otp = 100000 + random.nextInt(900000); // 100000 to 999999
-                String otpCode = String.valueOf(otp);
-                
-                // Store OTP in Firestore
-                Map<String, Object> otpData = new HashMap<>();
-                otpData.put("transactionId", transactionId);
-                otpData.put("userId", userId);
-                otpData.put("otpCode", otpCode);
-                otpData.put("createdAt", Timestamp.now());
-                otpData.put("expiresAt", Timestamp.now().toDate().getTime() + OTP_EXPIRY_TIME);
-                otpData.put("isUsed", false);
-                otpData.put("userEmail", userEmail);
-                otpData.put("status", "pending"); // pending, sent, failed
-                
-                // Use transactionId as document ID for easy lookup
-                db.collection(OTP_COLLECTION)
-                        .document(transactionId)
-                        .set(otpData)
-                        .addOnSuccessListener(aVoid -> {
-                            Log.d(TAG, "OTP generated and stored for transaction: " + transactionId);
-                            
-                            // Record OTP attempt for rate limiting
-                            recordOTPAttempt(userId, transactionId);
-                            
-                            // Trigger email sending via Cloud Function
-                            sendOTPEmail(transactionId, userEmail, otpCode);
-                            
-                            callback.onOTPGenerated(otpCode, true, "OTP đã được gửi");
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Failed to store OTP", e);
-                            callback.onOTPGenerated(null, false, "Lỗi tạo OTP: " + e.getMessage());
-                        });
-            }
-        });
+        issueOTP(transactionId, userId, userEmail, false, callback);
     }
     
     /**
@@ -94,371 +62,269 @@ public class OTPService {
     }
     
     /**
-     * Check rate limiting: giới hạn số lần gửi OTP trong 1 giờ
+     * Phát hành OTP trong một transaction duy nhất:
+     * kiểm tra + ghi nhận rate limit (otp_rate_limits/{userId}), ghi OTP (otps/{transactionId})
+     * và yêu cầu gửi email (email_requests/{transactionId}) được commit cùng lúc.
+     * Hoặc tất cả được ghi, hoặc không có gì - không còn OTP "nửa vời" cần dọn dẹp.
+     * Cloud Function lắng nghe email_requests để gửi email.
+     *
+     * @param userEmail null/rỗng -> lấy email từ OTP cũ (dùng khi gửi lại)
+     * @param isResend Cloud Function chỉ chạy khi email request được tạo mới (onCreate), nên lần
+     *                 gửi lại dùng document id riêng như resendOTPEmail trong functions/index.js
      */
-    private void checkRateLimit(String userId, RateLimitCallback callback) {
+    private void issueOTP(String transactionId, String userId, String userEmail, boolean isResend,
+                          OTPGenerationCallback callback) {
         if (userId == null || userId.isEmpty()) {
-            callback.onRateLimitChecked(false, "User ID không hợp lệ");
+            callback.onOTPGenerated(null, false, "User ID không hợp lệ");
             return;
         }
         
-        long oneHourAgo = System.currentTimeMillis() - ONE_HOUR_IN_MILLIS;
-        Timestamp oneHourAgoTimestamp = new Timestamp(oneHourAgo / 1000, (int) ((oneHourAgo % 1000) * 1000000));
-        
-        db.collection(OTP_ATTEMPTS_COLLECTION)
-                .whereEqualTo("userId", userId)
-                .whereGreaterThan("createdAt", oneHourAgoTimestamp)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    int attemptCount = querySnapshot.size();
-                    
-                    if (attemptCount >= MAX_OTP_ATTEMPTS_PER_HOUR) {
-                        long nextAllowedTime = oneHourAgo + ONE_HOUR_IN_MILLIS;
-                        long waitMinutes = (nextAllowedTime - System.currentTimeMillis()) / 60000;
-                        callback.onRateLimitChecked(false, 
-                            "Bạn đã gửi quá nhiều mã OTP. Vui lòng đợi " + waitMinutes + " phút nữa.");
-                    } else {
-                        callback.onRateLimitChecked(true, null);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error checking rate limit", e);
-                    // Allow OTP generation if rate limit check fails (fail open)
-                    callback.onRateLimitChecked(true, null);
-                });
-    }
-    
-    /**
-     * Record OTP attempt for rate limiting
-     */
-    private void recordOTPAttempt(String userId, String transactionId) {
-        Map<String, Object> attemptData = new HashMap<>();
-        attemptData.put("userId", userId);
-        attemptData.put("transactionId", transactionId);
-        attemptData.put("createdAt", Timestamp.now());
+        DocumentReference limitRef = db.collection(OTP_RATE_LIMIT_COLLECTION).document(userId);
+        DocumentReference otpRef = db.collection(OTP_COLLECTION).document(transactionId);
+        String emailRequestId = isResend ? transactionId + "_resend_" + System.currentTimeMillis() : transactionId;
+        DocumentReference emailRef = db.collection(EMAIL_REQUESTS_COLLECTION).document(emailRequestId);
         
-        db.collection(OTP_ATTEMPTS_COLLECTION)
-                .add(attemptData)
-                .addOnSuccessListener(documentReference -> {
-                    Log.d(TAG, "OTP attempt recorded: " + documentReference.getId());
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to record OTP attempt", e);
-                });
+        db.runTransaction(transaction -> {
+            // Đọc trước, ghi sau (yêu cầu của Firestore transaction)
+            DocumentSnapshot limitSnapshot = transaction.get(limitRef);
+            rateLimitReadCount.incrementAndGet();
+            String email = userEmail;
+            if (email == null || email.isEmpty()) {
+                DocumentSnapshot oldOtp = transaction.get(otpRef);
+                if (!oldOtp.exists()) {
+                    return IssueResult.failed("Không tìm thấy OTP cũ");
+                }
+                email = oldOtp.getString("userEmail");
+                if (email == null) {
+                    return IssueResult.failed("Không tìm thấy email");
+                }
+            }
+            
+            // Rate limit: mỗi lần phát hành tốn một token
+            long now = System.currentTimeMillis();
+            Double tokens = limitSnapshot.exists() ? limitSnapshot.getDouble("tokens") : null;
+            Long updatedAt = limitSnapshot.getLong("updatedAt");
+            TokenBucket.Result limit = OTP_RATE_LIMIT.tryAcquire(tokens, updatedAt != null ? updatedAt : now, now);
+            if (!limit.isAllowed()) {
+                // Bị từ chối: không ghi gì, trạng thái cũ vẫn đúng
+                long waitMinutes = (limit.getWaitMillis() + 59999) / 60000;
+                return IssueResult.failed("Bạn đã gửi quá nhiều mã OTP. Vui lòng đợi " + waitMinutes + " phút nữa.");
+            }
+            
+            Random random = new Random();
+            int otp = 100000 + random.nextInt(900000); // 100000 to 999999
+            String otpCode = String.valueOf(otp);
+            Timestamp createdAt = new Timestamp(new Date(now));
+            
+            Map<String, Object> limitState = new HashMap<>();
+            limitState.put("tokens", limit.getRemainingTokens());
+            limitState.put("updatedAt", now);
+            transaction.set(limitRef, limitState);
+            
+            // set() ghi đè OTP cũ (gửi lại) - không cần xóa trước
+            Map<String, Object> otpData = new HashMap<>();
+            otpData.put("transactionId", transactionId);
+            otpData.put("userId", userId);
+            otpData.put("otpCode", otpCode);
+            otpData.put("createdAt", createdAt);
+            otpData.put("expiresAt", now + OTP_EXPIRY_TIME);
+            otpData.put("isUsed", false);
+            otpData.put("userEmail", email);
+            otpData.put("status", "pending"); // pending, sent, failed (cập nhật bởi Cloud Function)
+            transaction.set(otpRef, otpData);
+            
+            if (!email.isEmpty()) {
+                Map<String, Object> emailRequest = new HashMap<>();
+                emailRequest.put("transactionId", transactionId);
+                emailRequest.put("toEmail", email);
+                emailRequest.put("otpCode", otpCode);
+                emailRequest.put("subject", "Mã OTP xác thực giao dịch - CKL Banking");
+                emailRequest.put("createdAt", createdAt);
+                emailRequest.put("status", "pending");
+                if (isResend) {
+                    emailRequest.put("isResend", true);
+                }
+                transaction.set(emailRef, emailRequest);
+            }
+            return IssueResult.issued(otpCode, email);
+        }).addOnSuccessListener(result -> {
+            if (result.otpCode == null) {
+                callback.onOTPGenerated(null, false, result.error);
+                return;
+            }
+            Log.d(TAG, "OTP generated and stored for transaction: " + transactionId);
+            if (result.email.isEmpty()) {
+                Log.w(TAG, "User email is empty, cannot send OTP email");
+            } else {
+                callback.onEmailRequested(emailRequestId);
+            }
+            
+            // Log OTP để test (CHỈ DÙNG CHO DEVELOPMENT - XÓA TRONG PRODUCTION)
+            Log.d(TAG, "===========================================");
+            Log.d(TAG, "OTP CODE FOR TESTING: " + result.otpCode);
+            Log.d(TAG, "Email: " + result.email);
+            Log.d(TAG, "Transaction ID: " + transactionId);
+            Log.d(TAG, "===========================================");
+            
+            callback.onOTPGenerated(result.otpCode, true, "OTP đã được gửi");
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Failed to issue OTP", e);
+            callback.onOTPGenerated(null, false, "Lỗi tạo OTP: " + e.getMessage());
+        });
     }
     
     /**
-     * Send OTP via email using Firestore trigger (Cloud Function will handle email sending)
-     * Alternative: Can use HTTP call to email service API
+     * Xác thực OTP trong một transaction duy nhất:
+     * đọc trạng thái khóa của user (users/{userId}) và OTP (otps/{transactionId}), quyết định,
+     * rồi ghi bộ đếm sai / khóa tài khoản hoặc cờ isUsed cùng lúc. Nhiều lần nhập sai liên tiếp
+     * không thể ghi đè bộ đếm của nhau, và một OTP đúng chỉ được dùng một lần.
      */
-    private void sendOTPEmail(String transactionId, String userEmail, String otpCode) {
-        if (userEmail == null || userEmail.isEmpty()) {
-            Log.w(TAG, "User email is empty, cannot send OTP email");
-            return;
-        }
-        
-        // Log OTP để test (CHỈ DÙNG CHO DEVELOPMENT - XÓA TRONG PRODUCTION)
-        Log.d(TAG, "===========================================");
-        Log.d(TAG, "OTP CODE FOR TESTING: " + otpCode);
-        Log.d(TAG, "Email: " + userEmail);
-        Log.d(TAG, "Transaction ID: " + transactionId);
-        Log.d(TAG, "===========================================");
-        
-        // Create email request document in Firestore
-        // Cloud Function will listen to this collection and send email
-        Map<String, Object> emailRequest = new HashMap<>();
-        emailRequest.put("transactionId", transactionId);
-        emailRequest.put("toEmail", userEmail);
-        emailRequest.put("otpCode", otpCode);
-        emailRequest.put("subject", "Mã OTP xác thực giao dịch - CKL Banking");
-        emailRequest.put("createdAt", com.google.firebase.Timestamp.now());
-        emailRequest.put("status", "pending");
-        
-        // Store in email_requests collection for Cloud Function to process
-        db.collection("email_requests")
-                .document(transactionId)
-                .set(emailRequest)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Email request created for transaction: " + transactionId);
-                    Log.d(TAG, "Cloud Function will send email to: " + userEmail);
-                    // Update OTP document status to pending (will be updated by Cloud Function)
-                    db.collection(OTP_COLLECTION)
-                            .document(transactionId)
-                            .update("status", "pending")
-                            .addOnSuccessListener(aVoid1 -> {
-                                Log.d(TAG, "OTP status updated to pending, waiting for Cloud Function");
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to create email request", e);
-                    // Update OTP document status to failed
-                    db.collection(OTP_COLLECTION)
-                            .document(transactionId)
-                            .update("status", "failed")
-                            .addOnFailureListener(e2 -> Log.e(TAG, "Failed to update OTP status", e2));
-                });
-    }
-    
     public void verifyOTP(String transactionId, String otpCode, String userId, OTPVerificationCallback callback) {
         if (transactionId == null || otpCode == null || otpCode.length() != OTP_LENGTH) {
             callback.onVerificationResult(false, "Mã OTP không hợp lệ", false);
             return;
         }
         
-        // Check if account is locked
-        checkAccountLock(userId, new AccountLockCallback() {
-            @Override
-            public void onLockChecked(boolean isLocked, String message) {
-                if (isLocked) {
-                    callback.onVerificationResult(false, message, false);
-                    return;
+        DocumentReference otpRef = db.collection(OTP_COLLECTION).document(transactionId);
+        DocumentReference userRef = userId != null && !userId.isEmpty()
+                ? db.collection(USERS_COLLECTION).document(userId) : null;
+        
+        db.runTransaction(transaction -> {
+            DocumentSnapshot user = userRef != null ? transaction.get(userRef) : null;
+            DocumentSnapshot otp = transaction.get(otpRef);
+            long currentTime = System.currentTimeMillis();
+            boolean hasUser = user != null && user.exists();
+            
+            // Check if account is locked
+            Long lockedUntilMillis = hasUser ? lockedUntilMillis(user) : null;
+            if (lockedUntilMillis != null && currentTime < lockedUntilMillis) {
+                long remainingMinutes = (lockedUntilMillis - currentTime) / 60000;
+                return VerificationResult.failed(
+                    "Tài khoản đã bị khóa do nhập sai OTP nhiều lần. Vui lòng đợi " + 
+                    remainingMinutes + " phút nữa.", false);
+            }
+            // Lock expired -> bộ đếm bắt đầu lại từ 0
+            boolean lockExpired = lockedUntilMillis != null;
+            int currentAttempts = hasUser && !lockExpired ? failedAttemptsOf(user) : 0;
+            
+            if (!otp.exists()) {
+                return recordFailedAttempt(transaction, hasUser ? userRef : null, currentAttempts,
+                        "Không tìm thấy mã OTP");
+            }
+            
+            String storedOTP = otp.getString("otpCode");
+            boolean isUsed = Boolean.TRUE.equals(otp.getBoolean("isUsed"));
+            Long expiresAt = otp.getLong("expiresAt");
+            
+            VerificationResult result;
+            if (isUsed) {
+                // Check if OTP is already used
+                result = VerificationResult.failed("Mã OTP đã được sử dụng", false);
+            } else if (expiresAt == null || currentTime > expiresAt) {
+                // Check if OTP is expired
+                result = VerificationResult.failed("Mã OTP đã hết hạn", false);
+            } else if (otpCode.equals(storedOTP)) {
+                // OTP correct - mark OTP as used and reset failed attempts
+                transaction.update(otpRef, "isUsed", true);
+                if (hasUser) {
+                    transaction.update(userRef, unlockedState());
                 }
-                
-                // Account not locked, proceed with OTP verification
-                db.collection(OTP_COLLECTION)
-                        .document(transactionId)
-                        .get()
-                        .addOnSuccessListener(documentSnapshot -> {
-                            if (!documentSnapshot.exists()) {
-                                handleFailedAttempt(userId, callback, "Không tìm thấy mã OTP");
-                                return;
-                            }
-                            
-                            String storedOTP = documentSnapshot.getString("otpCode");
-                            boolean isUsed = Boolean.TRUE.equals(documentSnapshot.getBoolean("isUsed"));
-                            long expiresAt = documentSnapshot.getLong("expiresAt");
-                            long currentTime = System.currentTimeMillis();
-                            
-                            // Check if OTP is already used
-                            if (isUsed) {
-                                callback.onVerificationResult(false, "Mã OTP đã được sử dụng", false);
-                                return;
-                            }
-                            
-                            // Check if OTP is expired
-                            if (currentTime > expiresAt) {
-                                callback.onVerificationResult(false, "Mã OTP đã hết hạn", false);
-                                return;
-                            }
-                            
-                            // Verify OTP code
-                            if (otpCode.equals(storedOTP)) {
-                                // OTP correct - reset failed attempts and mark OTP as used
-                                resetFailedAttempts(userId);
-                                documentSnapshot.getReference().update("isUsed", true)
-                                        .addOnSuccessListener(aVoid -> {
-                                            callback.onVerificationResult(true, "Xác thực thành công", false);
-                                        })
-                                        .addOnFailureListener(e -> {
-                                            Log.e(TAG, "Failed to mark OTP as used", e);
-                                            callback.onVerificationResult(true, "Xác thực thành công", false);
-                                        });
-                            } else {
-                                // OTP incorrect - increment failed attempts
-                                handleFailedAttempt(userId, callback, "Mã OTP không đúng");
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Failed to verify OTP", e);
-                            callback.onVerificationResult(false, "Lỗi xác thực: " + e.getMessage(), false);
-                        });
+                return VerificationResult.verified();
+            } else {
+                // OTP incorrect - increment failed attempts
+                return recordFailedAttempt(transaction, hasUser ? userRef : null, currentAttempts,
+                        "Mã OTP không đúng");
+            }
+            
+            if (lockExpired) {
+                // Unlock account when lock period expires
+                transaction.update(userRef, unlockedState());
+            }
+            return result;
+        }).addOnSuccessListener(result -> {
+            if (result.success) {
+                Log.d(TAG, "OTP verified for transaction: " + transactionId);
             }
+            callback.onVerificationResult(result.success, result.message, result.isLocked);
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Failed to verify OTP", e);
+            callback.onVerificationResult(false, "Lỗi xác thực: " + e.getMessage(), false);
         });
     }
     
     /**
-     * Check if user account is locked
+     * Ghi nhận một lần nhập sai trong transaction - tăng bộ đếm và khóa nếu cần
+     * @param userRef null nếu không có user doc (chỉ trả lỗi, không đếm)
      */
-    private void checkAccountLock(String userId, AccountLockCallback callback) {
-        if (userId == null || userId.isEmpty()) {
-            callback.onLockChecked(false, null);
-            return;
+    private VerificationResult recordFailedAttempt(Transaction transaction, DocumentReference userRef,
+                                                   int currentAttempts, String errorMessage) {
+        if (userRef == null) {
+            return VerificationResult.failed(errorMessage, false);
         }
         
-        db.collection("users")
-                .document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (!documentSnapshot.exists()) {
-                        callback.onLockChecked(false, null);
-                        return;
-                    }
-                    
-                    Object lockedUntilObj = documentSnapshot.get("lockedUntil");
-                    if (lockedUntilObj == null) {
-                        callback.onLockChecked(false, null);
-                        return;
-                    }
-                    
-                    long lockedUntilMillis;
-                    if (lockedUntilObj instanceof Timestamp) {
-                        lockedUntilMillis = ((Timestamp) lockedUntilObj).toDate().getTime();
-                    } else if (lockedUntilObj instanceof Long) {
-                        lockedUntilMillis = (Long) lockedUntilObj;
-                    } else {
-                        callback.onLockChecked(false, null);
-                        return;
-                    }
-                    
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime < lockedUntilMillis) {
-                        // Account is still locked
-                        long remainingMinutes = (lockedUntilMillis - currentTime) / 60000;
-                        callback.onLockChecked(true, 
-                            "Tài khoản đã bị khóa do nhập sai OTP nhiều lần. Vui lòng đợi " + 
-                            remainingMinutes + " phút nữa.");
-                    } else {
-                        // Lock expired, unlock account
-                        unlockAccount(userId);
-                        callback.onLockChecked(false, null);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error checking account lock", e);
-                    // Fail open - allow verification if check fails
-                    callback.onLockChecked(false, null);
-                });
-    }
-    
-    /**
-     * Handle failed OTP attempt - increment counter and lock if needed
-     */
-    private void handleFailedAttempt(String userId, OTPVerificationCallback callback, String errorMessage) {
-        if (userId == null || userId.isEmpty()) {
-            callback.onVerificationResult(false, errorMessage, false);
-            return;
+        int newAttempts = currentAttempts + 1;
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("failedAttempts", newAttempts);
+        
+        boolean shouldLock = newAttempts >= MAX_FAILED_ATTEMPTS;
+        if (shouldLock) {
+            long lockUntil = System.currentTimeMillis() + LOCK_DURATION_MILLIS;
+            Timestamp lockUntilTimestamp = new Timestamp(lockUntil / 1000, (int) ((lockUntil % 1000) * 1000000));
+            updates.put("lockedUntil", lockUntilTimestamp);
+        } else {
+            updates.put("lockedUntil", null);
         }
+        transaction.update(userRef, updates);
         
-        db.collection("users")
-                .document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    int currentAttempts = 0;
-                    if (documentSnapshot.exists()) {
-                        Object attemptsObj = documentSnapshot.get("failedAttempts");
-                        if (attemptsObj instanceof Integer) {
-                            currentAttempts = (Integer) attemptsObj;
-                        } else if (attemptsObj instanceof Long) {
-                            currentAttempts = ((Long) attemptsObj).intValue();
-                        }
-                    }
-                    
-                    int newAttempts = currentAttempts + 1;
-                    Map<String, Object> updates = new HashMap<>();
-                    updates.put("failedAttempts", newAttempts);
-                    
-                    boolean shouldLock = newAttempts >= MAX_FAILED_ATTEMPTS;
-                    if (shouldLock) {
-                        long lockUntil = System.currentTimeMillis() + LOCK_DURATION_MILLIS;
-                        Timestamp lockUntilTimestamp = new Timestamp(lockUntil / 1000, (int) ((lockUntil % 1000) * 1000000));
-                        updates.put("lockedUntil", lockUntilTimestamp);
-                    }
-                    
-                    db.collection("users")
-                            .document(userId)
-                            .update(updates)
-                            .addOnSuccessListener(aVoid -> {
-                                if (shouldLock) {
-                                    callback.onVerificationResult(false, 
-                                        "Bạn đã nhập sai OTP " + MAX_FAILED_ATTEMPTS + " lần. " +
-                                        "Tài khoản đã bị khóa trong 15 phút.", true);
-                                } else {
-                                    int remainingAttempts = MAX_FAILED_ATTEMPTS - newAttempts;
-                                    callback.onVerificationResult(false, 
-                                        errorMessage + " (Còn " + remainingAttempts + " lần thử)", false);
-                                }
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to update failed attempts", e);
-                                callback.onVerificationResult(false, errorMessage, false);
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error handling failed attempt", e);
-                    callback.onVerificationResult(false, errorMessage, false);
-                });
+        if (shouldLock) {
+            return VerificationResult.failed(
+                "Bạn đã nhập sai OTP " + MAX_FAILED_ATTEMPTS + " lần. " +
+                "Tài khoản đã bị khóa trong 15 phút.", true);
+        }
+        int remainingAttempts = MAX_FAILED_ATTEMPTS - newAttempts;
+        return VerificationResult.failed(errorMessage + " (Còn " + remainingAttempts + " lần thử)", false);
     }
     
-    /**
-     * Reset failed attempts after successful OTP verification
-     */
-    private void resetFailedAttempts(String userId) {
-        if (userId == null || userId.isEmpty()) return;
-        
+    private static Map<String, Object> unlockedState() {
         Map<String, Object> updates = new HashMap<>();
         updates.put("failedAttempts", 0);
         updates.put("lockedUntil", null);
-        
-        db.collection("users")
-                .document(userId)
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Failed attempts reset for user: " + userId);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to reset failed attempts", e);
-                });
+        return updates;
     }
     
     /**
-     * Unlock account when lock period expires
+     * lockedUntil lưu dạng Timestamp hoặc millis; null nếu không bị khóa
      */
-    private void unlockAccount(String userId) {
-        if (userId == null || userId.isEmpty()) return;
-        
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("lockedUntil", null);
-        updates.put("failedAttempts", 0);
-        
-        db.collection("users")
-                .document(userId)
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Account unlocked for user: " + userId);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to unlock account", e);
-                });
+    private static Long lockedUntilMillis(DocumentSnapshot user) {
+        Object lockedUntilObj = user.get("lockedUntil");
+        if (lockedUntilObj instanceof Timestamp) {
+            return ((Timestamp) lockedUntilObj).toDate().getTime();
+        } else if (lockedUntilObj instanceof Long) {
+            return (Long) lockedUntilObj;
+        }
+        return null;
     }
     
-    public void resendOTP(String transactionId, String userId, String userEmail, OTPGenerationCallback callback) {
-        // Get current OTP to get email if not provided
-        if (userEmail == null || userEmail.isEmpty()) {
-            db.collection(OTP_COLLECTION)
-                    .document(transactionId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            String email = documentSnapshot.getString("userEmail");
-                            if (email != null) {
-                                // Delete old OTP and email request
-                                db.collection(OTP_COLLECTION).document(transactionId).delete();
-                                db.collection("email_requests").document(transactionId).delete();
-                                // Generate new OTP with rate limiting
-                                generateOTP(transactionId, userId, email, callback);
-                            } else {
-                                callback.onOTPGenerated(null, false, "Không tìm thấy email");
-                            }
-                        } else {
-                            callback.onOTPGenerated(null, false, "Không tìm thấy OTP cũ");
-                        }
-                    });
-            return;
+    private static int failedAttemptsOf(DocumentSnapshot user) {
+        Object attemptsObj = user.get("failedAttempts");
+        if (attemptsObj instanceof Integer) {
+            return (Integer) attemptsObj;
+        } else if (attemptsObj instanceof Long) {
+            return ((Long) attemptsObj).intValue();
         }
-        
-        // Delete old OTP and email request
-        db.collection(OTP_COLLECTION)
-                .document(transactionId)
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Old OTP deleted");
-                });
-        db.collection("email_requests")
-                .document(transactionId)
-                .delete();
-        
-        // Generate new OTP with rate limiting
-        generateOTP(transactionId, userId, userEmail, callback);
+        return 0;
+    }
+    
+    // Package-private: OTPServiceRateLimitTest (androidTest) checks reads per issue
+    // (một lần đọc cho mỗi lần phát hành, không phụ thuộc số lần gửi trước đó)
+    static long getRateLimitReadCount() {
+        return rateLimitReadCount.get();
+    }
+    
+    public void resendOTP(String transactionId, String userId, String userEmail, OTPGenerationCallback callback) {
+        // Cùng đường phát hành với generateOTP: OTP mới ghi đè OTP cũ trong cùng transaction,
+        // email trống -> lấy từ OTP cũ
+        issueOTP(transactionId, userId, userEmail, true, callback);
     }
     
     /**
@@ -473,20 +339,58 @@ public class OTPService {
      */
     public interface OTPGenerationCallback {
         void onOTPGenerated(String otpCode, boolean success, String message);
+        
+        /**
+         * Id của document email_requests vừa tạo (gọi trước onOTPGenerated) - lần gửi lại
+         * dùng id riêng, nên cần theo dõi trạng thái gửi email trên document này
+         */
+        default void onEmailRequested(String emailRequestId) {}
     }
     
     /**
-     * Callback interface for rate limit check
+     * Kết quả transaction phát hành OTP
      */
-    private interface RateLimitCallback {
-        void onRateLimitChecked(boolean allowed, String message);
+    private static class IssueResult {
+        final String otpCode;
+        final String email;
+        final String error;
+        
+        private IssueResult(String otpCode, String email, String error) {
+            this.otpCode = otpCode;
+            this.email = email;
+            this.error = error;
+        }
+        
+        static IssueResult issued(String otpCode, String email) {
+            return new IssueResult(otpCode, email, null);
+        }
+        
+        static IssueResult failed(String error) {
+            return new IssueResult(null, null, error);
+        }
     }
     
     /**
-     * Callback interface for account lock check
+     * Kết quả transaction xác thực OTP
      */
-    private interface AccountLockCallback {
-        void onLockChecked(boolean isLocked, String message);
+    private static class VerificationResult {
+        final boolean success;
+        final String message;
+        final boolean isLocked;
+        
+        private VerificationResult(boolean success, String message, boolean isLocked) {
+            this.success = success;
+            this.message = message;
+            this.isLocked = isLocked;
+        }
+        
+        static VerificationResult verified() {
+            return new VerificationResult(true, "Xác thực thành công", false);
+        }
+        
+        static VerificationResult failed(String message, boolean isLocked) {
+            return new VerificationResult(false, message, isLocked);
+        }
     }
 }
 
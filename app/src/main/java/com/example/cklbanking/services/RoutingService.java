@@ -0,0 +1,416 @@
+package com.example.cklbanking.services;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.cklbanking.R;
+import com.example.cklbanking.utils.PolylineEncoder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lấy đường đi bộ từ Goong Directions API, có cache
+ *
+ * - Executor giới hạn (2 thread, hàng đợi ngắn) thay vì new Thread cho mỗi lần gọi
+ * - Request mới hủy request đang chờ/đang chạy trước đó (ngắt kết nối HTTP)
+ * - Cache LRU trong bộ nhớ + file trong cacheDir, key theo điểm đi (làm tròn ~100 m)
+ *   và điểm đến (chi nhánh - làm tròn ~1 m)
+ * - Route lưu và trả về dạng encoded polyline (xem PolylineEncoder)
+ *
+ * Process-wide (getInstance) để cache còn khi mở lại màn hình. Callback chạy trên main thread.
+ */
+public class RoutingService {
+
+    private static final String TAG = "RoutingService";
+    private static final String DEFAULT_BASE_URL = "https://rsapi.goong.io";
+    private static final String VEHICLE_WALK = "walk";
+    private static final String DIRECTORY_NAME = "routes";
+    private static final int MAX_MEMORY_ENTRIES = 32;
+    private static final long CACHE_TTL_MILLIS = 7L * 24 * 60 * 60 * 1000; // 7 days
+    private static final int TIMEOUT_MILLIS = 10 * 1000; // 10 seconds
+
+    private static RoutingService instance;
+
+    /**
+     * Đường đi đã tính
+     */
+    public static class Route {
+        private final double distanceMeters;
+        private final double durationSeconds;
+        private final String encodedPolyline;
+        private final long createdAt;
+
+        Route(double distanceMeters, double durationSeconds, String encodedPolyline, long createdAt) {
+            this.distanceMeters = distanceMeters;
+            this.durationSeconds = durationSeconds;
+            this.encodedPolyline = encodedPolyline;
+            this.createdAt = createdAt;
+        }
+
+        public double getDistanceMeters() { return distanceMeters; }
+
+        public double getDurationSeconds() { return durationSeconds; }
+
+        public String getEncodedPolyline() { return encodedPolyline; }
+    }
+
+    public interface RouteCallback {
+        void onRoute(Route route, boolean fromCache);
+        void onError(String message);
+    }
+
+    /**
+     * Request đang chạy - hủy được từ main thread
+     */
+    private static class RouteRequest {
+        volatile boolean cancelled;
+        volatile HttpURLConnection connection;
+        Future<?> future;
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+            HttpURLConnection active = connection;
+            if (active != null) {
+                active.disconnect(); // Bỏ chặn read đang đợi mạng
+            }
+        }
+    }
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final File directory;
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor executor;
+    private final LinkedHashMap<String, Route> memoryCache;
+    private RouteRequest currentRequest; // main thread
+
+    // Metrics
+    private long memoryHitCount;
+    private long diskHitCount;
+    private long networkCount;
+
+    public static synchronized RoutingService getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new RoutingService(DEFAULT_BASE_URL, appContext.getString(R.string.goong_api_key),
+                    new File(appContext.getCacheDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * @param baseUrl có thể trỏ tới server giả lập Goong khi test
+     */
+    public RoutingService(String baseUrl, String apiKey, File directory) {
+        this(baseUrl, apiKey, directory, new Handler(Looper.getMainLooper())::post);
+    }
+
+    /**
+     * @param callbackExecutor nơi chạy callback (main thread; unit test dùng thread gọi)
+     */
+    RoutingService(String baseUrl, String apiKey, File directory, Executor callbackExecutor) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.directory = directory;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(4), new ThreadPoolExecutor.DiscardOldestPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        // accessOrder = true -> LRU ordering
+        this.memoryCache = new LinkedHashMap<String, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Route> eldest) {
+                return size() > MAX_MEMORY_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Đường đi bộ từ origin tới destination. Gọi từ main thread; request trước đó
+     * (nếu chưa xong) bị hủy và không gọi callback.
+     */
+    public void getWalkingRoute(double originLat, double originLng, double destLat, double destLng,
+                                RouteCallback callback) {
+        cancelPending();
+        String key = cacheKey(originLat, originLng, destLat, destLng);
+
+        Route cached;
+        synchronized (this) {
+            cached = memoryCache.get(key);
+            if (cached != null && isExpired(cached)) {
+                memoryCache.remove(key);
+                cached = null;
+            }
+            if (cached != null) {
+                memoryHitCount++;
+            }
+        }
+        if (cached != null) {
+            callback.onRoute(cached, true);
+            return;
+        }
+
+        RouteRequest request = new RouteRequest();
+        currentRequest = request;
+        request.future = executor.submit(() -> loadRoute(request, key, originLat, originLng, destLat, destLng, callback));
+    }
+
+    /**
+     * Hủy request đang chạy (vd. khi đóng màn hình)
+     */
+    public void cancelPending() {
+        if (currentRequest != null) {
+            currentRequest.cancel();
+            currentRequest = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "RoutingService{cached=%d, memoryHits=%d, diskHits=%d, network=%d}",
+                memoryCache.size(), memoryHitCount, diskHitCount, networkCount);
+    }
+
+    private void loadRoute(RouteRequest request, String key, double originLat, double originLng,
+                           double destLat, double destLng, RouteCallback callback) {
+        if (request.cancelled) {
+            return;
+        }
+        Route route = readFile(fileFor(key));
+        if (route != null) {
+            synchronized (this) {
+                diskHitCount++;
+                memoryCache.put(key, route);
+            }
+            deliver(request, () -> callback.onRoute(route, true));
+            return;
+        }
+
+        try {
+            Route fetched = fetchRoute(request, originLat, originLng, destLat, destLng);
+            synchronized (this) {
+                networkCount++;
+                memoryCache.put(key, fetched);
+            }
+            writeFile(fileFor(key), fetched);
+            deliver(request, () -> callback.onRoute(fetched, false));
+        } catch (SocketTimeoutException e) {
+            Log.e(TAG, "Timeout getting route", e);
+            deliver(request, () -> callback.onError("Timeout khi tính toán đường đi"));
+        } catch (RouteException e) {
+            Log.e(TAG, "Goong API error: " + e.getMessage());
+            deliver(request, () -> callback.onError(e.getMessage()));
+        } catch (Exception e) {
+            if (!request.cancelled) {
+                Log.e(TAG, "Error getting route", e);
+            }
+            deliver(request, () -> callback.onError("Lỗi: " + e.getMessage()));
+        }
+        Log.d(TAG, toString());
+    }
+
+    private void deliver(RouteRequest request, Runnable action) {
+        callbackExecutor.execute(() -> {
+            if (!request.cancelled) {
+                action.run();
+            }
+        });
+    }
+
+    private Route fetchRoute(RouteRequest request, double originLat, double originLng,
+                             double destLat, double destLng) throws IOException, JSONException, RouteException {
+        String url = String.format(Locale.US, "%s/Direction?origin=%f,%f&destination=%f,%f&vehicle=%s&api_key=%s",
+                baseUrl, originLat, originLng, destLat, destLng, VEHICLE_WALK, apiKey);
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        request.connection = conn;
+        try {
+            if (request.cancelled) {
+                throw new IOException("Cancelled");
+            }
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(TIMEOUT_MILLIS);
+            conn.setReadTimeout(TIMEOUT_MILLIS);
+
+            int responseCode = conn.getResponseCode();
+            InputStream stream = responseCode == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream();
+            String responseBody = stream != null ? readFully(stream) : "";
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new RouteException(parseErrorMessage(responseBody));
+            }
+            return parseRoute(new JSONObject(responseBody));
+        } finally {
+            request.connection = null;
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Goong trả về routes[].overview_polyline (đã encode sẵn) hoặc routes.features[] (GeoJSON)
+     */
+    private static Route parseRoute(JSONObject response) throws JSONException, RouteException {
+        Object routes = response.opt("routes");
+        long now = System.currentTimeMillis();
+
+        if (routes instanceof JSONArray) {
+            JSONArray routeArray = (JSONArray) routes;
+            if (routeArray.length() == 0) {
+                throw new RouteException("Không tìm thấy đường đi");
+            }
+            JSONObject route = routeArray.getJSONObject(0);
+            String points = route.getJSONObject("overview_polyline").getString("points");
+            double distance = 0;
+            double duration = 0;
+            JSONArray legs = route.optJSONArray("legs");
+            for (int i = 0; legs != null && i < legs.length(); i++) {
+                JSONObject leg = legs.getJSONObject(i);
+                distance += leg.getJSONObject("distance").getDouble("value");
+                duration += leg.getJSONObject("duration").getDouble("value");
+            }
+            return new Route(distance, duration, points, now);
+        }
+
+        if (routes instanceof JSONObject) {
+            JSONArray features = ((JSONObject) routes).optJSONArray("features");
+            if (features == null || features.length() == 0) {
+                throw new RouteException("Không tìm thấy đường đi");
+            }
+            JSONObject feature = features.getJSONObject(0);
+            JSONArray coordinates = feature.getJSONObject("geometry").getJSONArray("coordinates");
+            JSONObject properties = feature.getJSONObject("properties");
+
+            // GeoJSON [lng, lat] -> [lat, lng]
+            List<double[]> points = new ArrayList<>(coordinates.length());
+            for (int i = 0; i < coordinates.length(); i++) {
+                JSONArray coord = coordinates.getJSONArray(i);
+                points.add(new double[]{coord.getDouble(1), coord.getDouble(0)});
+            }
+            return new Route(properties.getDouble("distance"), properties.getDouble("duration"),
+                    PolylineEncoder.encode(points), now);
+        }
+
+        throw new RouteException("API không trả về đường đi");
+    }
+
+    private static String parseErrorMessage(String responseBody) {
+        try {
+            JSONObject errorResponse = new JSONObject(responseBody);
+            if (errorResponse.has("error")) {
+                return errorResponse.getString("error");
+            } else if (errorResponse.has("message")) {
+                return errorResponse.getString("message");
+            }
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return "Lỗi khi tính toán đường đi";
+    }
+
+    private static String readFully(InputStream stream) throws IOException {
+        StringBuilder response = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                response.append(buffer, 0, read);
+            }
+        }
+        return response.toString();
+    }
+
+    /**
+     * Điểm đi làm tròn 3 chữ số (~110 m) để các lần bấm gần nhau dùng chung route;
+     * điểm đến (chi nhánh cố định) làm tròn 5 chữ số
+     */
+    static String cacheKey(double originLat, double originLng, double destLat, double destLng) {
+        return String.format(Locale.US, "%s_%.3f_%.3f_%.5f_%.5f", VEHICLE_WALK, originLat, originLng, destLat, destLng);
+    }
+
+    private static boolean isExpired(Route route) {
+        return System.currentTimeMillis() - route.createdAt > CACHE_TTL_MILLIS;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key);
+    }
+
+    /**
+     * File: 3 dòng distance / duration / polyline (ký tự polyline không chứa xuống dòng)
+     */
+    private static Route readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        if (System.currentTimeMillis() - file.lastModified() > CACHE_TTL_MILLIS) {
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete expired route " + file.getName());
+            }
+            return null;
+        }
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            double distance = Double.parseDouble(in.readLine());
+            double duration = Double.parseDouble(in.readLine());
+            String polyline = in.readLine();
+            if (polyline == null) {
+                return null;
+            }
+            return new Route(distance, duration, polyline, file.lastModified());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read cached route", e);
+            return null;
+        }
+    }
+
+    private void writeFile(File file, Route route) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create cache directory");
+            return;
+        }
+        String content = route.distanceMeters + "\n" + route.durationSeconds + "\n" + route.encodedPolyline + "\n";
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cached route", e);
+        }
+    }
+
+    /**
+     * Lỗi nghiệp vụ từ API (thông báo hiển thị được cho người dùng)
+     */
+    private static class RouteException extends Exception {
+        RouteException(String message) {
+            super(message);
+        }
+    }
+}
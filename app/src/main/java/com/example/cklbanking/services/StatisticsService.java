@@ -0,0 +1,165 @@
+package com.example.cklbanking.services;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateQuerySnapshot;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thống kê cho Officer Dashboard
+ * Dùng count/sum aggregation query của Firestore (chỉ trả về con số, không tải document)
+ * và cache kết quả trong bộ nhớ một thời gian ngắn để onResume không query lại liên tục.
+ */
+public class StatisticsService {
+    private static final String TAG = "StatisticsService";
+    private static final long CACHE_TTL_MILLIS = 60 * 1000; // 1 minute
+
+    public static final String[] ACCOUNT_TYPES = {"checking", "saving", "mortgage"};
+    public static final String[] EKYC_STATUSES = {"verified", "pending", "failed"};
+
+    private static DashboardStatistics cachedStatistics;
+    private static long cachedAtMillis;
+
+    private FirebaseFirestore db;
+
+    public StatisticsService() {
+        db = FirebaseFirestore.getInstance();
+    }
+
+    /**
+     * Load dashboard statistics
+     * @param forceRefresh true để bỏ qua cache
+     * @param callback Callback with statistics result
+     */
+    public void loadStatistics(boolean forceRefresh, StatisticsCallback callback) {
+        synchronized (StatisticsService.class) {
+            if (!forceRefresh && cachedStatistics != null
+                    && SystemClock.elapsedRealtime() - cachedAtMillis < CACHE_TTL_MILLIS) {
+                callback.onStatisticsLoaded(true, cachedStatistics, null);
+                return;
+            }
+        }
+
+        Query customers = db.collection("users").whereEqualTo("role", "customer");
+        Query accounts = db.collection("accounts");
+
+        Task<AggregateQuerySnapshot> customerCount = customers.count().get(AggregateSource.SERVER);
+        Task<AggregateQuerySnapshot> accountCount = accounts.count().get(AggregateSource.SERVER);
+
+        Map<String, Task<AggregateQuerySnapshot>> accountTypeCounts = new LinkedHashMap<>();
+        for (String type : ACCOUNT_TYPES) {
+            accountTypeCounts.put(type, accounts.whereEqualTo("accountType", type)
+                    .count().get(AggregateSource.SERVER));
+        }
+
+        Map<String, Task<AggregateQuerySnapshot>> ekycCounts = new LinkedHashMap<>();
+        for (String status : EKYC_STATUSES) {
+            ekycCounts.put(status, customers.whereEqualTo("ekycStatus", status)
+                    .count().get(AggregateSource.SERVER));
+        }
+
+        AggregateField.Sum amountSum = AggregateField.sum("amount");
+        Task<AggregateQuerySnapshot> todayTransactions = db.collection("transactions")
+                .whereGreaterThanOrEqualTo("timestamp", new com.google.firebase.Timestamp(startOfToday()))
+                .aggregate(AggregateField.count(), amountSum)
+                .get(AggregateSource.SERVER);
+
+        List<Task<?>> all = new ArrayList<>();
+        all.add(customerCount);
+        all.add(accountCount);
+        all.addAll(accountTypeCounts.values());
+        all.addAll(ekycCounts.values());
+        all.add(todayTransactions);
+
+        Tasks.whenAllComplete(all).addOnCompleteListener(done -> {
+            for (Task<?> task : all) {
+                if (!task.isSuccessful()) {
+                    Exception e = task.getException();
+                    Log.e(TAG, "Failed to load statistics", e);
+                    callback.onStatisticsLoaded(false, null, e != null ? e.getMessage() : "");
+                    return;
+                }
+            }
+
+            DashboardStatistics statistics = new DashboardStatistics();
+            statistics.totalCustomers = customerCount.getResult().getCount();
+            statistics.totalAccounts = accountCount.getResult().getCount();
+            for (Map.Entry<String, Task<AggregateQuerySnapshot>> entry : accountTypeCounts.entrySet()) {
+                statistics.accountsByType.put(entry.getKey(), entry.getValue().getResult().getCount());
+            }
+            for (Map.Entry<String, Task<AggregateQuerySnapshot>> entry : ekycCounts.entrySet()) {
+                statistics.customersByEkycStatus.put(entry.getKey(), entry.getValue().getResult().getCount());
+            }
+            AggregateQuerySnapshot today = todayTransactions.getResult();
+            statistics.todayTransactionCount = today.getCount();
+            Double todayAmount = today.getDouble(amountSum);
+            statistics.todayTransactionAmount = todayAmount != null ? todayAmount : 0;
+
+            synchronized (StatisticsService.class) {
+                cachedStatistics = statistics;
+                cachedAtMillis = SystemClock.elapsedRealtime();
+            }
+            callback.onStatisticsLoaded(true, statistics, null);
+        });
+    }
+
+    /**
+     * Xóa cache (gọi khi biết dữ liệu vừa thay đổi, vd. sau khi tạo tài khoản)
+     */
+    public static synchronized void invalidateCache() {
+        cachedStatistics = null;
+    }
+
+    private java.util.Date startOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Kết quả thống kê (immutable sau khi load xong)
+     */
+    public static class DashboardStatistics {
+        private long totalCustomers;
+        private long totalAccounts;
+        private final Map<String, Long> accountsByType = new LinkedHashMap<>();
+        private final Map<String, Long> customersByEkycStatus = new LinkedHashMap<>();
+        private long todayTransactionCount;
+        private double todayTransactionAmount;
+
+        public long getTotalCustomers() { return totalCustomers; }
+
+        public long getTotalAccounts() { return totalAccounts; }
+
+        public Map<String, Long> getAccountsByType() { return Collections.unmodifiableMap(accountsByType); }
+
+        public Map<String, Long> getCustomersByEkycStatus() { return Collections.unmodifiableMap(customersByEkycStatus); }
+
+        public long getTodayTransactionCount() { return todayTransactionCount; }
+
+        public double getTodayTransactionAmount() { return todayTransactionAmount; }
+    }
+
+    /**
+     * Callback interface
+     */
+    public interface StatisticsCallback {
+        void onStatisticsLoaded(boolean success, DashboardStatistics statistics, String message);
+    }
+}
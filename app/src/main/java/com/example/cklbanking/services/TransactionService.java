@@ -1,15 +1,33 @@
 package com.example.cklbanking.services;
 
+import android.os.SystemClock;
 import android.util.Log;
 import com.example.cklbanking.models.Account;
+import com.example.cklbanking.repositories.AccountRepository;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
 
-import java.util.Calendar;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TransactionService {
     private static final String TAG = "TransactionService";
@@ -17,11 +35,27 @@ public class TransactionService {
     private static final double SINGLE_TRANSACTION_LIMIT = 100000000; // 100 million VND per transaction
     private static final double MIN_TRANSACTION_AMOUNT = 10000; // 10,000 VND minimum
     private static final double HIGH_VALUE_THRESHOLD = 10000000; // 10 million VND - requires eKYC
+    private static final String DAILY_TOTALS_COLLECTION = "daily_transfer_totals";
+    private static final int DAILY_TOTAL_SHARD_COUNT = 4;
+    
+    // Verification stage names (keys of getLastVerificationTimings())
+    public static final String STAGE_SOURCE_ACCOUNT = "sourceAccount";
+    public static final String STAGE_DESTINATION_ACCOUNT = "destinationAccount";
+    public static final String STAGE_EKYC = "ekyc";
+    public static final String STAGE_DAILY_LIMIT = "dailyLimit";
+    public static final String STAGE_TOTAL = "total";
     
     private FirebaseFirestore db;
+    private AccountRepository accountRepository;
+    private volatile Map<String, Long> lastVerificationTimings = Collections.emptyMap();
+    
+    // Commit metrics shared by all instances
+    private static final AtomicLong contentionRetryCount = new AtomicLong();
+    private static volatile long lastCommitLatencyMs = -1;
     
     public TransactionService() {
         db = FirebaseFirestore.getInstance();
+        accountRepository = new AccountRepository();
     }
     
     /**
@@ -73,106 +107,198 @@ public class TransactionService {
             return;
         }
         
-        // Load source account
-        db.collection("accounts")
-                .whereEqualTo("accountNumber", fromAccountNumber)
-                .whereEqualTo("userId", userId)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        callback.onVerificationResult(false, 
-                            String.format("❌ Lỗi: Không tìm thấy tài khoản nguồn với số tài khoản: %s. " +
-                                "Vui lòng kiểm tra lại số tài khoản hoặc liên hệ hỗ trợ.", fromAccountNumber), null);
-                        return;
-                    }
-                    
-                    DocumentSnapshot fromAccountDoc = queryDocumentSnapshots.getDocuments().get(0);
-                    Account fromAccount = fromAccountDoc.toObject(Account.class);
-                    
-                    if (fromAccount == null) {
-                        callback.onVerificationResult(false, 
-                            "❌ Lỗi: Không thể đọc thông tin tài khoản nguồn. " +
-                            "Vui lòng thử lại sau hoặc liên hệ hỗ trợ.", null);
-                        return;
-                    }
-                    
-                    // Check account balance with detailed message
-                    if (fromAccount.getBalance() < amount) {
-                        callback.onVerificationResult(false, 
-                            String.format("❌ Lỗi: Số dư không đủ để thực hiện giao dịch. " +
-                                "Số dư hiện tại: %s | Số tiền cần chuyển: %s | Thiếu: %s. " +
-                                "Vui lòng nạp thêm tiền vào tài khoản.",
-                                formatCurrency(fromAccount.getBalance()),
-                                formatCurrency(amount),
-                                formatCurrency(amount - fromAccount.getBalance())), null);
-                        return;
+        // Start all independent reads together instead of chaining them:
+        // source account, destination account, eKYC status and today's transfers
+        final Map<String, Long> stageTimings = new ConcurrentHashMap<>();
+        final long verifyStart = SystemClock.elapsedRealtime();
+        
+        boolean highValue = amount >= HIGH_VALUE_THRESHOLD;
+        boolean internal = "internal".equals(transferType);
+        
+        Task<DocumentSnapshot> sourceTask = timed(accountRepository.getAccountByNumber(fromAccountNumber),
+                STAGE_SOURCE_ACCOUNT, verifyStart, stageTimings);
+        Task<DocumentSnapshot> ekycTask = highValue
+                ? timed(db.collection("users").document(userId).get(),
+                        STAGE_EKYC, verifyStart, stageTimings)
+                : null;
+        Task<QuerySnapshot> dailyTask = timed(queryTodayTransferShards(userId),
+                STAGE_DAILY_LIMIT, verifyStart, stageTimings);
+        Task<DocumentSnapshot> destinationTask = internal
+                ? timed(accountRepository.getAccountByNumber(toAccountNumber),
+                        STAGE_DESTINATION_ACCOUNT, verifyStart, stageTimings)
+                : null;
+        
+        List<Task<?>> pending = new ArrayList<>();
+        pending.add(sourceTask);
+        pending.add(dailyTask);
+        if (ekycTask != null) pending.add(ekycTask);
+        if (destinationTask != null) pending.add(destinationTask);
+        
+        Tasks.whenAllComplete(pending).addOnCompleteListener(allDone -> {
+            stageTimings.put(STAGE_TOTAL, SystemClock.elapsedRealtime() - verifyStart);
+            lastVerificationTimings = Collections.unmodifiableMap(new HashMap<>(stageTimings));
+            Log.d(TAG, "Verification stage timings (ms): " + lastVerificationTimings);
+            
+            // Source account
+            if (!sourceTask.isSuccessful()) {
+                Exception e = sourceTask.getException();
+                Log.e(TAG, "Failed to verify transaction", e);
+                callback.onVerificationResult(false, 
+                    String.format("❌ Lỗi hệ thống: Không thể xác thực giao dịch. " +
+                        "Chi tiết: %s. Vui lòng thử lại sau hoặc liên hệ hỗ trợ nếu vấn đề vẫn tiếp tục.",
+                        e != null ? e.getMessage() : "unknown"), null);
+                return;
+            }
+            
+            DocumentSnapshot fromAccountDoc = sourceTask.getResult();
+            if (fromAccountDoc == null || !userId.equals(fromAccountDoc.getString("userId"))) {
+                callback.onVerificationResult(false, 
+                    String.format("❌ Lỗi: Không tìm thấy tài khoản nguồn với số tài khoản: %s. " +
+                        "Vui lòng kiểm tra lại số tài khoản hoặc liên hệ hỗ trợ.", fromAccountNumber), null);
+                return;
+            }
+            
+            Account fromAccount = fromAccountDoc.toObject(Account.class);
+            
+            if (fromAccount == null) {
+                callback.onVerificationResult(false, 
+                    "❌ Lỗi: Không thể đọc thông tin tài khoản nguồn. " +
+                    "Vui lòng thử lại sau hoặc liên hệ hỗ trợ.", null);
+                return;
+            }
+            
+            // Check account balance with detailed message
+            if (fromAccount.getBalance() < amount) {
+                callback.onVerificationResult(false, 
+                    String.format("❌ Lỗi: Số dư không đủ để thực hiện giao dịch. " +
+                        "Số dư hiện tại: %s | Số tiền cần chuyển: %s | Thiếu: %s. " +
+                        "Vui lòng nạp thêm tiền vào tài khoản.",
+                        formatCurrency(fromAccount.getBalance()),
+                        formatCurrency(amount),
+                        formatCurrency(amount - fromAccount.getBalance())), null);
+                return;
+            }
+            
+            // Check eKYC requirement for high-value transactions
+            if (ekycTask != null) {
+                String ekycMessage;
+                String ekycStatus = null;
+                if (!ekycTask.isSuccessful()) {
+                    // On error, allow transaction but log warning
+                    Log.e(TAG, "Failed to check eKYC status", ekycTask.getException());
+                    ekycMessage = null;
+                } else {
+                    DocumentSnapshot userDoc = ekycTask.getResult();
+                    ekycStatus = userDoc != null ? userDoc.getString("ekycStatus") : null;
+                    ekycMessage = buildEkycMessage(userDoc, amount);
+                }
+                
+                if (ekycMessage != null) {
+                    // eKYC is required but not verified
+                    Map<String, Object> ekycData = new HashMap<>();
+                    ekycData.put("ekycRequired", true);
+                    ekycData.put("ekycStatus", ekycStatus);
+                    callback.onVerificationResult(false, ekycMessage, ekycData);
+                    return;
+                }
+            }
+            
+            // Daily limit check
+            double dailyTotal = 0;
+            if (dailyTask.isSuccessful()) {
+                dailyTotal = sumShards(dailyTask.getResult());
+            } else {
+                // On error, allow transaction but log warning
+                Log.e(TAG, "Failed to check daily limit", dailyTask.getException());
+            }
+            
+            if (dailyTotal + amount > DAILY_TRANSFER_LIMIT) {
+                double remainingLimit = DAILY_TRANSFER_LIMIT - dailyTotal;
+                callback.onVerificationResult(false, 
+                    String.format("❌ Lỗi: Vượt quá giới hạn chuyển tiền trong ngày. " +
+                        "Đã chuyển hôm nay: %s / %s (Giới hạn). " +
+                        "Số tiền còn lại có thể chuyển: %s. " +
+                        "Giao dịch này sẽ làm vượt quá giới hạn. Vui lòng thử lại vào ngày mai.",
+                        formatCurrency(dailyTotal),
+                        formatCurrency(DAILY_TRANSFER_LIMIT),
+                        formatCurrency(Math.max(0, remainingLimit))), null);
+                return;
+            }
+            
+            Map<String, Object> verificationData = new HashMap<>();
+            verificationData.put("fromAccount", fromAccount);
+            verificationData.put("dailyTotal", dailyTotal);
+            verificationData.put("stageTimings", lastVerificationTimings);
+            
+            // For internal transfers, verify destination account exists
+            if (destinationTask != null) {
+                Account toAccount = null;
+                if (destinationTask.isSuccessful()) {
+                    DocumentSnapshot destinationDoc = destinationTask.getResult();
+                    if (destinationDoc != null) {
+                        toAccount = destinationDoc.toObject(Account.class);
                     }
-                    
-                    // Check eKYC requirement for high-value transactions
-                    checkEkycRequirement(userId, amount, (ekycRequired, ekycStatus, message) -> {
-                        if (ekycRequired) {
-                            // eKYC is required but not verified
-                            Map<String, Object> ekycData = new HashMap<>();
-                            ekycData.put("ekycRequired", true);
-                            ekycData.put("ekycStatus", ekycStatus);
-                            callback.onVerificationResult(false, message, ekycData);
-                            return;
-                        }
-                        
-                        // Continue with daily limit check
-                        checkDailyTransferLimit(userId, amount, (dailyTotal, limitExceeded) -> {
-                            if (limitExceeded) {
-                                double remainingLimit = DAILY_TRANSFER_LIMIT - dailyTotal;
-                                callback.onVerificationResult(false, 
-                                    String.format("❌ Lỗi: Vượt quá giới hạn chuyển tiền trong ngày. " +
-                                        "Đã chuyển hôm nay: %s / %s (Giới hạn). " +
-                                        "Số tiền còn lại có thể chuyển: %s. " +
-                                        "Giao dịch này sẽ làm vượt quá giới hạn. Vui lòng thử lại vào ngày mai.",
-                                        formatCurrency(dailyTotal),
-                                        formatCurrency(DAILY_TRANSFER_LIMIT),
-                                        formatCurrency(Math.max(0, remainingLimit))), null);
-                                return;
-                            }
-                            
-                            // For internal transfers, verify destination account exists
-                            if ("internal".equals(transferType)) {
-                                verifyInternalAccount(toAccountNumber, (accountExists, toAccount) -> {
-                                    if (!accountExists) {
-                                        callback.onVerificationResult(false, 
-                                            String.format("❌ Lỗi: Tài khoản đích không tồn tại trong hệ thống CKL Bank. " +
-                                                "Số tài khoản: %s. " +
-                                                "Vui lòng kiểm tra lại số tài khoản hoặc chuyển sang chế độ 'Liên ngân hàng' nếu chuyển sang ngân hàng khác.",
-                                                toAccountNumber), null);
-                                        return;
-                                    }
-                                    
-                                    // All validations passed
-                                    Map<String, Object> verificationData = new HashMap<>();
-                                    verificationData.put("fromAccount", fromAccount);
-                                    verificationData.put("toAccount", toAccount);
-                                    verificationData.put("dailyTotal", dailyTotal);
-                                    
-                                    callback.onVerificationResult(true, "Giao dịch hợp lệ", verificationData);
-                                });
-                            } else {
-                                // External transfer - no need to verify destination account
-                                Map<String, Object> verificationData = new HashMap<>();
-                                verificationData.put("fromAccount", fromAccount);
-                                verificationData.put("dailyTotal", dailyTotal);
-                                
-                                callback.onVerificationResult(true, "Giao dịch hợp lệ", verificationData);
-                            }
-                        });
-                    });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to verify transaction", e);
+                } else {
+                    Log.e(TAG, "Failed to verify account", destinationTask.getException());
+                }
+                
+                if (toAccount == null) {
                     callback.onVerificationResult(false, 
-                        String.format("❌ Lỗi hệ thống: Không thể xác thực giao dịch. " +
-                            "Chi tiết: %s. Vui lòng thử lại sau hoặc liên hệ hỗ trợ nếu vấn đề vẫn tiếp tục.",
-                            e.getMessage()), null);
-                });
+                        String.format("❌ Lỗi: Tài khoản đích không tồn tại trong hệ thống CKL Bank. " +
+                            "Số tài khoản: %s. " +
+                            "Vui lòng kiểm tra lại số tài khoản hoặc chuyển sang chế độ 'Liên ngân hàng' nếu chuyển sang ngân hàng khác.",
+                            toAccountNumber), null);
+                    return;
+                }
+                verificationData.put("toAccount", toAccount);
+            }
+            
+            // All validations passed
+            callback.onVerificationResult(true, "Giao dịch hợp lệ", verificationData);
+        });
+    }
+    
+    /**
+     * Per-stage timings (ms) of the most recent verifyTransaction call,
+     * measured from the start of verification to completion of each read
+     */
+    public Map<String, Long> getLastVerificationTimings() {
+        return lastVerificationTimings;
+    }
+    
+    private <T> Task<T> timed(Task<T> task, String stage, long startTime, Map<String, Long> timings) {
+        task.addOnCompleteListener(t -> timings.put(stage, SystemClock.elapsedRealtime() - startTime));
+        return task;
+    }
+    
+    /**
+     * Today's transfer total is kept in a few shard documents per user and day
+     * (daily_transfer_totals/{userId}_{yyyyMMdd}/shards/{n}), incremented in the
+     * same commit as the transfer, so the limit check is one small read no matter
+     * how many transfers the user made today.
+     */
+    private CollectionReference dailyTotalShards(String userId, Date day) {
+        String dayKey = new SimpleDateFormat("yyyyMMdd", Locale.US).format(day);
+        return db.collection(DAILY_TOTALS_COLLECTION)
+                .document(userId + "_" + dayKey)
+                .collection("shards");
+    }
+    
+    // Package-private: TransactionServiceDailyTotalTest (androidTest) checks reads per check
+    Task<QuerySnapshot> queryTodayTransferShards(String userId) {
+        return dailyTotalShards(userId, new Date()).get();
+    }
+    
+    double sumShards(QuerySnapshot snapshot) {
+        double total = 0;
+        if (snapshot == null) return total;
+        for (DocumentSnapshot shard : snapshot) {
+            Double shardTotal = shard.getDouble("total");
+            if (shardTotal != null) {
+                total += shardTotal;
+            }
+        }
+        return total;
     }
     
     /**
@@ -194,43 +320,10 @@ public class TransactionService {
                 .document(userId)
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
-                    if (!documentSnapshot.exists()) {
-                        callback.onEkycChecked(true, null, 
-                            "Không tìm thấy thông tin người dùng. Vui lòng đăng nhập lại.");
-                        return;
-                    }
-                    
                     String ekycStatus = documentSnapshot.getString("ekycStatus");
-                    
-                    if (ekycStatus == null || !"verified".equals(ekycStatus)) {
-                        // eKYC is required but not verified
-                        String statusText;
-                        if (ekycStatus == null) {
-                            statusText = "Chưa xác thực";
-                        } else if ("pending".equals(ekycStatus)) {
-                            statusText = "Đang chờ xác thực (vui lòng đợi phê duyệt)";
-                        } else if ("failed".equals(ekycStatus)) {
-                            statusText = "Xác thực thất bại (vui lòng thực hiện lại eKYC)";
-                        } else {
-                            statusText = "Chưa xác thực";
-                        }
-                        
-                        String message = String.format(
-                            "⚠️ Giao dịch giá trị cao yêu cầu xác thực eKYC. " +
-                            "Số tiền giao dịch: %s (≥ %s). " +
-                            "Trạng thái eKYC hiện tại: %s. " +
-                            "Vui lòng hoàn thành xác thực eKYC trước khi thực hiện giao dịch này. " +
-                            "Bạn có thể thực hiện eKYC trong mục 'Hồ sơ' > 'Xác thực eKYC'.",
-                            formatCurrency(amount),
-                            formatCurrency(HIGH_VALUE_THRESHOLD),
-                            statusText
-                        );
-                        callback.onEkycChecked(true, ekycStatus, message);
-                        return;
-                    }
-                    
-                    // eKYC is verified, transaction can proceed
-                    callback.onEkycChecked(false, ekycStatus, null);
+                    String message = buildEkycMessage(documentSnapshot, amount);
+                    // message == null means eKYC is verified, transaction can proceed
+                    callback.onEkycChecked(message != null, ekycStatus, message);
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to check eKYC status", e);
@@ -241,243 +334,204 @@ public class TransactionService {
     }
     
     /**
-     * Check daily transfer limit for a user
+     * Build the eKYC-required message for a high-value transaction,
+     * or null if the user's eKYC is verified
      */
-    private void checkDailyTransferLimit(String userId, double newAmount, 
-                                         DailyLimitCallback callback) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-        Date startOfDay = calendar.getTime();
-        com.google.firebase.Timestamp startTimestamp = new com.google.firebase.Timestamp(startOfDay);
+    private String buildEkycMessage(DocumentSnapshot userDoc, double amount) {
+        if (userDoc == null || !userDoc.exists()) {
+            return "Không tìm thấy thông tin người dùng. Vui lòng đăng nhập lại.";
+        }
         
-        // Get all completed transfers today
-        db.collection("transactions")
-                .whereEqualTo("userId", userId)
-                .whereEqualTo("type", "transfer")
-                .whereEqualTo("status", "completed")
-                .whereGreaterThanOrEqualTo("timestamp", startTimestamp)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    double dailyTotal = 0;
-                    
-                    for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                        Double amount = doc.getDouble("amount");
-                        if (amount != null) {
-                            dailyTotal += amount;
-                        }
-                    }
-                    
-                    // Add new transaction amount
-                    double newDailyTotal = dailyTotal + newAmount;
-                    boolean limitExceeded = newDailyTotal > DAILY_TRANSFER_LIMIT;
-                    
-                    callback.onDailyLimitChecked(dailyTotal, limitExceeded);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to check daily limit", e);
-                    // On error, allow transaction but log warning
-                    callback.onDailyLimitChecked(0, false);
-                });
-    }
-    
-    /**
-     * Verify internal account exists
-     */
-    private void verifyInternalAccount(String accountNumber, AccountVerificationCallback callback) {
-        db.collection("accounts")
-                .whereEqualTo("accountNumber", accountNumber)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        callback.onAccountVerified(false, null);
-                        return;
-                    }
-                    
-                    Account account = queryDocumentSnapshots.getDocuments().get(0).toObject(Account.class);
-                    callback.onAccountVerified(true, account);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to verify account", e);
-                    callback.onAccountVerified(false, null);
-                });
+        String ekycStatus = userDoc.getString("ekycStatus");
+        if ("verified".equals(ekycStatus)) {
+            return null;
+        }
+        
+        String statusText;
+        if ("pending".equals(ekycStatus)) {
+            statusText = "Đang chờ xác thực (vui lòng đợi phê duyệt)";
+        } else if ("failed".equals(ekycStatus)) {
+            statusText = "Xác thực thất bại (vui lòng thực hiện lại eKYC)";
+        } else {
+            statusText = "Chưa xác thực";
+        }
+        
+        return String.format(
+            "⚠️ Giao dịch giá trị cao yêu cầu xác thực eKYC. " +
+            "Số tiền giao dịch: %s (≥ %s). " +
+            "Trạng thái eKYC hiện tại: %s. " +
+            "Vui lòng hoàn thành xác thực eKYC trước khi thực hiện giao dịch này. " +
+            "Bạn có thể thực hiện eKYC trong mục 'Hồ sơ' > 'Xác thực eKYC'.",
+            formatCurrency(amount),
+            formatCurrency(HIGH_VALUE_THRESHOLD),
+            statusText
+        );
     }
     
     /**
      * Persist transaction to database after verification and payment
      * This should only be called after OTP verification and payment processing
+     * 
+     * The ledger update, debit and credit are committed together in one Firestore
+     * transaction, so concurrent transfers cannot lose balance updates and a failure
+     * can never leave the debit applied without the credit.
+     * fromAccountId / toAccountId are account numbers (as stored on the transaction doc).
      */
     public void persistTransaction(String transactionId, String fromAccountId, String toAccountId,
                                    double amount, String type, String transferType, 
                                    String recipientName, String description, String recipientBank,
                                    TransactionPersistenceCallback callback) {
+        final long commitStart = SystemClock.elapsedRealtime();
+        boolean internal = "internal".equals(transferType);
         
-        // Get fee from transaction document if exists, otherwise calculate
-        db.collection("transactions")
-                .document(transactionId)
-                .get()
-                .addOnSuccessListener(transactionDoc -> {
-                    final double fee;
-                    if (transactionDoc.exists()) {
-                        Double feeValue = transactionDoc.getDouble("fee");
-                        if (feeValue != null) {
-                            fee = feeValue;
-                        } else {
-                            // Calculate fee if not stored
-                            fee = com.example.cklbanking.utils.TransactionFeeCalculator.calculateFee(amount, transferType);
-                        }
-                    } else {
-                        // Calculate fee if transaction doesn't exist yet
-                        fee = com.example.cklbanking.utils.TransactionFeeCalculator.calculateFee(amount, transferType);
-                    }
-                    
-                    final double finalFee = fee;
-                    Map<String, Object> transaction = new HashMap<>();
-                    transaction.put("fromAccountId", fromAccountId);
-                    transaction.put("toAccountId", toAccountId);
-                    transaction.put("amount", amount);
-                    transaction.put("fee", fee);
-                    transaction.put("totalAmount", amount + fee);
-                    transaction.put("type", type);
-                    transaction.put("status", "completed");
-                    transaction.put("timestamp", com.google.firebase.Timestamp.now());
-                    transaction.put("recipientName", recipientName);
-                    transaction.put("transferType", transferType);
-                    transaction.put("description", description);
-                    transaction.put("requiresOTP", true);
-                    transaction.put("otpVerified", true);
-                    
-                    if (recipientBank != null) {
-                        transaction.put("recipientBank", recipientBank);
-                    }
-                    
-                    // Update transaction document
-                    db.collection("transactions")
-                            .document(transactionId)
-                            .update(transaction)
-                            .addOnSuccessListener(aVoid -> {
-                                // Update account balances (includes fee)
-                                updateAccountBalances(fromAccountId, toAccountId, amount, finalFee, transferType, callback);
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to persist transaction", e);
-                                callback.onPersistenceResult(false, "Lỗi lưu giao dịch: " + e.getMessage());
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to get transaction for fee", e);
-                    // Fallback: calculate fee and proceed
-                    double fee = com.example.cklbanking.utils.TransactionFeeCalculator.calculateFee(amount, transferType);
-                    
-                    Map<String, Object> transaction = new HashMap<>();
-                    transaction.put("fromAccountId", fromAccountId);
-                    transaction.put("toAccountId", toAccountId);
-                    transaction.put("amount", amount);
-                    transaction.put("fee", fee);
-                    transaction.put("totalAmount", amount + fee);
-                    transaction.put("type", type);
-                    transaction.put("status", "completed");
-                    transaction.put("timestamp", com.google.firebase.Timestamp.now());
-                    transaction.put("recipientName", recipientName);
-                    transaction.put("transferType", transferType);
-                    transaction.put("description", description);
-                    transaction.put("requiresOTP", true);
-                    transaction.put("otpVerified", true);
-                    
-                    if (recipientBank != null) {
-                        transaction.put("recipientBank", recipientBank);
+        // Resolve account documents (queries cannot run inside a transaction);
+        // repeat beneficiaries are served from the accountNumber -> accountId cache
+        Task<String> fromTask = accountRepository.resolveAccountId(fromAccountId);
+        Task<String> toTask = internal ? accountRepository.resolveAccountId(toAccountId) : null;
+        
+        List<Task<?>> lookups = new ArrayList<>();
+        lookups.add(fromTask);
+        if (toTask != null) lookups.add(toTask);
+        
+        Tasks.whenAllComplete(lookups).addOnCompleteListener(done -> {
+            if (!fromTask.isSuccessful() || fromTask.getResult() == null) {
+                if (!fromTask.isSuccessful()) {
+                    Log.e(TAG, "Failed to resolve source account", fromTask.getException());
+                }
+                callback.onPersistenceResult(false, "Không tìm thấy tài khoản nguồn");
+                return;
+            }
+            DocumentReference fromRef = db.collection("accounts").document(fromTask.getResult());
+            
+            DocumentReference toRef = null;
+            if (toTask != null) {
+                if (!toTask.isSuccessful() || toTask.getResult() == null) {
+                    if (!toTask.isSuccessful()) {
+                        Log.e(TAG, "Failed to resolve destination account", toTask.getException());
                     }
-                    
-                    db.collection("transactions")
-                            .document(transactionId)
-                            .update(transaction)
-                            .addOnSuccessListener(aVoid -> {
-                                updateAccountBalances(fromAccountId, toAccountId, amount, fee, transferType, callback);
-                            })
-                            .addOnFailureListener(e2 -> {
-                                Log.e(TAG, "Failed to persist transaction", e2);
-                                callback.onPersistenceResult(false, "Lỗi lưu giao dịch: " + e2.getMessage());
-                            });
-                });
+                    callback.onPersistenceResult(false, "Không tìm thấy tài khoản đích");
+                    return;
+                }
+                toRef = db.collection("accounts").document(toTask.getResult());
+            }
+            
+            commitTransfer(transactionId, fromRef, toRef, fromAccountId, toAccountId, amount, type,
+                    transferType, recipientName, description, recipientBank, commitStart, callback);
+        });
     }
     
     /**
-     * Update account balances after transaction (includes fee deduction)
+     * Debit, credit and ledger write in a single Firestore transaction
      */
-    private void updateAccountBalances(String fromAccountId, String toAccountId, 
-                                      double amount, double fee, String transferType,
-                                      TransactionPersistenceCallback callback) {
-        // Debit from source account (amount + fee)
-        double totalDebit = amount + fee;
+    private void commitTransfer(String transactionId, DocumentReference fromRef, DocumentReference toRef,
+                                String fromAccountNumber, String toAccountNumber,
+                                double amount, String type, String transferType,
+                                String recipientName, String description, String recipientBank,
+                                long commitStart, TransactionPersistenceCallback callback) {
+        DocumentReference transactionRef = db.collection("transactions").document(transactionId);
+        AtomicInteger attempts = new AtomicInteger();
         
-        db.collection("accounts")
-                .whereEqualTo("accountNumber", fromAccountId)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(fromQuery -> {
-                    if (fromQuery.isEmpty()) {
-                        callback.onPersistenceResult(false, "Không tìm thấy tài khoản nguồn");
-                        return;
-                    }
-                    
-                    DocumentSnapshot fromDoc = fromQuery.getDocuments().get(0);
-                    double currentBalance = fromDoc.getDouble("balance");
-                    double newBalance = currentBalance - totalDebit;
-                    
-                    fromDoc.getReference().update("balance", newBalance)
-                            .addOnSuccessListener(aVoid -> {
-                                // For internal transfers, credit to destination account (amount only, no fee)
-                                if ("internal".equals(transferType)) {
-                                    db.collection("accounts")
-                                            .whereEqualTo("accountNumber", toAccountId)
-                                            .limit(1)
-                                            .get()
-                                            .addOnSuccessListener(toQuery -> {
-                                                if (toQuery.isEmpty()) {
-                                                    // Log warning but don't fail transaction
-                                                    Log.w(TAG, "Destination account not found for internal transfer");
-                                                    callback.onPersistenceResult(true, "Giao dịch thành công");
-                                                    return;
-                                                }
-                                                
-                                                DocumentSnapshot toDoc = toQuery.getDocuments().get(0);
-                                                double toCurrentBalance = toDoc.getDouble("balance");
-                                                double toNewBalance = toCurrentBalance + amount; // Only amount, no fee
-                                                
-                                                toDoc.getReference().update("balance", toNewBalance)
-                                                        .addOnSuccessListener(aVoid1 -> {
-                                                            callback.onPersistenceResult(true, "Giao dịch thành công");
-                                                        })
-                                                        .addOnFailureListener(e -> {
-                                                            Log.e(TAG, "Failed to update destination account", e);
-                                                            callback.onPersistenceResult(true, 
-                                                                "Giao dịch thành công nhưng có lỗi cập nhật tài khoản đích");
-                                                        });
-                                            });
-                                } else {
-                                    // External transfer - no need to update destination
-                                    callback.onPersistenceResult(true, "Giao dịch thành công");
-                                }
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to update source account", e);
-                                callback.onPersistenceResult(false, "Lỗi cập nhật số dư tài khoản");
-                            });
-                });
+        db.runTransaction(transaction -> {
+            // Firestore re-runs this function when a document it read was changed concurrently
+            if (attempts.incrementAndGet() > 1) {
+                contentionRetryCount.incrementAndGet();
+            }
+            
+            // All reads must happen before any write
+            DocumentSnapshot transactionDoc = transaction.get(transactionRef);
+            DocumentSnapshot fromDoc = transaction.get(fromRef);
+            DocumentSnapshot toDoc = toRef != null ? transaction.get(toRef) : null;
+            
+            // Already committed (e.g. user retried after a timeout) - don't move money twice
+            if (transactionDoc.exists() && "completed".equals(transactionDoc.getString("status"))) {
+                return null;
+            }
+            
+            // Get fee from transaction document if exists, otherwise calculate
+            Double feeValue = transactionDoc.exists() ? transactionDoc.getDouble("fee") : null;
+            double fee = feeValue != null ? feeValue
+                    : com.example.cklbanking.utils.TransactionFeeCalculator.calculateFee(amount, transferType);
+            double totalDebit = amount + fee;
+            
+            Double fromBalance = fromDoc.getDouble("balance");
+            if (fromBalance == null || fromBalance < totalDebit) {
+                throw new FirebaseFirestoreException("Số dư tài khoản nguồn không đủ",
+                        FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            
+            Map<String, Object> ledger = new HashMap<>();
+            ledger.put("fromAccountId", fromAccountNumber);
+            ledger.put("toAccountId", toAccountNumber);
+            ledger.put("amount", amount);
+            ledger.put("fee", fee);
+            ledger.put("totalAmount", totalDebit);
+            ledger.put("type", type);
+            ledger.put("status", "completed");
+            ledger.put("timestamp", com.google.firebase.Timestamp.now());
+            ledger.put("recipientName", recipientName);
+            ledger.put("transferType", transferType);
+            ledger.put("description", description);
+            ledger.put("requiresOTP", true);
+            ledger.put("otpVerified", true);
+            
+            if (recipientBank != null) {
+                ledger.put("recipientBank", recipientBank);
+            }
+            
+            transaction.set(transactionRef, ledger, SetOptions.merge());
+            
+            // Debit from source account (amount + fee)
+            transaction.update(fromRef, "balance", fromBalance - totalDebit);
+            
+            // For internal transfers, credit to destination account (amount only, no fee)
+            if (toDoc != null) {
+                Double toBalance = toDoc.getDouble("balance");
+                transaction.update(toRef, "balance", (toBalance != null ? toBalance : 0) + amount);
+            }
+            
+            // Add to today's transfer total on a random shard (write-only, no read contention)
+            String userId = transactionDoc.getString("userId");
+            if ("transfer".equals(type) && userId != null) {
+                int shard = ThreadLocalRandom.current().nextInt(DAILY_TOTAL_SHARD_COUNT);
+                Map<String, Object> increment = new HashMap<>();
+                increment.put("total", FieldValue.increment(amount));
+                transaction.set(dailyTotalShards(userId, new Date()).document(String.valueOf(shard)),
+                        increment, SetOptions.merge());
+            }
+            return null;
+        }).addOnCompleteListener(task -> {
+            lastCommitLatencyMs = SystemClock.elapsedRealtime() - commitStart;
+            Log.d(TAG, "Transfer commit " + transactionId + ": " + lastCommitLatencyMs + " ms, "
+                    + attempts.get() + " attempt(s), total contention retries: " + contentionRetryCount.get());
+            
+            if (task.isSuccessful()) {
+                callback.onPersistenceResult(true, "Giao dịch thành công");
+                return;
+            }
+            
+            Exception e = task.getException();
+            Log.e(TAG, "Failed to persist transaction", e);
+            if (e instanceof FirebaseFirestoreException
+                    && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.FAILED_PRECONDITION) {
+                callback.onPersistenceResult(false, e.getMessage());
+            } else {
+                callback.onPersistenceResult(false, "Lỗi lưu giao dịch: " + (e != null ? e.getMessage() : ""));
+            }
+        });
     }
     
     /**
-     * Update account balances after transaction (legacy method without fee parameter)
+     * Latency (ms) of the most recent persistTransaction call, from account lookup to commit
      */
-    private void updateAccountBalances(String fromAccountId, String toAccountId, 
-                                      double amount, String transferType,
-                                      TransactionPersistenceCallback callback) {
-        // Legacy method - calculate fee
-        double fee = com.example.cklbanking.utils.TransactionFeeCalculator.calculateFee(amount, transferType);
-        updateAccountBalances(fromAccountId, toAccountId, amount, fee, transferType, callback);
+    public static long getLastCommitLatencyMs() {
+        return lastCommitLatencyMs;
+    }
+    
+    /**
+     * Number of times a transfer commit was re-run because of write contention
+     */
+    public static long getContentionRetryCount() {
+        return contentionRetryCount.get();
     }
     
     private String formatCurrency(double amount) {
@@ -495,14 +549,6 @@ public class TransactionService {
         void onEkycChecked(boolean ekycRequired, String ekycStatus, String message);
     }
     
-    private interface DailyLimitCallback {
-        void onDailyLimitChecked(double dailyTotal, boolean limitExceeded);
-    }
-    
-    private interface AccountVerificationCallback {
-        void onAccountVerified(boolean exists, Account account);
-    }
-    
     public interface TransactionPersistenceCallback {
         void onPersistenceResult(boolean success, String message);
     }
@@ -0,0 +1,154 @@
+package com.example.cklbanking.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache: số tài khoản (accountNumber) -> document ID (accountId)
+ *
+ * Dùng chung cho các luồng chuyển tiền/thanh toán để tránh query
+ * whereEqualTo("accountNumber", ...) mỗi lần giao dịch.
+ * Cache cả kết quả "không tồn tại" (negative) với TTL ngắn hơn.
+ */
+public class AccountNumberCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final long DEFAULT_POSITIVE_TTL_MILLIS = 30 * 60 * 1000; // 30 minutes
+    private static final long DEFAULT_NEGATIVE_TTL_MILLIS = 60 * 1000; // 1 minute
+
+    private static AccountNumberCache instance;
+
+    private final int maxEntries;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Metrics
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    public static synchronized AccountNumberCache getInstance() {
+        if (instance == null) {
+            instance = new AccountNumberCache(DEFAULT_MAX_ENTRIES,
+                    DEFAULT_POSITIVE_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+        }
+        return instance;
+    }
+
+    public AccountNumberCache(int maxEntries, long positiveTtlMillis, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        // accessOrder = true -> LRU ordering
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AccountNumberCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Tra cứu cache
+     * @return null nếu không có trong cache (miss), ngược lại một Lookup
+     *         (Lookup.exists() == false nghĩa là đã biết tài khoản không tồn tại)
+     */
+    public synchronized Lookup get(String accountNumber) {
+        if (accountNumber == null) {
+            return null;
+        }
+        Entry entry = entries.get(accountNumber);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expiresAt <= now()) {
+            entries.remove(accountNumber);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return new Lookup(entry.accountId);
+    }
+
+    /**
+     * Lưu kết quả tra cứu (accountId == null nghĩa là tài khoản không tồn tại)
+     */
+    public synchronized void put(String accountNumber, String accountId) {
+        if (accountNumber == null) {
+            return;
+        }
+        long ttl = accountId != null ? positiveTtlMillis : negativeTtlMillis;
+        entries.put(accountNumber, new Entry(accountId, now() + ttl));
+    }
+
+    public synchronized void invalidate(String accountNumber) {
+        entries.remove(accountNumber);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() { return hitCount; }
+
+    public synchronized long getMissCount() { return missCount; }
+
+    public synchronized long getEvictionCount() { return evictionCount; }
+
+    public synchronized long getExpirationCount() { return expirationCount; }
+
+    /**
+     * Tỉ lệ hit (0..1), 0 nếu chưa có lượt tra cứu nào
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AccountNumberCache{size=%d, hits=%d, misses=%d, hitRate=%.2f, evictions=%d, expirations=%d}",
+                entries.size(), hitCount, missCount, getHitRate(), evictionCount, expirationCount);
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Kết quả tra cứu cache
+     */
+    public static class Lookup {
+        private final String accountId;
+
+        Lookup(String accountId) {
+            this.accountId = accountId;
+        }
+
+        public boolean exists() { return accountId != null; }
+
+        public String getAccountId() { return accountId; }
+    }
+
+    private static class Entry {
+        final String accountId;
+        final long expiresAt;
+
+        Entry(String accountId, long expiresAt) {
+            this.accountId = accountId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -6,7 +6,9 @@ import com.example.cklbanking.models.Branch;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Helper class để tính toán khoảng cách và sắp xếp branches
@@ -33,18 +35,22 @@ public class BranchDistanceHelper {
     
     /**
      * Sắp xếp danh sách branches theo khoảng cách (gần nhất trước)
+     * Khoảng cách tính một lần cho mỗi branch, không tính lại trong comparator.
+     * Danh sách lớn / truy vấn lặp lại: dùng BranchSpatialIndex.
      */
     public static void sortByDistance(List<Branch> branches, Location userLocation) {
         if (branches == null || userLocation == null) {
             return;
         }
         
+        final Map<Branch, Double> distances = new IdentityHashMap<>(branches.size());
+        for (Branch branch : branches) {
+            distances.put(branch, calculateDistance(userLocation, branch));
+        }
         Collections.sort(branches, new Comparator<Branch>() {
             @Override
             public int compare(Branch b1, Branch b2) {
-                double distance1 = calculateDistance(userLocation, b1);
-                double distance2 = calculateDistance(userLocation, b2);
-                return Double.compare(distance1, distance2);
+                return Double.compare(distances.get(b1), distances.get(b2));
             }
         });
     }
@@ -92,15 +98,58 @@ public class BranchDistanceHelper {
             return new ArrayList<>(branches);
         }
         
+        int minuteOfWeek = OpeningSchedule.currentMinuteOfWeek();
         List<Branch> filtered = new ArrayList<>();
         for (Branch branch : branches) {
-            if (branch.isOpen()) {
+            if (branch.isOpenAt(minuteOfWeek)) {
                 filtered.add(branch);
             }
         }
         return filtered;
     }
     
+    /**
+     * Lọc branches đang mở hoặc sẽ mở trong withinMinutes phút tới
+     */
+    public static List<Branch> filterOpensWithin(List<Branch> branches, int withinMinutes) {
+        if (branches == null) {
+            return new ArrayList<>();
+        }
+        
+        int minuteOfWeek = OpeningSchedule.currentMinuteOfWeek();
+        List<Branch> filtered = new ArrayList<>();
+        for (Branch branch : branches) {
+            int minutes = branch.minutesUntilOpen(minuteOfWeek);
+            if (minutes >= 0 && minutes <= withinMinutes) {
+                filtered.add(branch);
+            }
+        }
+        return filtered;
+    }
+    
+    /**
+     * Bán kính (meters) quanh userLocation mà thứ tự k branch gần nhất chắc chắn không đổi
+     *
+     * Di chuyển m mét làm mỗi khoảng cách thay đổi tối đa m, nên hai branch liền nhau
+     * (khoảng cách d1 <= d2) chỉ đổi chỗ khi m >= (d2 - d1) / 2.
+     * @param sortedBranches đã sắp xếp theo khoảng cách tới userLocation
+     */
+    public static double stableRadiusMeters(List<Branch> sortedBranches, Location userLocation, int k) {
+        if (sortedBranches == null || userLocation == null || sortedBranches.size() < 2 || k <= 0) {
+            return Double.MAX_VALUE;
+        }
+        
+        int count = Math.min(k + 1, sortedBranches.size());
+        double previous = calculateDistance(userLocation, sortedBranches.get(0));
+        double minGap = Double.MAX_VALUE;
+        for (int i = 1; i < count; i++) {
+            double distance = calculateDistance(userLocation, sortedBranches.get(i));
+            minGap = Math.min(minGap, Math.max(0, distance - previous));
+            previous = distance;
+        }
+        return minGap / 2;
+    }
+    
     /**
      * Format khoảng cách thành text hiển thị
      */
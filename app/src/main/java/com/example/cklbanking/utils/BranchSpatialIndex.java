@@ -0,0 +1,282 @@
+package com.example.cklbanking.utils;
+
+import com.example.cklbanking.models.Branch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chỉ mục không gian (lưới theo độ) cho danh sách chi nhánh / ATM
+ *
+ * Dựng một lần khi tải danh sách; mỗi truy vấn chỉ duyệt các ô lưới gần vị trí người dùng
+ * và tính khoảng cách đúng một lần cho mỗi điểm được xét - kết quả trả về kèm khoảng cách,
+ * đã sắp xếp gần nhất trước, nên không phải tính lại khi lọc/sắp xếp/hiển thị.
+ *
+ * Khoảng cách theo công thức haversine (sai khác < 0.5% so với Location.distanceBetween),
+ * đủ cho sắp xếp và lọc theo bán kính.
+ *
+ * Immutable sau khi dựng - an toàn khi dùng từ nhiều thread.
+ */
+public class BranchSpatialIndex {
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    private static final double METERS_PER_DEGREE_LAT = Math.PI * EARTH_RADIUS_METERS / 180;
+    // ~1.1 km mỗi ô: bán kính lọc 1-10 km chỉ duyệt vài chục ô
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.01;
+
+    /**
+     * Chi nhánh kèm khoảng cách tới vị trí truy vấn
+     */
+    public static class Neighbor {
+        private final Branch branch;
+        private final double distanceMeters;
+
+        Neighbor(Branch branch, double distanceMeters) {
+            this.branch = branch;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Branch getBranch() { return branch; }
+
+        public double getDistanceMeters() { return distanceMeters; }
+    }
+
+    private final List<Branch> branches;
+    private final double cellSizeDegrees;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, int[]> cells;
+    private final int minRow, maxRow, minColumn, maxColumn;
+
+    public BranchSpatialIndex(List<Branch> branches) {
+        this(branches, DEFAULT_CELL_SIZE_DEGREES);
+    }
+
+    public BranchSpatialIndex(List<Branch> branches, double cellSizeDegrees) {
+        this.branches = new ArrayList<>(branches);
+        this.cellSizeDegrees = cellSizeDegrees;
+
+        int size = this.branches.size();
+        latitudes = new double[size];
+        longitudes = new double[size];
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        int rowLow = Integer.MAX_VALUE, rowHigh = Integer.MIN_VALUE;
+        int columnLow = Integer.MAX_VALUE, columnHigh = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            Branch branch = this.branches.get(i);
+            latitudes[i] = branch.getLatitude();
+            longitudes[i] = branch.getLongitude();
+            int row = row(latitudes[i]);
+            int column = column(longitudes[i]);
+            rowLow = Math.min(rowLow, row);
+            rowHigh = Math.max(rowHigh, row);
+            columnLow = Math.min(columnLow, column);
+            columnHigh = Math.max(columnHigh, column);
+
+            List<Integer> bucket = buckets.get(cellKey(row, column));
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(cellKey(row, column), bucket);
+            }
+            bucket.add(i);
+        }
+        minRow = rowLow;
+        maxRow = rowHigh;
+        minColumn = columnLow;
+        maxColumn = columnHigh;
+
+        cells = new HashMap<>(buckets.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : buckets.entrySet()) {
+            List<Integer> bucket = entry.getValue();
+            int[] indexes = new int[bucket.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = bucket.get(i);
+            }
+            cells.put(entry.getKey(), indexes);
+        }
+    }
+
+    public int size() {
+        return branches.size();
+    }
+
+    /**
+     * Tất cả chi nhánh trong bán kính radiusMeters, gần nhất trước
+     */
+    public List<Neighbor> withinRadius(double latitude, double longitude, double radiusMeters) {
+        List<Neighbor> result = new ArrayList<>();
+        if (branches.isEmpty()) {
+            return result;
+        }
+
+        double latitudeSpan = radiusMeters / METERS_PER_DEGREE_LAT;
+        double longitudeSpan = radiusMeters / (METERS_PER_DEGREE_LAT * cosAtMostLatitude(Math.abs(latitude) + latitudeSpan));
+        int rowFrom = Math.max(minRow, row(latitude - latitudeSpan));
+        int rowTo = Math.min(maxRow, row(latitude + latitudeSpan));
+        int columnFrom = Math.max(minColumn, column(longitude - longitudeSpan));
+        int columnTo = Math.min(maxColumn, column(longitude + longitudeSpan));
+
+        long cellCount = (long) Math.max(0, rowTo - rowFrom + 1) * Math.max(0, columnTo - columnFrom + 1);
+        if (cellCount > cells.size()) {
+            // Bán kính phủ gần hết dữ liệu - duyệt thẳng rẻ hơn duyệt ô
+            for (int i = 0; i < latitudes.length; i++) {
+                addIfWithin(result, i, latitude, longitude, radiusMeters);
+            }
+        } else {
+            for (int row = rowFrom; row <= rowTo; row++) {
+                for (int column = columnFrom; column <= columnTo; column++) {
+                    int[] indexes = cells.get(cellKey(row, column));
+                    if (indexes == null) {
+                        continue;
+                    }
+                    for (int i : indexes) {
+                        addIfWithin(result, i, latitude, longitude, radiusMeters);
+                    }
+                }
+            }
+        }
+        sortByDistance(result);
+        return result;
+    }
+
+    /**
+     * k chi nhánh gần nhất, gần nhất trước
+     *
+     * Duyệt các vành ô lưới đồng tâm quanh vị trí truy vấn, dừng khi vành tiếp theo chắc chắn
+     * xa hơn điểm thứ k đã tìm được.
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || branches.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (k >= branches.size()) {
+            return sortedByDistance(latitude, longitude);
+        }
+
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int maxRing = Math.max(Math.max(Math.abs(centerRow - minRow), Math.abs(centerRow - maxRow)),
+                Math.max(Math.abs(centerColumn - minColumn), Math.abs(centerColumn - maxColumn)));
+
+        List<Neighbor> candidates = new ArrayList<>();
+        long cellsVisited = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (candidates.size() >= k) {
+                sortByDistance(candidates);
+                double kthDistance = candidates.get(k - 1).distanceMeters;
+                if (minRingDistanceMeters(latitude, ring) > kthDistance) {
+                    break;
+                }
+            }
+            // Chỉ duyệt phần vành nằm trong vùng có dữ liệu - ô ngoài vùng chắc chắn trống
+            int rowFrom = Math.max(minRow, centerRow - ring);
+            int rowTo = Math.min(maxRow, centerRow + ring);
+            int columnFrom = Math.max(minColumn, centerColumn - ring);
+            int columnTo = Math.min(maxColumn, centerColumn + ring);
+            for (int row = rowFrom; row <= rowTo; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+                int firstColumn = edgeRow ? columnFrom : centerColumn - ring;
+                for (int column = firstColumn; column <= columnTo; column += step) {
+                    if (column < columnFrom) {
+                        continue;
+                    }
+                    if (++cellsVisited > latitudes.length) {
+                        // Vị trí ở xa dữ liệu (nhiều ô trống) - duyệt thẳng rẻ hơn
+                        List<Neighbor> all = sortedByDistance(latitude, longitude);
+                        return new ArrayList<>(all.subList(0, k));
+                    }
+                    int[] indexes = cells.get(cellKey(row, column));
+                    if (indexes == null) {
+                        continue;
+                    }
+                    for (int i : indexes) {
+                        candidates.add(new Neighbor(branches.get(i),
+                                haversineMeters(latitude, longitude, latitudes[i], longitudes[i])));
+                    }
+                }
+            }
+        }
+        sortByDistance(candidates);
+        return new ArrayList<>(candidates.subList(0, Math.min(k, candidates.size())));
+    }
+
+    /**
+     * Toàn bộ chi nhánh sắp xếp theo khoảng cách (mỗi điểm tính khoảng cách một lần)
+     */
+    public List<Neighbor> sortedByDistance(double latitude, double longitude) {
+        List<Neighbor> result = new ArrayList<>(branches.size());
+        for (int i = 0; i < latitudes.length; i++) {
+            result.add(new Neighbor(branches.get(i),
+                    haversineMeters(latitude, longitude, latitudes[i], longitudes[i])));
+        }
+        sortByDistance(result);
+        return result;
+    }
+
+    /**
+     * Danh sách chi nhánh (giữ thứ tự) từ kết quả truy vấn
+     */
+    public static List<Branch> branchesOf(List<Neighbor> neighbors) {
+        List<Branch> result = new ArrayList<>(neighbors.size());
+        for (Neighbor neighbor : neighbors) {
+            result.add(neighbor.branch);
+        }
+        return result;
+    }
+
+    public static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void addIfWithin(List<Neighbor> result, int i, double latitude, double longitude, double radiusMeters) {
+        double distance = haversineMeters(latitude, longitude, latitudes[i], longitudes[i]);
+        if (distance <= radiusMeters) {
+            result.add(new Neighbor(branches.get(i), distance));
+        }
+    }
+
+    /**
+     * Cận dưới khoảng cách tới mọi điểm nằm ở vành ô thứ ring
+     */
+    private double minRingDistanceMeters(double latitude, int ring) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double cells = (ring - 1) * cellSizeDegrees;
+        double latitudeMeters = cells * METERS_PER_DEGREE_LAT;
+        double longitudeMeters = cells * METERS_PER_DEGREE_LAT
+                * cosAtMostLatitude(Math.abs(latitude) + ring * cellSizeDegrees);
+        return Math.min(latitudeMeters, longitudeMeters);
+    }
+
+    private static double cosAtMostLatitude(double absLatitude) {
+        // Gần cực: 1 độ kinh ~ 0 m, chặn để span không vô hạn
+        return Math.max(0.01, Math.cos(Math.toRadians(Math.min(90, absLatitude))));
+    }
+
+    private static void sortByDistance(List<Neighbor> neighbors) {
+        Collections.sort(neighbors, (a, b) -> Double.compare(a.distanceMeters, b.distanceMeters));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellSizeDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / cellSizeDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
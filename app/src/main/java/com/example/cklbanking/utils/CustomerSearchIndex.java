@@ -0,0 +1,121 @@
+package com.example.cklbanking.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục tìm kiếm khách hàng theo tên
+ *
+ * Tên được chuẩn hóa (chữ thường, bỏ dấu tiếng Việt) và tách thành các
+ * tiền tố của từng từ, lưu vào field "searchTokens" (array) của user.
+ * Tìm theo tên khi đó chỉ là một query whereArrayContains("searchTokens", token).
+ */
+public class CustomerSearchIndex {
+
+    public static final String FIELD_SEARCH_TOKENS = "searchTokens";
+
+    // Giới hạn độ dài tiền tố để mảng token không quá lớn
+    private static final int MAX_PREFIX_LENGTH = 12;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+    private static final Pattern PHONE_NUMBER = Pattern.compile("\\+?[0-9]+");
+
+    /**
+     * Chuẩn hóa: chữ thường, bỏ dấu, chỉ giữ chữ cái/số, các từ cách nhau bởi một khoảng trắng
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT)
+                .replace('đ', 'd');
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    /**
+     * Tạo danh sách token (tiền tố của từng từ) cho tên khách hàng
+     * Ví dụ "Nguyễn An" -> [n, ng, ngu, nguy, nguye, nguyen, a, an]
+     */
+    public static List<String> buildSearchTokens(String fullName) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String word : words(fullName)) {
+            int maxLength = Math.min(word.length(), MAX_PREFIX_LENGTH);
+            for (int i = 1; i <= maxLength; i++) {
+                tokens.add(word.substring(0, i));
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Token dùng cho query phía server: từ dài nhất trong chuỗi tìm kiếm (chọn lọc nhất)
+     * @return null nếu chuỗi tìm kiếm không có từ nào
+     */
+    public static String queryToken(String query) {
+        String best = null;
+        for (String word : words(query)) {
+            if (best == null || word.length() > best.length()) {
+                best = word;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        return best.length() > MAX_PREFIX_LENGTH ? best.substring(0, MAX_PREFIX_LENGTH) : best;
+    }
+
+    /**
+     * Chuỗi tìm kiếm có thể là tên không: email (có '@') hoặc số điện thoại (chỉ gồm chữ số)
+     * thì không cần tra theo tên
+     */
+    public static boolean isNameQuery(String query) {
+        if (query == null) {
+            return false;
+        }
+        String trimmed = query.trim();
+        return !trimmed.isEmpty() && trimmed.indexOf('@') < 0 && !PHONE_NUMBER.matcher(trimmed).matches();
+    }
+
+    /**
+     * Kiểm tra tên có khớp chuỗi tìm kiếm không:
+     * mọi từ trong chuỗi tìm kiếm phải là tiền tố của một từ trong tên
+     */
+    public static boolean matches(String fullName, String query) {
+        List<String> nameWords = words(fullName);
+        for (String queryWord : words(query)) {
+            boolean found = false;
+            for (String nameWord : nameWords) {
+                if (nameWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return result;
+        }
+        for (String word : normalized.split(" ")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+}
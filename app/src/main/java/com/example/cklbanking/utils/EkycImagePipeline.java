@@ -0,0 +1,238 @@
+package com.example.cklbanking.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Xử lý ảnh eKYC dùng chung cho màn hình eKYC của khách hàng và của nhân viên
+ *
+ * - Không bao giờ decode ảnh ở độ phân giải gốc: đọc kích thước trước, decode với inSampleSize
+ *   rồi mới scale chính xác về MAX_IMAGE_DIMENSION (ảnh 48 MP chỉ tốn vài chục MB thay vì vài trăm)
+ * - Ảnh gốc đã đủ nhỏ và là JPEG -> upload nguyên file, không nén lại
+ * - Thumbnail cho màn hình rà soát được tạo từ cùng bitmap đã decode
+ * - Upload bằng putFile (stream từ file, upload resumable) thay vì putBytes
+ *
+ * prepare() là I/O đồng bộ - gọi từ background thread.
+ */
+public class EkycImagePipeline {
+
+    private static final String TAG = "EkycImagePipeline";
+    public static final int MAX_IMAGE_DIMENSION = 1280;
+    public static final int THUMBNAIL_DIMENSION = 192;
+    private static final int JPEG_QUALITY = 85;
+    private static final int THUMBNAIL_JPEG_QUALITY = 80;
+    private static final String WORK_DIRECTORY = "ekyc_upload";
+
+    private final ContentResolver contentResolver;
+    private final File workDirectory;
+
+    public EkycImagePipeline(Context context) {
+        this.contentResolver = context.getContentResolver();
+        this.workDirectory = new File(context.getCacheDir(), WORK_DIRECTORY);
+    }
+
+    /**
+     * Ảnh đã chuẩn bị để upload
+     */
+    public static class PreparedImage {
+        private final File imageFile;
+        private final boolean imageFileOwned;
+        private final File thumbnailFile;
+        private final Bitmap bitmap;
+
+        PreparedImage(File imageFile, boolean imageFileOwned, File thumbnailFile, Bitmap bitmap) {
+            this.imageFile = imageFile;
+            this.imageFileOwned = imageFileOwned;
+            this.thumbnailFile = thumbnailFile;
+            this.bitmap = bitmap;
+        }
+
+        /**
+         * Bitmap đã xoay đúng chiều, cạnh dài tối đa MAX_IMAGE_DIMENSION (dùng để detect khuôn mặt)
+         */
+        public Bitmap getBitmap() { return bitmap; }
+    }
+
+    /**
+     * URL tải về của ảnh và thumbnail đã upload
+     */
+    public static class UploadedImage {
+        private final String imageUrl;
+        private final String thumbnailUrl;
+
+        UploadedImage(String imageUrl, String thumbnailUrl) {
+            this.imageUrl = imageUrl;
+            this.thumbnailUrl = thumbnailUrl;
+        }
+
+        public String getImageUrl() { return imageUrl; }
+
+        public String getThumbnailUrl() { return thumbnailUrl; }
+    }
+
+    /**
+     * Decode (có giới hạn kích thước), nén lại nếu cần và tạo thumbnail
+     * @param source file:// (ảnh vừa chụp) hoặc content:// (ảnh chọn từ thư viện)
+     */
+    public PreparedImage prepare(Uri source) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream input = open(source)) {
+            BitmapFactory.decodeStream(input, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Không đọc được ảnh");
+        }
+        int rotation = readRotation(source);
+        int longestSide = Math.max(bounds.outWidth, bounds.outHeight);
+
+        // inSampleSize lớn nhất mà ảnh decode vẫn >= MAX_IMAGE_DIMENSION
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (longestSide / (options.inSampleSize * 2) >= MAX_IMAGE_DIMENSION) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded;
+        try (InputStream input = open(source)) {
+            decoded = BitmapFactory.decodeStream(input, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Không đọc được ảnh");
+        }
+        Bitmap bitmap = scaleAndRotate(decoded, MAX_IMAGE_DIMENSION, rotation);
+
+        if (!workDirectory.exists() && !workDirectory.mkdirs()) {
+            throw new IOException("Không tạo được thư mục tạm");
+        }
+        String baseName = "ekyc_" + System.currentTimeMillis();
+
+        // Ảnh gốc đã nhỏ và là JPEG -> upload nguyên file (EXIF orientation được giữ)
+        boolean uploadAsIs = longestSide <= MAX_IMAGE_DIMENSION && "image/jpeg".equals(bounds.outMimeType)
+                && "file".equals(source.getScheme());
+        File imageFile;
+        if (uploadAsIs) {
+            imageFile = new File(source.getPath());
+        } else {
+            imageFile = new File(workDirectory, baseName + ".jpg");
+            writeJpeg(bitmap, imageFile, JPEG_QUALITY);
+        }
+
+        Bitmap thumbnail = scaleAndRotate(bitmap, THUMBNAIL_DIMENSION, 0);
+        File thumbnailFile = new File(workDirectory, baseName + "_thumb.jpg");
+        writeJpeg(thumbnail, thumbnailFile, THUMBNAIL_JPEG_QUALITY);
+
+        Log.d(TAG, "Prepared " + bounds.outWidth + "x" + bounds.outHeight + " -> "
+                + bitmap.getWidth() + "x" + bitmap.getHeight()
+                + " (inSampleSize=" + options.inSampleSize + ", reencoded=" + !uploadAsIs + ")");
+        return new PreparedImage(imageFile, !uploadAsIs, thumbnailFile, bitmap);
+    }
+
+    /**
+     * Upload ảnh và thumbnail song song, trả về URL tải về của cả hai
+     */
+    public Task<UploadedImage> upload(PreparedImage image, StorageReference imageRef,
+                                      StorageReference thumbnailRef) {
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType("image/jpeg")
+                .build();
+
+        Task<Uri> imageUrl = imageRef.putFile(Uri.fromFile(image.imageFile), metadata)
+                .continueWithTask(task -> {
+                    task.getResult();
+                    return imageRef.getDownloadUrl();
+                });
+        Task<Uri> thumbnailUrl = thumbnailRef.putFile(Uri.fromFile(image.thumbnailFile), metadata)
+                .continueWithTask(task -> {
+                    task.getResult();
+                    return thumbnailRef.getDownloadUrl();
+                });
+
+        return Tasks.whenAllSuccess(imageUrl, thumbnailUrl).continueWith(task -> {
+            task.getResult();
+            return new UploadedImage(imageUrl.getResult().toString(), thumbnailUrl.getResult().toString());
+        });
+    }
+
+    /**
+     * Xóa các file tạm do pipeline tạo (không xóa ảnh nguồn)
+     */
+    public void release(PreparedImage image) {
+        if (image.imageFileOwned) {
+            deleteQuietly(image.imageFile);
+        }
+        deleteQuietly(image.thumbnailFile);
+    }
+
+    private InputStream open(Uri source) throws IOException {
+        InputStream input = contentResolver.openInputStream(source);
+        if (input == null) {
+            throw new IOException("Không mở được ảnh");
+        }
+        return input;
+    }
+
+    private int readRotation(Uri source) {
+        try (InputStream input = open(source)) {
+            int orientation = new ExifInterface(input).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Scale về cạnh dài maxDimension (không phóng to) và xoay, trong một lần tạo bitmap
+     */
+    private static Bitmap scaleAndRotate(Bitmap source, int maxDimension, int rotation) {
+        int longestSide = Math.max(source.getWidth(), source.getHeight());
+        float scale = longestSide > maxDimension ? (float) maxDimension / longestSide : 1f;
+        if (scale == 1f && rotation == 0) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    private static void writeJpeg(Bitmap bitmap, File file, int quality) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, output)) {
+                throw new IOException("Không nén được ảnh");
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+}
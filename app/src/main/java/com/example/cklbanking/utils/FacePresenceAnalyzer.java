@@ -0,0 +1,154 @@
+package com.example.cklbanking.utils;
+
+import android.media.Image;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.Locale;
+
+/**
+ * Analyzer CameraX chỉ để biết có khuôn mặt trong khung hình hay không
+ *
+ * - Detector FAST, không landmark/contour/classification (ACCURATE chỉ chạy một lần khi chụp,
+ *   xem FaceVerificationService.extractTemplate)
+ * - Giới hạn tần suất: frame đến sớm hơn minFrameIntervalMillis được đóng ngay, không detect
+ * - Chỉ báo listener khi trạng thái đổi; cần vài frame trống liên tiếp mới coi là mất mặt
+ *   để trạng thái không nhấp nháy
+ * - Đếm frame xử lý / bỏ qua và độ trễ detect, log định kỳ
+ *
+ * Dùng với STRATEGY_KEEP_ONLY_LATEST; frame chỉ được đóng khi detect xong nên mỗi lúc
+ * có tối đa một lần detect. Kết quả detect (và listener) chạy trên main thread.
+ */
+public class FacePresenceAnalyzer implements ImageAnalysis.Analyzer {
+
+    private static final String TAG = "FacePresenceAnalyzer";
+    private static final int ABSENT_FRAMES_TO_LOSE_FACE = 2;
+    private static final float MIN_FACE_SIZE = 0.2f; // Tỉ lệ so với chiều rộng ảnh
+    private static final long STATS_LOG_INTERVAL_MILLIS = 10 * 1000; // 10 seconds
+
+    public interface Listener {
+        /**
+         * Gọi trên main thread, chỉ khi trạng thái thay đổi
+         */
+        void onFacePresenceChanged(boolean facePresent);
+    }
+
+    private final FaceDetector detector;
+    private final long minFrameIntervalMillis;
+    private final Listener listener;
+
+    // Analyzer thread
+    private long lastProcessedAt;
+    private volatile long framesSkipped;
+
+    // Main thread
+    private boolean facePresent;
+    private int consecutiveAbsentFrames;
+
+    // Metrics
+    private long framesProcessed;
+    private long totalDetectionMillis;
+    private long maxDetectionMillis;
+    private long windowStartedAt;
+    private long windowFrames;
+    private double processedFramesPerSecond;
+
+    /**
+     * @param minFrameIntervalMillis khoảng cách tối thiểu giữa hai frame được detect
+     */
+    public FacePresenceAnalyzer(long minFrameIntervalMillis, Listener listener) {
+        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setMinFaceSize(MIN_FACE_SIZE)
+                .build();
+        this.detector = FaceDetection.getClient(options);
+        this.minFrameIntervalMillis = minFrameIntervalMillis;
+        this.listener = listener;
+    }
+
+    @Override
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        long now = SystemClock.elapsedRealtime();
+        Image mediaImage = imageProxy.getImage();
+        if (mediaImage == null || now - lastProcessedAt < minFrameIntervalMillis) {
+            framesSkipped++;
+            imageProxy.close();
+            return;
+        }
+        lastProcessedAt = now;
+
+        InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
+        detector.process(image)
+                .addOnSuccessListener(faces -> onDetected(!faces.isEmpty(), now))
+                .addOnFailureListener(e -> Log.e(TAG, "Face detection failed", e))
+                .addOnCompleteListener(task -> imageProxy.close());
+    }
+
+    private void onDetected(boolean faceInFrame, long startedAt) {
+        long finishedAt = SystemClock.elapsedRealtime();
+        recordFrame(finishedAt - startedAt, finishedAt);
+
+        boolean present;
+        if (faceInFrame) {
+            consecutiveAbsentFrames = 0;
+            present = true;
+        } else {
+            consecutiveAbsentFrames++;
+            present = facePresent && consecutiveAbsentFrames < ABSENT_FRAMES_TO_LOSE_FACE;
+        }
+
+        if (present != facePresent) {
+            facePresent = present;
+            listener.onFacePresenceChanged(present);
+        }
+    }
+
+    private void recordFrame(long detectionMillis, long now) {
+        framesProcessed++;
+        totalDetectionMillis += detectionMillis;
+        maxDetectionMillis = Math.max(maxDetectionMillis, detectionMillis);
+
+        if (windowStartedAt == 0) {
+            windowStartedAt = now;
+        }
+        windowFrames++;
+        long windowMillis = now - windowStartedAt;
+        if (windowMillis >= STATS_LOG_INTERVAL_MILLIS) {
+            processedFramesPerSecond = windowFrames * 1000.0 / windowMillis;
+            windowStartedAt = now;
+            windowFrames = 0;
+            Log.d(TAG, getStats());
+        }
+    }
+
+    public boolean isFacePresent() {
+        return facePresent;
+    }
+
+    public String getStats() {
+        double averageMillis = framesProcessed == 0 ? 0 : (double) totalDetectionMillis / framesProcessed;
+        return String.format(Locale.US,
+                "FacePresence{processed=%d, skipped=%d, fps=%.1f, avgDetection=%.0fms, maxDetection=%dms}",
+                framesProcessed, framesSkipped, processedFramesPerSecond, averageMillis, maxDetectionMillis);
+    }
+
+    public void close() {
+        Log.d(TAG, getStats());
+        detector.close();
+    }
+}
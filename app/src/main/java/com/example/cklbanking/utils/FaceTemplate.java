@@ -0,0 +1,99 @@
+package com.example.cklbanking.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Face template: vector đặc trưng khuôn mặt kèm id của engine đã tạo ra nó
+ * (xem FaceMatcher). Template của hai engine khác nhau không so sánh được với nhau.
+ *
+ * Trích xuất một lần khi đăng ký eKYC, lưu vào user doc (faceTemplate) - lần xác thực
+ * sau chỉ cần một lần detect ảnh hiện tại và so sánh vector, không cần tải ảnh đã lưu.
+ */
+public class FaceTemplate {
+
+    public static final int VERSION = 1;
+
+    private final String engineId;
+    private final float[] values;
+
+    public FaceTemplate(String engineId, float[] values) {
+        this.engineId = engineId;
+        this.values = values;
+    }
+
+    public String getEngineId() {
+        return engineId;
+    }
+
+    /**
+     * Vector đặc trưng - không sửa đổi
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * Dạng lưu Firestore (NaN được Firestore hỗ trợ)
+     */
+    public List<Double> toList() {
+        List<Double> list = new ArrayList<>(values.length);
+        for (float value : values) {
+            list.add((double) value);
+        }
+        return list;
+    }
+
+    /**
+     * @return null nếu dữ liệu không đúng định dạng
+     */
+    public static FaceTemplate fromList(String engineId, List<?> list) {
+        if (engineId == null || list == null || list.isEmpty()) {
+            return null;
+        }
+        float[] values = new float[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = list.get(i);
+            if (!(value instanceof Number)) {
+                return null;
+            }
+            values[i] = ((Number) value).floatValue();
+        }
+        return new FaceTemplate(engineId, values);
+    }
+
+    /**
+     * Dạng lưu cache trên đĩa: "engineId|v0,v1,..."
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(engineId.length() + values.length * 8);
+        builder.append(engineId).append('|');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    public static FaceTemplate decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        int separator = encoded.indexOf('|');
+        if (separator <= 0) {
+            return null;
+        }
+        String[] parts = encoded.substring(separator + 1).trim().split(",");
+        float[] values = new float[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Float.parseFloat(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new FaceTemplate(encoded.substring(0, separator), values);
+    }
+}
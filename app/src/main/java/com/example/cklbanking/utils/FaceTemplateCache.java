@@ -0,0 +1,207 @@
+package com.example.cklbanking.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide cache face template theo userId: LRU trong bộ nhớ + file trong cacheDir
+ *
+ * Mỗi entry kèm updatedAt (faceTemplateUpdatedAt của user doc lúc cache). User doc luôn được
+ * đọc khi xác thực: entry chỉ được dùng khi updatedAt khớp với user doc, nên template đăng ký
+ * lại (hoặc bị officer xoá) trên máy khác không bao giờ bị cache cũ che mất.
+ * Truy cập disk là I/O đồng bộ - gọi từ background thread.
+ */
+public class FaceTemplateCache {
+
+    private static final String TAG = "FaceTemplateCache";
+    private static final int DEFAULT_MAX_ENTRIES = 16;
+    private static final String DIRECTORY_NAME = "face_templates";
+
+    private static FaceTemplateCache instance;
+
+    private final int maxEntries;
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Metrics
+    private long memoryHitCount;
+    private long diskHitCount;
+    private long missCount;
+    private long staleCount;
+
+    private static class Entry {
+        final long updatedAt;
+        final FaceTemplate template;
+
+        Entry(long updatedAt, FaceTemplate template) {
+            this.updatedAt = updatedAt;
+            this.template = template;
+        }
+    }
+
+    public static synchronized FaceTemplateCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new FaceTemplateCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME),
+                    DEFAULT_MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    public FaceTemplateCache(File directory, int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        // accessOrder = true -> LRU ordering
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > FaceTemplateCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param updatedAt faceTemplateUpdatedAt hiện tại trên user doc
+     * @return null nếu không có trong bộ nhớ lẫn trên đĩa, hoặc entry đã cũ (entry cũ bị xoá)
+     */
+    public synchronized FaceTemplate get(String userId, long updatedAt) {
+        if (userId == null) {
+            return null;
+        }
+        Entry entry = entries.get(userId);
+        boolean fromDisk = false;
+        if (entry == null) {
+            entry = decodeEntry(readFile(fileFor(userId)));
+            fromDisk = true;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.updatedAt != updatedAt) {
+            staleCount++;
+            invalidate(userId);
+            return null;
+        }
+
+        if (fromDisk) {
+            diskHitCount++;
+            entries.put(userId, entry);
+        } else {
+            memoryHitCount++;
+        }
+        return entry.template;
+    }
+
+    /**
+     * @param updatedAt faceTemplateUpdatedAt đã ghi cùng template lên user doc
+     */
+    public synchronized void put(String userId, long updatedAt, FaceTemplate template) {
+        if (userId == null || template == null) {
+            return;
+        }
+        entries.put(userId, new Entry(updatedAt, template));
+        writeFile(fileFor(userId), updatedAt + "\n" + template.encode());
+    }
+
+    public synchronized void invalidate(String userId) {
+        entries.remove(userId);
+        File file = fileFor(userId);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete cached template for " + userId);
+        }
+    }
+
+    public synchronized long getMemoryHitCount() { return memoryHitCount; }
+
+    public synchronized long getDiskHitCount() { return diskHitCount; }
+
+    public synchronized long getMissCount() { return missCount; }
+
+    public synchronized long getStaleCount() { return staleCount; }
+
+    /**
+     * Tỉ lệ hit (bộ nhớ + đĩa, 0..1), 0 nếu chưa có lượt tra cứu nào
+     */
+    public synchronized double getHitRate() {
+        long total = memoryHitCount + diskHitCount + missCount;
+        return total == 0 ? 0 : (double) (memoryHitCount + diskHitCount) / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "FaceTemplateCache{size=%d, memoryHits=%d, diskHits=%d, misses=%d, stale=%d, hitRate=%.2f}",
+                entries.size(), memoryHitCount, diskHitCount, missCount, staleCount, getHitRate());
+    }
+
+    private File fileFor(String userId) {
+        // userId là Firebase Auth uid (chữ + số) - an toàn làm tên file
+        return new File(directory, "v" + FaceTemplate.VERSION + "_" + userId);
+    }
+
+    /**
+     * Dạng file: "updatedAt\n" + FaceTemplate.encode(); file không đúng định dạng (vd. ghi bởi
+     * bản cũ chưa có updatedAt) -> null
+     */
+    private static Entry decodeEntry(String content) {
+        if (content == null) {
+            return null;
+        }
+        int newline = content.indexOf('\n');
+        if (newline <= 0) {
+            return null;
+        }
+        long updatedAt;
+        try {
+            updatedAt = Long.parseLong(content.substring(0, newline));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        FaceTemplate template = FaceTemplate.decode(content.substring(newline + 1));
+        return template != null ? new Entry(updatedAt, template) : null;
+    }
+
+    private static String readFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream input = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = input.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(data, 0, offset, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached template", e);
+            return null;
+        }
+    }
+
+    private void writeFile(File file, String content) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create cache directory");
+            return;
+        }
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cached template", e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.cklbanking.utils;
+
+import android.util.Log;
+
+import com.example.cklbanking.CKLBankingApplication;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+/**
+ * Đọc Firestore theo kiểu cache-first cho các màn hình chủ yếu đọc (dashboard, chi nhánh...)
+ *
+ * Với profile OFFLINE_FIRST: trả dữ liệu trong cache trên đĩa ngay (nếu có), sau đó
+ * query server và trả lần nữa với dữ liệu mới. Listener vì vậy có thể được gọi hai lần.
+ * Với các profile khác: một lần get() bình thường.
+ */
+public class FirestoreCacheReader {
+
+    private static final String TAG = "FirestoreCacheReader";
+
+    public interface Listener<T> {
+        /**
+         * @param fromCache true nếu dữ liệu lấy từ cache (sẽ còn một lần gọi với dữ liệu server)
+         */
+        void onResult(T result, boolean fromCache);
+
+        void onError(Exception e);
+    }
+
+    public static void get(Query query, Listener<QuerySnapshot> listener) {
+        if (!CKLBankingApplication.isCacheFirstEnabled()) {
+            query.get()
+                    .addOnSuccessListener(snapshot ->
+                            listener.onResult(snapshot, snapshot.getMetadata().isFromCache()))
+                    .addOnFailureListener(listener::onError);
+            return;
+        }
+
+        query.get(Source.CACHE).addOnCompleteListener(cacheTask -> {
+            // Cache rỗng không có ý nghĩa (chưa từng tải) -> chờ server
+            boolean deliveredFromCache = cacheTask.isSuccessful() && !cacheTask.getResult().isEmpty();
+            if (deliveredFromCache) {
+                listener.onResult(cacheTask.getResult(), true);
+            }
+            refreshFromServer(query.get(Source.SERVER), listener, deliveredFromCache);
+        });
+    }
+
+    public static void get(DocumentReference document, Listener<DocumentSnapshot> listener) {
+        if (!CKLBankingApplication.isCacheFirstEnabled()) {
+            document.get()
+                    .addOnSuccessListener(snapshot ->
+                            listener.onResult(snapshot, snapshot.getMetadata().isFromCache()))
+                    .addOnFailureListener(listener::onError);
+            return;
+        }
+
+        document.get(Source.CACHE).addOnCompleteListener(cacheTask -> {
+            boolean deliveredFromCache = cacheTask.isSuccessful() && cacheTask.getResult().exists();
+            if (deliveredFromCache) {
+                listener.onResult(cacheTask.getResult(), true);
+            }
+            refreshFromServer(document.get(Source.SERVER), listener, deliveredFromCache);
+        });
+    }
+
+    private static <T> void refreshFromServer(Task<T> serverTask, Listener<T> listener,
+                                              boolean deliveredFromCache) {
+        serverTask.addOnSuccessListener(result -> listener.onResult(result, false))
+                .addOnFailureListener(e -> {
+                    if (deliveredFromCache) {
+                        // Đang offline - giữ dữ liệu cache đã hiển thị
+                        Log.w(TAG, "Server refresh failed, keeping cached data", e);
+                    } else {
+                        listener.onError(e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.cklbanking.utils;
+
+import android.location.Location;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.Priority;
+
+/**
+ * Theo dõi vị trí cho màn hình tìm chi nhánh, tiết kiệm pin
+ *
+ * - Chưa có vị trí: HIGH_ACCURACY để có fix đầu tiên nhanh; có rồi thì chuyển sang
+ *   BALANCED_POWER_ACCURACY, cập nhật thưa hơn và chỉ khi di chuyển >= MIN_DISPLACEMENT_METERS
+ * - Vùng ổn định (setStableRegion): kết quả sắp xếp / chi nhánh gần nhất tính tại một vị trí
+ *   vẫn đúng khi người dùng còn trong bán kính đó. Listener nhận significant = true khi ra khỏi
+ *   vùng (cần tính lại), false khi chỉ cần cập nhật chấm vị trí.
+ *
+ * Gọi và nhận callback trên main thread.
+ */
+public class LocationUpdateController {
+
+    private static final String TAG = "LocationUpdateController";
+    private static final long FIRST_FIX_INTERVAL_MILLIS = 5 * 1000; // 5 seconds
+    private static final long TRACKING_INTERVAL_MILLIS = 30 * 1000; // 30 seconds
+    private static final long TRACKING_MIN_INTERVAL_MILLIS = 10 * 1000; // 10 seconds
+    private static final float MIN_DISPLACEMENT_METERS = 25;
+    // Fix cũ hơn thế này khi resume thì lấy lại bằng HIGH_ACCURACY
+    private static final long FIX_MAX_AGE_MILLIS = 2 * 60 * 1000; // 2 minutes
+
+    public interface Listener {
+        /**
+         * @param significant true nếu đã ra khỏi vùng ổn định (hoặc là vị trí đầu tiên)
+         */
+        void onLocationUpdate(Location location, boolean significant);
+    }
+
+    private final FusedLocationProviderClient client;
+    private final Listener listener;
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            Location location = result.getLastLocation();
+            if (location != null) {
+                deliver(location, true);
+            }
+        }
+    };
+
+    private boolean started;
+    private boolean tracking; // false = đang chờ fix đầu tiên (HIGH_ACCURACY)
+    private long lastFixAt; // elapsedRealtime
+    private Location anchor; // Vị trí đã dùng để tính kết quả hiện tại
+    private double stableRadiusMeters = MIN_DISPLACEMENT_METERS;
+
+    // Metrics
+    private int updates;
+    private int significantUpdates;
+
+    public LocationUpdateController(FusedLocationProviderClient client, Listener listener) {
+        this.client = client;
+        this.listener = listener;
+    }
+
+    /**
+     * Bắt đầu nhận vị trí - gọi sau khi đã có quyền ACCESS_FINE_LOCATION
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        boolean recentFix = lastFixAt > 0 && SystemClock.elapsedRealtime() - lastFixAt < FIX_MAX_AGE_MILLIS;
+        try {
+            if (!recentFix) {
+                // Vị trí cuối cùng (nhanh, không tốn pin) trong lúc chờ fix mới
+                client.getLastLocation().addOnSuccessListener(location -> {
+                    if (started && location != null && anchor == null) {
+                        deliver(location, false);
+                    }
+                });
+            }
+            request(recentFix);
+        } catch (SecurityException e) {
+            started = false;
+            Log.e(TAG, "Location permission missing", e);
+        }
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        client.removeLocationUpdates(callback);
+        Log.d(TAG, toString());
+    }
+
+    /**
+     * Kết quả vừa được tính tại center và còn đúng trong bán kính radiusMeters
+     */
+    public void setStableRegion(Location center, double radiusMeters) {
+        anchor = center;
+        stableRadiusMeters = Math.max(MIN_DISPLACEMENT_METERS, radiusMeters);
+    }
+
+    /**
+     * @param fresh false = vị trí cuối cùng đã lưu (có thể rất cũ), chưa phải fix mới
+     */
+    private void deliver(Location location, boolean fresh) {
+        updates++;
+        if (fresh) {
+            lastFixAt = SystemClock.elapsedRealtime();
+            if (!tracking && started) {
+                request(true);
+            }
+        }
+
+        // Sai số lớn (BALANCED ~ 100 m) không được coi là di chuyển
+        boolean significant = anchor == null
+                || anchor.distanceTo(location) >= Math.max(stableRadiusMeters, location.getAccuracy());
+        if (significant) {
+            significantUpdates++;
+            anchor = location;
+        }
+        listener.onLocationUpdate(location, significant);
+    }
+
+    private void request(boolean trackingMode) {
+        tracking = trackingMode;
+        LocationRequest request = trackingMode
+                ? new LocationRequest.Builder(Priority.PRIORITY_BALANCED_POWER_ACCURACY, TRACKING_INTERVAL_MILLIS)
+                        .setMinUpdateIntervalMillis(TRACKING_MIN_INTERVAL_MILLIS)
+                        .setMinUpdateDistanceMeters(MIN_DISPLACEMENT_METERS)
+                        .build()
+                : new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, FIRST_FIX_INTERVAL_MILLIS)
+                        .build();
+        try {
+            // Cùng callback -> thay thế request trước đó
+            client.requestLocationUpdates(request, callback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission missing", e);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "LocationUpdateController{updates=" + updates
+                + ", significant=" + significantUpdates
+                + ", stableRadius=" + Math.round(stableRadiusMeters) + "m"
+                + ", tracking=" + tracking + '}';
+    }
+}
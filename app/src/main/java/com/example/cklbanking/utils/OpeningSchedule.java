@@ -0,0 +1,262 @@
+package com.example.cklbanking.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Giờ mở cửa đã biên dịch: các khoảng [start, end) tính theo phút trong tuần
+ * (0 = 00:00 thứ Hai, MINUTES_PER_WEEK = hết Chủ nhật), đã sắp xếp và gộp
+ *
+ * Chuỗi openingHours chỉ được parse một lần (compile); kiểm tra mở cửa là tìm nhị phân
+ * trên mảng int, không cấp phát. Khi kiểm tra nhiều chi nhánh, tính minuteOfWeek một lần
+ * rồi dùng isOpenAt / minutesUntilOpen cho từng chi nhánh.
+ *
+ * Định dạng hỗ trợ (không phân biệt hoa thường, các đoạn cách nhau bởi ';' hoặc ','):
+ * - "24/7", "24h"
+ * - "8:00 - 17:00", "8h - 17h" (mọi ngày; giờ đóng cửa tính cả phút đó)
+ * - "22:00 - 6:00" (qua đêm)
+ * - "T2-T6: 8:00 - 17:00; T7: 8:00 - 12:00" hoặc "Mon-Fri 08:00-17:00, Sat 08:00-12:00"
+ *   (T2..T7, CN / Thứ 2.., Chủ nhật / Mon..Sun; ngày không có trong chuỗi là đóng cửa)
+ */
+public final class OpeningSchedule {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    // 01/01/1970 là thứ Năm -> cộng 3 ngày để 0 rơi vào thứ Hai
+    private static final int EPOCH_DAY_OFFSET = 3;
+    private static final long ZONE_REFRESH_MILLIS = 60 * 1000; // 1 minute
+
+    private static final Pattern TIME_RANGE = Pattern.compile(
+            "(\\d{1,2})(?:[:h.](\\d{2})|h)?\\s*-\\s*(\\d{1,2})(?:[:h.](\\d{2})|h)?$");
+    private static final String[][] DAY_NAMES = {
+            {"t2", "mon"}, {"t3", "tue"}, {"t4", "wed"}, {"t5", "thu"},
+            {"t6", "fri"}, {"t7", "sat"}, {"cn", "sun"}
+    };
+
+    public static final OpeningSchedule ALWAYS_OPEN =
+            new OpeningSchedule(new int[]{0}, new int[]{MINUTES_PER_WEEK});
+
+    private static TimeZone cachedZone;
+    private static long cachedZoneAt;
+
+    private final int[] starts;
+    private final int[] ends;
+
+    private OpeningSchedule(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * @return null nếu không parse được (Branch dùng giá trị isOpen đã lưu)
+     */
+    public static OpeningSchedule compile(String openingHours) {
+        if (openingHours == null) {
+            return null;
+        }
+        String text = openingHours.trim().toLowerCase(Locale.ROOT);
+        if (text.isEmpty()) {
+            return null;
+        }
+        // "24h" một mình (không phải giờ đóng cửa trong "8h - 24h")
+        if (text.contains("24/7") || (text.contains("24h") && text.indexOf('-') < 0)) {
+            return ALWAYS_OPEN;
+        }
+
+        List<int[]> ranges = new ArrayList<>();
+        for (String segment : text.split("[;,\\n]")) {
+            segment = segment.trim();
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (!addSegment(segment, ranges)) {
+                return null;
+            }
+        }
+        if (ranges.isEmpty()) {
+            return null;
+        }
+        return fromRanges(ranges);
+    }
+
+    /**
+     * Đang mở cửa tại phút minuteOfWeek (xem minuteOfWeek())
+     */
+    public boolean isOpenAt(int minuteOfWeek) {
+        int index = Arrays.binarySearch(starts, minuteOfWeek);
+        if (index >= 0) {
+            return true;
+        }
+        int previous = -index - 2; // Khoảng có start < minuteOfWeek gần nhất
+        return previous >= 0 && minuteOfWeek < ends[previous];
+    }
+
+    /**
+     * Số phút tới lúc mở cửa: 0 nếu đang mở, -1 nếu không bao giờ mở
+     */
+    public int minutesUntilOpen(int minuteOfWeek) {
+        if (starts.length == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(starts, minuteOfWeek);
+        if (index >= 0) {
+            return 0;
+        }
+        int next = -index - 1;
+        if (next > 0 && minuteOfWeek < ends[next - 1]) {
+            return 0;
+        }
+        if (next < starts.length) {
+            return starts[next] - minuteOfWeek;
+        }
+        return starts[0] + MINUTES_PER_WEEK - minuteOfWeek; // Sang tuần sau
+    }
+
+    /**
+     * Phút trong tuần (0 = 00:00 thứ Hai) theo giờ địa phương
+     */
+    public static int minuteOfWeek(long millis, TimeZone zone) {
+        long localMinutes = Math.floorDiv(millis + zone.getOffset(millis), 60_000L)
+                + EPOCH_DAY_OFFSET * (long) MINUTES_PER_DAY;
+        return (int) Math.floorMod(localMinutes, (long) MINUTES_PER_WEEK);
+    }
+
+    /**
+     * Phút trong tuần hiện tại theo múi giờ máy
+     */
+    public static int currentMinuteOfWeek() {
+        long now = System.currentTimeMillis();
+        return minuteOfWeek(now, defaultZone(now));
+    }
+
+    private static synchronized TimeZone defaultZone(long now) {
+        // TimeZone.getDefault() trả về bản sao mỗi lần gọi - giữ lại, làm mới định kỳ
+        if (cachedZone == null || now - cachedZoneAt > ZONE_REFRESH_MILLIS || now < cachedZoneAt) {
+            cachedZone = TimeZone.getDefault();
+            cachedZoneAt = now;
+        }
+        return cachedZone;
+    }
+
+    /**
+     * "[ngày] giờ mở - giờ đóng"
+     */
+    private static boolean addSegment(String segment, List<int[]> ranges) {
+        Matcher matcher = TIME_RANGE.matcher(segment);
+        if (!matcher.find()) {
+            return false;
+        }
+        int open = toMinutes(matcher.group(1), matcher.group(2));
+        int close = toMinutes(matcher.group(3), matcher.group(4));
+        if (open < 0 || close < 0 || open >= MINUTES_PER_DAY) {
+            return false;
+        }
+
+        boolean[] days = parseDays(segment.substring(0, matcher.start()));
+        if (days == null) {
+            return false;
+        }
+
+        // Giờ đóng cửa tính cả phút đó (8:00 - 17:00 vẫn mở lúc 17:00); 24:00 = hết ngày
+        int end = close == MINUTES_PER_DAY ? close : close + 1;
+        if (close < open) {
+            end += MINUTES_PER_DAY; // Qua đêm
+        }
+        for (int day = 0; day < 7; day++) {
+            if (days[day]) {
+                int start = day * MINUTES_PER_DAY + open;
+                int stop = day * MINUTES_PER_DAY + end;
+                if (stop > MINUTES_PER_WEEK) {
+                    // Đêm Chủ nhật kéo sang sáng thứ Hai
+                    ranges.add(new int[]{start, MINUTES_PER_WEEK});
+                    ranges.add(new int[]{0, stop - MINUTES_PER_WEEK});
+                } else {
+                    ranges.add(new int[]{start, stop});
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int toMinutes(String hours, String minutes) {
+        int hour = Integer.parseInt(hours);
+        int minute = minutes != null ? Integer.parseInt(minutes) : 0;
+        if (hour > 24 || minute > 59 || (hour == 24 && minute > 0)) {
+            return -1;
+        }
+        return hour * 60 + minute;
+    }
+
+    /**
+     * @return ngày áp dụng (0 = thứ Hai), tất cả nếu không ghi ngày, null nếu không hiểu
+     */
+    private static boolean[] parseDays(String spec) {
+        boolean[] days = new boolean[7];
+        String normalized = spec.replace(":", " ")
+                .replace("thứ ", "t")
+                .replace("chủ nhật", "cn").replace("chu nhat", "cn")
+                .replaceAll("\\s*-\\s*", "-")
+                .trim();
+        if (normalized.isEmpty()) {
+            Arrays.fill(days, true);
+            return days;
+        }
+
+        for (String token : normalized.split("[\\s/&]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            int dash = token.indexOf('-');
+            int from = dayIndex(dash < 0 ? token : token.substring(0, dash));
+            int to = dash < 0 ? from : dayIndex(token.substring(dash + 1));
+            if (from < 0 || to < 0) {
+                return null;
+            }
+            // T6-T2 = thứ Sáu tới thứ Hai (qua cuối tuần)
+            for (int day = from; ; day = (day + 1) % 7) {
+                days[day] = true;
+                if (day == to) {
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+
+    private static int dayIndex(String token) {
+        for (int day = 0; day < DAY_NAMES.length; day++) {
+            for (String name : DAY_NAMES[day]) {
+                if (token.equals(name) || (name.length() == 3 && token.startsWith(name))) {
+                    return day;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static OpeningSchedule fromRanges(List<int[]> ranges) {
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] range : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new int[]{range[0], range[1]});
+            }
+        }
+        int[] starts = new int[merged.size()];
+        int[] ends = new int[merged.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = merged.get(i)[0];
+            ends[i] = merged.get(i)[1];
+        }
+        return new OpeningSchedule(starts, ends);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.cklbanking.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoded polyline (thuật toán của Google, precision 5 - cùng format overview_polyline của Goong)
+ *
+ * Route vài trăm điểm chỉ còn vài KB chuỗi ASCII - gửi sang WebView và lưu cache gọn hơn
+ * nhiều so với mảng JSON [[lat,lng],...]. goong_map.html giải mã bằng decodePolyline().
+ */
+public final class PolylineEncoder {
+
+    private static final double FACTOR = 1e5;
+
+    private PolylineEncoder() {}
+
+    /**
+     * @param points danh sách [lat, lng]
+     */
+    public static String encode(List<double[]> points) {
+        StringBuilder result = new StringBuilder(points.size() * 8);
+        long previousLat = 0;
+        long previousLng = 0;
+        for (double[] point : points) {
+            long lat = Math.round(point[0] * FACTOR);
+            long lng = Math.round(point[1] * FACTOR);
+            encodeValue(lat - previousLat, result);
+            encodeValue(lng - previousLng, result);
+            previousLat = lat;
+            previousLng = lng;
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return danh sách [lat, lng]
+     * @throws IllegalArgumentException nếu chuỗi không hợp lệ
+     */
+    public static List<double[]> decode(String encoded) {
+        List<double[]> points = new ArrayList<>();
+        int index = 0;
+        long lat = 0;
+        long lng = 0;
+        int[] position = new int[1];
+        while (index < encoded.length()) {
+            position[0] = index;
+            lat += decodeValue(encoded, position);
+            lng += decodeValue(encoded, position);
+            index = position[0];
+            points.add(new double[]{lat / FACTOR, lng / FACTOR});
+        }
+        return points;
+    }
+
+    private static void encodeValue(long value, StringBuilder result) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            result.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        result.append((char) (shifted + 63));
+    }
+
+    private static long decodeValue(String encoded, int[] position) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            if (position[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated polyline");
+            }
+            chunk = encoded.charAt(position[0]++) - 63;
+            result |= (long) (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
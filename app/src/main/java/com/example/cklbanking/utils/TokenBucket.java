@@ -0,0 +1,79 @@
+package com.example.cklbanking.utils;
+
+/**
+ * Token bucket (thuần tính toán, không phụ thuộc Firestore)
+ *
+ * Bucket chứa tối đa {@code capacity} token, được nạp lại đều đặn {@code capacity} token
+ * mỗi {@code refillPeriodMillis}. Mỗi lần hành động tốn một token. Trạng thái chỉ gồm
+ * hai số (tokens, updatedAt) nên có thể lưu trong một document và cập nhật trong transaction,
+ * chi phí không đổi dù lịch sử dài bao nhiêu.
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private final long refillPeriodMillis;
+
+    public TokenBucket(int capacity, long refillPeriodMillis) {
+        if (capacity <= 0 || refillPeriodMillis <= 0) {
+            throw new IllegalArgumentException("capacity and refillPeriodMillis must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPeriodMillis = refillPeriodMillis;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Số token hiện có sau khi nạp lại
+     * @param tokens số token lưu lần trước (null = bucket mới, đầy)
+     * @param updatedAt thời điểm lưu lần trước (millis)
+     */
+    public double refill(Double tokens, long updatedAt, long now) {
+        if (tokens == null) {
+            return capacity;
+        }
+        // Đồng hồ lùi (đổi giờ máy) -> không nạp thêm
+        long elapsed = Math.max(0, now - updatedAt);
+        double refilled = tokens + (double) elapsed * capacity / refillPeriodMillis;
+        return Math.min(capacity, refilled);
+    }
+
+    /**
+     * Thử lấy một token
+     */
+    public Result tryAcquire(Double tokens, long updatedAt, long now) {
+        double available = refill(tokens, updatedAt, now);
+        if (available >= 1) {
+            return new Result(true, available - 1, 0);
+        }
+        // Thời gian chờ đến khi đủ một token
+        long waitMillis = (long) Math.ceil((1 - available) * refillPeriodMillis / capacity);
+        return new Result(false, available, waitMillis);
+    }
+
+    /**
+     * Kết quả tryAcquire: trạng thái mới cần lưu lại (tokens, với updatedAt = now)
+     */
+    public static class Result {
+        private final boolean allowed;
+        private final double remainingTokens;
+        private final long waitMillis;
+
+        Result(boolean allowed, double remainingTokens, long waitMillis) {
+            this.allowed = allowed;
+            this.remainingTokens = remainingTokens;
+            this.waitMillis = waitMillis;
+        }
+
+        public boolean isAllowed() { return allowed; }
+
+        public double getRemainingTokens() { return remainingTokens; }
+
+        /**
+         * Thời gian phải đợi đến lần được phép tiếp theo (0 nếu được phép)
+         */
+        public long getWaitMillis() { return waitMillis; }
+    }
+}
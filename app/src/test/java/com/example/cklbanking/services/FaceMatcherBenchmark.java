@@ -0,0 +1,192 @@
+package com.example.cklbanking.services;
+
+import android.graphics.Bitmap;
+
+import com.example.cklbanking.utils.FaceTemplate;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmark so khớp khuôn mặt: độ trễ mỗi lần so khớp và bộ nhớ mỗi template
+ * của engine landmark và engine embedding (cosine similarity)
+ *
+ * Không chạy cùng unit test: ./gradlew testDebugUnitTest -Pbenchmark --tests "*FaceMatcherBenchmark"
+ * Chỉ ghi log số đo, không có ngưỡng thời gian.
+ */
+public class FaceMatcherBenchmark {
+
+    private static final Logger LOG = Logger.getLogger(FaceMatcherBenchmark.class.getName());
+
+    private static final int CANDIDATES = 10_000;
+    private static final int ROUNDS = 20;
+    // Kích thước embedding thường gặp (MobileFaceNet 128 / 192, FaceNet 512)
+    private static final int[] EMBEDDING_DIMENSIONS = {128, 192, 512};
+
+    private final Random random = new Random(17);
+
+    @Before
+    public void requireBenchmarkFlag() {
+        assumeTrue("chạy với -Pbenchmark", Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void landmarkMatcher() {
+        LandmarkFaceMatcher matcher = new LandmarkFaceMatcher();
+        int length = LandmarkFaceMatcher.POINT_COUNT * 2;
+        report(matcher.getEngineId(), length, matcher::similarity, matcher::scoreAll);
+    }
+
+    @Test
+    public void embeddingMatcherCosine() {
+        for (int dimension : EMBEDDING_DIMENSIONS) {
+            FaceMatcher cosine = new CosineOnly();
+            report("embedding-" + dimension, dimension, EmbeddingFaceMatcher::cosineSimilarity, cosine::scoreAll);
+        }
+    }
+
+    private interface Similarity {
+        double similarity(float[] a, float[] b);
+    }
+
+    private interface BatchScorer {
+        double[] scoreAll(float[] probe, List<float[]> candidates);
+    }
+
+    /**
+     * Đo một engine: so khớp 1-1 (xác thực giao dịch) và scoreAll (officer rà soát)
+     */
+    private void report(String engineId, int length, Similarity similarity, BatchScorer batch) {
+        float[] probe = vector(length);
+        List<float[]> candidates = new ArrayList<>(CANDIDATES);
+        long heapBefore = usedHeap();
+        for (int i = 0; i < CANDIDATES; i++) {
+            candidates.add(vector(length));
+        }
+        long heapBytesPerTemplate = (usedHeap() - heapBefore) / CANDIDATES;
+        FaceTemplate template = new FaceTemplate(engineId, probe);
+        int cacheBytesPerTemplate = template.encode().length();
+        // Firestore: mỗi phần tử mảng là một double 8 byte (+ overhead của Firestore)
+        int firestoreBytesPerTemplate = template.toList().size() * 8;
+
+        // Khởi động JIT
+        double sink = 0;
+        for (int round = 0; round < 3; round++) {
+            for (float[] candidate : candidates) {
+                sink += similarity.similarity(probe, candidate);
+            }
+            sink += batch.scoreAll(probe, candidates)[0];
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (float[] candidate : candidates) {
+                sink += similarity.similarity(probe, candidate);
+            }
+        }
+        double nanosPerMatch = (double) (System.nanoTime() - start) / ROUNDS / CANDIDATES;
+
+        long allocatedBefore = allocatedBytes();
+        start = System.nanoTime();
+        double[] scores = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            scores = batch.scoreAll(probe, candidates);
+            sink += scores[0];
+        }
+        double nanosPerBatch = (double) (System.nanoTime() - start) / ROUNDS;
+        long allocatedAfter = allocatedBytes();
+        String allocatedPerBatch = allocatedBefore >= 0
+                ? (allocatedAfter - allocatedBefore) / ROUNDS + " B" : "n/a";
+
+        assertEquals(CANDIDATES, scores.length);
+        LOG.info(String.format(Locale.US,
+                "%s (%d floats): %.1f ns/match, scoreAll %d -> %.2f ms (%.1f ns/candidate, %s/batch), "
+                        + "template: heap ~%d B, cache %d B, Firestore ~%d B [sink %.1f]",
+                engineId, length, nanosPerMatch, CANDIDATES, nanosPerBatch / 1e6, nanosPerBatch / CANDIDATES,
+                allocatedPerBatch,
+                heapBytesPerTemplate, cacheBytesPerTemplate, firestoreBytesPerTemplate, sink));
+    }
+
+    /**
+     * Vector ngẫu nhiên đã chuẩn hóa L2 (như output của EmbeddingFaceMatcher.extract)
+     */
+    private float[] vector(int length) {
+        float[] values = new float[length];
+        double norm = 0;
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian();
+            norm += values[i] * values[i];
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < length; i++) {
+            values[i] /= norm;
+        }
+        return values;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Số byte thread hiện tại đã cấp phát (HotSpot); -1 nếu JVM không hỗ trợ
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * scoreAll mặc định của FaceMatcher trên cosine similarity - EmbeddingFaceMatcher cần model
+     * TFLite để khởi tạo nên benchmark JVM chỉ đo phần so khớp
+     */
+    private static class CosineOnly implements FaceMatcher {
+        @Override
+        public String getEngineId() {
+            return "cosine";
+        }
+
+        @Override
+        public void configureDetector(FaceDetectorOptions.Builder builder) {
+        }
+
+        @Override
+        public float[] extract(Bitmap image, Face face) {
+            return null;
+        }
+
+        @Override
+        public double similarity(float[] a, float[] b) {
+            return EmbeddingFaceMatcher.cosineSimilarity(a, b);
+        }
+
+        @Override
+        public double getMatchThreshold() {
+            return 0.6;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.cklbanking.services;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LandmarkFaceMatcher.similarity: ngưỡng so khớp và xử lý điểm thiếu (NaN)
+ */
+public class LandmarkFaceMatcherTest {
+
+    private static final double EPSILON = 1e-6;
+
+    private final LandmarkFaceMatcher matcher = new LandmarkFaceMatcher();
+
+    @Test
+    public void identicalTemplatesMatch() {
+        float[] face = face();
+        assertEquals(1, matcher.similarity(face, face.clone()), EPSILON);
+        assertTrue(isMatch(face, face.clone()));
+    }
+
+    @Test
+    public void similarityFallsLinearlyWithMeanDistance() {
+        // Dịch mọi điểm 0.05 theo x -> khoảng cách trung bình 0.05 / 0.2 -> 0.75
+        assertEquals(0.75, matcher.similarity(face(), shifted(face(), 0.05f)), EPSILON);
+        assertEquals(0.5, matcher.similarity(face(), shifted(face(), 0.1f)), EPSILON);
+    }
+
+    @Test
+    public void thresholdSeparatesNearAndFarFaces() {
+        assertEquals(0.7, matcher.getMatchThreshold(), EPSILON);
+        assertTrue(isMatch(face(), shifted(face(), 0.055f)));
+        assertFalse(isMatch(face(), shifted(face(), 0.065f)));
+    }
+
+    @Test
+    public void distantFacesScoreZero() {
+        assertEquals(0, matcher.similarity(face(), shifted(face(), 0.5f)), EPSILON);
+    }
+
+    @Test
+    public void missingPointsAreIgnored() {
+        float[] a = face();
+        float[] b = face();
+        // Mất một nửa số điểm ở mỗi bên (khác nhau) - các điểm chung vẫn trùng khớp
+        for (int point = 0; point < LandmarkFaceMatcher.POINT_COUNT; point++) {
+            float[] target = point % 4 == 0 ? a : point % 4 == 1 ? b : null;
+            if (target != null) {
+                target[point * 2] = Float.NaN;
+                target[point * 2 + 1] = Float.NaN;
+            }
+        }
+        double similarity = matcher.similarity(a, b);
+        assertFalse(Double.isNaN(similarity));
+        assertEquals(1, similarity, EPSILON);
+    }
+
+    @Test
+    public void tooFewSharedPointsScoreZero() {
+        float[] a = missing(face());
+        float[] b = face();
+        // 5 điểm chung < MIN_SHARED_POINTS
+        for (int point = 0; point < 5; point++) {
+            a[point * 2] = b[point * 2];
+            a[point * 2 + 1] = b[point * 2 + 1];
+        }
+        assertEquals(0, matcher.similarity(a, b), EPSILON);
+
+        a[10] = b[10];
+        a[11] = b[11];
+        assertEquals(1, matcher.similarity(a, b), EPSILON);
+    }
+
+    @Test
+    public void allMissingScoresZeroNotNaN() {
+        double similarity = matcher.similarity(missing(face()), missing(face()));
+        assertEquals(0, similarity, EPSILON);
+        assertFalse(isMatch(missing(face()), face()));
+    }
+
+    @Test
+    public void invalidInputScoresZero() {
+        assertEquals(0, matcher.similarity(null, face()), EPSILON);
+        assertEquals(0, matcher.similarity(face(), null), EPSILON);
+        assertEquals(0, matcher.similarity(new float[4], new float[4]), EPSILON);
+        assertEquals(0, matcher.similarity(face(), Arrays.copyOf(face(), face().length - 2)), EPSILON);
+    }
+
+    private boolean isMatch(float[] a, float[] b) {
+        return matcher.similarity(a, b) >= matcher.getMatchThreshold();
+    }
+
+    /**
+     * Các điểm rải đều trong bounding box (0..1)
+     */
+    private static float[] face() {
+        float[] values = new float[LandmarkFaceMatcher.POINT_COUNT * 2];
+        for (int point = 0; point < LandmarkFaceMatcher.POINT_COUNT; point++) {
+            values[point * 2] = (point % 10) / 10f;
+            values[point * 2 + 1] = (point / 10) / 11f;
+        }
+        return values;
+    }
+
+    private static float[] shifted(float[] values, float dx) {
+        for (int i = 0; i < values.length; i += 2) {
+            values[i] += dx;
+        }
+        return values;
+    }
+
+    private static float[] missing(float[] values) {
+        Arrays.fill(values, Float.NaN);
+        return values;
+    }
+}
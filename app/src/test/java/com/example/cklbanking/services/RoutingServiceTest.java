@@ -0,0 +1,270 @@
+package com.example.cklbanking.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RoutingService với server giả lập Goong Directions (com.sun.net.httpserver)
+ */
+public class RoutingServiceTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    // Ví dụ trong tài liệu encoded polyline của Google
+    private static final String REFERENCE_POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    private static final String OVERVIEW_RESPONSE = "{\"routes\":[{\"overview_polyline\":{\"points\":\""
+            + REFERENCE_POLYLINE + "\"},\"legs\":["
+            + "{\"distance\":{\"value\":1200},\"duration\":{\"value\":900}},"
+            + "{\"distance\":{\"value\":300},\"duration\":{\"value\":200}}]}]}";
+    private static final String GEOJSON_RESPONSE = "{\"routes\":{\"type\":\"FeatureCollection\",\"features\":[{"
+            + "\"geometry\":{\"type\":\"LineString\",\"coordinates\":"
+            + "[[-120.2,38.5],[-120.95,40.7],[-126.453,43.252]]},"
+            + "\"properties\":{\"distance\":2500.5,\"duration\":1800}}]}}";
+
+    private interface Responder {
+        void respond(HttpExchange exchange) throws IOException;
+    }
+
+    private HttpServer server;
+    private volatile Responder responder;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private File directory;
+    private RoutingService service;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            try {
+                responder.respond(exchange);
+            } catch (IOException e) {
+                // Client đã ngắt kết nối (request bị hủy)
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+
+        directory = Files.createTempDirectory("routes").toFile();
+        service = newService();
+    }
+
+    @After
+    public void tearDown() {
+        service.cancelPending();
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void parsesOverviewPolylineResponse() throws Exception {
+        responder = exchange -> send(exchange, 200, OVERVIEW_RESPONSE);
+
+        Result result = route(service, 10.7769, 106.7009, 10.7800, 106.7000);
+        assertNull(result.error);
+        assertFalse(result.fromCache);
+        assertEquals(1500, result.route.getDistanceMeters(), 1e-9);
+        assertEquals(1100, result.route.getDurationSeconds(), 1e-9);
+        assertEquals(REFERENCE_POLYLINE, result.route.getEncodedPolyline());
+
+        String request = requests.get(0);
+        assertTrue(request, request.startsWith("/Direction?"));
+        assertTrue(request, request.contains("origin=10.776900,106.700900"));
+        assertTrue(request, request.contains("destination=10.780000,106.700000"));
+        assertTrue(request, request.contains("vehicle=walk"));
+        assertTrue(request, request.contains("api_key=test-key"));
+    }
+
+    @Test
+    public void encodesGeoJsonFeatureResponse() throws Exception {
+        responder = exchange -> send(exchange, 200, GEOJSON_RESPONSE);
+
+        Result result = route(service, 10.7769, 106.7009, 10.7800, 106.7000);
+        assertNull(result.error);
+        assertEquals(2500.5, result.route.getDistanceMeters(), 1e-9);
+        assertEquals(1800, result.route.getDurationSeconds(), 1e-9);
+        // GeoJSON [lng, lat] được đổi sang [lat, lng] trước khi encode
+        assertEquals(REFERENCE_POLYLINE, result.route.getEncodedPolyline());
+    }
+
+    @Test
+    public void reportsErrorBodies() throws Exception {
+        responder = exchange -> send(exchange, 403, "{\"error\":\"Invalid API key\"}");
+        assertEquals("Invalid API key", route(service, 10.1, 106.1, 10.2, 106.2).error);
+
+        responder = exchange -> send(exchange, 400, "{\"message\":\"Origin is required\"}");
+        assertEquals("Origin is required", route(service, 10.1, 106.1, 10.2, 106.2).error);
+
+        responder = exchange -> send(exchange, 500, "<html>Internal error</html>");
+        assertEquals("Lỗi khi tính toán đường đi", route(service, 10.1, 106.1, 10.2, 106.2).error);
+
+        responder = exchange -> send(exchange, 200, "{\"routes\":[]}");
+        assertEquals("Không tìm thấy đường đi", route(service, 10.1, 106.1, 10.2, 106.2).error);
+
+        responder = exchange -> send(exchange, 200, "{\"code\":\"Ok\"}");
+        assertEquals("API không trả về đường đi", route(service, 10.1, 106.1, 10.2, 106.2).error);
+
+        // Lỗi không được cache: mỗi lần đều gọi lại API
+        assertEquals(5, requests.size());
+    }
+
+    @Test
+    public void cachedRouteDoesNotIssueAnotherRequest() throws Exception {
+        responder = exchange -> send(exchange, 200, OVERVIEW_RESPONSE);
+
+        Result first = route(service, 10.7769, 106.7009, 10.7800, 106.7000);
+        assertFalse(first.fromCache);
+        assertEquals(1, requests.size());
+
+        // Điểm đi lệch vài mét -> cùng key, lấy từ bộ nhớ
+        Result memory = route(service, 10.77691, 106.70091, 10.7800, 106.7000);
+        assertTrue(memory.fromCache);
+        assertEquals(REFERENCE_POLYLINE, memory.route.getEncodedPolyline());
+        assertEquals(1, requests.size());
+
+        // Instance mới (mở lại app) -> lấy từ file
+        RoutingService reopened = newService();
+        Result disk = route(reopened, 10.7769, 106.7009, 10.7800, 106.7000);
+        assertTrue(disk.fromCache);
+        assertEquals(1500, disk.route.getDistanceMeters(), 1e-9);
+        assertEquals(REFERENCE_POLYLINE, disk.route.getEncodedPolyline());
+        assertEquals(1, requests.size());
+
+        // Chi nhánh khác -> gọi API
+        assertFalse(route(service, 10.7769, 106.7009, 10.7900, 106.7100).fromCache);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void supersededRequestIsCancelled() throws Exception {
+        CountDownLatch slowReceived = new CountDownLatch(1);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        responder = exchange -> {
+            if (exchange.getRequestURI().getQuery().contains("destination=10.800000")) {
+                slowReceived.countDown();
+                try {
+                    releaseSlow.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            send(exchange, 200, OVERVIEW_RESPONSE);
+        };
+
+        Result slow = new Result();
+        service.getWalkingRoute(10.7769, 106.7009, 10.8000, 106.7000, slow);
+        assertTrue(slowReceived.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Người dùng chọn chi nhánh khác trong lúc request đầu còn chạy
+        Result fast = new Result();
+        service.getWalkingRoute(10.7769, 106.7009, 10.7800, 106.7000, fast);
+        fast.await();
+        assertNull(fast.error);
+        assertNotNull(fast.route);
+
+        releaseSlow.countDown();
+        // Request cũ không bao giờ gọi callback (kể cả callback lỗi do ngắt kết nối)
+        assertFalse(slow.done.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelPendingSuppressesCallback() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        responder = exchange -> {
+            received.countDown();
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200, OVERVIEW_RESPONSE);
+        };
+
+        Result result = new Result();
+        service.getWalkingRoute(10.7769, 106.7009, 10.7800, 106.7000, result);
+        assertTrue(received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Đóng màn hình
+        service.cancelPending();
+        release.countDown();
+
+        assertFalse(result.done.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    private RoutingService newService() {
+        // Callback chạy ngay trên worker thread (không có main Looper trong unit test)
+        return new RoutingService("http://127.0.0.1:" + server.getAddress().getPort(), "test-key",
+                directory, Runnable::run);
+    }
+
+    private static Result route(RoutingService service, double originLat, double originLng,
+                                double destLat, double destLng) throws InterruptedException {
+        Result result = new Result();
+        service.getWalkingRoute(originLat, originLng, destLat, destLng, result);
+        result.await();
+        return result;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static class Result implements RoutingService.RouteCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile RoutingService.Route route;
+        volatile boolean fromCache;
+        volatile String error;
+
+        @Override
+        public void onRoute(RoutingService.Route route, boolean fromCache) {
+            this.route = route;
+            this.fromCache = fromCache;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String message) {
+            this.error = message;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("no callback", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+}
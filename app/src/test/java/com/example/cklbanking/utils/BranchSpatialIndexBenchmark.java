@@ -0,0 +1,77 @@
+package com.example.cklbanking.utils;
+
+import com.example.cklbanking.models.Branch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static com.example.cklbanking.utils.BranchSpatialIndexTest.CENTER_LAT;
+import static com.example.cklbanking.utils.BranchSpatialIndexTest.CENTER_LNG;
+import static com.example.cklbanking.utils.BranchSpatialIndexTest.bruteForce;
+import static com.example.cklbanking.utils.BranchSpatialIndexTest.randomBranches;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmark 10k điểm: truy vấn qua chỉ mục so với tính khoảng cách + sắp xếp toàn bộ
+ *
+ * Không chạy cùng unit test: ./gradlew testDebugUnitTest -Pbenchmark --tests "*BranchSpatialIndexBenchmark"
+ * Chỉ ghi log số đo; tính đúng đắn nằm trong BranchSpatialIndexTest.
+ */
+public class BranchSpatialIndexBenchmark {
+
+    private static final Logger LOG = Logger.getLogger(BranchSpatialIndexBenchmark.class.getName());
+
+    @Before
+    public void requireBenchmarkFlag() {
+        assumeTrue("chạy với -Pbenchmark", Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void tenThousandBranches() {
+        Random random = new Random(6);
+        List<Branch> branches = randomBranches(random, 10_000, 1.0);
+        long buildStart = System.nanoTime();
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+        long buildNanos = System.nanoTime() - buildStart;
+
+        int queries = 500;
+        double[][] points = new double[queries][];
+        for (int q = 0; q < queries; q++) {
+            points[q] = new double[]{CENTER_LAT + (random.nextDouble() - 0.5) * 2,
+                    CENTER_LNG + (random.nextDouble() - 0.5) * 2};
+        }
+
+        // Khởi động JIT
+        for (int q = 0; q < 50; q++) {
+            index.nearest(points[q][0], points[q][1], 5);
+            index.withinRadius(points[q][0], points[q][1], 2000);
+            bruteForce(branches, points[q][0], points[q][1], 5, Double.MAX_VALUE);
+        }
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (double[] point : points) {
+            found += index.nearest(point[0], point[1], 5).size();
+            found += index.withinRadius(point[0], point[1], 2000).size();
+        }
+        long indexNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int bruteFound = 0;
+        for (double[] point : points) {
+            bruteFound += bruteForce(branches, point[0], point[1], 5, Double.MAX_VALUE).size();
+            bruteFound += bruteForce(branches, point[0], point[1], Integer.MAX_VALUE, 2000).size();
+        }
+        long bruteNanos = System.nanoTime() - start;
+
+        LOG.info(String.format(Locale.US,
+                "BranchSpatialIndex (10k): build %.1f ms, index %.1f us/query, brute force %.1f us/query "
+                        + "(%d / %d results)",
+                buildNanos / 1e6, indexNanos / 1e3 / queries, bruteNanos / 1e3 / queries, found, bruteFound));
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.cklbanking.utils;
+
+import com.example.cklbanking.models.Branch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BranchSpatialIndex: nearest / withinRadius phải cho đúng kết quả như duyệt thẳng
+ */
+public class BranchSpatialIndexTest {
+
+    // Quanh TP.HCM (package-private: BranchSpatialIndexBenchmark dùng chung dữ liệu)
+    static final double CENTER_LAT = 10.78;
+    static final double CENTER_LNG = 106.70;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(1);
+        List<Branch> branches = randomBranches(random, 2000, 0.3);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+
+        for (int q = 0; q < 200; q++) {
+            double lat = CENTER_LAT + (random.nextDouble() - 0.5) * 0.8;
+            double lng = CENTER_LNG + (random.nextDouble() - 0.5) * 0.8;
+            for (int k : new int[]{1, 5, 20}) {
+                assertMatchesBruteForce("nearest k=" + k + " at " + lat + "," + lng,
+                        branches, lat, lng, k, Double.MAX_VALUE, index.nearest(lat, lng, k));
+            }
+        }
+    }
+
+    @Test
+    public void withinRadiusMatchesBruteForce() {
+        Random random = new Random(2);
+        List<Branch> branches = randomBranches(random, 2000, 0.3);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+
+        // 100 km phủ toàn bộ dữ liệu -> nhánh duyệt thẳng
+        for (double radius : new double[]{0, 300, 2000, 10_000, 100_000}) {
+            for (int q = 0; q < 50; q++) {
+                double lat = CENTER_LAT + (random.nextDouble() - 0.5) * 0.8;
+                double lng = CENTER_LNG + (random.nextDouble() - 0.5) * 0.8;
+                assertMatchesBruteForce("radius " + radius + " at " + lat + "," + lng,
+                        branches, lat, lng, Integer.MAX_VALUE, radius, index.withinRadius(lat, lng, radius));
+            }
+        }
+    }
+
+    @Test
+    public void ringSearchContinuesPastCloserRingWhenNeeded() {
+        // Truy vấn ở góc ô (0, 0): điểm cùng ô ở góc đối diện (~1.4 km) xa hơn
+        // điểm ở vành 2 (~1.2 km) - không được dừng sau khi thấy điểm đầu tiên
+        Branch sameCell = branch("same", 0.0001, 0.0001);
+        Branch ringTwo = branch("ring2", 0.0201, 0.0101);
+        Branch far = branch("far", 0.5, 0.5);
+        BranchSpatialIndex index = new BranchSpatialIndex(Arrays.asList(sameCell, ringTwo, far), 0.01);
+
+        List<BranchSpatialIndex.Neighbor> nearest = index.nearest(0.0099, 0.0099, 1);
+        assertEquals(1, nearest.size());
+        assertSame(ringTwo, nearest.get(0).getBranch());
+
+        List<BranchSpatialIndex.Neighbor> two = index.nearest(0.0099, 0.0099, 2);
+        assertSame(ringTwo, two.get(0).getBranch());
+        assertSame(sameCell, two.get(1).getBranch());
+    }
+
+    @Test
+    public void ringSearchStopsWithoutMissingOutliers() {
+        // Cụm dày + một điểm lẻ ở Hà Nội: dừng sớm trong cụm, nhưng vẫn tìm ra điểm lẻ khi cần
+        Random random = new Random(3);
+        List<Branch> branches = randomBranches(random, 500, 0.05);
+        Branch outlier = branch("hanoi", 21.03, 105.85);
+        branches.add(outlier);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+
+        assertMatchesBruteForce("inside cluster", branches, CENTER_LAT, CENTER_LNG, 10, Double.MAX_VALUE,
+                index.nearest(CENTER_LAT, CENTER_LNG, 10));
+
+        List<BranchSpatialIndex.Neighbor> nearHanoi = index.nearest(21.0, 105.8, 3);
+        assertSame(outlier, nearHanoi.get(0).getBranch());
+        assertMatchesBruteForce("near outlier", branches, 21.0, 105.8, 3, Double.MAX_VALUE, nearHanoi);
+    }
+
+    @Test
+    public void farQueryFallsBackToScan() {
+        // Vị trí ngoài vùng dữ liệu, hoặc cách dữ liệu hàng nghìn ô trống (cellsVisited vượt số điểm
+        // -> duyệt thẳng)
+        Random random = new Random(4);
+        List<Branch> branches = randomBranches(random, 300, 0.2);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+
+        double[][] queries = {{21.03, 105.85}, {60, -100}, {-45, 170}, {CENTER_LAT, CENTER_LNG + 3}};
+        for (double[] query : queries) {
+            for (int k : new int[]{1, 7}) {
+                assertMatchesBruteForce("far query " + Arrays.toString(query) + " k=" + k,
+                        branches, query[0], query[1], k, Double.MAX_VALUE, index.nearest(query[0], query[1], k));
+            }
+        }
+
+        // Trong vùng dữ liệu nhưng giữa hai cụm cách xa nhau (Đà Nẵng): vành toàn ô trống
+        branches.add(branch("hanoi", 21.03, 106.6));
+        index = new BranchSpatialIndex(branches);
+        for (double[] query : new double[][]{{16.05, 106.65}, {21.0, 106.7}}) {
+            for (int k : new int[]{1, 7}) {
+                assertMatchesBruteForce("far query " + Arrays.toString(query) + " k=" + k,
+                        branches, query[0], query[1], k, Double.MAX_VALUE, index.nearest(query[0], query[1], k));
+            }
+        }
+    }
+
+    @Test
+    public void edgeCases() {
+        BranchSpatialIndex empty = new BranchSpatialIndex(new ArrayList<>());
+        assertTrue(empty.nearest(CENTER_LAT, CENTER_LNG, 3).isEmpty());
+        assertTrue(empty.withinRadius(CENTER_LAT, CENTER_LNG, 1000).isEmpty());
+
+        List<Branch> branches = randomBranches(new Random(5), 20, 0.1);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+        assertTrue(index.nearest(CENTER_LAT, CENTER_LNG, 0).isEmpty());
+        // k >= size -> toàn bộ, đã sắp xếp
+        assertMatchesBruteForce("k > size", branches, CENTER_LAT, CENTER_LNG, 20, Double.MAX_VALUE,
+                index.nearest(CENTER_LAT, CENTER_LNG, 50));
+    }
+
+    /**
+     * 10k điểm trên vùng rộng (cùng dữ liệu với BranchSpatialIndexBenchmark)
+     */
+    @Test
+    public void tenThousandBranchesMatchBruteForce() {
+        Random random = new Random(6);
+        List<Branch> branches = randomBranches(random, 10_000, 1.0);
+        BranchSpatialIndex index = new BranchSpatialIndex(branches);
+
+        for (int q = 0; q < 100; q++) {
+            double lat = CENTER_LAT + (random.nextDouble() - 0.5) * 2;
+            double lng = CENTER_LNG + (random.nextDouble() - 0.5) * 2;
+            assertMatchesBruteForce("nearest at " + lat + "," + lng,
+                    branches, lat, lng, 5, Double.MAX_VALUE, index.nearest(lat, lng, 5));
+            assertMatchesBruteForce("radius at " + lat + "," + lng,
+                    branches, lat, lng, Integer.MAX_VALUE, 2000, index.withinRadius(lat, lng, 2000));
+        }
+    }
+
+    static List<Branch> randomBranches(Random random, int count, double spreadDegrees) {
+        List<Branch> branches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            branches.add(branch("b" + i,
+                    CENTER_LAT + (random.nextDouble() - 0.5) * spreadDegrees,
+                    CENTER_LNG + (random.nextDouble() - 0.5) * spreadDegrees));
+        }
+        return branches;
+    }
+
+    private static Branch branch(String name, double latitude, double longitude) {
+        return new Branch(name, "", latitude, longitude, "", "8:00 - 17:00", "branch");
+    }
+
+    /**
+     * Khoảng cách của k điểm gần nhất trong bán kính, tính thẳng trên toàn bộ danh sách
+     */
+    static List<Double> bruteForce(List<Branch> branches, double lat, double lng, int k, double radius) {
+        List<Double> distances = new ArrayList<>();
+        for (Branch branch : branches) {
+            double distance = BranchSpatialIndex.haversineMeters(lat, lng, branch.getLatitude(), branch.getLongitude());
+            if (distance <= radius) {
+                distances.add(distance);
+            }
+        }
+        Collections.sort(distances);
+        return new ArrayList<>(distances.subList(0, Math.min(k, distances.size())));
+    }
+
+    /**
+     * So với duyệt thẳng theo khoảng cách (các điểm cách đều nhau có thể đổi thứ tự),
+     * và khoảng cách trả về đúng là khoảng cách tới chi nhánh đi kèm
+     */
+    private static void assertMatchesBruteForce(String message, List<Branch> branches, double lat, double lng,
+                                                int k, double radius, List<BranchSpatialIndex.Neighbor> actual) {
+        List<Double> expected = bruteForce(branches, lat, lng, k, radius);
+        assertEquals(message + " size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            BranchSpatialIndex.Neighbor neighbor = actual.get(i);
+            assertEquals(message + " #" + i, expected.get(i), neighbor.getDistanceMeters(), 1e-6);
+            Branch branch = neighbor.getBranch();
+            assertEquals(message + " #" + i + " branch", neighbor.getDistanceMeters(),
+                    BranchSpatialIndex.haversineMeters(lat, lng, branch.getLatitude(), branch.getLongitude()), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.cklbanking.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FaceTemplateCache: entry chỉ được dùng khi updatedAt khớp user doc
+ */
+public class FaceTemplateCacheTest {
+
+    private static final String USER_ID = "user1";
+    private static final FaceTemplate TEMPLATE = new FaceTemplate("landmark", new float[]{0.25f, -1f, 3.5f});
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("face_templates").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void matchingUpdatedAtHitsMemoryThenDisk() {
+        FaceTemplateCache cache = new FaceTemplateCache(directory, 4);
+        cache.put(USER_ID, 100, TEMPLATE);
+
+        assertArrayEquals(TEMPLATE.getValues(), cache.get(USER_ID, 100).getValues(), 0f);
+        assertEquals(1, cache.getMemoryHitCount());
+
+        // Lần mở app sau: chỉ còn file
+        FaceTemplateCache reopened = new FaceTemplateCache(directory, 4);
+        FaceTemplate fromDisk = reopened.get(USER_ID, 100);
+        assertNotNull(fromDisk);
+        assertEquals("landmark", fromDisk.getEngineId());
+        assertArrayEquals(TEMPLATE.getValues(), fromDisk.getValues(), 0f);
+        assertEquals(1, reopened.getDiskHitCount());
+    }
+
+    @Test
+    public void reEnrolledTemplateIsNotOverriddenByCache() {
+        // Đăng ký lại trên máy khác -> user doc có updatedAt mới hơn
+        FaceTemplateCache cache = new FaceTemplateCache(directory, 4);
+        cache.put(USER_ID, 100, TEMPLATE);
+
+        assertNull(cache.get(USER_ID, 200));
+        assertEquals(1, cache.getStaleCount());
+        // Entry cũ bị xoá khỏi bộ nhớ lẫn đĩa
+        assertNull(cache.get(USER_ID, 100));
+        assertNull(new FaceTemplateCache(directory, 4).get(USER_ID, 100));
+    }
+
+    @Test
+    public void staleDiskEntryIsRejected() {
+        new FaceTemplateCache(directory, 4).put(USER_ID, 100, TEMPLATE);
+
+        FaceTemplateCache reopened = new FaceTemplateCache(directory, 4);
+        assertNull(reopened.get(USER_ID, 200));
+        assertEquals(0, reopened.getDiskHitCount());
+    }
+
+    @Test
+    public void invalidateRemovesMemoryAndDisk() {
+        FaceTemplateCache cache = new FaceTemplateCache(directory, 4);
+        cache.put(USER_ID, 100, TEMPLATE);
+        cache.invalidate(USER_ID);
+
+        assertNull(cache.get(USER_ID, 100));
+        assertNull(new FaceTemplateCache(directory, 4).get(USER_ID, 100));
+    }
+
+    @Test
+    public void fileWithoutUpdatedAtIsIgnored() throws IOException {
+        // File ghi bởi bản cũ: chỉ có FaceTemplate.encode()
+        File legacy = new File(directory, "v" + FaceTemplate.VERSION + "_" + USER_ID);
+        try (OutputStream output = new FileOutputStream(legacy)) {
+            output.write(TEMPLATE.encode().getBytes(StandardCharsets.UTF_8));
+        }
+
+        FaceTemplateCache cache = new FaceTemplateCache(directory, 4);
+        assertNull(cache.get(USER_ID, 0));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvictedFromMemory() {
+        FaceTemplateCache cache = new FaceTemplateCache(directory, 2);
+        cache.put("a", 1, TEMPLATE);
+        cache.put("b", 1, TEMPLATE);
+        cache.get("a", 1);
+        cache.put("c", 1, TEMPLATE);
+
+        // "b" bị đẩy khỏi bộ nhớ nhưng vẫn còn trên đĩa
+        assertNotNull(cache.get("b", 1));
+        assertEquals(1, cache.getDiskHitCount());
+        assertTrue(cache.getHitRate() > 0);
+    }
+}
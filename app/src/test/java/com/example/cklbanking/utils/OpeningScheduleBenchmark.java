@@ -0,0 +1,77 @@
+package com.example.cklbanking.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static com.example.cklbanking.utils.OpeningScheduleTest.randomOpeningHours;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmark 10k chi nhánh: parse chuỗi mỗi lần kiểm tra (cách cũ) so với biên dịch một lần
+ * rồi chỉ tìm nhị phân
+ *
+ * Không chạy cùng unit test: ./gradlew testDebugUnitTest -Pbenchmark --tests "*OpeningScheduleBenchmark"
+ * Chỉ ghi log số đo; tính đúng đắn nằm trong OpeningScheduleTest.
+ */
+public class OpeningScheduleBenchmark {
+
+    private static final Logger LOG = Logger.getLogger(OpeningScheduleBenchmark.class.getName());
+
+    @Before
+    public void requireBenchmarkFlag() {
+        assumeTrue("chạy với -Pbenchmark", Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void tenThousandBranches() {
+        Random random = new Random(7);
+        String[] hours = randomOpeningHours(random, 10_000);
+
+        long start = System.nanoTime();
+        OpeningSchedule[] schedules = new OpeningSchedule[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            schedules[i] = OpeningSchedule.compile(hours[i]);
+        }
+        long compileNanos = System.nanoTime() - start;
+
+        int rounds = 20;
+        int reparsedOpen = 0;
+        int compiledOpen = 0;
+        long reparseNanos = 0;
+        long compiledNanos = 0;
+        for (int round = 0; round < rounds; round++) {
+            int minute = random.nextInt(OpeningSchedule.MINUTES_PER_WEEK);
+
+            start = System.nanoTime();
+            for (String text : hours) {
+                if (OpeningSchedule.compile(text).isOpenAt(minute)) {
+                    reparsedOpen++;
+                }
+            }
+            long reparse = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (OpeningSchedule schedule : schedules) {
+                if (schedule.isOpenAt(minute)) {
+                    compiledOpen++;
+                }
+            }
+            long compiled = System.nanoTime() - start;
+
+            if (round > 0) { // Bỏ vòng đầu (JIT khởi động)
+                reparseNanos += reparse;
+                compiledNanos += compiled;
+            }
+        }
+
+        LOG.info(String.format(Locale.US,
+                "OpeningSchedule (10k): compile %.2f ms, re-parse per check %.2f ms/pass, "
+                        + "compiled %.3f ms/pass (%d / %d open)",
+                compileNanos / 1e6, reparseNanos / 1e6 / (rounds - 1), compiledNanos / 1e6 / (rounds - 1),
+                reparsedOpen, compiledOpen));
+    }
+}
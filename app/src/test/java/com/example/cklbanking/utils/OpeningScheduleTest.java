@@ -0,0 +1,233 @@
+package com.example.cklbanking.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OpeningSchedule: các định dạng openingHours được hỗ trợ, minutesUntilOpen và minuteOfWeek
+ */
+public class OpeningScheduleTest {
+
+    private static final int MON = 0, TUE = 1, WED = 2, THU = 3, FRI = 4, SAT = 5, SUN = 6;
+
+    @Test
+    public void dailyRangeIncludesClosingMinute() {
+        OpeningSchedule schedule = compile("8:00 - 17:00");
+        for (int day = MON; day <= SUN; day++) {
+            assertFalse(schedule.isOpenAt(at(day, 7, 59)));
+            assertTrue(schedule.isOpenAt(at(day, 8, 0)));
+            assertTrue(schedule.isOpenAt(at(day, 17, 0)));
+            assertFalse(schedule.isOpenAt(at(day, 17, 1)));
+        }
+    }
+
+    @Test
+    public void hourSuffixFormat() {
+        OpeningSchedule schedule = compile("8h - 17h30");
+        assertTrue(schedule.isOpenAt(at(WED, 8, 0)));
+        assertTrue(schedule.isOpenAt(at(WED, 17, 30)));
+        assertFalse(schedule.isOpenAt(at(WED, 17, 31)));
+    }
+
+    @Test
+    public void vietnameseWeekdayAbbreviations() {
+        OpeningSchedule schedule = compile("T2-T6: 8:00 - 17:00; T7: 8:00 - 12:00");
+        assertTrue(schedule.isOpenAt(at(MON, 8, 0)));
+        assertTrue(schedule.isOpenAt(at(FRI, 16, 59)));
+        assertTrue(schedule.isOpenAt(at(SAT, 11, 0)));
+        assertFalse(schedule.isOpenAt(at(SAT, 13, 0)));
+        // Chủ nhật không có trong chuỗi -> đóng cửa
+        assertFalse(schedule.isOpenAt(at(SUN, 9, 0)));
+    }
+
+    @Test
+    public void englishWeekdayNames() {
+        OpeningSchedule schedule = compile("Mon-Fri 08:00-17:00, Sat 08:00-12:00");
+        assertTrue(schedule.isOpenAt(at(MON, 8, 0)));
+        assertTrue(schedule.isOpenAt(at(FRI, 17, 0)));
+        assertTrue(schedule.isOpenAt(at(SAT, 12, 0)));
+        assertFalse(schedule.isOpenAt(at(SAT, 12, 1)));
+        assertFalse(schedule.isOpenAt(at(SUN, 9, 0)));
+
+        OpeningSchedule full = compile("Monday - Friday: 9:00 - 18:00");
+        assertTrue(full.isOpenAt(at(THU, 9, 0)));
+        assertFalse(full.isOpenAt(at(SAT, 9, 0)));
+    }
+
+    @Test
+    public void spelledOutVietnameseDays() {
+        OpeningSchedule schedule = compile("Thứ 2 - Thứ 6: 7:30 - 16:30, Chủ nhật: 8:00 - 11:00");
+        assertTrue(schedule.isOpenAt(at(MON, 7, 30)));
+        assertTrue(schedule.isOpenAt(at(FRI, 16, 30)));
+        assertFalse(schedule.isOpenAt(at(SAT, 9, 0)));
+        assertTrue(schedule.isOpenAt(at(SUN, 9, 0)));
+        assertFalse(schedule.isOpenAt(at(SUN, 11, 1)));
+    }
+
+    @Test
+    public void overnightRangeSpansMidnight() {
+        OpeningSchedule schedule = compile("22:00 - 6:00");
+        assertTrue(schedule.isOpenAt(at(TUE, 22, 0)));
+        assertTrue(schedule.isOpenAt(at(WED, 3, 0)));
+        assertTrue(schedule.isOpenAt(at(WED, 6, 0)));
+        assertFalse(schedule.isOpenAt(at(WED, 6, 1)));
+        assertFalse(schedule.isOpenAt(at(WED, 12, 0)));
+    }
+
+    @Test
+    public void sundayNightWrapsToMondayMorning() {
+        OpeningSchedule schedule = compile("CN 22:00 - 2:00");
+        assertTrue(schedule.isOpenAt(at(SUN, 23, 59)));
+        assertTrue(schedule.isOpenAt(at(MON, 0, 0)));
+        assertTrue(schedule.isOpenAt(at(MON, 2, 0)));
+        assertFalse(schedule.isOpenAt(at(MON, 2, 1)));
+        assertFalse(schedule.isOpenAt(at(SAT, 23, 0)));
+    }
+
+    @Test
+    public void alwaysOpen() {
+        assertSame(OpeningSchedule.ALWAYS_OPEN, compile("24/7"));
+        assertSame(OpeningSchedule.ALWAYS_OPEN, compile("24h"));
+        assertSame(OpeningSchedule.ALWAYS_OPEN, compile("Mở cửa 24/7"));
+        assertTrue(OpeningSchedule.ALWAYS_OPEN.isOpenAt(0));
+        assertTrue(OpeningSchedule.ALWAYS_OPEN.isOpenAt(OpeningSchedule.MINUTES_PER_WEEK - 1));
+        assertEquals(0, OpeningSchedule.ALWAYS_OPEN.minutesUntilOpen(at(SUN, 23, 59)));
+    }
+
+    @Test
+    public void closingAtMidnightIsNotAlwaysOpen() {
+        // "24h" ở đây là giờ đóng cửa, không phải 24/24
+        OpeningSchedule schedule = compile("8h - 24h");
+        assertNotSame(OpeningSchedule.ALWAYS_OPEN, schedule);
+        assertFalse(schedule.isOpenAt(at(TUE, 7, 59)));
+        assertTrue(schedule.isOpenAt(at(TUE, 23, 59)));
+        assertFalse(schedule.isOpenAt(at(WED, 0, 30)));
+    }
+
+    @Test
+    public void splitShifts() {
+        OpeningSchedule daily = compile("7:30 - 11:30, 13:30 - 17:00");
+        assertTrue(daily.isOpenAt(at(THU, 11, 30)));
+        assertFalse(daily.isOpenAt(at(THU, 12, 0)));
+        assertTrue(daily.isOpenAt(at(THU, 13, 30)));
+        assertEquals(90, daily.minutesUntilOpen(at(THU, 12, 0)));
+
+        OpeningSchedule weekdays = compile("T2-T6: 8:00 - 11:30; T2-T6: 13:00 - 17:00; T7: 8:00 - 11:30");
+        assertFalse(weekdays.isOpenAt(at(TUE, 12, 0)));
+        assertTrue(weekdays.isOpenAt(at(TUE, 13, 0)));
+        assertFalse(weekdays.isOpenAt(at(SAT, 13, 0)));
+    }
+
+    @Test
+    public void overlappingRangesAreMerged() {
+        OpeningSchedule schedule = compile("8:00 - 12:00; 11:00 - 17:00");
+        assertTrue(schedule.isOpenAt(at(MON, 11, 30)));
+        assertTrue(schedule.isOpenAt(at(MON, 16, 0)));
+        assertEquals(0, schedule.minutesUntilOpen(at(MON, 12, 30)));
+    }
+
+    @Test
+    public void invalidTextIsNotCompiled() {
+        assertNull(OpeningSchedule.compile(null));
+        assertNull(OpeningSchedule.compile(""));
+        assertNull(OpeningSchedule.compile("Liên hệ chi nhánh"));
+        assertNull(OpeningSchedule.compile("8:00"));
+        assertNull(OpeningSchedule.compile("25:00 - 17:00"));
+        assertNull(OpeningSchedule.compile("8:00 - 17:75"));
+        assertNull(OpeningSchedule.compile("Holiday 8:00 - 17:00"));
+    }
+
+    @Test
+    public void minutesUntilOpenWrapsToNextWeek() {
+        OpeningSchedule mondayOnly = compile("T2: 8:00 - 17:00");
+        assertEquals(0, mondayOnly.minutesUntilOpen(at(MON, 9, 0)));
+        assertEquals(60, mondayOnly.minutesUntilOpen(at(MON, 7, 0)));
+        // Chủ nhật 20:00 -> sáng thứ Hai tuần sau
+        assertEquals(12 * 60, mondayOnly.minutesUntilOpen(at(SUN, 20, 0)));
+        // Vừa đóng cửa thứ Hai -> thứ Hai tuần sau
+        assertEquals(OpeningSchedule.MINUTES_PER_WEEK - 9 * 60 - 1, mondayOnly.minutesUntilOpen(at(MON, 17, 1)));
+
+        OpeningSchedule weekdays = compile("T2-T6: 8:00 - 17:00; T7: 8:00 - 12:00");
+        // Thứ Bảy 13:00 -> thứ Hai 08:00
+        assertEquals(11 * 60 + 24 * 60 + 8 * 60, weekdays.minutesUntilOpen(at(SAT, 13, 0)));
+    }
+
+    @Test
+    public void minuteOfWeekAlignsWithEpoch() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        // 01/01/1970 00:00 UTC là thứ Năm
+        assertEquals(at(THU, 0, 0), OpeningSchedule.minuteOfWeek(0, utc));
+        // Trước epoch: 31/12/1969 23:59 UTC là thứ Tư
+        assertEquals(at(WED, 23, 59), OpeningSchedule.minuteOfWeek(-60_000L, utc));
+        // 01/01/2024 00:00 UTC là thứ Hai
+        assertEquals(0, OpeningSchedule.minuteOfWeek(1_704_067_200_000L, utc));
+        assertEquals(at(SUN, 23, 59), OpeningSchedule.minuteOfWeek(1_704_067_200_000L - 60_000L, utc));
+        // Cùng thời điểm ở Việt Nam (UTC+7) là thứ Hai 07:00
+        assertEquals(at(MON, 7, 0),
+                OpeningSchedule.minuteOfWeek(1_704_067_200_000L, TimeZone.getTimeZone("Asia/Ho_Chi_Minh")));
+
+        int now = OpeningSchedule.currentMinuteOfWeek();
+        assertTrue(now >= 0 && now < OpeningSchedule.MINUTES_PER_WEEK);
+    }
+
+    /**
+     * 10k chi nhánh: kết quả đã biên dịch khớp với parse lại chuỗi mỗi lần kiểm tra (cách cũ)
+     */
+    @Test
+    public void tenThousandCompiledSchedulesMatchReparsing() {
+        Random random = new Random(7);
+        String[] hours = randomOpeningHours(random, 10_000);
+        OpeningSchedule[] schedules = new OpeningSchedule[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            schedules[i] = OpeningSchedule.compile(hours[i]);
+        }
+
+        for (int round = 0; round < 20; round++) {
+            int minute = random.nextInt(OpeningSchedule.MINUTES_PER_WEEK);
+            int reparsedOpen = 0;
+            int compiledOpen = 0;
+            for (int i = 0; i < hours.length; i++) {
+                if (OpeningSchedule.compile(hours[i]).isOpenAt(minute)) {
+                    reparsedOpen++;
+                }
+                if (schedules[i].isOpenAt(minute)) {
+                    compiledOpen++;
+                }
+            }
+            assertEquals("minute " + minute, reparsedOpen, compiledOpen);
+        }
+    }
+
+    // Package-private: OpeningScheduleBenchmark dùng chung dữ liệu
+    static String[] randomOpeningHours(Random random, int count) {
+        String[] formats = {
+                "8:00 - 17:00", "7:30 - 16:30", "24/7", "22:00 - 6:00",
+                "T2-T6: 8:00 - 17:00; T7: 8:00 - 12:00", "7:30 - 11:30, 13:30 - 17:00"
+        };
+        String[] hours = new String[count];
+        for (int i = 0; i < count; i++) {
+            hours[i] = formats[random.nextInt(formats.length)];
+        }
+        return hours;
+    }
+
+    private static OpeningSchedule compile(String openingHours) {
+        OpeningSchedule schedule = OpeningSchedule.compile(openingHours);
+        assertNotNull(openingHours, schedule);
+        return schedule;
+    }
+
+    private static int at(int day, int hour, int minute) {
+        return day * OpeningSchedule.MINUTES_PER_DAY + hour * 60 + minute;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.cklbanking.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PolylineEncoder: khớp ví dụ tham chiếu của Google và encode/decode khứ hồi
+ */
+public class PolylineEncoderTest {
+
+    // https://developers.google.com/maps/documentation/utilities/polylinealgorithm
+    private static final String REFERENCE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+    private static final List<double[]> REFERENCE_POINTS = Arrays.asList(
+            new double[]{38.5, -120.2},
+            new double[]{40.7, -120.95},
+            new double[]{43.252, -126.453});
+
+    @Test
+    public void encodesGoogleReferenceExample() {
+        assertEquals(REFERENCE, PolylineEncoder.encode(REFERENCE_POINTS));
+    }
+
+    @Test
+    public void decodesGoogleReferenceExample() {
+        assertPointsEqual(REFERENCE_POINTS, PolylineEncoder.decode(REFERENCE));
+    }
+
+    @Test
+    public void roundTripsRandomRoutes() {
+        Random random = new Random(8);
+        for (int route = 0; route < 100; route++) {
+            List<double[]> points = new ArrayList<>();
+            double lat = 10.7 + random.nextDouble();
+            double lng = 106.6 + random.nextDouble();
+            for (int i = 0; i < 1 + random.nextInt(300); i++) {
+                lat += (random.nextDouble() - 0.5) * 0.01;
+                lng += (random.nextDouble() - 0.5) * 0.01;
+                // Precision 5: làm tròn trước để so sánh chính xác
+                points.add(new double[]{Math.round(lat * 1e5) / 1e5, Math.round(lng * 1e5) / 1e5});
+            }
+            String encoded = PolylineEncoder.encode(points);
+            assertPointsEqual(points, PolylineEncoder.decode(encoded));
+            assertEquals(encoded, PolylineEncoder.encode(PolylineEncoder.decode(encoded)));
+        }
+    }
+
+    @Test
+    public void roundTripsExtremeCoordinates() {
+        List<double[]> points = Arrays.asList(
+                new double[]{0, 0},
+                new double[]{-90, -180},
+                new double[]{90, 180},
+                new double[]{-0.00001, 0.00001});
+        assertPointsEqual(points, PolylineEncoder.decode(PolylineEncoder.encode(points)));
+    }
+
+    @Test
+    public void emptyRoute() {
+        assertEquals("", PolylineEncoder.encode(Collections.emptyList()));
+        assertTrue(PolylineEncoder.decode("").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedPolyline() {
+        // Thiếu kinh độ của điểm cuối
+        PolylineEncoder.decode(REFERENCE.substring(0, REFERENCE.length() - 4));
+    }
+
+    private static void assertPointsEqual(List<double[]> expected, List<double[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("lat #" + i, expected.get(i)[0], actual.get(i)[0], 1e-9);
+            assertEquals("lng #" + i, expected.get(i)[1], actual.get(i)[1], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.cklbanking.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TokenBucket: phép tính nạp lại / chờ và chi phí không đổi theo lịch sử
+ */
+public class TokenBucketTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final double EPSILON = 1e-9;
+
+    private final TokenBucket bucket = new TokenBucket(5, HOUR);
+
+    @Test
+    public void newBucketStartsFull() {
+        assertEquals(5, bucket.refill(null, 0, 1000), EPSILON);
+
+        TokenBucket.Result result = bucket.tryAcquire(null, 0, 1000);
+        assertTrue(result.isAllowed());
+        assertEquals(4, result.getRemainingTokens(), EPSILON);
+        assertEquals(0, result.getWaitMillis());
+    }
+
+    @Test
+    public void partialRefillIsProportionalToElapsedTime() {
+        // 5 token / giờ -> 1 token mỗi 12 phút
+        long now = 10 * HOUR;
+        assertEquals(0.5, bucket.refill(0d, now - 6 * 60 * 1000, now), EPSILON);
+        assertEquals(2.25, bucket.refill(1d, now - 15 * 60 * 1000, now), EPSILON);
+    }
+
+    @Test
+    public void refillIsCappedAtCapacity() {
+        long now = 100 * HOUR;
+        assertEquals(5, bucket.refill(0d, now - 2 * HOUR, now), EPSILON);
+        assertEquals(5, bucket.refill(4.9, now - HOUR, now), EPSILON);
+    }
+
+    @Test
+    public void emptyBucketRejectsAndRoundsWaitUp() {
+        long now = 10 * HOUR;
+        TokenBucket.Result result = bucket.tryAcquire(0d, now, now);
+        assertFalse(result.isAllowed());
+        assertEquals(0, result.getRemainingTokens(), EPSILON);
+        assertEquals(12 * 60 * 1000, result.getWaitMillis());
+
+        // 1/3 token mỗi giờ -> chờ 3 giờ (không làm tròn xuống)
+        TokenBucket slow = new TokenBucket(1, 3 * HOUR);
+        assertEquals(3 * HOUR, slow.tryAcquire(0d, now, now).getWaitMillis());
+
+        // Thiếu một phần rất nhỏ vẫn phải chờ ít nhất 1 ms
+        TokenBucket odd = new TokenBucket(3, 1000);
+        TokenBucket.Result almost = odd.tryAcquire(0.9999, now, now);
+        assertFalse(almost.isAllowed());
+        assertEquals(1, almost.getWaitMillis());
+
+        // Chờ đúng waitMillis thì được phép
+        TokenBucket.Result later = bucket.tryAcquire(result.getRemainingTokens(), now,
+                now + result.getWaitMillis());
+        assertTrue(later.isAllowed());
+    }
+
+    @Test
+    public void clockGoingBackwardsDoesNotRefill() {
+        long now = 10 * HOUR;
+        assertEquals(1, bucket.refill(1d, now, now - HOUR), EPSILON);
+        assertFalse(bucket.tryAcquire(0.5, now, now - HOUR).isAllowed());
+    }
+
+    @Test
+    public void exhaustsAfterCapacityAttempts() {
+        long now = 10 * HOUR;
+        Double tokens = null;
+        for (int i = 0; i < 5; i++) {
+            TokenBucket.Result result = bucket.tryAcquire(tokens, now, now);
+            assertTrue("attempt " + (i + 1), result.isAllowed());
+            tokens = result.getRemainingTokens();
+        }
+        assertFalse(bucket.tryAcquire(tokens, now, now).isAllowed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new TokenBucket(0, HOUR);
+    }
+
+    /**
+     * Sau 1 triệu lần thử (mỗi giây một lần) số lần được phép vẫn đúng tốc độ nạp:
+     * trạng thái (tokens, updatedAt) không trôi theo lịch sử
+     */
+    @Test
+    public void refillRateHoldsOverLongHistory() {
+        double tokens = 5;
+        long updatedAt = 0;
+        long now = 0;
+        int allowed = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            now += 1000;
+            TokenBucket.Result result = bucket.tryAcquire(tokens, updatedAt, now);
+            tokens = result.getRemainingTokens();
+            updatedAt = now;
+            if (result.isAllowed()) {
+                allowed++;
+            }
+        }
+
+        // 5 token / giờ trong ~278 giờ mô phỏng (+5 token ban đầu)
+        long simulatedHours = now / HOUR;
+        assertTrue(allowed <= 5 * simulatedHours + 10);
+        assertTrue(allowed >= 5 * simulatedHours - 10);
+    }
+}
@@ -286,6 +286,106 @@ exports.resendOTPEmail = functions.https.onCall(async (data, context) => {
   }
 });
 
+// ============================================
+// Cloud Function: Backfill Customer Search Tokens
+// ============================================
+// Must match CustomerSearchIndex.java (app): lowercase, strip Vietnamese
+// diacritics (incl. đ), per-word prefixes up to 12 characters.
+const MAX_SEARCH_PREFIX_LENGTH = 12;
+const BACKFILL_PAGE_SIZE = 300;
+
+/**
+ * Build name search tokens, same output as CustomerSearchIndex.buildSearchTokens
+ * @param {string} fullName - Customer full name
+ * @return {string[]} Prefix tokens
+ */
+function buildSearchTokens(fullName) {
+  const normalized = (fullName || "")
+      .toLowerCase()
+      .replace(/đ/g, "d")
+      .normalize("NFD")
+      .replace(/\p{M}+/gu, "")
+      .replace(/[^a-z0-9]+/g, " ")
+      .trim();
+  const tokens = new Set();
+  if (!normalized) {
+    return [];
+  }
+  normalized.split(" ").forEach((word) => {
+    const maxLength = Math.min(word.length, MAX_SEARCH_PREFIX_LENGTH);
+    for (let i = 1; i <= maxLength; i++) {
+      tokens.add(word.substring(0, i));
+    }
+  });
+  return Array.from(tokens);
+}
+
+/**
+ * One-time migration: write searchTokens for customers created before name
+ * indexing. Officer only; safe to run again (only changed documents are written).
+ */
+exports.backfillCustomerSearchTokens = functions.https.onCall(async (data, context) => {
+  if (!context.auth) {
+    throw new functions.https.HttpsError(
+        "unauthenticated",
+        "User must be authenticated",
+    );
+  }
+
+  const db = admin.firestore();
+  const caller = await db.collection("users").doc(context.auth.uid).get();
+  const role = caller.exists ? caller.data().role : null;
+  if (role !== "officer" && role !== "staff") {
+    throw new functions.https.HttpsError(
+        "permission-denied",
+        "Only officers can run this migration",
+    );
+  }
+
+  try {
+    let scanned = 0;
+    let updated = 0;
+    let last = null;
+    for (;;) {
+      let query = db.collection("users")
+          .where("role", "==", "customer")
+          .orderBy(admin.firestore.FieldPath.documentId())
+          .limit(BACKFILL_PAGE_SIZE);
+      if (last) {
+        query = query.startAfter(last);
+      }
+      const page = await query.get();
+      if (page.empty) {
+        break;
+      }
+
+      const batch = db.batch();
+      let writes = 0;
+      page.docs.forEach((doc) => {
+        const tokens = buildSearchTokens(doc.data().fullName);
+        const current = doc.data().searchTokens || [];
+        if (current.length !== tokens.length ||
+            current.some((token, i) => token !== tokens[i])) {
+          batch.update(doc.ref, {searchTokens: tokens});
+          writes++;
+        }
+      });
+      if (writes > 0) {
+        await batch.commit();
+      }
+      scanned += page.size;
+      updated += writes;
+      last = page.docs[page.docs.length - 1];
+    }
+
+    functions.logger.log(`Search token backfill: ${updated}/${scanned} customers updated`);
+    return {success: true, scanned: scanned, updated: updated};
+  } catch (error) {
+    functions.logger.error("Error backfilling search tokens:", error);
+    throw new functions.https.HttpsError("internal", error.message);
+  }
+});
+
 // ============================================
 // VNPay Helper Functions
 // ============================================